@@ -0,0 +1,39 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.io.IOException;
+
+/**
+ * Runs the JMH benchmarks in this module with the GC profiler, so that every result comes with the allocation rate, the bytes allocated per
+ * operation (on every thread) and the number and time of garbage collections. <p>
+ *
+ * Usage: <code>java -jar benchmarks/target/benchmarks.jar [JMH options]</code> <br>
+ * Any JMH option can be given; for example, <code>DictionaryBenchmarks.searchAll -p size=1000,100000</code> runs only the <code>searchAll</code>
+ * benchmarks, and only at those sizes. <code>-h</code> lists the options. The 10 million entry dictionaries need several gigabytes of heap;
+ * the benchmark forks are started with <code>-Xmx8g</code>.
+ *
+ * @author Joe Desmond
+ */
+public final class Benchmarks {
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private Benchmarks() {
+
+	}
+
+	/**
+	 * Runs JMH with <code>-prof gc</code> and the given options.
+	 *
+	 * @param args JMH options
+	 * @throws IOException if JMH cannot write its results
+	 */
+	public static final void main(final String ... args) throws IOException {
+		final String[] options = new String[args.length + 2];
+		options[0] = "-prof";
+		options[1] = "gc";
+		System.arraycopy(args, 0, options, 2, args.length);
+
+		org.openjdk.jmh.Main.main(options);
+	}
+}
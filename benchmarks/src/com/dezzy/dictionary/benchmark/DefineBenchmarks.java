@@ -0,0 +1,122 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+
+/**
+ * Benchmarks {@link Dictionary#weakDefine(String, Definition)} with new words and {@link Dictionary#strongDefine(String, Definition)} with
+ * existing words, in batches of {@link #DEFINE_BATCH}, on seeded synthetic dictionaries of 1 thousand to 10 million entries. Times are per
+ * definition. Run with {@link Benchmarks}.
+ *
+ * @author Joe Desmond
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DefineBenchmarks {
+
+	/**
+	 * Number of definitions added or updated in one invocation
+	 */
+	private static final int DEFINE_BATCH = 1000;
+
+	/**
+	 * Number of entries in the dictionary
+	 */
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int size;
+
+	/**
+	 * The dictionary being benchmarked
+	 */
+	private Dictionary dictionary;
+
+	/**
+	 * Words that are not in the dictionary before each invocation
+	 */
+	private final String[] newWords = new String[DEFINE_BATCH];
+
+	/**
+	 * Words that are in the dictionary
+	 */
+	private final String[] existingWords = new String[DEFINE_BATCH];
+
+	/**
+	 * Entry dates of {@link #existingWords}, so that updating them does not move them in the entry date index
+	 */
+	private final Date[] existingDates = new Date[DEFINE_BATCH];
+
+	/**
+	 * Builds the dictionary and chooses the words to define.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		dictionary = SyntheticDictionaries.build(size);
+
+		final List<String> words = dictionary.getEntryDateSortedWords();
+		final Random random = new Random(SyntheticDictionaries.SEED);
+
+		for (int i = 0; i < DEFINE_BATCH; i++) {
+			newWords[i] = "benchmark word " + i;
+			existingWords[i] = words.get(random.nextInt(words.size()));
+			existingDates[i] = dictionary.getDefinition(existingWords[i]).get().entryDate();
+		}
+	}
+
+	/**
+	 * Removes the words added by {@link #weakDefineNew()}, so that every invocation adds new words. A batch takes hundreds of microseconds,
+	 * long enough that timing every invocation separately does not distort the result.
+	 */
+	@Setup(Level.Invocation)
+	public void removeNewWords() {
+		for (final String word : newWords) {
+			dictionary.remove(word);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DEFINE_BATCH)
+	public int weakDefineNew() {
+		int defined = 0;
+		for (final String word : newWords) {
+			if (dictionary.weakDefine(word, new Definition("a word that only exists for benchmarking", new Date()))) {
+				defined++;
+			}
+		}
+		return defined;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DEFINE_BATCH)
+	public int strongDefineUpdate() {
+		int updated = 0;
+		for (int i = 0; i < DEFINE_BATCH; i++) {
+			if (dictionary.strongDefine(existingWords[i], new Definition("an updated definition", existingDates[i]))) {
+				updated++;
+			}
+		}
+		return updated;
+	}
+}
@@ -0,0 +1,157 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.main.SearchBudget;
+import com.dezzy.dictionary.main.SearchCursor;
+
+/**
+ * Benchmarks the {@link Dictionary} operations that read every entry (saving, loading, searching and sorting) on seeded synthetic dictionaries
+ * of 1 thousand to 10 million entries. Run with {@link Benchmarks}.
+ *
+ * @author Joe Desmond
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DictionaryBenchmarks {
+
+	/**
+	 * Search expression used by the search benchmarks
+	 */
+	private static final String SEARCH_REGEX = "Kingdom";
+
+	/**
+	 * Search expression that makes {@link java.util.regex} backtrack: every run of letters can be split between the repeats in exponentially many ways
+	 */
+	private static final String ADVERSARIAL_REGEX = "([a-z]+)+[0-9]";
+
+	/**
+	 * Query terms used by the rank benchmark
+	 */
+	private static final String RANK_QUERY = "Kingdom of the brave";
+
+	/**
+	 * Similarity used by the duplicate detection benchmark
+	 */
+	private static final double DUPLICATE_THRESHOLD = 0.8;
+
+	/**
+	 * Number of entries in the dictionary
+	 */
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int size;
+
+	/**
+	 * The dictionary being benchmarked
+	 */
+	private Dictionary dictionary;
+
+	/**
+	 * File that the dictionary is saved to and loaded from
+	 */
+	private File file;
+
+	/**
+	 * Builds the dictionary and saves it once, so that there is a file to load.
+	 *
+	 * @throws IOException if the dictionary cannot be saved
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dictionary = SyntheticDictionaries.build(size);
+		file = File.createTempFile("dictionary-benchmark", ".dict");
+		dictionary.save(file.getPath());
+	}
+
+	/**
+	 * Deletes the dictionary file.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public File save() throws IOException {
+		dictionary.save(file.getPath());
+		return file;
+	}
+
+	@Benchmark
+	public Dictionary load() throws IOException, ClassNotFoundException {
+		return Dictionary.load(file.getPath());
+	}
+
+	@Benchmark
+	public Object searchAll() {
+		return dictionary.searchAll(SEARCH_REGEX);
+	}
+
+	@Benchmark
+	public Object searchAllAutomaton() {
+		return dictionary.searchAll(SEARCH_REGEX, Dictionary.SearchEngine.AUTOMATON);
+	}
+
+	@Benchmark
+	public Object searchAllWorstJava() {
+		return dictionary.searchAll(ADVERSARIAL_REGEX, Dictionary.SearchEngine.JAVA);
+	}
+
+	@Benchmark
+	public Object searchAllWorstAutomaton() {
+		return dictionary.searchAll(ADVERSARIAL_REGEX, Dictionary.SearchEngine.AUTOMATON);
+	}
+
+	@Benchmark
+	public Object search() {
+		return dictionary.search(SEARCH_REGEX);
+	}
+
+	@Benchmark
+	public Object searchCursorFirstPage() {
+		return dictionary.searchCursor(SEARCH_REGEX, SearchBudget.unlimited(), Dictionary.SearchEngine.DEFAULT, SearchCursor.DEFAULT_PAGE_SIZE).next();
+	}
+
+	@Benchmark
+	public Object rank() {
+		return dictionary.rank(RANK_QUERY, 10);
+	}
+
+	@Benchmark
+	public Object duplicates() {
+		return dictionary.duplicates(DUPLICATE_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public List<String> getSortedWords() {
+		return dictionary.getSortedWords();
+	}
+
+	@Benchmark
+	public List<String> getEntryDateSortedWords() {
+		return dictionary.getEntryDateSortedWords();
+	}
+}
@@ -0,0 +1,84 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dezzy.dictionary.stats.Distribution;
+import com.dezzy.dictionary.stats.Statistics;
+
+/**
+ * Benchmarks building a {@link Distribution} from unsorted data: the gaps between the entry dates of seeded synthetic dictionaries of 1 thousand
+ * to 10 million entries, shuffled again before every invocation. Run with {@link Benchmarks}.
+ *
+ * @author Joe Desmond
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DistributionBenchmarks {
+
+	/**
+	 * Number of entries in the dictionary
+	 */
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int size;
+
+	/**
+	 * Gaps between consecutive entry dates, sorted
+	 */
+	private float[] gaps;
+
+	/**
+	 * Shuffled copy of {@link #gaps}, replaced before every invocation
+	 */
+	private float[] unsorted;
+
+	/**
+	 * Source of randomness for the shuffles
+	 */
+	private final Random random = new Random(SyntheticDictionaries.SEED);
+
+	/**
+	 * Builds a dictionary and keeps the gaps between its entry dates.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		gaps = new Statistics(SyntheticDictionaries.build(size)).timeDifferences.data;
+	}
+
+	/**
+	 * Shuffles the gaps, because {@link Distribution} sorts its data in place.
+	 */
+	@Setup(Level.Invocation)
+	public void shuffle() {
+		unsorted = gaps.clone();
+
+		for (int i = unsorted.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final float temp = unsorted[i];
+			unsorted[i] = unsorted[j];
+			unsorted[j] = temp;
+		}
+	}
+
+	@Benchmark
+	public Distribution distribution() {
+		return new Distribution("Benchmark", unsorted);
+	}
+}
@@ -0,0 +1,125 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.Random;
+
+import com.dezzy.dictionary.generator.GeneratorSettings;
+import com.dezzy.dictionary.generator.SyntheticEntries;
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+
+/**
+ * Measures the heap retained by a {@link Dictionary} with each kind of {@link Dictionary.Storage}, the time to build it, and the time to look up
+ * and read the definitions of up to a million of its entries in random order. <p>
+ *
+ * Usage: <code>java -Xmx8g -cp benchmarks/target/benchmarks.jar com.dezzy.dictionary.benchmark.FootprintBenchmark [sizes] [storages]</code> <br>
+ * <code>sizes</code> is a comma-separated list of dictionary sizes (default <code>1000000</code>), and <code>storages</code> a comma-separated list of
+ * storage kinds (default <code>hash_map,arena,compressed</code>). Each dictionary is built and measured alone, so the heap only needs to hold one at a time. <p>
+ *
+ * The retained heap includes everything the dictionary holds, including the entry date index. Measurements are taken after several full collections,
+ * so they are reliable only when nothing else is running in the JVM.
+ *
+ * @author Joe Desmond
+ */
+public final class FootprintBenchmark {
+
+	/**
+	 * Number of full collections requested before each heap measurement
+	 */
+	private static final int GC_ROUNDS = 4;
+
+	/**
+	 * Header for the result lines
+	 */
+	private static final String HEADER = String.format("%-10s %10s %14s %12s %12s %14s", "storage", "size", "heap MB", "bytes/entry", "build ms", "find ns/op");
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private FootprintBenchmark() {
+
+	}
+
+	/**
+	 * Measures every requested storage kind at every requested size and prints the results.
+	 *
+	 * @param args optional comma-separated sizes, then optional comma-separated storage kinds
+	 */
+	public static final void main(final String ... args) {
+		final String[] sizes = ((args.length > 0) ? args[0] : "1000000").split(",");
+		final String[] storages = ((args.length > 1) ? args[1] : "hash_map,arena,compressed").split(",");
+
+		System.out.println(HEADER);
+
+		for (final String size : sizes) {
+			for (final String storage : storages) {
+				measure(Dictionary.Storage.valueOf(storage.trim().toUpperCase()), Integer.parseInt(size.trim().replace("_", "")));
+			}
+		}
+	}
+
+	/**
+	 * Builds one dictionary, measures it, and prints a result line.
+	 *
+	 * @param storage storage kind
+	 * @param size number of entries
+	 */
+	private static final void measure(final Dictionary.Storage storage, final int size) {
+		final GeneratorSettings settings = new GeneratorSettings();
+		settings.size = size;
+		settings.seed = SyntheticDictionaries.SEED;
+
+		final long before = usedHeap();
+		final long buildStart = System.nanoTime();
+
+		Dictionary dictionary = new Dictionary(settings.name, storage);
+		final SyntheticEntries entries = new SyntheticEntries(settings);
+
+		while (entries.hasNext()) {
+			final Map.Entry<String, Definition> entry = entries.next();
+			dictionary.weakDefine(entry.getKey(), entry.getValue());
+		}
+
+		final long buildNanos = System.nanoTime() - buildStart;
+		final long retained = usedHeap() - before;
+
+		final String[] probes = new String[Math.min(size, 1_000_000)];
+		final SyntheticEntries probeEntries = new SyntheticEntries(settings);
+		final Random random = new Random(SyntheticDictionaries.SEED);
+		for (int i = 0; i < probes.length; i++) {
+			final int j = random.nextInt(i + 1);
+			probes[i] = probes[j];
+			probes[j] = probeEntries.next().getKey();
+		}
+
+		long found = 0;
+		final long findStart = System.nanoTime();
+		for (final String probe : probes) {
+			found += dictionary.getDefinition(probe).map(definition -> definition.definition().length()).orElse(-1);
+		}
+		final long findNanos = System.nanoTime() - findStart;
+
+		System.out.println(String.format("%-10s %10d %14.1f %12.1f %12d %14.1f", storage.name().toLowerCase(), size, retained / (1024.0 * 1024.0),
+				(double) retained / size, buildNanos / 1_000_000, (double) findNanos / probes.length) + ((found < 0) ? " (missing entries!)" : ""));
+
+		dictionary = null;
+		usedHeap();
+	}
+
+	/**
+	 * Returns the heap in use after several full collections.
+	 *
+	 * @return used heap in bytes
+	 */
+	private static final long usedHeap() {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		for (int i = 0; i < GC_ROUNDS; i++) {
+			memory.gc();
+		}
+
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,76 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.stats.Distribution;
+import com.dezzy.dictionary.stats.Histogram;
+import com.dezzy.dictionary.stats.Statistics;
+
+/**
+ * Benchmarks {@link Statistics}, {@link Distribution#copyNoOutliers()} and {@link Histogram} on the entry dates of seeded synthetic dictionaries
+ * of 1 thousand to 10 million entries. Run with {@link Benchmarks}.
+ *
+ * @author Joe Desmond
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StatisticsBenchmarks {
+
+	/**
+	 * Number of entries in the dictionary
+	 */
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int size;
+
+	/**
+	 * The dictionary being benchmarked
+	 */
+	private Dictionary dictionary;
+
+	/**
+	 * Statistics of {@link #dictionary}
+	 */
+	private Statistics statistics;
+
+	/**
+	 * Builds the dictionary and its statistics.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		dictionary = SyntheticDictionaries.build(size);
+		statistics = new Statistics(dictionary);
+	}
+
+	@Benchmark
+	public Statistics statistics() {
+		return new Statistics(dictionary);
+	}
+
+	@Benchmark
+	public Distribution copyNoOutliers() {
+		return statistics.timeDifferences.copyNoOutliers();
+	}
+
+	@Benchmark
+	public Histogram histogram() {
+		return new Histogram(statistics.timeDifferences);
+	}
+}
@@ -0,0 +1,51 @@
+package com.dezzy.dictionary.benchmark;
+
+import java.util.Map;
+
+import com.dezzy.dictionary.generator.GeneratorSettings;
+import com.dezzy.dictionary.generator.SyntheticEntries;
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+
+/**
+ * Builds the synthetic dictionaries that the benchmarks run against, so that every benchmark and every run measures the same data.
+ *
+ * @author Joe Desmond
+ */
+final class SyntheticDictionaries {
+
+	/**
+	 * Seed for the synthetic dictionaries
+	 */
+	static final long SEED = 20200120L;
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private SyntheticDictionaries() {
+
+	}
+
+	/**
+	 * Builds a synthetic dictionary with the default {@link GeneratorSettings}.
+	 *
+	 * @param size number of entries
+	 * @return a new dictionary
+	 */
+	static final Dictionary build(final int size) {
+		final GeneratorSettings settings = new GeneratorSettings();
+		settings.size = size;
+		settings.seed = SEED;
+		settings.name = "Benchmark Dictionary (" + size + " entries)";
+
+		final Dictionary dictionary = new Dictionary(settings.name);
+		final SyntheticEntries entries = new SyntheticEntries(settings);
+
+		while (entries.hasNext()) {
+			final Map.Entry<String, Definition> entry = entries.next();
+			dictionary.weakDefine(entry.getKey(), entry.getValue());
+		}
+
+		return dictionary;
+	}
+}
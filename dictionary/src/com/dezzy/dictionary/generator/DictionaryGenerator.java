@@ -0,0 +1,110 @@
+package com.dezzy.dictionary.generator;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+
+/**
+ * Generates synthetic dictionaries of any size for load testing. Entries are streamed straight to the output file as they are generated,
+ * so very large dictionaries can be generated without holding them in memory. <p>
+ *
+ * Usage: <code>java -cp bin com.dezzy.dictionary.generator.DictionaryGenerator [name=value ...]</code> <br>
+ * See {@link GeneratorSettings} for every setting; for example, <code>size=50000000 seed=7 out=big.dict</code>.
+ *
+ * @author Joe Desmond
+ */
+public final class DictionaryGenerator {
+
+	/**
+	 * Size of the output buffer for text printouts
+	 */
+	private static final int TEXT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private DictionaryGenerator() {
+
+	}
+
+	/**
+	 * Parses settings from the arguments, generates a dictionary, and writes it to the output file.
+	 *
+	 * @param args settings of the form <code>name=value</code>
+	 * @throws IOException if there is a problem writing the output file
+	 */
+	public static final void main(final String ... args) throws IOException {
+		final GeneratorSettings settings;
+
+		try {
+			settings = GeneratorSettings.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+
+		System.out.println(settings);
+		System.out.println();
+
+		final long start = System.nanoTime();
+		generate(settings);
+		final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		System.out.println("Wrote " + settings.size + " entries to \"" + settings.out + "\" in " + elapsedMillis + " ms");
+	}
+
+	/**
+	 * Generates a dictionary and writes it to {@link GeneratorSettings#out} in {@link GeneratorSettings#format}.
+	 *
+	 * @param settings generator settings
+	 * @throws IOException if there is a problem writing the output file
+	 * @throws IllegalArgumentException if the format is unknown
+	 */
+	public static final void generate(final GeneratorSettings settings) throws IOException {
+		final SyntheticEntries entries = new SyntheticEntries(settings);
+
+		switch (settings.format) {
+			case "dict":
+				Dictionary.write(settings.out, settings.name, settings.size, entries);
+				break;
+			case "compressed":
+				Dictionary.write(settings.out, settings.name, settings.size, entries, true);
+				break;
+			case "text":
+				writeText(settings, entries);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown format \"" + settings.format + "\"; expected \"dict\", \"compressed\" or \"text\"");
+		}
+	}
+
+	/**
+	 * Writes entries as a printout: the dictionary name, a blank line, then one <code>word:\tdefinition</code> line per entry.
+	 *
+	 * @param settings generator settings
+	 * @param entries entries to write
+	 * @throws IOException if there is a problem writing the output file
+	 */
+	private static final void writeText(final GeneratorSettings settings, final SyntheticEntries entries) throws IOException {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(settings.out), StandardCharsets.UTF_8), TEXT_BUFFER_SIZE)) {
+			writer.write(settings.name);
+			writer.write(System.lineSeparator());
+
+			while (entries.hasNext()) {
+				final Map.Entry<String, Definition> entry = entries.next();
+
+				writer.write(System.lineSeparator());
+				writer.write(entry.getKey());
+				writer.write(":\t");
+				writer.write(entry.getValue().definition());
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.dezzy.dictionary.generator;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Settings for {@link DictionaryGenerator} and {@link SyntheticEntries}. Every public field is a setting, and can be given on the command line
+ * as <code>name=value</code>. The defaults produce entries that resemble the Kingdom Dictionary: mostly one-word keys, short definitions with some
+ * shared boilerplate, and heavy-tailed gaps between entry dates (bursts of entries a few minutes apart, then gaps of days or weeks).
+ *
+ * @author Joe Desmond
+ */
+public final class GeneratorSettings {
+
+	/**
+	 * Number of entries to generate
+	 */
+	public int size = 1000;
+
+	/**
+	 * Seed for the random number generator; the same settings and seed always produce the same dictionary
+	 */
+	public long seed = 0;
+
+	/**
+	 * Name of the generated dictionary
+	 */
+	public String name = "Synthetic Dictionary";
+
+	/**
+	 * Path of the output file
+	 */
+	public String out = "synthetic.dict";
+
+	/**
+	 * Output format: <code>dict</code> for a dictionary file that can be opened, <code>compressed</code> for a dictionary file with compressed definitions,
+	 * or <code>text</code> for a printout
+	 * (entries are written in generation order, not alphabetical order)
+	 */
+	public String format = "dict";
+
+	/**
+	 * Mean length of a word in a key, in letters
+	 */
+	public double keyWordLengthMean = 6;
+
+	/**
+	 * Standard deviation of the length of a word in a key
+	 */
+	public double keyWordLengthStdev = 2.5;
+
+	/**
+	 * Probability that a key has another word after each word (so keys have a geometric number of words)
+	 */
+	public double phraseProbability = 0.2;
+
+	/**
+	 * Maximum number of words in a key
+	 */
+	public int maxPhraseWords = 6;
+
+	/**
+	 * Probability that a non-final word in a key is a real word taken from the vocabulary
+	 */
+	public double vocabularyKeyWordProbability = 0.5;
+
+	/**
+	 * Probability that a key is capitalized, like a title
+	 */
+	public double capitalizeProbability = 0.15;
+
+	/**
+	 * Median number of words in a definition (definition lengths are log-normally distributed)
+	 */
+	public double definitionWordsMedian = 9;
+
+	/**
+	 * Log-normal shape of definition lengths; larger values give more very short and very long definitions
+	 */
+	public double definitionWordsSigma = 0.6;
+
+	/**
+	 * Probability that a definition is a "synonym for" another, recently generated entry
+	 */
+	public double synonymProbability = 0.08;
+
+	/**
+	 * Probability that a definition ends with shared boilerplate such as <code>" - Recognized by the Kingdom"</code>
+	 */
+	public double suffixProbability = 0.1;
+
+	/**
+	 * Entry date of the first entry, formatted as <code>MM:dd:yyyy:HH:mm</code>
+	 */
+	public String start = "08:01:2019:22:38";
+
+	/**
+	 * Probability that an entry is part of a burst, entered within {@link #burstMaxMinutes} of the previous entry
+	 */
+	public double burstProbability = 0.3;
+
+	/**
+	 * Longest gap between two entries in a burst, in minutes
+	 */
+	public int burstMaxMinutes = 15;
+
+	/**
+	 * Median gap between entries that are not part of a burst, in minutes (these gaps are log-normally distributed)
+	 */
+	public double gapMedianMinutes = 2500;
+
+	/**
+	 * Log-normal shape of the gaps between entries that are not part of a burst; larger values give a heavier tail
+	 */
+	public double gapSigma = 1.3;
+
+	/**
+	 * Creates settings with every default value.
+	 */
+	public GeneratorSettings() {
+
+	}
+
+	/**
+	 * Creates settings from <code>name=value</code> arguments. Settings that are not given keep their default values.
+	 *
+	 * @param args arguments of the form <code>name=value</code>
+	 * @return settings
+	 * @throws IllegalArgumentException if an argument is malformed, names an unknown setting, or has a value of the wrong type
+	 */
+	public static final GeneratorSettings parse(final String ... args) {
+		final GeneratorSettings settings = new GeneratorSettings();
+
+		for (final String arg : args) {
+			final int equalsIndex = arg.indexOf('=');
+			if (equalsIndex <= 0) {
+				throw new IllegalArgumentException("Expected name=value but got \"" + arg + "\"");
+			}
+
+			settings.set(arg.substring(0, equalsIndex).trim(), arg.substring(equalsIndex + 1).trim());
+		}
+
+		return settings;
+	}
+
+	/**
+	 * Sets one setting from its string value.
+	 *
+	 * @param name name of the setting (a public field)
+	 * @param value string value
+	 * @throws IllegalArgumentException if there is no such setting or the value has the wrong type
+	 */
+	private final void set(final String name, final String value) {
+		final Field field;
+
+		try {
+			field = GeneratorSettings.class.getField(name);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException("Unknown setting \"" + name + "\"");
+		}
+
+		try {
+			if (field.getType() == int.class) {
+				field.setInt(this, Integer.parseInt(value.replace("_", "")));
+			} else if (field.getType() == long.class) {
+				field.setLong(this, Long.parseLong(value.replace("_", "")));
+			} else if (field.getType() == double.class) {
+				field.setDouble(this, Double.parseDouble(value));
+			} else {
+				field.set(this, value);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for \"" + name + "\": " + value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot set \"" + name + "\"");
+		}
+	}
+
+	/**
+	 * Returns every setting on its own line, as <code>name=value</code>. <br>
+	 * <b>NOTE: Uses reflection to get names and values for each setting!</b>
+	 *
+	 * @return every setting
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+
+		for (final Field field : GeneratorSettings.class.getDeclaredFields()) {
+			if (Modifier.isPublic(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+				if (sb.length() > 0) {
+					sb.append(System.lineSeparator());
+				}
+
+				try {
+					sb.append(field.getName()).append('=').append(field.get(this));
+				} catch (Exception e) {
+					e.printStackTrace();
+					sb.append("ERROR");
+				}
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,331 @@
+package com.dezzy.dictionary.generator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import com.dezzy.dictionary.main.Definition;
+
+/**
+ * Produces random dictionary entries one at a time, as described by a {@link GeneratorSettings}. Only a small, fixed amount of state is kept
+ * between entries, so any number of entries can be generated in constant memory. Entries come out in entry date order. <p>
+ *
+ * Every key is unique: the last word of each key ends with a fixed number of syllables that encode a scrambled entry number.
+ *
+ * @author Joe Desmond
+ */
+public final class SyntheticEntries implements Iterator<Map.Entry<String, Definition>> {
+
+	/**
+	 * Consonants used to build syllables
+	 */
+	private static final String CONSONANTS = "bcdfghklmnprstvz";
+
+	/**
+	 * Vowels used to build syllables
+	 */
+	private static final String VOWELS = "aeio";
+
+	/**
+	 * Number of bits encoded by one syllable (there are 16 * 4 = 64 syllables)
+	 */
+	private static final int BITS_PER_SYLLABLE = 6;
+
+	/**
+	 * Number of recently generated keys remembered for "synonym for" definitions
+	 */
+	private static final int RECENT_KEYS = 256;
+
+	/**
+	 * Number of milliseconds in one minute
+	 */
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+	/**
+	 * Format of {@link GeneratorSettings#start}
+	 */
+	private static final DateTimeFormatter START_FORMAT = DateTimeFormatter.ofPattern("MM:dd:yyyy:HH:mm");
+
+	/**
+	 * Words used in definitions and in some keys. Earlier words are chosen more often
+	 */
+	private static final String[] VOCABULARY = {
+		"a", "the", "of", "and", "to", "you", "is", "that", "when", "for", "with", "something", "someone", "cool", "silly", "really",
+		"said", "only", "by", "used", "thing", "person", "way", "official", "title", "Kingdom", "Lawyer", "Decree", "measure", "device",
+		"greeting", "fellow", "adorable", "awesome", "strong", "brave", "extra", "affection", "meaning", "version", "better", "funny",
+		"people", "making", "fun", "animal", "food", "delicious", "originally", "unintentional", "misspelling", "member", "army", "revenge",
+		"disgust", "indicates", "silliness", "commanded", "recognized", "mathematician", "rascally", "Land", "King", "Queen", "Royal"
+	};
+
+	/**
+	 * Boilerplate that is appended to some definitions
+	 */
+	private static final String[] SUFFIXES = {
+		" - Recognized by the Kingdom", " - Drafted and Signed by The Lawyer of the Land"
+	};
+
+	/**
+	 * Settings describing the entries
+	 */
+	private final GeneratorSettings settings;
+
+	/**
+	 * Source of randomness
+	 */
+	private final Random random;
+
+	/**
+	 * Number of syllables used to encode the unique entry number
+	 */
+	private final int idSyllables;
+
+	/**
+	 * Mask for the scrambled entry number, which has <code>idSyllables * BITS_PER_SYLLABLE</code> bits
+	 */
+	private final long idMask;
+
+	/**
+	 * Ring buffer of recently generated keys
+	 */
+	private final String[] recentKeys = new String[RECENT_KEYS];
+
+	/**
+	 * Number of entries generated so far
+	 */
+	private int generated = 0;
+
+	/**
+	 * Entry time of the most recently generated entry (epoch milliseconds)
+	 */
+	private long time;
+
+	/**
+	 * Creates a generator of entries.
+	 *
+	 * @param _settings settings describing the entries; {@link GeneratorSettings#size} entries will be produced
+	 * @throws IllegalArgumentException if {@link GeneratorSettings#start} is not a valid date string
+	 */
+	public SyntheticEntries(final GeneratorSettings _settings) {
+		settings = _settings;
+		random = new Random(settings.seed);
+
+		final int idBits = Math.max(1, 64 - Long.numberOfLeadingZeros(Math.max(1, settings.size - 1)));
+		idSyllables = (idBits + BITS_PER_SYLLABLE - 1) / BITS_PER_SYLLABLE;
+		idMask = (idSyllables * BITS_PER_SYLLABLE >= 64) ? -1L : (1L << (idSyllables * BITS_PER_SYLLABLE)) - 1;
+
+		try {
+			time = LocalDateTime.parse(settings.start, START_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid start date \"" + settings.start + "\"; expected MM:dd:yyyy:HH:mm");
+		}
+	}
+
+	/**
+	 * Returns true if there are more entries to generate.
+	 *
+	 * @return true if fewer than {@link GeneratorSettings#size} entries have been generated
+	 */
+	@Override
+	public final boolean hasNext() {
+		return generated < settings.size;
+	}
+
+	/**
+	 * Generates the next entry.
+	 *
+	 * @return a word/phrase and its definition
+	 * @throws NoSuchElementException if every entry has been generated
+	 */
+	@Override
+	public final Map.Entry<String, Definition> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		if (generated > 0) {
+			time += nextGapMinutes() * MILLIS_PER_MINUTE;
+		}
+
+		final String key = nextKey(generated);
+		final String definition = nextDefinition();
+
+		recentKeys[generated % RECENT_KEYS] = key;
+		generated++;
+
+		return new AbstractMap.SimpleImmutableEntry<String, Definition>(key, new Definition(definition, new Date(time)));
+	}
+
+	/**
+	 * Generates a unique key.
+	 *
+	 * @param index entry number
+	 * @return key
+	 */
+	private final String nextKey(final int index) {
+		int words = 1;
+		while (words < settings.maxPhraseWords && random.nextDouble() < settings.phraseProbability) {
+			words++;
+		}
+
+		final StringBuilder key = new StringBuilder();
+
+		for (int i = 0; i < words - 1; i++) {
+			if (random.nextDouble() < settings.vocabularyKeyWordProbability) {
+				key.append(vocabularyWord().toLowerCase());
+			} else {
+				appendSyllables(key, (nextKeyWordLength() + 1) / 2);
+			}
+			key.append(' ');
+		}
+
+		final int prefixSyllables = Math.max(0, (nextKeyWordLength() + 1) / 2 - idSyllables);
+		appendSyllables(key, prefixSyllables);
+		appendId(key, scramble(index));
+
+		if (random.nextDouble() < settings.capitalizeProbability) {
+			capitalize(key);
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Generates a definition.
+	 *
+	 * @return definition
+	 */
+	private final String nextDefinition() {
+		final StringBuilder definition = new StringBuilder();
+
+		if (generated > 0 && random.nextDouble() < settings.synonymProbability) {
+			final String other = recentKeys[random.nextInt(Math.min(generated, RECENT_KEYS))];
+			definition.append("synonym for \"").append(other).append('"');
+		} else {
+			final int words = (int) Math.max(1, Math.min(200, Math.round(logNormal(settings.definitionWordsMedian, settings.definitionWordsSigma))));
+
+			definition.append(vocabularyWord());
+			for (int i = 1; i < words; i++) {
+				definition.append(' ').append(vocabularyWord());
+			}
+		}
+
+		if (random.nextDouble() < settings.suffixProbability) {
+			definition.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+		}
+
+		return definition.toString();
+	}
+
+	/**
+	 * Generates the gap between the previous entry and the next entry.
+	 *
+	 * @return gap in whole minutes
+	 */
+	private final long nextGapMinutes() {
+		if (random.nextDouble() < settings.burstProbability) {
+			return random.nextInt(settings.burstMaxMinutes + 1);
+		}
+
+		return (long) logNormal(settings.gapMedianMinutes, settings.gapSigma);
+	}
+
+	/**
+	 * Generates the length of one word in a key.
+	 *
+	 * @return word length, between 2 and 20 letters
+	 */
+	private final int nextKeyWordLength() {
+		final double length = settings.keyWordLengthMean + random.nextGaussian() * settings.keyWordLengthStdev;
+		return (int) Math.max(2, Math.min(20, Math.round(length)));
+	}
+
+	/**
+	 * Samples a log-normal distribution.
+	 *
+	 * @param median median of the distribution
+	 * @param sigma shape of the distribution (standard deviation of its logarithm)
+	 * @return sample
+	 */
+	private final double logNormal(final double median, final double sigma) {
+		return median * Math.exp(sigma * random.nextGaussian());
+	}
+
+	/**
+	 * Picks a word from {@link #VOCABULARY}, favoring words near the start.
+	 *
+	 * @return a word
+	 */
+	private final String vocabularyWord() {
+		final double u = random.nextDouble();
+		return VOCABULARY[(int) (u * u * VOCABULARY.length)];
+	}
+
+	/**
+	 * Appends random syllables.
+	 *
+	 * @param sb builder to append to
+	 * @param count number of syllables
+	 */
+	private final void appendSyllables(final StringBuilder sb, final int count) {
+		for (int i = 0; i < count; i++) {
+			appendSyllable(sb, random.nextInt(1 << BITS_PER_SYLLABLE));
+		}
+	}
+
+	/**
+	 * Appends a scrambled entry number as exactly {@link #idSyllables} syllables.
+	 *
+	 * @param sb builder to append to
+	 * @param id scrambled entry number
+	 */
+	private final void appendId(final StringBuilder sb, final long id) {
+		for (int i = idSyllables - 1; i >= 0; i--) {
+			appendSyllable(sb, (int) ((id >>> (i * BITS_PER_SYLLABLE)) & ((1 << BITS_PER_SYLLABLE) - 1)));
+		}
+	}
+
+	/**
+	 * Appends one syllable.
+	 *
+	 * @param sb builder to append to
+	 * @param syllable syllable number, from 0 to 63
+	 */
+	private static final void appendSyllable(final StringBuilder sb, final int syllable) {
+		sb.append(CONSONANTS.charAt(syllable >>> 2)).append(VOWELS.charAt(syllable & 3));
+	}
+
+	/**
+	 * Maps an entry number to a scrambled number with the same number of bits. The mapping is a bijection, so different entry numbers
+	 * always give different results, but consecutive entries do not get similar keys.
+	 *
+	 * @param index entry number
+	 * @return scrambled entry number
+	 */
+	private final long scramble(final long index) {
+		final int bits = Long.bitCount(idMask);
+		long x = (index * 0x9E3779B97F4A7C15L) & idMask;
+		x ^= x >>> Math.max(1, bits / 2);
+		x = (x * 0xBF58476D1CE4E5B9L) & idMask;
+		return x;
+	}
+
+	/**
+	 * Capitalizes the first letter of every word.
+	 *
+	 * @param sb builder containing the words
+	 */
+	private static final void capitalize(final StringBuilder sb) {
+		for (int i = 0; i < sb.length(); i++) {
+			if (i == 0 || sb.charAt(i - 1) == ' ') {
+				sb.setCharAt(i, Character.toUpperCase(sb.charAt(i)));
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.dezzy.dictionary.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact log of received commands, used to record real command streams and replay them with {@link LoadTester}. <p>
+ *
+ * The file starts with a header (a magic number, a format version and the wall clock time that recording started, in epoch milliseconds).
+ * Every command follows as a record: the nanoseconds since the previous command and the length of the command in UTF-8 bytes,
+ * both as variable-length integers, then the command itself. A typical <code>find</code> takes a few bytes more than the command text.
+ *
+ * @author Joe Desmond
+ */
+public final class CommandLog {
+
+	/**
+	 * Magic number at the start of every command log ("DCLG")
+	 */
+	private static final int MAGIC = 0x44434C47;
+
+	/**
+	 * Format version
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * A command read from a log.
+	 *
+	 * @author Joe Desmond
+	 */
+	public static final class Entry {
+
+		/**
+		 * Nanoseconds between the start of recording and when the command was received
+		 */
+		public final long offsetNanos;
+
+		/**
+		 * The raw command string, as passed to {@link com.dezzy.dictionary.main.CommandHandler#receive(String)}
+		 */
+		public final String command;
+
+		/**
+		 * Creates a log entry.
+		 *
+		 * @param _offsetNanos nanoseconds since the start of recording
+		 * @param _command raw command string
+		 */
+		public Entry(final long _offsetNanos, final String _command) {
+			offsetNanos = _offsetNanos;
+			command = _command;
+		}
+	}
+
+	/**
+	 * Appends received commands to a log file. Commands may be recorded from several threads; records are written one at a time.
+	 *
+	 * @author Joe Desmond
+	 */
+	public static final class Recorder implements Closeable {
+
+		/**
+		 * Output stream for the log
+		 */
+		private final DataOutputStream out;
+
+		/**
+		 * {@link System#nanoTime()} when recording started
+		 */
+		private final long startNanos;
+
+		/**
+		 * Offset of the previous record from {@link #startNanos}
+		 */
+		private long previousOffset = 0;
+
+		/**
+		 * Creates a log file (replacing any existing file) and starts recording.
+		 *
+		 * @param path path of the log file
+		 * @throws IOException if the file cannot be created
+		 */
+		public Recorder(final String path) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(path))));
+			startNanos = System.nanoTime();
+
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(System.currentTimeMillis());
+		}
+
+		/**
+		 * Records a received command with the current time.
+		 *
+		 * @param command raw command string
+		 * @throws IOException if the record cannot be written
+		 */
+		public final synchronized void record(final String command) throws IOException {
+			final long offset = Math.max(previousOffset, System.nanoTime() - startNanos);
+			final byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+
+			writeVarLong(out, offset - previousOffset);
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+
+			previousOffset = offset;
+		}
+
+		/**
+		 * Writes any buffered records to the file.
+		 *
+		 * @throws IOException if the records cannot be written
+		 */
+		public final synchronized void flush() throws IOException {
+			out.flush();
+		}
+
+		/**
+		 * Stops recording and closes the file.
+		 *
+		 * @throws IOException if the file cannot be closed
+		 */
+		@Override
+		public final synchronized void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private CommandLog() {
+
+	}
+
+	/**
+	 * Reads every command in a log file. A truncated final record (for example, if the program was killed while recording) is ignored.
+	 *
+	 * @param path path of the log file
+	 * @return commands, in the order they were received
+	 * @throws IOException if the file cannot be read or is not a command log
+	 */
+	public static final List<Entry> read(final String path) throws IOException {
+		final List<Entry> entries = new ArrayList<Entry>();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(path))))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("\"" + path + "\" is not a command log");
+			}
+
+			final int version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported command log version " + version);
+			}
+
+			in.readLong();
+
+			long offset = 0;
+			while (true) {
+				try {
+					offset += readVarLong(in);
+					final byte[] bytes = new byte[(int) readVarLong(in)];
+					in.readFully(bytes);
+
+					entries.add(new Entry(offset, new String(bytes, StandardCharsets.UTF_8)));
+				} catch (EOFException e) {
+					break;
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Writes a non-negative integer in 7-bit groups, least significant first; the high bit of each byte is set if more bytes follow.
+	 *
+	 * @param out stream to write to
+	 * @param value non-negative value
+	 * @throws IOException if there is a problem writing
+	 */
+	private static final void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+		long remaining = value;
+
+		while ((remaining & ~0x7FL) != 0) {
+			out.writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+
+		out.writeByte((int) remaining);
+	}
+
+	/**
+	 * Reads an integer written by {@link #writeVarLong(DataOutputStream, long)}.
+	 *
+	 * @param in stream to read from
+	 * @return the value
+	 * @throws IOException if there is a problem reading, or the value is malformed
+	 */
+	private static final long readVarLong(final DataInputStream in) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed variable-length integer");
+	}
+}
@@ -0,0 +1,391 @@
+package com.dezzy.dictionary.loadtest;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import com.dezzy.dictionary.main.CommandHandler;
+import com.dezzy.dictionary.main.CommandOutput;
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.perf.CommandMetrics;
+
+/**
+ * Replays command streams against several concurrent {@link CommandHandler} sessions and reports throughput and latency percentiles per command. <p>
+ *
+ * Usage: <code>java -cp bin com.dezzy.dictionary.loadtest.LoadTester [name=value ...]</code> with these settings:
+ * <ul>
+ * <li><code>log=path</code>: replay a log recorded with <code>-record</code> (see {@link com.dezzy.dictionary.main.Main}), or</li>
+ * <li><code>dictionary=path</code>: replay a synthetic stream against this dictionary; <code>ops</code> (default 10000) commands per session,
+ * 		mixed as given by <code>mix</code> (default <code>find:90,search:2,weakdefine:5,strongdefine:3</code>)</li>
+ * <li><code>sessions=n</code>: number of concurrent sessions (default 4); every session replays the whole stream with its own CommandHandler</li>
+ * <li><code>mode=closed</code> (default): each session sends its next command as soon as the last one finishes. If <code>rate</code> is also given,
+ * 		sessions are paced to that rate and latencies are corrected for coordinated omission</li>
+ * <li><code>mode=open</code>: commands are sent on a fixed schedule, at <code>rate</code> commands per second across all sessions, or at the recorded
+ * 		times (sped up by <code>speed</code>, default 1) if no rate is given. Latency is measured from when each command should have been sent,
+ * 		so a slow command also counts against the commands that queued up behind it</li>
+ * <li><code>seed=n</code>: seed for synthetic streams (default 0)</li>
+ * </ul>
+ * Commands at the start of a stream that only set up a session (<code>open</code>, <code>create</code>, <code>enabledates</code> and <code>disabledates</code>)
+ * are run before the clock starts and are not measured.
+ *
+ * @author Joe Desmond
+ */
+public final class LoadTester {
+
+	/**
+	 * Default synthetic command mix
+	 */
+	private static final String DEFAULT_MIX = "find:90,search:2,weakdefine:5,strongdefine:3";
+
+	/**
+	 * Number of nanoseconds in one second
+	 */
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private LoadTester() {
+
+	}
+
+	/**
+	 * Runs a load test as described by the arguments and prints the results.
+	 *
+	 * @param args settings of the form <code>name=value</code>
+	 * @throws Exception if the command stream cannot be read or a session fails
+	 */
+	public static final void main(final String ... args) throws Exception {
+		final Map<String, String> settings = new HashMap<String, String>();
+		for (final String arg : args) {
+			final int equalsIndex = arg.indexOf('=');
+			if (equalsIndex <= 0) {
+				System.out.println("ERROR: Expected name=value but got \"" + arg + "\"");
+				return;
+			}
+			settings.put(arg.substring(0, equalsIndex).trim(), arg.substring(equalsIndex + 1).trim());
+		}
+
+		final int sessions = Integer.parseInt(settings.getOrDefault("sessions", "4"));
+		final boolean openLoop = settings.getOrDefault("mode", "closed").equalsIgnoreCase("open");
+		final double rate = Double.parseDouble(settings.getOrDefault("rate", "0"));
+		final double speed = Double.parseDouble(settings.getOrDefault("speed", "1"));
+		final long seed = Long.parseLong(settings.getOrDefault("seed", "0"));
+
+		final List<List<CommandLog.Entry>> streams = new ArrayList<List<CommandLog.Entry>>();
+
+		if (settings.containsKey("log")) {
+			final List<CommandLog.Entry> log = CommandLog.read(settings.get("log"));
+			for (int i = 0; i < sessions; i++) {
+				streams.add(log);
+			}
+		} else if (settings.containsKey("dictionary")) {
+			final String path = settings.get("dictionary");
+			final int ops = Integer.parseInt(settings.getOrDefault("ops", "10000"));
+			final List<String> words = Dictionary.load(path).getSortedWords();
+
+			for (int i = 0; i < sessions; i++) {
+				streams.add(syntheticStream(path, words, ops, settings.getOrDefault("mix", DEFAULT_MIX), new Random(seed + i), i));
+			}
+		} else {
+			System.out.println("ERROR: Either log=path or dictionary=path must be given");
+			return;
+		}
+
+		if (openLoop && rate <= 0 && !settings.containsKey("log")) {
+			System.out.println("ERROR: Open loop mode needs a rate unless a recorded log is replayed");
+			return;
+		}
+
+		final long intervalNanos = (rate > 0) ? (long) (NANOS_PER_SECOND * sessions / rate) : 0;
+
+		System.out.println("Replaying " + streams.get(0).size() + " commands in each of " + sessions + " sessions ("
+				+ (openLoop ? "open" : "closed") + " loop" + ((rate > 0) ? ", " + rate + " commands/s" : "") + ")");
+
+		final CyclicBarrier startBarrier = new CyclicBarrier(sessions);
+		final ExecutorService pool = Executors.newFixedThreadPool(sessions);
+		final List<Future<ReplaySession>> futures = new ArrayList<Future<ReplaySession>>();
+
+		for (int i = 0; i < sessions; i++) {
+			final ReplaySession session = new ReplaySession(streams.get(i), openLoop, intervalNanos, speed, (intervalNanos * i) / sessions, startBarrier);
+			futures.add(pool.submit(() -> {
+				session.run();
+				return session;
+			}));
+		}
+
+		final CommandMetrics total = new CommandMetrics();
+		long commands = 0;
+		long errors = 0;
+		long start = Long.MAX_VALUE;
+		long end = Long.MIN_VALUE;
+
+		for (final Future<ReplaySession> future : futures) {
+			final ReplaySession session = future.get();
+
+			total.merge(session.metrics);
+			commands += session.commands;
+			errors += session.errors;
+			start = Math.min(start, session.startNanos);
+			end = Math.max(end, session.endNanos);
+		}
+
+		pool.shutdown();
+
+		final double seconds = Math.max(1, end - start) / NANOS_PER_SECOND;
+
+		System.out.println();
+		System.out.println(String.format("%d commands in %.3f s: %.1f commands/s, %d errors", commands, seconds, commands / seconds, errors));
+		System.out.println();
+		System.out.println(total);
+	}
+
+	/**
+	 * Builds a synthetic command stream for one session.
+	 *
+	 * @param dictionaryPath path of the dictionary that the session opens
+	 * @param words every word in the dictionary, to pick <code>find</code> and <code>search</code> arguments from
+	 * @param ops number of commands after <code>open</code>
+	 * @param mix command weights, as <code>command:weight,command:weight,...</code>
+	 * @param random source of randomness
+	 * @param sessionIndex index of the session, so that sessions define different words
+	 * @return command stream
+	 */
+	private static final List<CommandLog.Entry> syntheticStream(final String dictionaryPath, final List<String> words, final int ops, final String mix,
+			final Random random, final int sessionIndex) {
+		final List<String> commands = new ArrayList<String>();
+		final List<Integer> weights = new ArrayList<Integer>();
+		int totalWeight = 0;
+
+		for (final String part : mix.split(",")) {
+			final String[] pair = part.split(":");
+			commands.add(pair[0].trim().toLowerCase());
+			weights.add(Integer.parseInt(pair[1].trim()));
+			totalWeight += weights.get(weights.size() - 1);
+		}
+
+		final List<CommandLog.Entry> stream = new ArrayList<CommandLog.Entry>(ops + 1);
+		stream.add(new CommandLog.Entry(0, "open " + dictionaryPath));
+
+		for (int i = 0; i < ops; i++) {
+			int pick = random.nextInt(totalWeight);
+			int c = 0;
+			while (pick >= weights.get(c)) {
+				pick -= weights.get(c);
+				c++;
+			}
+
+			final String word = words.isEmpty() ? "word" : words.get(random.nextInt(words.size()));
+			final String command;
+
+			switch (commands.get(c)) {
+				case "find":
+				case "remove":
+					command = commands.get(c) + " " + word;
+					break;
+				case "search":
+					command = "search " + Pattern.quote(word.substring(0, Math.min(4, word.length())));
+					break;
+				case "weakdefine":
+					command = "weakdefine \"load test " + sessionIndex + " " + i + "\" a word defined by the load tester";
+					break;
+				case "strongdefine":
+					command = "strongdefine \"" + word + "\" a definition updated by the load tester";
+					break;
+				default:
+					command = commands.get(c);
+					break;
+			}
+
+			stream.add(new CommandLog.Entry(0, command));
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Replays one command stream against its own CommandHandler.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class ReplaySession {
+
+		/**
+		 * Commands to replay
+		 */
+		private final List<CommandLog.Entry> stream;
+
+		/**
+		 * True to send commands on a schedule, false to send each as soon as the last one finishes
+		 */
+		private final boolean openLoop;
+
+		/**
+		 * Time between this session's commands, in nanoseconds, or 0 for no fixed rate
+		 */
+		private final long intervalNanos;
+
+		/**
+		 * Replay speed for recorded timing
+		 */
+		private final double speed;
+
+		/**
+		 * Delay of this session's schedule, so that sessions do not all send at the same instant
+		 */
+		private final long staggerNanos;
+
+		/**
+		 * Barrier that every session waits at after setup, so that the measured part starts at the same time
+		 */
+		private final CyclicBarrier startBarrier;
+
+		/**
+		 * Latencies measured by this session
+		 */
+		private final CommandMetrics metrics = new CommandMetrics();
+
+		/**
+		 * Number of measured commands
+		 */
+		private long commands = 0;
+
+		/**
+		 * Number of measured commands that returned an error status
+		 */
+		private long errors = 0;
+
+		/**
+		 * {@link System#nanoTime()} when the measured part started
+		 */
+		private long startNanos;
+
+		/**
+		 * {@link System#nanoTime()} when the last command finished
+		 */
+		private long endNanos;
+
+		/**
+		 * Creates a session.
+		 *
+		 * @param _stream commands to replay
+		 * @param _openLoop true for open loop
+		 * @param _intervalNanos time between commands, or 0
+		 * @param _speed replay speed for recorded timing
+		 * @param _staggerNanos delay of this session's schedule
+		 * @param _startBarrier barrier shared by every session
+		 */
+		private ReplaySession(final List<CommandLog.Entry> _stream, final boolean _openLoop, final long _intervalNanos, final double _speed,
+				final long _staggerNanos, final CyclicBarrier _startBarrier) {
+			stream = _stream;
+			openLoop = _openLoop;
+			intervalNanos = _intervalNanos;
+			speed = _speed;
+			staggerNanos = _staggerNanos;
+			startBarrier = _startBarrier;
+		}
+
+		/**
+		 * Runs the setup commands, waits for every other session, then replays and measures the rest of the stream.
+		 *
+		 * @throws Exception if the session is interrupted
+		 */
+		private final void run() throws Exception {
+			final CommandHandler handler = new CommandHandler(message -> {});
+
+			int first = 0;
+			while (first < stream.size() && isSetup(stream.get(first).command)) {
+				handler.receive(stream.get(first).command, new CommandOutput(Writer.nullWriter()));
+				first++;
+			}
+
+			startBarrier.await();
+			startNanos = System.nanoTime();
+			final long firstOffset = (first < stream.size()) ? stream.get(first).offsetNanos : 0;
+
+			for (int i = first; i < stream.size(); i++) {
+				final CommandLog.Entry entry = stream.get(i);
+				final long intended;
+
+				if (intervalNanos > 0) {
+					intended = startNanos + staggerNanos + (i - first) * intervalNanos;
+				} else if (openLoop) {
+					intended = startNanos + (long) ((entry.offsetNanos - firstOffset) / speed);
+				} else {
+					intended = System.nanoTime();
+				}
+
+				waitUntil(intended);
+
+				final long sent = System.nanoTime();
+				final CommandOutput.Status status = handler.receive(entry.command, new CommandOutput(Writer.nullWriter()));
+				final long finished = System.nanoTime();
+
+				final String command = commandName(entry.command);
+				if (openLoop) {
+					metrics.record(command, finished - intended);
+				} else {
+					metrics.record(command, finished - sent, intervalNanos);
+				}
+
+				commands++;
+				if (status == CommandOutput.Status.ERROR) {
+					errors++;
+				}
+			}
+
+			endNanos = System.nanoTime();
+			handler.shutdown(0);
+		}
+
+		/**
+		 * Parks the current thread until the given time.
+		 *
+		 * @param deadline {@link System#nanoTime()} to wait for
+		 */
+		private static final void waitUntil(final long deadline) {
+			long remaining;
+			while ((remaining = deadline - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(remaining);
+			}
+		}
+
+		/**
+		 * Returns true if a command only sets up a session.
+		 *
+		 * @param commandString raw command string
+		 * @return true for <code>open</code>, <code>create</code>, <code>enabledates</code> and <code>disabledates</code>
+		 */
+		private static final boolean isSetup(final String commandString) {
+			switch (commandName(commandString)) {
+				case "open":
+				case "create":
+				case "enabledates":
+				case "disabledates":
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		/**
+		 * Returns the command name of a raw command string, the same way {@link CommandHandler#receive(String)} parses it.
+		 *
+		 * @param commandString raw command string
+		 * @return lowercase command name
+		 */
+		private static final String commandName(final String commandString) {
+			final int spaceIndex = commandString.indexOf(' ');
+			return ((spaceIndex < 0) ? commandString : commandString.substring(0, spaceIndex)).toLowerCase();
+		}
+	}
+}
@@ -0,0 +1,592 @@
+package com.dezzy.dictionary.main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map of words to definitions that stores no objects per entry. Words and definitions are kept as UTF-8 in large byte pages (the arena),
+ * and every entry is given an int ID, which indexes primitive columns holding its arena address and hash (and, in {@link EntryColumns}, its entry date
+ * and access count). Words are found with an open-addressing hash table of entry IDs. <p>
+ *
+ * {@link #get(Object)} returns a {@link Definition} that reads its text, entry date and access count from this store, so accesses and date changes
+ * through it are kept. Entries are never moved: replacing or removing an entry gives the new value a new ID, and the space used by the old one is
+ * reclaimed only when the dictionary is saved and opened again. <p>
+ *
+ * In compressed mode, definitions are not kept in the arena but in {@link DefinitionBlocks}, compressed in blocks of neighbouring entry IDs.
+ *
+ * @author Joe Desmond
+ */
+final class ArenaEntryStore extends EntryStore {
+
+	/**
+	 * Size of the first arena page; every new page is twice as large, up to {@link #MAX_PAGE_SIZE}
+	 */
+	private static final int MIN_PAGE_SIZE = 1 << 12;
+
+	/**
+	 * Largest size of a normal arena page. An entry larger than this gets a page of its own
+	 */
+	private static final int MAX_PAGE_SIZE = 1 << 24;
+
+	/**
+	 * Initial capacity of the entry columns
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Arena pages
+	 */
+	private byte[][] pages = new byte[0][];
+
+	/**
+	 * Number of bytes used in the last page
+	 */
+	private int pageUsed = 0;
+
+	/**
+	 * Arena address of every entry: the page index in the high 32 bits and the offset in the page in the low 32 bits.
+	 * The address of a removed or replaced entry is stored complemented (negative), so its text can still be read
+	 */
+	private long[] addresses;
+
+	/**
+	 * Hash of every entry's word
+	 */
+	private int[] hashes;
+
+	/**
+	 * Number of IDs given out, including removed entries
+	 */
+	private int nextId = 0;
+
+	/**
+	 * Number of live entries
+	 */
+	private int size = 0;
+
+	/**
+	 * Open-addressing hash table of entry IDs plus one (zero marks an empty slot); its length is a power of two, and it is never more than half full
+	 */
+	private int[] table;
+
+	/**
+	 * Compressed definitions, or null if definitions are kept in the arena
+	 */
+	private final DefinitionBlocks definitionBlocks;
+
+	/**
+	 * Creates an empty store with room for <code>expectedSize</code> entries before any column or the hash table has to grow.
+	 *
+	 * @param expectedSize expected number of entries
+	 * @param compressed true to keep definitions compressed in {@link DefinitionBlocks}
+	 */
+	ArenaEntryStore(final int expectedSize, final boolean compressed) {
+		super(expectedSize);
+		definitionBlocks = compressed ? new DefinitionBlocks() : null;
+		final int capacity = Math.max(MIN_CAPACITY, expectedSize);
+
+		addresses = new long[capacity];
+		hashes = new int[capacity];
+		table = new int[tableSizeFor(capacity)];
+	}
+
+	@Override
+	public final int size() {
+		return size;
+	}
+
+	@Override
+	public final boolean containsKey(final Object key) {
+		return (key instanceof String) && find((String) key) >= 0;
+	}
+
+	@Override
+	public final Definition get(final Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+
+		final int id = find((String) key);
+		return (id < 0) ? null : new Definition(null, this, id);
+	}
+
+	@Override
+	public final Definition put(final String word, final Definition definition) {
+		final int hash = hash(word);
+		final byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+		final int slot = findSlot(wordBytes, hash);
+		final int oldId = table[slot] - 1;
+
+		nextVersion();
+		final int id = append(wordBytes, definition.rawDefinition().getBytes(StandardCharsets.UTF_8));
+		hashes[id] = hash;
+		columns.set(id, definition.entryDate().getTime(), definition.accesses());
+		table[slot] = id + 1;
+
+		if (oldId >= 0) {
+			addresses[oldId] = ~addresses[oldId];
+			columns.remove(oldId);
+			return new Definition(null, this, oldId);
+		}
+
+		size++;
+		if (size > table.length / 2) {
+			rehash(table.length * 2);
+		}
+
+		return null;
+	}
+
+	@Override
+	public final Definition remove(final Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+
+		final String word = (String) key;
+		final int slot = findSlot(word.getBytes(StandardCharsets.UTF_8), hash(word));
+		final int id = table[slot] - 1;
+
+		if (id < 0) {
+			return null;
+		}
+
+		nextVersion();
+		addresses[id] = ~addresses[id];
+		columns.remove(id);
+		deleteSlot(slot);
+		size--;
+
+		return new Definition(null, this, id);
+	}
+
+	@Override
+	public final Set<Map.Entry<String, Definition>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Definition>>() {
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Definition>> iterator() {
+				return new Iterator<Map.Entry<String, Definition>>() {
+					private int id = skipRemoved(0);
+
+					@Override
+					public boolean hasNext() {
+						return id < nextId;
+					}
+
+					@Override
+					public Map.Entry<String, Definition> next() {
+						if (id >= nextId) {
+							throw new NoSuchElementException();
+						}
+
+						final Map.Entry<String, Definition> entry = new AbstractMap.SimpleImmutableEntry<String, Definition>(word(id), new Definition(null, ArenaEntryStore.this, id));
+						id = skipRemoved(id + 1);
+						return entry;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the first live entry ID at or after <code>id</code>.
+	 *
+	 * @param id first ID to check
+	 * @return a live ID, or {@link #nextId} if there is none
+	 */
+	private final int skipRemoved(final int id) {
+		int next = id;
+
+		while (next < nextId && addresses[next] < 0) {
+			next++;
+		}
+
+		return next;
+	}
+
+	/**
+	 * Returns the number of bytes held by the arena, the columns and the hash table.
+	 *
+	 * @return approximate heap footprint in bytes, excluding object headers
+	 */
+	@Override
+	final long footprintBytes() {
+		long bytes = (long) table.length * Integer.BYTES;
+		bytes += (long) addresses.length * (Long.BYTES + Integer.BYTES) + columns.footprintBytes();
+
+		for (final byte[] page : pages) {
+			bytes += page.length;
+		}
+
+		return bytes + ((definitionBlocks == null) ? 0 : definitionBlocks.footprintBytes());
+	}
+
+	/**
+	 * Returns true if definitions are kept compressed.
+	 *
+	 * @return true in compressed mode
+	 */
+	final boolean isCompressed() {
+		return definitionBlocks != null;
+	}
+
+	/**
+	 * Returns a report of the memory used by this store and, in compressed mode, the compression ratio and block cache.
+	 *
+	 * @return multiline report
+	 */
+	@Override
+	final String report() {
+		final String summary = String.format("%d entries (%d IDs used) in %d bytes (%.1f bytes per entry)", size, nextId, footprintBytes(),
+				(size == 0) ? 0 : (double) footprintBytes() / size);
+
+		return (definitionBlocks == null) ? summary : summary + System.lineSeparator() + definitionBlocks.report();
+	}
+
+	/**
+	 * Freezes the store. Entries are never moved or overwritten, and the page and address arrays are replaced rather than changed when they grow
+	 * (only the sign of a retired entry's address changes), so the frozen view just keeps the current arrays.
+	 *
+	 * @return frozen view of the current version
+	 */
+	@Override
+	final Frozen freeze() {
+		final byte[][] frozenPages = pages;
+		final long[] frozenAddresses = addresses;
+
+		return new Frozen(this) {
+
+			@Override
+			final String word(final int id) {
+				return readWord(frozenPages, frozenAddresses, id);
+			}
+
+			@Override
+			final String definitionText(final int id) {
+				return (definitionBlocks != null) ? definitionBlocks.get(id) : readDefinition(frozenPages, frozenAddresses, id);
+			}
+		};
+	}
+
+	/**
+	 * Does nothing: IDs and arena space are never reused, and are only reclaimed when the dictionary is saved and opened again.
+	 *
+	 * @param oldestVisibleVersion version of the oldest frozen view still in use
+	 */
+	@Override
+	final void reclaim(final long oldestVisibleVersion) {
+
+	}
+
+	@Override
+	final int idOf(final String word) {
+		return find(word);
+	}
+
+	@Override
+	final String word(final int id) {
+		return readWord(pages, addresses, id);
+	}
+
+	@Override
+	final String definitionText(final int id) {
+		return (definitionBlocks != null) ? definitionBlocks.get(id) : readDefinition(pages, addresses, id);
+	}
+
+	/**
+	 * Returns the arena address of an entry, whether or not it has been removed.
+	 *
+	 * @param addresses address column
+	 * @param id entry ID
+	 * @return arena address
+	 */
+	private static final long addressOf(final long[] addresses, final int id) {
+		final long address = addresses[id];
+
+		return (address < 0) ? ~address : address;
+	}
+
+	/**
+	 * Reads the word of an entry from the arena.
+	 *
+	 * @param pages arena pages
+	 * @param addresses address column
+	 * @param id entry ID
+	 * @return the word
+	 */
+	private static final String readWord(final byte[][] pages, final long[] addresses, final int id) {
+		final long address = addressOf(addresses, id);
+		final byte[] page = pages[(int) (address >>> 32)];
+		int offset = (int) address;
+
+		final int length = readVarInt(page, offset);
+		offset += varIntSize(length);
+
+		return new String(page, offset, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the definition of an entry from the arena (not in compressed mode).
+	 *
+	 * @param pages arena pages
+	 * @param addresses address column
+	 * @param id entry ID
+	 * @return definition text
+	 */
+	private static final String readDefinition(final byte[][] pages, final long[] addresses, final int id) {
+		final long address = addressOf(addresses, id);
+		final byte[] page = pages[(int) (address >>> 32)];
+		int offset = (int) address;
+
+		final int wordLength = readVarInt(page, offset);
+		offset += varIntSize(wordLength) + wordLength;
+
+		final int length = readVarInt(page, offset);
+		offset += varIntSize(length);
+
+		return new String(page, offset, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Finds the live entry for a word.
+	 *
+	 * @param word word/phrase
+	 * @return entry ID, or -1 if the word is not in the store
+	 */
+	private final int find(final String word) {
+		return table[findSlot(word.getBytes(StandardCharsets.UTF_8), hash(word))] - 1;
+	}
+
+	/**
+	 * Finds the hash table slot that holds a word, or the empty slot where it would be inserted.
+	 *
+	 * @param wordBytes UTF-8 bytes of the word
+	 * @param hash hash of the word
+	 * @return slot index
+	 */
+	private final int findSlot(final byte[] wordBytes, final int hash) {
+		final int mask = table.length - 1;
+		int slot = hash & mask;
+
+		while (table[slot] != 0) {
+			final int id = table[slot] - 1;
+
+			if (hashes[id] == hash && wordEquals(id, wordBytes)) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Returns true if an entry's word is equal to the given bytes.
+	 *
+	 * @param id entry ID
+	 * @param wordBytes UTF-8 bytes of a word
+	 * @return true if they are equal
+	 */
+	private final boolean wordEquals(final int id, final byte[] wordBytes) {
+		final long address = addressOf(addresses, id);
+		final byte[] page = pages[(int) (address >>> 32)];
+		final int offset = (int) address;
+
+		final int length = readVarInt(page, offset);
+		if (length != wordBytes.length) {
+			return false;
+		}
+
+		final int start = offset + varIntSize(length);
+		return Arrays.equals(page, start, start + length, wordBytes, 0, length);
+	}
+
+	/**
+	 * Empties a hash table slot, moving later entries of the same probe sequence back so that no lookup stops early.
+	 *
+	 * @param emptied slot to empty
+	 */
+	private final void deleteSlot(final int emptied) {
+		final int mask = table.length - 1;
+		int hole = emptied;
+		int slot = (hole + 1) & mask;
+
+		while (table[slot] != 0) {
+			final int home = hashes[table[slot] - 1] & mask;
+
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				table[hole] = table[slot];
+				hole = slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		table[hole] = 0;
+	}
+
+	/**
+	 * Rebuilds the hash table with a new size.
+	 *
+	 * @param newSize new table size (a power of two)
+	 */
+	private final void rehash(final int newSize) {
+		final int[] oldTable = table;
+		final int mask = newSize - 1;
+		table = new int[newSize];
+
+		for (final int entry : oldTable) {
+			if (entry != 0) {
+				int slot = hashes[entry - 1] & mask;
+
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+
+				table[slot] = entry;
+			}
+		}
+	}
+
+	/**
+	 * Copies a word and definition into the arena (in compressed mode, the definition into {@link #definitionBlocks}) and gives them a new entry ID.
+	 *
+	 * @param wordBytes UTF-8 bytes of the word
+	 * @param definitionBytes UTF-8 bytes of the definition
+	 * @return the new entry ID
+	 */
+	private final int append(final byte[] wordBytes, final byte[] definitionBytes) {
+		final int definitionSize = (definitionBlocks == null) ? varIntSize(definitionBytes.length) + definitionBytes.length : 0;
+		final long address = allocate(varIntSize(wordBytes.length) + wordBytes.length + definitionSize);
+		final byte[] page = pages[(int) (address >>> 32)];
+
+		final int offset = writeVarInt(page, (int) address, wordBytes.length);
+		System.arraycopy(wordBytes, 0, page, offset, wordBytes.length);
+
+		if (definitionBlocks == null) {
+			final int definitionOffset = writeVarInt(page, offset + wordBytes.length, definitionBytes.length);
+			System.arraycopy(definitionBytes, 0, page, definitionOffset, definitionBytes.length);
+		} else {
+			definitionBlocks.append(definitionBytes);
+		}
+
+		if (nextId == addresses.length) {
+			final int capacity = addresses.length + (addresses.length >> 1);
+
+			addresses = Arrays.copyOf(addresses, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+		}
+
+		addresses[nextId] = address;
+		return nextId++;
+	}
+
+	/**
+	 * Reserves space in the arena, adding a page if the last one is full.
+	 *
+	 * @param length number of bytes
+	 * @return arena address of the space
+	 */
+	private final long allocate(final int length) {
+		final int last = pages.length - 1;
+
+		if (last < 0 || pages[last].length - pageUsed < length) {
+			final int previousSize = (last < 0) ? MIN_PAGE_SIZE / 2 : pages[last].length;
+			final int pageSize = Math.max(length, Math.min(MAX_PAGE_SIZE, previousSize * 2));
+
+			pages = Arrays.copyOf(pages, pages.length + 1);
+			pages[pages.length - 1] = new byte[pageSize];
+			pageUsed = 0;
+		}
+
+		final long address = ((long) (pages.length - 1) << 32) | pageUsed;
+		pageUsed += length;
+		return address;
+	}
+
+	/**
+	 * Writes a non-negative int in 7-bit groups, least significant first.
+	 *
+	 * @param page page to write to
+	 * @param offset offset to write at
+	 * @param value value to write
+	 * @return offset after the value
+	 */
+	private static final int writeVarInt(final byte[] page, final int offset, final int value) {
+		int position = offset;
+		int remaining = value;
+
+		while ((remaining & ~0x7F) != 0) {
+			page[position++] = (byte) ((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+
+		page[position++] = (byte) remaining;
+		return position;
+	}
+
+	/**
+	 * Reads an int written by {@link #writeVarInt(byte[], int, int)}.
+	 *
+	 * @param page page to read from
+	 * @param offset offset to read at
+	 * @return the value
+	 */
+	private static final int readVarInt(final byte[] page, final int offset) {
+		int value = 0;
+		int position = offset;
+
+		for (int shift = 0; ; shift += 7) {
+			final int b = page[position++];
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that {@link #writeVarInt(byte[], int, int)} uses for a value.
+	 *
+	 * @param value non-negative value
+	 * @return size in bytes (1 to 5)
+	 */
+	private static final int varIntSize(final int value) {
+		return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+	}
+
+	/**
+	 * Returns the hash of a word used by the hash table.
+	 *
+	 * @param word word/phrase
+	 * @return hash
+	 */
+	private static final int hash(final String word) {
+		final int h = word.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the hash table size for a number of entries: a power of two at least twice the entry count.
+	 *
+	 * @param capacity number of entries
+	 * @return table size
+	 */
+	private static final int tableSizeFor(final int capacity) {
+		return Integer.highestOneBit(Math.max(MIN_CAPACITY, capacity) * 2 - 1) << 1;
+	}
+}
@@ -0,0 +1,1276 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A search expression compiled to a finite automaton, which counts the matches in a text in time proportional to the length of the text, however
+ * the expression is written. {@link java.util.regex} backtracks, and can take exponential time on expressions like <code>(.+)+\d</code>. <p>
+ *
+ * The expression is parsed into a nondeterministic automaton whose choices are ordered by priority (greedy quantifiers prefer to repeat, lazy ones
+ * to stop, and alternatives are tried from left to right). The deterministic automaton that runs it is built lazily, one state and transition at a
+ * time, as the texts need them; each state is the ordered list of the automaton states that are still alive. Once one of them reaches a match,
+ * those with a lower priority are dropped, and the match ends where the last match was seen before every state died. This finds the same matches
+ * as {@link java.util.regex.Matcher#find()}, which the counts depend on. <p>
+ *
+ * Only part of the regular expression syntax is supported: literals and escapes, <code>.</code>, character classes (without intersections or
+ * nested classes), <code>\d \D \w \W \s \S</code>, groups, alternation, greedy and lazy quantifiers, <code>^</code> and <code>$</code>.
+ * {@link #compile(String)} returns null for expressions that use anything else, such as back references, lookaround, <code>\b</code>, flags or
+ * possessive quantifiers, and for expressions that can match the empty string; those are matched with {@link java.util.regex}. Texts containing
+ * surrogate pairs, and texts ending in a line terminator when the expression uses <code>$</code>, are also left to {@link java.util.regex}. <p>
+ *
+ * Searches use automatons with {@link Dictionary.SearchEngine#AUTOMATON}. An automaton is built for one search, and used by one thread.
+ *
+ * @author Joe Desmond
+ */
+final class AutomatonPattern {
+
+	/**
+	 * Most automaton states an expression can have; repeat counts like <code>{1000}</code> copy their body that many times
+	 */
+	private static final int MAX_NODES = 10000;
+
+	/**
+	 * Most deterministic states kept at once; when there are more, the states built so far are dropped and built again as needed
+	 */
+	private static final int MAX_STATES = 2000;
+
+	/**
+	 * Highest code point
+	 */
+	private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+	/**
+	 * Characters that <code>.</code> does not match, as sorted ranges
+	 */
+	private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+
+	/**
+	 * Thrown while parsing an expression that uses unsupported syntax.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Unsupported extends Exception {
+		private static final long serialVersionUID = 2290374718291635671L;
+
+		/**
+		 * Creates the exception.
+		 */
+		private Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Part of a parsed expression.
+	 *
+	 * @author Joe Desmond
+	 */
+	private abstract static class Node {
+
+		/**
+		 * Returns true if this part can match the empty string.
+		 *
+		 * @return true if this part is nullable
+		 */
+		abstract boolean nullable();
+	}
+
+	/**
+	 * One character from a set.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class CharSet extends Node {
+
+		/**
+		 * Sorted, disjoint ranges of code points (first and last of each range)
+		 */
+		private final int[] ranges;
+
+		/**
+		 * Creates a character set.
+		 *
+		 * @param _ranges sorted, disjoint ranges of code points
+		 */
+		private CharSet(final int[] _ranges) {
+			ranges = _ranges;
+		}
+
+		@Override
+		final boolean nullable() {
+			return false;
+		}
+	}
+
+	/**
+	 * A sequence of parts.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Concatenation extends Node {
+
+		/**
+		 * The parts, in order
+		 */
+		private final List<Node> parts;
+
+		/**
+		 * Creates a sequence.
+		 *
+		 * @param _parts the parts, in order
+		 */
+		private Concatenation(final List<Node> _parts) {
+			parts = _parts;
+		}
+
+		@Override
+		final boolean nullable() {
+			return parts.stream().allMatch(Node::nullable);
+		}
+	}
+
+	/**
+	 * Alternatives, tried from first to last.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Alternation extends Node {
+
+		/**
+		 * The alternatives, highest priority first
+		 */
+		private final List<Node> alternatives;
+
+		/**
+		 * Creates an alternation.
+		 *
+		 * @param _alternatives the alternatives, highest priority first
+		 */
+		private Alternation(final List<Node> _alternatives) {
+			alternatives = _alternatives;
+		}
+
+		@Override
+		final boolean nullable() {
+			return alternatives.stream().anyMatch(Node::nullable);
+		}
+	}
+
+	/**
+	 * A part repeated between a minimum and a maximum number of times.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Repeat extends Node {
+
+		/**
+		 * Repeated part (never nullable)
+		 */
+		private final Node body;
+
+		/**
+		 * Minimum number of repeats
+		 */
+		private final int min;
+
+		/**
+		 * Maximum number of repeats, or -1 for no maximum
+		 */
+		private final int max;
+
+		/**
+		 * True to prefer fewer repeats
+		 */
+		private final boolean lazy;
+
+		/**
+		 * Creates a repeat.
+		 *
+		 * @param _body repeated part
+		 * @param _min minimum number of repeats
+		 * @param _max maximum number of repeats, or -1
+		 * @param _lazy true to prefer fewer repeats
+		 */
+		private Repeat(final Node _body, final int _min, final int _max, final boolean _lazy) {
+			body = _body;
+			min = _min;
+			max = _max;
+			lazy = _lazy;
+		}
+
+		@Override
+		final boolean nullable() {
+			return min == 0;
+		}
+	}
+
+	/**
+	 * <code>^</code> or <code>$</code>.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Anchor extends Node {
+
+		/**
+		 * True for <code>$</code>, false for <code>^</code>
+		 */
+		private final boolean end;
+
+		/**
+		 * Creates an anchor.
+		 *
+		 * @param _end true for <code>$</code>
+		 */
+		private Anchor(final boolean _end) {
+			end = _end;
+		}
+
+		@Override
+		final boolean nullable() {
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the supported syntax of a regular expression into {@link Node}s.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Parser {
+
+		/**
+		 * The expression
+		 */
+		private final String regex;
+
+		/**
+		 * Position of the next character to read
+		 */
+		private int at = 0;
+
+		/**
+		 * True if the expression contains <code>$</code>
+		 */
+		private boolean usesEnd = false;
+
+		/**
+		 * Creates a parser.
+		 *
+		 * @param _regex the expression
+		 */
+		private Parser(final String _regex) {
+			regex = _regex;
+		}
+
+		/**
+		 * Parses the whole expression.
+		 *
+		 * @return the parsed expression
+		 * @throws Unsupported if the expression uses unsupported syntax
+		 */
+		private final Node parse() throws Unsupported {
+			final Node node = alternation();
+
+			if (at < regex.length()) {
+				throw new Unsupported();
+			}
+			return node;
+		}
+
+		/**
+		 * Parses alternatives separated by <code>|</code>.
+		 *
+		 * @return the parsed alternation
+		 * @throws Unsupported if unsupported syntax is found
+		 */
+		private final Node alternation() throws Unsupported {
+			final List<Node> alternatives = new ArrayList<Node>();
+			alternatives.add(concatenation());
+
+			while (at < regex.length() && regex.charAt(at) == '|') {
+				at++;
+				alternatives.add(concatenation());
+			}
+
+			return (alternatives.size() == 1) ? alternatives.get(0) : new Alternation(alternatives);
+		}
+
+		/**
+		 * Parses a sequence of quantified atoms, up to <code>|</code>, <code>)</code> or the end.
+		 *
+		 * @return the parsed sequence
+		 * @throws Unsupported if unsupported syntax is found
+		 */
+		private final Node concatenation() throws Unsupported {
+			final List<Node> parts = new ArrayList<Node>();
+
+			while (at < regex.length() && regex.charAt(at) != '|' && regex.charAt(at) != ')') {
+				if (regex.startsWith("\\Q", at)) {
+					final int quoteEnd = regex.indexOf("\\E", at + 2);
+					final String quoted = regex.substring(at + 2, (quoteEnd < 0) ? regex.length() : quoteEnd);
+					at = (quoteEnd < 0) ? regex.length() : quoteEnd + 2;
+
+					// A quantifier after a quote applies to its last character
+					for (int i = 0; i < quoted.length(); i += Character.charCount(quoted.codePointAt(i))) {
+						final Node literal = new CharSet(single(quoted.codePointAt(i)));
+						parts.add((i + Character.charCount(quoted.codePointAt(i)) == quoted.length()) ? quantified(literal) : literal);
+					}
+					continue;
+				}
+
+				parts.add(quantified(atom()));
+			}
+
+			return (parts.size() == 1) ? parts.get(0) : new Concatenation(parts);
+		}
+
+		/**
+		 * Parses the quantifier after an atom, if there is one.
+		 *
+		 * @param atom the atom
+		 * @return the atom, or the atom repeated
+		 * @throws Unsupported if the quantifier is possessive, repeats something that can match the empty string, or is followed by another quantifier
+		 */
+		private final Node quantified(final Node atom) throws Unsupported {
+			if (at >= regex.length()) {
+				return atom;
+			}
+
+			final int min;
+			final int max;
+			switch (regex.charAt(at)) {
+				case '*':
+					min = 0;
+					max = -1;
+					at++;
+					break;
+				case '+':
+					min = 1;
+					max = -1;
+					at++;
+					break;
+				case '?':
+					min = 0;
+					max = 1;
+					at++;
+					break;
+				case '{':
+					at++;
+					min = number();
+					if (at < regex.length() && regex.charAt(at) == ',') {
+						at++;
+						max = (at < regex.length() && regex.charAt(at) == '}') ? -1 : number();
+					} else {
+						max = min;
+					}
+					if (at >= regex.length() || regex.charAt(at) != '}' || (max >= 0 && max < min)) {
+						throw new Unsupported();
+					}
+					at++;
+					break;
+				default:
+					return atom;
+			}
+
+			boolean lazy = false;
+			if (at < regex.length() && regex.charAt(at) == '?') {
+				lazy = true;
+				at++;
+			}
+
+			if (atom.nullable() || (at < regex.length() && "*+?{".indexOf(regex.charAt(at)) >= 0)) {
+				throw new Unsupported();
+			}
+
+			return new Repeat(atom, min, max, lazy);
+		}
+
+		/**
+		 * Parses the digits of a repeat count.
+		 *
+		 * @return the count
+		 * @throws Unsupported if there are no digits, or the count is too large
+		 */
+		private final int number() throws Unsupported {
+			final int start = at;
+			while (at < regex.length() && Character.isDigit(regex.charAt(at)) && at - start < 6) {
+				at++;
+			}
+
+			if (at == start || (at < regex.length() && Character.isDigit(regex.charAt(at)))) {
+				throw new Unsupported();
+			}
+			return Integer.parseInt(regex.substring(start, at));
+		}
+
+		/**
+		 * Parses a group, character class, escape, anchor, <code>.</code> or literal character.
+		 *
+		 * @return the parsed atom
+		 * @throws Unsupported if unsupported syntax is found
+		 */
+		private final Node atom() throws Unsupported {
+			final int c = regex.codePointAt(at);
+			at += Character.charCount(c);
+
+			switch (c) {
+				case '(':
+					if (regex.startsWith("?:", at)) {
+						at += 2;
+					} else if (regex.startsWith("?<", at) && at + 2 < regex.length() && Character.isLetter(regex.charAt(at + 2))) {
+						at = regex.indexOf('>', at) + 1;
+						if (at == 0) {
+							throw new Unsupported();
+						}
+					} else if (regex.startsWith("?", at)) {
+						throw new Unsupported();
+					}
+
+					final Node group = alternation();
+					if (at >= regex.length() || regex.charAt(at) != ')') {
+						throw new Unsupported();
+					}
+					at++;
+					return group;
+				case '[':
+					return new CharSet(characterClass());
+				case '.':
+					return new CharSet(complement(LINE_TERMINATORS));
+				case '^':
+					return new Anchor(false);
+				case '$':
+					usesEnd = true;
+					return new Anchor(true);
+				case '\\':
+					return new CharSet(escape(false));
+				case '*':
+				case '+':
+				case '?':
+				case '{':
+					throw new Unsupported();
+				default:
+					return new CharSet(single(c));
+			}
+		}
+
+		/**
+		 * Parses a character class, after its opening bracket.
+		 *
+		 * @return the code points in the class
+		 * @throws Unsupported if the class is nested, intersected or otherwise unusual
+		 */
+		private final int[] characterClass() throws Unsupported {
+			boolean negated = false;
+			if (at < regex.length() && regex.charAt(at) == '^') {
+				negated = true;
+				at++;
+			}
+			if (at < regex.length() && regex.charAt(at) == ']') {
+				throw new Unsupported();
+			}
+
+			int[] set = new int[0];
+			while (true) {
+				if (at >= regex.length()) {
+					throw new Unsupported();
+				}
+
+				final int c = regex.codePointAt(at);
+				if (c == ']') {
+					at++;
+					break;
+				} else if (c == '[' || regex.startsWith("&&", at)) {
+					throw new Unsupported();
+				}
+
+				at += Character.charCount(c);
+				final int[] item = (c == '\\') ? escape(true) : single(c);
+
+				if (at + 1 < regex.length() && regex.charAt(at) == '-' && regex.charAt(at + 1) != ']') {
+					at++;
+					if (!isSingle(item) || regex.charAt(at) == '[') {
+						throw new Unsupported();
+					}
+
+					final int last = regex.codePointAt(at);
+					at += Character.charCount(last);
+					final int[] lastItem = (last == '\\') ? escape(true) : single(last);
+					if (!isSingle(lastItem) || lastItem[0] < item[0]) {
+						throw new Unsupported();
+					}
+
+					set = union(set, new int[] {item[0], lastItem[0]});
+				} else {
+					set = union(set, item);
+				}
+			}
+
+			return negated ? complement(set) : set;
+		}
+
+		/**
+		 * Parses an escape, after its backslash.
+		 *
+		 * @param inClass true inside a character class
+		 * @return the code points the escape matches
+		 * @throws Unsupported if the escape is not a character or a predefined class
+		 */
+		private final int[] escape(final boolean inClass) throws Unsupported {
+			if (at >= regex.length()) {
+				throw new Unsupported();
+			}
+
+			final int c = regex.codePointAt(at);
+			at += Character.charCount(c);
+
+			switch (c) {
+				case 't':
+					return single('\t');
+				case 'n':
+					return single('\n');
+				case 'r':
+					return single('\r');
+				case 'f':
+					return single('\f');
+				case 'a':
+					return single('\u0007');
+				case 'e':
+					return single('\u001B');
+				case 'd':
+					return new int[] {'0', '9'};
+				case 'D':
+					return complement(new int[] {'0', '9'});
+				case 'w':
+					return new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+				case 'W':
+					return complement(new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+				case 's':
+					return new int[] {'\t', '\r', ' ', ' '};
+				case 'S':
+					return complement(new int[] {'\t', '\r', ' ', ' '});
+				case '0':
+					return single(octal());
+				case 'x':
+					return single(hex());
+				case 'u':
+					return single(hexDigits(4));
+				case 'c':
+					if (at >= regex.length()) {
+						throw new Unsupported();
+					}
+					return single(regex.charAt(at++) ^ 64);
+				default:
+					if (Character.isLetterOrDigit(c) || (inClass && c == 'Q')) {
+						throw new Unsupported();
+					}
+					return single(c);
+			}
+		}
+
+		/**
+		 * Parses the digits of an octal escape, after <code>\0</code>.
+		 *
+		 * @return the code point
+		 * @throws Unsupported if there are no octal digits
+		 */
+		private final int octal() throws Unsupported {
+			int value = 0;
+			int digits = 0;
+
+			while (at < regex.length() && digits < 3 && regex.charAt(at) >= '0' && regex.charAt(at) <= '7') {
+				final int next = value * 8 + (regex.charAt(at) - '0');
+				if (next > 0377) {
+					break;
+				}
+				value = next;
+				digits++;
+				at++;
+			}
+
+			if (digits == 0) {
+				throw new Unsupported();
+			}
+			return value;
+		}
+
+		/**
+		 * Parses the digits of a hexadecimal escape, after <code>\x</code>.
+		 *
+		 * @return the code point
+		 * @throws Unsupported if the digits are missing or out of range
+		 */
+		private final int hex() throws Unsupported {
+			if (at < regex.length() && regex.charAt(at) == '{') {
+				final int close = regex.indexOf('}', at);
+				if (close < 0 || close == at + 1 || close > at + 7) {
+					throw new Unsupported();
+				}
+
+				final int value = parseHex(regex.substring(at + 1, close));
+				at = close + 1;
+				return value;
+			}
+
+			return hexDigits(2);
+		}
+
+		/**
+		 * Parses a fixed number of hexadecimal digits.
+		 *
+		 * @param count number of digits
+		 * @return the code point
+		 * @throws Unsupported if the digits are missing, or the code point is a surrogate
+		 */
+		private final int hexDigits(final int count) throws Unsupported {
+			if (at + count > regex.length()) {
+				throw new Unsupported();
+			}
+
+			final int value = parseHex(regex.substring(at, at + count));
+			at += count;
+			return value;
+		}
+
+		/**
+		 * Parses a hexadecimal code point.
+		 *
+		 * @param digits hexadecimal digits
+		 * @return the code point
+		 * @throws Unsupported if the digits are not hexadecimal, or the code point is a surrogate or out of range
+		 */
+		private static final int parseHex(final String digits) throws Unsupported {
+			for (int i = 0; i < digits.length(); i++) {
+				if (Character.digit(digits.charAt(i), 16) < 0) {
+					throw new Unsupported();
+				}
+			}
+
+			final int value = Integer.parseInt(digits, 16);
+			if (value > MAX_CODE_POINT || (value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE)) {
+				throw new Unsupported();
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * A state of the deterministic automaton.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class State {
+
+		/**
+		 * Live automaton states that read a character, wait for the end, or match, highest priority first; nothing follows a match
+		 */
+		private final int[] nodes;
+
+		/**
+		 * True if no match has been seen yet, so a new match may still start at the next character
+		 */
+		private final boolean searching;
+
+		/**
+		 * True if a match ends here
+		 */
+		private final boolean matching;
+
+		/**
+		 * Next state for every character class; null until it is needed
+		 */
+		private final State[] next;
+
+		/**
+		 * 1 if a match ends here when this is the end of the text, 0 if not, -1 until it is needed
+		 */
+		private int matchesAtEnd = -1;
+
+		/**
+		 * Creates a state.
+		 *
+		 * @param _nodes live automaton states
+		 * @param _searching true if a match may still start at the next character
+		 * @param _matching true if a match ends here
+		 * @param classes number of character classes
+		 */
+		private State(final int[] _nodes, final boolean _searching, final boolean _matching, final int classes) {
+			nodes = _nodes;
+			searching = _searching;
+			matching = _matching;
+			next = new State[classes];
+		}
+
+		@Override
+		public final boolean equals(final Object other) {
+			return other instanceof State && ((State) other).searching == searching && Arrays.equals(((State) other).nodes, nodes);
+		}
+
+		@Override
+		public final int hashCode() {
+			return Arrays.hashCode(nodes) * 31 + (searching ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Automaton state that reads one character from {@link #sets}
+	 */
+	private static final byte CHARS = 0;
+
+	/**
+	 * Automaton state that continues with both of its successors, the first with the higher priority
+	 */
+	private static final byte SPLIT = 1;
+
+	/**
+	 * Automaton state that continues only at the start of the text
+	 */
+	private static final byte BEGIN = 2;
+
+	/**
+	 * Automaton state that continues only at the end of the text
+	 */
+	private static final byte END = 3;
+
+	/**
+	 * Automaton state at which the expression has matched
+	 */
+	private static final byte MATCH = 4;
+
+	/**
+	 * Kind of every automaton state
+	 */
+	private byte[] types = new byte[64];
+
+	/**
+	 * First successor of every automaton state
+	 */
+	private int[] firsts = new int[64];
+
+	/**
+	 * Second successor of every {@link #SPLIT} state
+	 */
+	private int[] seconds = new int[64];
+
+	/**
+	 * Characters read by every {@link #CHARS} state
+	 */
+	private int[][] sets = new int[64][];
+
+	/**
+	 * Number of automaton states
+	 */
+	private int nodeCount = 0;
+
+	/**
+	 * First automaton state
+	 */
+	private final int start;
+
+	/**
+	 * True if the expression contains <code>$</code>
+	 */
+	private final boolean usesEnd;
+
+	/**
+	 * First character of every character class, in order: characters between two of these are treated the same by every state
+	 */
+	private final int[] classStarts;
+
+	/**
+	 * Character class of every ASCII character
+	 */
+	private final int[] asciiClasses = new int[128];
+
+	/**
+	 * The deterministic states built so far
+	 */
+	private Map<State, State> states = new HashMap<State, State>();
+
+	/**
+	 * State where nothing is alive and no match can start
+	 */
+	private final State dead;
+
+	/**
+	 * Starting states at the start of the text and elsewhere; null until needed
+	 */
+	private final State[] startStates = new State[2];
+
+	/**
+	 * Automaton states visited while following the successors of a state, marked with {@link #visitMark}
+	 */
+	private int[] visited;
+
+	/**
+	 * Mark of the states visited by the current {@link #close} calls
+	 */
+	private int visitMark = 0;
+
+	/**
+	 * Automaton states still to visit in {@link #close}
+	 */
+	private int[] stack;
+
+	/**
+	 * Compiles a parsed expression.
+	 *
+	 * @param expression parsed expression
+	 * @param _usesEnd true if the expression contains <code>$</code>
+	 * @throws Unsupported if the expression is too large
+	 */
+	private AutomatonPattern(final Node expression, final boolean _usesEnd) throws Unsupported {
+		usesEnd = _usesEnd;
+		start = compile(expression, addNode(MATCH, -1, -1, null));
+		visited = new int[nodeCount];
+		// Every state visited pushes at most two successors
+		stack = new int[2 * nodeCount + 1];
+
+		final TreeSet<Integer> starts = new TreeSet<Integer>();
+		starts.add(0);
+		for (int node = 0; node < nodeCount; node++) {
+			if (types[node] == CHARS) {
+				for (int i = 0; i < sets[node].length; i += 2) {
+					starts.add(sets[node][i]);
+					if (sets[node][i + 1] < MAX_CODE_POINT) {
+						starts.add(sets[node][i + 1] + 1);
+					}
+				}
+			}
+		}
+		classStarts = starts.stream().mapToInt(Integer::intValue).toArray();
+
+		for (int c = 0; c < asciiClasses.length; c++) {
+			asciiClasses[c] = classOf(c);
+		}
+
+		dead = new State(new int[0], false, false, classStarts.length);
+	}
+
+	/**
+	 * Compiles a search expression, if it only uses the supported syntax and cannot match the empty string.
+	 *
+	 * @param regex search expression (a valid regular expression)
+	 * @return the automaton, or null if the expression must be matched with {@link java.util.regex}
+	 */
+	static final AutomatonPattern compile(final String regex) {
+		try {
+			final Parser parser = new Parser(regex);
+			final Node expression = parser.parse();
+
+			return expression.nullable() ? null : new AutomatonPattern(expression, parser.usesEnd);
+		} catch (Unsupported e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Counts the matches in a text, the way {@link java.util.regex.Matcher#find()} would find them: each match starts where the last one ended.
+	 * Every character read is counted as a step of a budget. The search for each match reads the text once, so a text is read once when there are
+	 * few matches; in the worst case, a text with <code>k</code> matches may be read up to <code>k</code> times.
+	 *
+	 * @param text text to search
+	 * @param meter meter of the search budget
+	 * @return number of matches, or -1 if the text must be searched with {@link java.util.regex} instead
+	 * @throws SearchBudget.Exhausted if the budget runs out
+	 */
+	final int count(final String text, final SearchBudget.Meter meter) {
+		final int length = text.length();
+
+		if (usesEnd && length > 0 && isLineTerminator(text.charAt(length - 1))) {
+			return -1;
+		}
+
+		int matches = 0;
+		int from = 0;
+
+		while (from < length) {
+			State state = startState(from == 0);
+			int matchEnd = -1;
+			int position = from;
+
+			while (position < length && state != dead) {
+				final char c = text.charAt(position++);
+				if (Character.isSurrogate(c)) {
+					return -1;
+				}
+
+				final int characterClass = (c < 128) ? asciiClasses[c] : classOf(c);
+				State next = state.next[characterClass];
+				if (next == null) {
+					next = transition(state, characterClass);
+				}
+
+				state = next;
+				if (state.matching) {
+					matchEnd = position;
+				}
+			}
+
+			meter.step(position - from);
+
+			if (position == length && state != dead && matchesAtEnd(state)) {
+				matchEnd = length;
+			}
+			if (matchEnd < 0) {
+				break;
+			}
+
+			matches++;
+			from = matchEnd;
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Returns the starting state of a search.
+	 *
+	 * @param atStart true if the search starts at the start of the text
+	 * @return the starting state
+	 */
+	private final State startState(final boolean atStart) {
+		final int index = atStart ? 0 : 1;
+
+		if (startStates[index] == null) {
+			final List<Integer> nodes = new ArrayList<Integer>();
+			visitMark++;
+			close(start, atStart, false, nodes);
+			startStates[index] = intern(nodes, true);
+		}
+
+		return startStates[index];
+	}
+
+	/**
+	 * Builds the transition from a state on a character class.
+	 *
+	 * @param state current state
+	 * @param characterClass class of the next character
+	 * @return the next state
+	 */
+	private final State transition(final State state, final int characterClass) {
+		final int representative = classStarts[characterClass];
+		final List<Integer> nodes = new ArrayList<Integer>();
+		visitMark++;
+
+		for (final int node : state.nodes) {
+			if (types[node] == CHARS && contains(sets[node], representative)) {
+				close(firsts[node], false, false, nodes);
+			}
+		}
+
+		if (state.searching) {
+			// A match may also start at the next character, with a lower priority than every match that started earlier
+			close(start, false, false, nodes);
+		}
+
+		if (states.size() >= MAX_STATES) {
+			states = new HashMap<State, State>();
+			startStates[0] = null;
+			startStates[1] = null;
+			Arrays.fill(state.next, null);
+			states.put(state, state);
+		}
+
+		final State next = intern(nodes, state.searching);
+		state.next[characterClass] = next;
+		return next;
+	}
+
+	/**
+	 * Returns the state with some live automaton states, creating it if needed.
+	 *
+	 * @param nodes live automaton states, highest priority first
+	 * @param searching true if a match could still start after the current character
+	 * @return the state
+	 */
+	private final State intern(final List<Integer> nodes, final boolean searching) {
+		int count = 0;
+		boolean matching = false;
+
+		while (count < nodes.size() && !matching) {
+			matching = types[nodes.get(count++)] == MATCH;
+		}
+
+		if (count == 0 && (!searching || matching)) {
+			return dead;
+		}
+
+		final int[] live = new int[count];
+		for (int i = 0; i < count; i++) {
+			live[i] = nodes.get(i);
+		}
+
+		final State candidate = new State(live, searching && !matching, matching, classStarts.length);
+		final State existing = states.putIfAbsent(candidate, candidate);
+		return (existing == null) ? candidate : existing;
+	}
+
+	/**
+	 * Returns true if a match ends at the end of the text when a state is reached there.
+	 *
+	 * @param state state at the end of the text
+	 * @return true if the state is matching, or can match with <code>$</code>
+	 */
+	private final boolean matchesAtEnd(final State state) {
+		if (state.matchesAtEnd < 0) {
+			boolean matches = state.matching;
+
+			for (int i = 0; i < state.nodes.length && !matches; i++) {
+				if (types[state.nodes[i]] == END) {
+					final List<Integer> nodes = new ArrayList<Integer>();
+					visitMark++;
+					close(firsts[state.nodes[i]], false, true, nodes);
+					matches = nodes.stream().anyMatch(node -> types[node] == MATCH);
+				}
+			}
+
+			state.matchesAtEnd = matches ? 1 : 0;
+		}
+
+		return state.matchesAtEnd == 1;
+	}
+
+	/**
+	 * Adds the automaton states that read a character, wait for the end, or match, reachable from a state without reading a character, in order
+	 * of priority. States already visited since {@link #visitMark} was last changed are skipped, since they were reached with a higher priority.
+	 *
+	 * @param from automaton state
+	 * @param atStart true at the start of the text
+	 * @param atEnd true at the end of the text
+	 * @param nodes list to add the states to
+	 */
+	private final void close(final int from, final boolean atStart, final boolean atEnd, final List<Integer> nodes) {
+		int size = 0;
+		stack[size++] = from;
+
+		while (size > 0) {
+			final int node = stack[--size];
+			if (visited[node] == visitMark) {
+				continue;
+			}
+			visited[node] = visitMark;
+
+			switch (types[node]) {
+				case SPLIT:
+					stack[size++] = seconds[node];
+					stack[size++] = firsts[node];
+					break;
+				case BEGIN:
+					if (atStart) {
+						stack[size++] = firsts[node];
+					}
+					break;
+				case END:
+					if (atEnd) {
+						stack[size++] = firsts[node];
+					} else {
+						nodes.add(node);
+					}
+					break;
+				default:
+					nodes.add(node);
+			}
+		}
+	}
+
+	/**
+	 * Compiles part of an expression into automaton states.
+	 *
+	 * @param node part of the expression
+	 * @param next automaton state that follows the part
+	 * @return first automaton state of the part
+	 * @throws Unsupported if the expression is too large
+	 */
+	private final int compile(final Node node, final int next) throws Unsupported {
+		if (node instanceof CharSet) {
+			return addNode(CHARS, next, -1, ((CharSet) node).ranges);
+		} else if (node instanceof Anchor) {
+			return addNode(((Anchor) node).end ? END : BEGIN, next, -1, null);
+		} else if (node instanceof Concatenation) {
+			final List<Node> parts = ((Concatenation) node).parts;
+			int first = next;
+
+			for (int i = parts.size() - 1; i >= 0; i--) {
+				first = compile(parts.get(i), first);
+			}
+			return first;
+		} else if (node instanceof Alternation) {
+			final List<Node> alternatives = ((Alternation) node).alternatives;
+			int first = compile(alternatives.get(alternatives.size() - 1), next);
+
+			for (int i = alternatives.size() - 2; i >= 0; i--) {
+				first = addNode(SPLIT, compile(alternatives.get(i), next), first, null);
+			}
+			return first;
+		}
+
+		final Repeat repeat = (Repeat) node;
+		int first = next;
+
+		if (repeat.max < 0) {
+			final int loop = addNode(SPLIT, -1, -1, null);
+			final int body = compile(repeat.body, loop);
+			firsts[loop] = repeat.lazy ? next : body;
+			seconds[loop] = repeat.lazy ? body : next;
+			first = loop;
+		} else {
+			for (int i = repeat.min; i < repeat.max; i++) {
+				final int body = compile(repeat.body, first);
+				first = repeat.lazy ? addNode(SPLIT, next, body, null) : addNode(SPLIT, body, next, null);
+			}
+		}
+
+		for (int i = 0; i < repeat.min; i++) {
+			first = compile(repeat.body, first);
+		}
+		return first;
+	}
+
+	/**
+	 * Adds an automaton state.
+	 *
+	 * @param type kind of state
+	 * @param first first successor
+	 * @param second second successor
+	 * @param set characters read
+	 * @return the new state
+	 * @throws Unsupported if there are too many states
+	 */
+	private final int addNode(final byte type, final int first, final int second, final int[] set) throws Unsupported {
+		if (nodeCount == MAX_NODES) {
+			throw new Unsupported();
+		}
+		if (nodeCount == types.length) {
+			types = Arrays.copyOf(types, nodeCount * 2);
+			firsts = Arrays.copyOf(firsts, nodeCount * 2);
+			seconds = Arrays.copyOf(seconds, nodeCount * 2);
+			sets = Arrays.copyOf(sets, nodeCount * 2);
+		}
+
+		types[nodeCount] = type;
+		firsts[nodeCount] = first;
+		seconds[nodeCount] = second;
+		sets[nodeCount] = set;
+		return nodeCount++;
+	}
+
+	/**
+	 * Returns true if a character ends a line; <code>$</code> also matches before one of these at the end of the text.
+	 *
+	 * @param c character
+	 * @return true for the characters in {@link #LINE_TERMINATORS}
+	 */
+	private static final boolean isLineTerminator(final char c) {
+		return c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029;
+	}
+
+	/**
+	 * Returns the character class of a code point.
+	 *
+	 * @param c code point
+	 * @return index of the class in {@link #classStarts}
+	 */
+	private final int classOf(final int c) {
+		final int index = Arrays.binarySearch(classStarts, c);
+		return (index >= 0) ? index : -index - 2;
+	}
+
+	/**
+	 * Returns true if a set of ranges contains a code point.
+	 *
+	 * @param ranges sorted, disjoint ranges
+	 * @param c code point
+	 * @return true if some range contains it
+	 */
+	private static final boolean contains(final int[] ranges, final int c) {
+		for (int i = 0; i < ranges.length && ranges[i] <= c; i += 2) {
+			if (c <= ranges[i + 1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the ranges of a single code point.
+	 *
+	 * @param c code point
+	 * @return one range
+	 */
+	private static final int[] single(final int c) {
+		return new int[] {c, c};
+	}
+
+	/**
+	 * Returns true if ranges hold exactly one code point.
+	 *
+	 * @param ranges sorted, disjoint ranges
+	 * @return true for a single code point
+	 */
+	private static final boolean isSingle(final int[] ranges) {
+		return ranges.length == 2 && ranges[0] == ranges[1];
+	}
+
+	/**
+	 * Returns the union of two sets of ranges.
+	 *
+	 * @param a sorted, disjoint ranges
+	 * @param b sorted, disjoint ranges
+	 * @return sorted, disjoint ranges holding every code point of both
+	 */
+	private static final int[] union(final int[] a, final int[] b) {
+		final int[][] ranges = new int[(a.length + b.length) / 2][];
+		for (int i = 0; i < a.length; i += 2) {
+			ranges[i / 2] = new int[] {a[i], a[i + 1]};
+		}
+		for (int i = 0; i < b.length; i += 2) {
+			ranges[(a.length + i) / 2] = new int[] {b[i], b[i + 1]};
+		}
+		Arrays.sort(ranges, (r1, r2) -> Integer.compare(r1[0], r2[0]));
+
+		final int[] merged = new int[ranges.length * 2];
+		int size = 0;
+		for (final int[] range : ranges) {
+			if (size > 0 && range[0] <= merged[size - 1] + 1) {
+				merged[size - 1] = Math.max(merged[size - 1], range[1]);
+			} else {
+				merged[size++] = range[0];
+				merged[size++] = range[1];
+			}
+		}
+
+		return Arrays.copyOf(merged, size);
+	}
+
+	/**
+	 * Returns the complement of a set of ranges.
+	 *
+	 * @param ranges sorted, disjoint ranges
+	 * @return sorted, disjoint ranges holding every code point not in <code>ranges</code>
+	 */
+	private static final int[] complement(final int[] ranges) {
+		final int[] result = new int[ranges.length + 2];
+		int size = 0;
+		int next = 0;
+
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (ranges[i] > next) {
+				result[size++] = next;
+				result[size++] = ranges[i] - 1;
+			}
+			next = ranges[i + 1] + 1;
+		}
+		if (next <= MAX_CODE_POINT) {
+			result[size++] = next;
+			result[size++] = MAX_CODE_POINT;
+		}
+
+		return Arrays.copyOf(result, size);
+	}
+}
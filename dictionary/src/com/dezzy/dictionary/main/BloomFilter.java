@@ -0,0 +1,103 @@
+package com.dezzy.dictionary.main;
+
+/**
+ * A Bloom filter of words: answers "definitely not present" or "maybe present" using a few bits per word. Used by {@link SortedRun} so that a lookup
+ * of a word that is not in a run does not read the run from disk.
+ *
+ * @author Joe Desmond
+ */
+final class BloomFilter {
+
+	/**
+	 * Bits per word; with {@link #HASHES} hashes, about 1% of absent words are reported as maybe present
+	 */
+	private static final int BITS_PER_WORD = 10;
+
+	/**
+	 * Number of bits set per word
+	 */
+	private static final int HASHES = 7;
+
+	/**
+	 * The bits
+	 */
+	private final long[] bits;
+
+	/**
+	 * Number of bits in {@link #bits}
+	 */
+	private final long bitCount;
+
+	/**
+	 * Creates an empty filter sized for <code>expectedWords</code> words.
+	 *
+	 * @param expectedWords expected number of words
+	 */
+	BloomFilter(final int expectedWords) {
+		bitCount = Math.max(64, (long) expectedWords * BITS_PER_WORD);
+		bits = new long[(int) ((bitCount + 63) >>> 6)];
+	}
+
+	/**
+	 * Adds a word.
+	 *
+	 * @param word word/phrase
+	 */
+	final void add(final String word) {
+		final long hash = hash(word);
+		final int h1 = (int) hash;
+		final int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < HASHES; i++) {
+			final long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Returns false if a word was definitely never added.
+	 *
+	 * @param word word/phrase
+	 * @return true if the word may have been added
+	 */
+	final boolean mightContain(final String word) {
+		final long hash = hash(word);
+		final int h1 = (int) hash;
+		final int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < HASHES; i++) {
+			final long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of bytes held by the filter.
+	 *
+	 * @return heap footprint in bytes, excluding the object header
+	 */
+	final long footprintBytes() {
+		return (long) bits.length * Long.BYTES;
+	}
+
+	/**
+	 * Returns a 64-bit FNV-1a hash of a word's characters; its two halves are used as independent hashes (double hashing).
+	 *
+	 * @param word word/phrase
+	 * @return hash
+	 */
+	private static final long hash(final String word) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < word.length(); i++) {
+			hash ^= word.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		return hash ^ (hash >>> 29);
+	}
+}
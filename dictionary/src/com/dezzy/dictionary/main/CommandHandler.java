@@ -1,55 +1,122 @@
 package com.dezzy.dictionary.main;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import com.dezzy.dictionary.loadtest.CommandLog;
+import com.dezzy.dictionary.main.Dictionary.RankedResult;
 import com.dezzy.dictionary.main.Dictionary.SearchResult;
-import com.dezzy.dictionary.stats.Histogram;
+import com.dezzy.dictionary.perf.CommandEvent;
+import com.dezzy.dictionary.perf.CommandMetrics;
 import com.dezzy.dictionary.stats.Statistics;
+import com.dezzy.dictionary.stats.StatisticsExport;
 
 /**
  * Handles commands for a dictionary. Accepts raw string commands, parses them into operation/argument pairs, then dispatches on the operation
- * to a function that parses the arguments and does the appropriate operation. Status strings are passed around; exceptions are caught and a status string
- * beginning with "ERROR" is returned instead.
+ * to a function that parses the arguments and does the appropriate operation. Each command writes its result to a {@link CommandOutput}
+ * line by line, so that long listings go straight to the output stream instead of being built in memory, and reports failure through the output's
+ * {@link CommandOutput.Status status}; exceptions are caught and written as an error. {@link #receive(String)} still returns the whole result
+ * as a status string beginning with "ERROR" on failure, for callers that want one. <p>
+ * 
+ * Several dictionaries can be open at once in a {@link Workspace}. Most commands work on the current dictionary, whose state is kept in this handler's
+ * fields while it is current and in its workspace member otherwise; <code>search --all</code> and <code>find --all</code> work on every open dictionary. <p>
+ * 
+ * <code>replicate</code> streams every change to the current dictionary to {@link ReplicationFollower} processes, which serve lookups and searches
+ * from their own copies. <p>
+ * 
+ * A command preceded by <code>&</code> runs as a background job on its own pool of threads, against the dictionary that was current when it
+ * started, while other commands are received. <code>jobs</code> lists the jobs, <code>wait</code> shows the result of one, and <code>cancel</code>
+ * stops one. <p>
+ * 
+ * Commands should be received by one thread at a time, except <code>cancel</code> and <code>jobs</code>, which can be received from any thread
+ * while another command runs.
  *
  * @author Joe Desmond
  */
 public final class CommandHandler {
 	
 	/**
-	 * Expected format for a date argument
+	 * Expected format for a date argument (month, day, hour and minute may have one or two digits)
 	 */
-	private static final SimpleDateFormat DATE_ARG_FORMAT = new SimpleDateFormat("MM:dd:yyyy:HH:mm");
+	private static final DateTimeFormatter DATE_ARG_PARSER = DateTimeFormatter.ofPattern("M:d:yyyy:H:m");
+	
+	/**
+	 * Format used when printing a date in the form of a date argument
+	 */
+	private static final DateTimeFormatter DATE_ARG_FORMAT = DateTimeFormatter.ofPattern("MM:dd:yyyy:HH:mm");
 	
 	/**
 	 * Date format used when printing definitions
 	 */
-	private static final SimpleDateFormat DATE_OUTPUT_FORMAT = new SimpleDateFormat("MM/dd/YYYY hh:mm:ss a");
+	private static final DateTimeFormatter DATE_OUTPUT_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss a");
 	
 	/**
-	 * The current dictionary, or null if there is no open dictionary
+	 * Number of results listed by <code>rank</code>
 	 */
-	private Dictionary openDictionary;
+	private static final int RANK_RESULTS = 10;
 	
 	/**
-	 * Most recent path specified for a dictionary, or null if no path has been specified
+	 * Similarity used by <code>duplicates</code> when none is given
 	 */
-	private String dictionaryPath;
+	private static final double DUPLICATE_THRESHOLD = 0.8;
+	
+	/**
+	 * Number of background jobs that can run at once, from the <code>dictionary.jobs</code> system property (4 by default); others wait their turn
+	 */
+	private static final int JOB_THREADS = Math.max(1, Integer.getInteger("dictionary.jobs", 4));
 	
 	/**
-	 * Latest dictionary printout, or null if the dictionary has not been printed out
+	 * Commands that cannot run as background jobs: they change which dictionaries are open or which one is current, change how later commands
+	 * are read, or manage jobs and search results at the console
 	 */
-	private String dictionaryText;
+	private static final Set<String> FOREGROUND_COMMANDS = Set.of("open", "create", "close", "use", "workspace", "enabledates", "disabledates",
+			"replicate", "replicas", "next", "page", "cancel", "jobs", "wait");
+	
+	/**
+	 * Every open dictionary
+	 */
+	private final Workspace workspace = new Workspace();
+	
+	/**
+	 * The current dictionary, or null if there is no current dictionary
+	 */
+	private Dictionary openDictionary;
+	
+	/**
+	 * Most recent path specified for a dictionary, or null if no path has been specified
+	 */
+	private String dictionaryPath;
 	
 	/**
 	 * Most recent statistics, or null if none have been generated
@@ -63,339 +130,1525 @@ public final class CommandHandler {
 	private boolean datesEnabled;
 	
 	/**
-	 * Creates a CommandHandler. {@link #receive(String)} or {@link #receive(String, String)} must be called
-	 * in order for this CommandHandler to function.
+	 * Receives messages from work that finishes in the background (for example, progress of a <code>statsdump</code>)
+	 */
+	private final Consumer<String> notifier;
+	
+	/**
+	 * Worker pool for long-running work that should not block the command thread
+	 */
+	private final ExecutorService workers;
+	
+	/**
+	 * Pool that runs background jobs, separate from {@link #workers} so that a job can wait for work it gives the workers; null in the handler
+	 * of a job
+	 */
+	private final ExecutorService jobThreads;
+	
+	/**
+	 * Background jobs that have not been waited for, by number
+	 */
+	private final Map<Integer, Job> jobs = new ConcurrentSkipListMap<Integer, Job>();
+	
+	/**
+	 * Number of the last job started
+	 */
+	private int lastJobId = 0;
+	
+	/**
+	 * Open dictionaries when the job was started, in the handler of a job; null otherwise
+	 */
+	private final List<Workspace.Member> jobMembers;
+	
+	/**
+	 * Latency of every command received, by command type
+	 */
+	private final CommandMetrics metrics;
+	
+	/**
+	 * Records every command received by {@link #receive(String, CommandOutput)}, or null if commands are not being recorded
+	 */
+	private CommandLog.Recorder recorder;
+	
+	/**
+	 * Budgets of the searches running now, so that <code>cancel</code> can stop them from another thread
+	 */
+	private final Set<SearchBudget> runningSearches = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Results of the last <code>search</code>, read a page at a time by <code>next</code> and <code>page</code>; null if there has been no search
+	 */
+	private SearchCursor searchCursor;
+	
+	/**
+	 * Creates a CommandHandler. {@link #receive(String, CommandOutput)} or {@link #receive(String)} must be called
+	 * in order for this CommandHandler to function. Messages from background work are printed to the standard output.
+	 */
+	public CommandHandler() {
+		this(System.out::println);
+	}
+	
+	/**
+	 * Creates a CommandHandler that sends messages from background work to the given notifier.
+	 * 
+	 * @param _notifier receives messages from background work; may be called from several threads at once
+	 */
+	public CommandHandler(final Consumer<String> _notifier) {
+		notifier = _notifier;
+		workers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new WorkerThreadFactory("dictionary-worker-"));
+		jobThreads = Executors.newFixedThreadPool(JOB_THREADS, new WorkerThreadFactory("dictionary-job-"));
+		jobMembers = null;
+		metrics = new CommandMetrics();
+	}
+	
+	/**
+	 * Creates the handler of a background job, which sees the current dictionary of another handler as it is now. It shares the other handler's
+	 * notifier, workers and latencies, and has its own copy of the current dictionary's file and statistics.
+	 * 
+	 * @param parent handler that started the job
+	 */
+	private CommandHandler(final CommandHandler parent) {
+		notifier = parent.notifier;
+		workers = parent.workers;
+		jobThreads = null;
+		jobMembers = parent.workspace.members();
+		metrics = parent.metrics;
+		
+		openDictionary = parent.openDictionary;
+		dictionaryPath = parent.dictionaryPath;
+		statistics = parent.statistics;
+		datesEnabled = parent.datesEnabled;
+	}
+	
+	/**
+	 * Creates daemon threads for {@link CommandHandler#workers} and {@link CommandHandler#jobThreads}, so that unfinished background work never
+	 * keeps the program alive after {@link CommandHandler#shutdown(long)} gives up waiting.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class WorkerThreadFactory implements ThreadFactory {
+		
+		/**
+		 * Number of threads created so far, used to name new threads
+		 */
+		private final AtomicInteger threadCount = new AtomicInteger();
+		
+		/**
+		 * Start of the name of every thread
+		 */
+		private final String prefix;
+		
+		/**
+		 * Creates a factory for threads named with a prefix and a number.
+		 * 
+		 * @param _prefix start of the name of every thread
+		 */
+		WorkerThreadFactory(final String _prefix) {
+			prefix = _prefix;
+		}
+		
+		@Override
+		public final Thread newThread(final Runnable task) {
+			final Thread thread = new Thread(task, prefix + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	/**
+	 * Stops accepting background work and waits for any background work that is still running (such as a job or a <code>statsdump</code>)
+	 * to finish. Jobs are finished first, since they may give work to the workers.
+	 * 
+	 * @param timeoutMillis maximum time to wait, in milliseconds
+	 * @return true if all background work finished in time
+	 */
+	public final boolean shutdown(final long timeoutMillis) {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		jobThreads.shutdown();
+		
+		try {
+			final boolean jobsFinished = jobThreads.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+			workers.shutdown();
+			
+			return workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) && jobsFinished;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Starts recording every command received by {@link #receive(String, CommandOutput)} to a command log, which can be replayed by
+	 * {@link com.dezzy.dictionary.loadtest.LoadTester}. Replaces any previous recorder without closing it.
+	 * 
+	 * @param _recorder recorder to use, or null to stop recording
+	 */
+	public final void setRecorder(final CommandLog.Recorder _recorder) {
+		recorder = _recorder;
+	}
+	
+	/**
+	 * Receives an unformatted input string, parses it into a command/argument pair, tries to execute the command, and returns a status string.
+	 * The whole result is built in memory; use {@link #receive(String, CommandOutput)} to write it to a stream instead.
+	 *
+	 * @param commandString unformatted input string
+	 * @return status string
+	 */
+	public final String receive(final String commandString) {
+		final StringBuilder sb = new StringBuilder();
+		receive(commandString, new CommandOutput(sb));
+		return sb.toString();
+	}
+	
+	/**
+	 * Receives an unformatted input string, parses it into a command/argument pair, tries to execute the command, and writes the result
+	 * to an output. If the input string starts with <code>&</code>, the command is started as a background job instead.
+	 * Does not call {@link CommandOutput#finish()}.
+	 *
+	 * @param commandString unformatted input string
+	 * @param out where to write the result
+	 * @return status of the command
+	 */
+	public final CommandOutput.Status receive(final String commandString, final CommandOutput out) {
+		if (recorder != null) {
+			try {
+				recorder.record(commandString);
+			} catch (IOException e) {
+				e.printStackTrace();
+				recorder = null;
+				notifier.accept("ERROR: Problem writing to the command log; recording has stopped!");
+			}
+		}
+		
+		final boolean background = commandString.startsWith("&");
+		final String input = background ? commandString.substring(1).trim() : commandString;
+		String command = input;
+		String arg = "";
+		
+		if (input.contains(" ")) {
+			command = input.substring(0, input.indexOf(" ")).toLowerCase();
+			arg = input.substring(input.indexOf(" ") + 1);
+		}
+		
+		if (background) {
+			startJob(command, arg, out);
+			return out.status();
+		}
+		
+		return receive(command, arg, out);
+	}
+	
+	/**
+	 * Receives a command and its argument, executes the command, and returns a status string.
+	 *
+	 * @param command lowercase command name
+	 * @param arg command argument
+	 * @return status string
+	 */
+	public final String receive(final String command, final String arg) {
+		final StringBuilder sb = new StringBuilder();
+		receive(command, arg, new CommandOutput(sb));
+		return sb.toString();
+	}
+	
+	/**
+	 * Receives a command and its argument, executes the command, and writes the result to an output.
+	 * The time taken by the command is recorded for <code>perfstats</code> and as a flight recorder event.
+	 *
+	 * @param command lowercase command name
+	 * @param arg command argument
+	 * @param out where to write the result
+	 * @return status of the command
+	 */
+	public final CommandOutput.Status receive(final String command, final String arg, final CommandOutput out) {
+		final CommandEvent event = new CommandEvent();
+		event.begin();
+		final long start = System.nanoTime();
+		
+		try {
+			dispatch(command, arg, out);
+		} catch (IllegalStateException | UncheckedIOException e) {
+			e.printStackTrace();
+			out.error(e.getMessage());
+		}
+		
+		metrics.record(command, System.nanoTime() - start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.command = command;
+			event.argumentLength = arg.length();
+			event.error = out.status() == CommandOutput.Status.ERROR;
+			event.commit();
+		}
+		
+		return out.status();
+	}
+	
+	/**
+	 * Executes a command and writes its result.
+	 *
+	 * @param command lowercase command name
+	 * @param arg command argument
+	 * @param out where to write the result
+	 */
+	private final void dispatch(final String command, final String arg, final CommandOutput out) {
+		switch (command) {
+			case "open":
+				openDictionary(arg, out);
+				break;
+			case "create":
+				createDictionary(arg, out);
+				break;
+			case "save":
+				save(arg, out);
+				break;
+			case "weakdefine":
+				newDefinition(false, arg, out);
+				break;
+			case "strongdefine":
+				newDefinition(true, arg, out);
+				break;
+			case "enabledates":
+				setDatesEnabled(true, out);
+				break;
+			case "disabledates":
+				setDatesEnabled(false, out);
+				break;
+			case "printstats":
+				printStatistics(arg, out);
+				break;
+			case "statsdump":
+				saveStatisticsTo(arg, out);
+				break;
+			case "changedate":
+				changeDate(arg, out);
+				break;
+			case "remove":
+				removeDefinition(arg, out);
+				break;
+			case "find":
+				if (arg.startsWith("--all ")) {
+					findInWorkspace(arg.substring(6), out);
+				} else {
+					findDefinition(arg, out);
+				}
+				break;
+			case "print":
+				printDictionary(arg, out);
+				break;
+			case "printto":
+				saveDefinitionsTo(arg, out);
+				break;
+			case "search":
+				if (arg.startsWith("--all ")) {
+					searchWorkspace(arg.substring(6), out);
+				} else {
+					searchAll(arg, out);
+				}
+				break;
+			case "next":
+				nextPage(out);
+				break;
+			case "page":
+				page(arg, out);
+				break;
+			case "rank":
+				rank(arg, out);
+				break;
+			case "refs":
+				references(arg, out);
+				break;
+			case "links":
+				links(arg, out);
+				break;
+			case "orphans":
+				orphans(out);
+				break;
+			case "duplicates":
+				duplicates(arg, out);
+				break;
+			case "cancel":
+				cancel(arg, out);
+				break;
+			case "jobs":
+				listJobs(out);
+				break;
+			case "wait":
+				waitForJobs(arg, out);
+				break;
+			case "close":
+				close(out);
+				break;
+			case "use":
+				use(arg, out);
+				break;
+			case "workspace":
+				stashCurrent();
+				out.line(workspace.toString());
+				break;
+			case "perfstats":
+				perfStats(arg, out);
+				break;
+			case "loadstatus":
+				loadStatus(out);
+				break;
+			case "storagestats":
+				storageStats(out);
+				break;
+			case "replicate":
+				replicate(arg, out);
+				break;
+			case "replicas":
+				replicas(out);
+				break;
+			default:
+				out.error("Invalid command!");
+		}
+	}
+	
+	/**
+	 * Checks that a dictionary is open, and writes an error if not.
+	 *
+	 * @param out where to write the error
+	 * @return true if a dictionary is open
+	 */
+	private final boolean checkOpen(final CommandOutput out) {
+		if (openDictionary == null) {
+			out.error("No dictionary is open!");
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Prints the latency of every command type received so far, or clears the recorded latencies.
+	 *
+	 * @param arg the empty string to print latencies, or "reset" to clear them
+	 * @param out where to write the latency table, or status
+	 */
+	private final void perfStats(final String arg, final CommandOutput out) {
+		if (arg.isEmpty()) {
+			out.line(metrics.toString());
+		} else if (arg.equalsIgnoreCase("reset")) {
+			metrics.reset();
+			out.line("Cleared command latencies");
+		} else {
+			out.error("Invalid perfstats argument!");
+		}
+	}
+	
+	/**
+	 * Saves new statistics to a directory. Creates several files in the specified directory
+	 * including histograms and a printout of dictionary statistics. The statistics are generated on the command thread,
+	 * but the files are rendered and written in the background; progress is reported to the notifier.
+	 *
+	 * @param path path of a directory
+	 * @param out where to write the status
+	 */
+	private final void saveStatisticsTo(final String directory, final CommandOutput out) {
+		if (directory.trim().isEmpty()) {
+			out.error("Directory must be specified!");
+			return;
+		} else if (!checkOpen(out)) {
+			return;
+		}
+		
+		statistics = new Statistics(openDictionary);
+		new StatisticsExport(statistics, statistics.toString(), directory, notifier).start(workers);
+		
+		out.line("Saving statistics to \"" + directory + "\" folder in the background");
+	}
+	
+	/**
+	 * Prints statistics for the dictionary.
+	 *
+	 * @param versionArg either "new" or "current" to specify new statistics or previously generated statistics <br>
+	 * 					 using "current" with no generated statistics will generate a new statistics
+	 * @param out where to write the statistics of the dictionary, or status
+	 */
+	private final void printStatistics(final String versionArg, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		if (versionArg.equalsIgnoreCase("new")) {
+			statistics = new Statistics(openDictionary);
+			
+			out.line(statistics.toString());
+		} else if (versionArg.equalsIgnoreCase("current")) {
+			if (statistics == null) {
+				statistics = new Statistics(openDictionary);
+			}
+			
+			out.line(statistics.toString());
+		} else {
+			out.error("Invalid version argument!");
+		}
+	}
+	
+	/**
+	 * Sets the flag that determines if date arguments will be accepted in strongdefine/weakdefine invocations.
+	 * If date arguments are disabled, the current date will be used when entering a new definition.
+	 *
+	 * @param enabled true if date arguments should be enabled
+	 * @param out where to write the status
+	 */
+	private final void setDatesEnabled(final boolean enabled, final CommandOutput out) {
+		datesEnabled = enabled;
+		out.line(enabled ? "Enabled date arguments" : "Disabled date arguments");
+	}
+	
+	/**
+	 * Changes the entry date of an existing definition.
+	 *
+	 * @param arg argument string, formatted as such: <code>MM:dd:yyyy:hh:mm word</code>, where "word" is the entry whose entry date to change
+	 * @param out where to write the status
+	 */
+	private final void changeDate(final String arg, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		if (!arg.contains(" ")) {
+			out.error("Invalid date or definition argument!");
+			return;
+		}
+		final String dateString = arg.substring(0, arg.indexOf(" "));
+		final String word = arg.substring(arg.indexOf(" ") + 1);
+		Date date;
+		
+		try {
+			date = parseDate(dateString);
+		} catch (DateTimeParseException e) {
+			out.error("Date string is formatted incorrectly!");
+			return;
+		}
+		
+		final Optional<Date> oldDate = openDictionary.changeEntryDate(word, date);
+		if (oldDate.isEmpty()) {
+			out.error("No definition for \"" + word + "\" exists in the dictionary!");
+			return;
+		}
+		
+		out.line("Changed entry date for \"" + word + "\" from " + formatDate(DATE_ARG_FORMAT, oldDate.get()) + " to " + dateString);
+	}
+	
+	/**
+	 * Parses a date argument in the system time zone.
+	 *
+	 * @param dateString date argument, formatted as <code>MM:dd:yyyy:HH:mm</code>
+	 * @return the date
+	 * @throws DateTimeParseException if the date argument is malformed
+	 */
+	private static final Date parseDate(final String dateString) {
+		return Date.from(LocalDateTime.parse(dateString, DATE_ARG_PARSER).atZone(ZoneId.systemDefault()).toInstant());
+	}
+	
+	/**
+	 * Formats a date in the system time zone.
+	 *
+	 * @param format date format
+	 * @param date date to format
+	 * @return formatted date
+	 */
+	private static final String formatDate(final DateTimeFormatter format, final Date date) {
+		return format.format(LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()));
+	}
+	
+	/**
+	 * Searches the dictionary for a given regular expression string and lists the first page of results; <code>next</code> and <code>page</code>
+	 * list the others. The search is limited by a {@link SearchBudget#standard() standard budget}, and can be stopped with <code>cancel</code>;
+	 * if it is stopped, the results found so far are listed.
+	 *
+	 * @param searchRegex search expression
+	 * @param out where to write the first page of results, or status
+	 */
+	private final void searchAll(final String searchRegex, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		try {
+			Pattern.compile(searchRegex);
+		} catch (PatternSyntaxException e) {
+			out.error("Invalid search expression!");
+			return;
+		}
+		
+		final SearchBudget budget = SearchBudget.standard();
+		
+		searchCursor = null;
+		runningSearches.add(budget);
+		try {
+			searchCursor = openDictionary.searchCursor(searchRegex, budget, Dictionary.SearchEngine.DEFAULT, SearchCursor.DEFAULT_PAGE_SIZE);
+		} finally {
+			runningSearches.remove(budget);
+		}
+		
+		if (searchCursor.size() == 0) {
+			out.line(budget.exhausted() ? "No results found before the search " + budget.stopReason() : "No results");
+			return;
+		}
+		
+		printPage(0, out);
+	}
+	
+	/**
+	 * Lists the page of search results after the last one listed.
+	 *
+	 * @param out where to write the results, or status
+	 */
+	private final void nextPage(final CommandOutput out) {
+		if (!checkSearchCursor(out)) {
+			return;
+		} else if (!searchCursor.hasNext()) {
+			out.line("No more results");
+			return;
+		}
+		
+		printPage(searchCursor.nextPageIndex(), out);
+	}
+	
+	/**
+	 * Lists one page of search results.
+	 *
+	 * @param pageArg page number, from 1
+	 * @param out where to write the results, or status
+	 */
+	private final void page(final String pageArg, final CommandOutput out) {
+		if (!checkSearchCursor(out)) {
+			return;
+		}
+		
+		final int page;
+		try {
+			page = Integer.parseInt(pageArg.trim());
+		} catch (NumberFormatException e) {
+			out.error("Invalid page number!");
+			return;
+		}
+		
+		if (page < 1 || page > searchCursor.pageCount()) {
+			out.error("There " + ((searchCursor.pageCount() == 1) ? "is only 1 page!" : "are only " + searchCursor.pageCount() + " pages!"));
+			return;
+		}
+		
+		printPage(page - 1, out);
+	}
+	
+	/**
+	 * Checks that there are search results of the current dictionary to list, and that the dictionary has not changed since it was searched.
+	 *
+	 * @param out where to write the error
+	 * @return true if the results can be listed
+	 */
+	private final boolean checkSearchCursor(final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return false;
+		} else if (searchCursor == null || searchCursor.dictionary != openDictionary || searchCursor.size() == 0) {
+			out.error("There are no search results to list!");
+			return false;
+		} else if (!searchCursor.valid()) {
+			searchCursor = null;
+			out.error("The dictionary has changed since it was searched; search again!");
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Lists one page of the results in {@link #searchCursor}.
+	 *
+	 * @param index index of the page, from 0
+	 * @param out where to write the results
+	 */
+	private final void printPage(final int index, final CommandOutput out) {
+		final List<SearchResult> results = searchCursor.page(index);
+		final int pageCount = searchCursor.pageCount();
+		
+		String count = searchCursor.size() + "";
+		if (pageCount > 1) {
+			count += "; page " + (index + 1) + " of " + pageCount;
+		}
+		
+		out.line(resultsHeader(count, searchCursor.stopReason())).line("");
+		for (SearchResult result : results) {
+			out.line(result.definitionString);
+		}
+		
+		if (searchCursor.hasNext()) {
+			out.line("").line("Type 'next' or 'page [number]' for more results");
+		}
+	}
+	
+	/**
+	 * Returns the first line of a list of search results, which says if the search was stopped before it finished.
+	 *
+	 * @param count number of results, and where they are from
+	 * @param stopReason why the search stopped before it finished (see {@link SearchBudget#stopReason()}), or null if it finished
+	 * @return the header
+	 */
+	private static final String resultsHeader(final String count, final String stopReason) {
+		if (stopReason != null) {
+			return "Partial results (" + count + "; the search " + stopReason + "):";
+		}
+		
+		return "Results (" + count + "):";
+	}
+	
+	/**
+	 * Stops every running search, including the searches of background jobs, or stops one job; each search lists the results it found so far.
+	 * Unlike other commands, this can be received from another thread while a command is running.
+	 * 
+	 * @param jobArg number of the job to stop, or the empty string to stop every search
+	 * @param out where to write the status
+	 */
+	private final void cancel(final String jobArg, final CommandOutput out) {
+		if (!jobArg.isBlank()) {
+			cancelJob(jobArg, out);
+			return;
+		}
+		
+		int cancelled = cancelSearches();
+		for (final Job job : jobs.values()) {
+			cancelled += job.handler.cancelSearches();
+		}
+		
+		out.line((cancelled == 0) ? "No search is running" : "Cancelled " + cancelled + " search" + ((cancelled == 1) ? "" : "es"));
+	}
+	
+	/**
+	 * Stops the searches that this handler is running.
+	 * 
+	 * @return number of searches stopped
+	 */
+	private final int cancelSearches() {
+		int cancelled = 0;
+		
+		for (final SearchBudget budget : runningSearches) {
+			if (!budget.exhausted()) {
+				budget.cancel();
+				cancelled++;
+			}
+		}
+		
+		return cancelled;
+	}
+	
+	/**
+	 * A command running in the background, on its own {@link CommandHandler} that sees the current dictionary as it was when the job started.
+	 * The job's result is kept until it is waited for.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Job {
+		
+		/**
+		 * Number of the job, shown by <code>jobs</code>
+		 */
+		final int id;
+		
+		/**
+		 * Lowercase command name
+		 */
+		final String command;
+		
+		/**
+		 * Command argument
+		 */
+		final String arg;
+		
+		/**
+		 * Handler that runs the command
+		 */
+		final CommandHandler handler;
+		
+		/**
+		 * File of the current dictionary when the job started, to tell if the job changed it
+		 */
+		final String startPath;
+		
+		/**
+		 * Statistics of the current dictionary when the job started, to tell if the job changed them
+		 */
+		final Statistics startStatistics;
+		
+		/**
+		 * Result of the command, complete once the job is done
+		 */
+		private final StringBuilder text = new StringBuilder();
+		
+		/**
+		 * Output that the command writes to
+		 */
+		final CommandOutput output = new CommandOutput(text);
+		
+		/**
+		 * Set when the job starts running, or when it is cancelled before that
+		 */
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		
+		/**
+		 * Value of {@link System#nanoTime()} when the job was started or started running
+		 */
+		private volatile long startNanos = System.nanoTime();
+		
+		/**
+		 * Value of {@link System#nanoTime()} when the job finished
+		 */
+		private volatile long endNanos;
+		
+		/**
+		 * Completes with the status of the command when the job is done
+		 */
+		private CompletableFuture<CommandOutput.Status> future;
+		
+		/**
+		 * Creates a job. It does not run until {@link #start(Executor, Consumer)} is called.
+		 * 
+		 * @param _id number of the job
+		 * @param _command lowercase command name
+		 * @param _arg command argument
+		 * @param _handler handler that runs the command
+		 */
+		Job(final int _id, final String _command, final String _arg, final CommandHandler _handler) {
+			id = _id;
+			command = _command;
+			arg = _arg;
+			handler = _handler;
+			startPath = handler.dictionaryPath;
+			startStatistics = handler.statistics;
+		}
+		
+		/**
+		 * Runs the command in the background. The notifier is told when the command finishes.
+		 * 
+		 * @param executor runs the command
+		 * @param notifier receives a message when the job finishes
+		 */
+		final void start(final Executor executor, final Consumer<String> notifier) {
+			future = CompletableFuture.supplyAsync(() -> {
+				if (!claimed.compareAndSet(false, true)) {
+					throw new CancellationException();
+				}
+				
+				startNanos = System.nanoTime();
+				try {
+					return handler.receive(command, arg, output);
+				} finally {
+					endNanos = System.nanoTime();
+				}
+			}, executor);
+			
+			future.whenComplete((status, error) -> {
+				if (error == null) {
+					notifier.accept("Job " + id + " (" + commandString() + ") " + ((status == CommandOutput.Status.ERROR) ? "failed" : "finished")
+							+ " after " + elapsed() + "; type 'wait " + id + "' to see the result");
+				} else if (!(error instanceof CancellationException)) {
+					notifier.accept("ERROR: Job " + id + " (" + commandString() + ") failed: " + error.getCause());
+				}
+			});
+		}
+		
+		/**
+		 * Cancels the job if it has not started running.
+		 * 
+		 * @return true if the job was cancelled, false if it has started
+		 */
+		final boolean cancelBeforeStart() {
+			if (!claimed.compareAndSet(false, true)) {
+				return false;
+			}
+			
+			endNanos = System.nanoTime();
+			future.cancel(false);
+			return true;
+		}
+		
+		/**
+		 * Waits until the job is done.
+		 */
+		final void await() {
+			try {
+				future.join();
+			} catch (CompletionException | CancellationException e) {
+				//The result says how the job ended
+			}
+		}
+		
+		/**
+		 * Returns true if the job is done, whether it finished, failed or was cancelled.
+		 * 
+		 * @return true if the job is done
+		 */
+		final boolean isDone() {
+			return future.isDone();
+		}
+		
+		/**
+		 * Describes what the job is doing.
+		 * 
+		 * @return "waiting", "running", "finished", "failed" or "cancelled"
+		 */
+		final String state() {
+			if (future.isCancelled()) {
+				return "cancelled";
+			} else if (future.isDone()) {
+				return (future.isCompletedExceptionally() || output.status() == CommandOutput.Status.ERROR) ? "failed" : "finished";
+			}
+			
+			return claimed.get() ? "running" : "waiting";
+		}
+		
+		/**
+		 * Returns how long the job has been waiting or running, or how long it ran if it is done.
+		 * 
+		 * @return time in seconds, like "1.2 s"
+		 */
+		final String elapsed() {
+			final long end = future.isDone() ? endNanos : System.nanoTime();
+			return String.format("%.1f s", (end - startNanos) / 1e9);
+		}
+		
+		/**
+		 * Describes how far a running job has got. Only searches report progress.
+		 * 
+		 * @return the number of search steps taken so far, or the empty string if the job is not searching
+		 */
+		final String progress() {
+			long steps = 0;
+			for (final SearchBudget budget : handler.runningSearches) {
+				steps += budget.steps();
+			}
+			
+			return (steps == 0) ? "" : String.format(" (%,d search steps so far)", steps);
+		}
+		
+		/**
+		 * Returns the command as it was entered, without the <code>&</code>.
+		 * 
+		 * @return the command and its argument
+		 */
+		final String commandString() {
+			return arg.isEmpty() ? command : command + " " + arg;
+		}
+		
+		/**
+		 * Writes the result of the job, which must be done.
+		 * 
+		 * @param out where to write the result
+		 */
+		final void writeResult(final CommandOutput out) {
+			if (future.isCancelled()) {
+				out.line("Job " + id + " was cancelled before it started");
+			} else if (future.isCompletedExceptionally()) {
+				try {
+					future.join();
+				} catch (CompletionException e) {
+					e.printStackTrace();
+					out.error("Job " + id + " failed: " + e.getCause());
+				}
+			} else {
+				out.line(text);
+				if (output.status() == CommandOutput.Status.ERROR) {
+					out.fail();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Starts a command as a background job, against the current dictionary as it is now.
+	 * 
+	 * @param command lowercase command name
+	 * @param arg command argument
+	 * @param out where to write the status
+	 */
+	private final void startJob(final String command, final String arg, final CommandOutput out) {
+		if (command.isEmpty()) {
+			out.error("No command to run in the background!");
+			return;
+		} else if (FOREGROUND_COMMANDS.contains(command)) {
+			out.error("'" + command + "' cannot run in the background!");
+			return;
+		}
+		
+		final Job job = new Job(++lastJobId, command, arg, new CommandHandler(this));
+		job.start(jobThreads, notifier);
+		jobs.put(job.id, job);
+		
+		out.line("Started job " + job.id + ": " + job.commandString());
+	}
+	
+	/**
+	 * Lists the background jobs that have not been waited for, with what they are doing and for how long. Unlike most commands, this can be received
+	 * from another thread while a command is running.
+	 * 
+	 * @param out where to write the list
+	 */
+	private final void listJobs(final CommandOutput out) {
+		final List<Job> list = new ArrayList<Job>(jobs.values());
+		
+		if (list.isEmpty()) {
+			out.line("No jobs");
+			return;
+		}
+		
+		boolean done = false;
+		out.line("Jobs (" + list.size() + "):").line("");
+		for (final Job job : list) {
+			final String state = job.state();
+			done |= job.isDone();
+			
+			out.line("[" + job.id + "] " + state + ((state.equals("waiting") || state.equals("running")) ? " for " : " after ") + job.elapsed() + ": "
+					+ job.commandString() + job.progress());
+		}
+		
+		if (done) {
+			out.line("").line("Type 'wait [job]' to see the result of a job");
+		}
+	}
+	
+	/**
+	 * Waits for one background job, or all of them, to finish, and lists their results. A job is forgotten once it has been waited for.
+	 * If a job ran on the dictionary that is current now, its search results can be listed with <code>next</code> and <code>page</code>,
+	 * and the file and statistics it left become the current dictionary's.
+	 * 
+	 * @param jobArg number of the job, or the empty string for every job
+	 * @param out where to write the results
 	 */
-	public CommandHandler() {
+	private final void waitForJobs(final String jobArg, final CommandOutput out) {
+		if (jobArg.isBlank()) {
+			final List<Job> list = new ArrayList<Job>(jobs.values());
+			
+			if (list.isEmpty()) {
+				out.line("No jobs");
+				return;
+			}
+			
+			for (int i = 0; i < list.size(); i++) {
+				if (i > 0) {
+					out.line("");
+				}
+				out.line("Job " + list.get(i).id + " (" + list.get(i).commandString() + "):").line("");
+				finishJob(list.get(i), out);
+			}
+			return;
+		}
 		
+		final Job job = findJob(jobArg, out);
+		if (job != null) {
+			finishJob(job, out);
+		}
 	}
 	
 	/**
-	 * Receives an unformatted input string, parses it into a command/argument pair, tries to execute the command, and returns a status string.
+	 * Waits for a job to finish, lists its result, keeps its state if it ran on the current dictionary, and forgets it.
 	 * 
-	 * @param commandString unformatted input string
-	 * @return status string
+	 * @param job job to finish
+	 * @param out where to write the result
 	 */
-	public final String receive(final String commandString) {
-		String command = commandString;
-		String arg = "";
+	private final void finishJob(final Job job, final CommandOutput out) {
+		job.await();
+		jobs.remove(job.id);
+		job.writeResult(out);
 		
-		if (commandString.contains(" ")) {
-			command = commandString.substring(0, commandString.indexOf(" ")).toLowerCase();
-			arg = commandString.substring(commandString.indexOf(" ") + 1);
+		final CommandHandler handler = job.handler;
+		if (handler.openDictionary != openDictionary) {
+			return;
 		}
 		
-		return receive(command, arg);
+		if (handler.searchCursor != null) {
+			searchCursor = handler.searchCursor;
+		}
+		if (handler.dictionaryPath != job.startPath) {
+			dictionaryPath = handler.dictionaryPath;
+		}
+		if (handler.statistics != job.startStatistics) {
+			statistics = handler.statistics;
+		}
 	}
 	
 	/**
-	 * Receives a command and its argument, executes the command, and returns a status string.
+	 * Stops a background job: a job that has not started does not run, and a running job stops searching and lists the results it found so far.
+	 * Other commands cannot be stopped partway.
 	 * 
-	 * @param command lowercase command name
-	 * @param arg command argument
-	 * @return status string
+	 * @param jobArg number of the job
+	 * @param out where to write the status
 	 */
-	public final String receive(final String command, final String arg) {
-		switch (command) {
-			case "open":
-				return openDictionary(arg);
-			case "create":
-				return createDictionary(arg);
-			case "save":
-				return save(arg);
-			case "weakdefine":
-				return newDefinition(false, arg);
-			case "strongdefine":
-				return newDefinition(true, arg);
-			case "enabledates":
-				return setDatesEnabled(true);
-			case "disabledates":
-				return setDatesEnabled(false);
-			case "printstats":
-				return printStatistics(arg);
-			case "statsdump":
-				return saveStatisticsTo(arg);
-			case "changedate":
-				return changeDate(arg);
-			case "remove":
-				return removeDefinition(arg);
-			case "find":
-				return findDefinition(arg);
-			case "print":
-				return printDictionary(arg);
-			case "printto":
-				return saveDefinitionsTo(arg);
-			case "search":
-				return searchAll(arg);
-			case "close":
-				return close();
-			default:
-				return "ERROR: Invalid command!";
+	private final void cancelJob(final String jobArg, final CommandOutput out) {
+		final Job job = findJob(jobArg, out);
+		
+		if (job == null) {
+			return;
+		} else if (job.isDone()) {
+			out.line("Job " + job.id + " has already finished");
+		} else if (job.cancelBeforeStart()) {
+			out.line("Cancelled job " + job.id);
+		} else if (job.handler.cancelSearches() > 0) {
+			out.line("Cancelled job " + job.id + "; type 'wait " + job.id + "' to see the results it found");
+		} else {
+			out.error("Job " + job.id + " (" + job.commandString() + ") cannot be stopped partway; it will finish by itself");
 		}
 	}
 	
 	/**
-	 * Saves the current statistics to a directory. Creates several files in the specified directory 
-	 * including histograms and a printout of dictionary statistics.
+	 * Finds a background job that has not been waited for.
 	 * 
-	 * @param path path of a directory
-	 * @return status string
+	 * @param jobArg number of the job
+	 * @param out where to write an error if there is no such job
+	 * @return the job, or null
 	 */
-	private final String saveStatisticsTo(final String directory) {
-		final String stats = printStatistics("new");
-		
-		if (stats.startsWith("ERROR")) {
-			return stats;
+	private final Job findJob(final String jobArg, final CommandOutput out) {
+		final int id;
+		try {
+			id = Integer.parseInt(jobArg.trim());
+		} catch (NumberFormatException e) {
+			out.error("Invalid job number!");
+			return null;
 		}
 		
-		if (directory.trim().isEmpty()) {
-			return "ERROR: Directory must be specified!";
+		final Job job = jobs.get(id);
+		if (job == null) {
+			out.error("There is no job " + id + "!");
 		}
 		
-		final Histogram rawTimeDifferencesHist = new Histogram(statistics.timeDifferences);
-		final Histogram timeDifferencesNoOutliersHist = new Histogram(statistics.timeDifferences.copyNoOutliers());
-		try {
-			rawTimeDifferencesHist.saveTo(directory + File.separator + "raw-time-differences.png", "png");
-			timeDifferencesNoOutliersHist.saveTo(directory + File.separator + "time-differences-no-outliers.png", "png");
-		} catch (Exception e) {
-			return "ERROR: Problem saving time differences histograms!";
+		return job;
+	}
+	
+	/**
+	 * Ranks the entries of the dictionary by how relevant they are to some query terms, and lists the best ones with their scores.
+	 *
+	 * @param query query terms
+	 * @param out where to write the results, or status
+	 */
+	private final void rank(final String query, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
-		try (PrintWriter pw = new PrintWriter(new FileWriter(new File(directory + File.separator + "stats.txt")))) {
-			pw.print(stats);
-		} catch (Exception e) {
-			e.printStackTrace();
-			return "ERROR: Problem occurred while trying to write to text file!";
+		final List<RankedResult> results = openDictionary.rank(query, RANK_RESULTS);
+		
+		if (results.isEmpty()) {
+			out.line("No results");
+			return;
 		}
 		
-		return "Saved statistics to \"" + directory + "\" folder";
+		out.line("Top results (" + results.size() + "):").line("");
+		for (RankedResult result : results) {
+			out.line(String.format("[%.2f] ", result.score)).append(result.definitionString);
+		}
 	}
 	
 	/**
-	 * Prints statistics for the dictionary.
-	 * 
-	 * @param versionArg either "new" or "current" to specify new statistics or previously generated statistics <br>
-	 * 					 using "current" with no generated statistics will generate a new statistics
-	 * @return String containing the statistics of the dictionary, or a status string
+	 * Lists the entries whose definitions refer to a word/phrase.
+	 *
+	 * @param word word/phrase
+	 * @param out where to write the words/phrases, or status
 	 */
-	private final String printStatistics(final String versionArg) {
-		if (openDictionary == null) {
-			return "ERROR: No dictionary is open!"; 
+	private final void references(final String word, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
-		if (versionArg.equalsIgnoreCase("new")) {
-			statistics = new Statistics(openDictionary);
-			
-			return statistics.toString();
-		} else if (versionArg.equalsIgnoreCase("current")) {
-			if (statistics == null) {
-				statistics = new Statistics(openDictionary);
-			}
-			
-			return statistics.toString();
-		} else {
-			return "ERROR: Invalid version argument!";
+		final List<String> sources = openDictionary.referencesTo(word);
+		
+		if (sources.isEmpty()) {
+			out.line("No entries refer to \"" + word + "\"");
+			return;
 		}
+		
+		listWords("Entries that refer to \"" + word + "\" (" + sources.size() + "):", sources, out);
 	}
 	
 	/**
-	 * Sets the flag that determines if date arguments will be accepted in strongdefine/weakdefine invocations.
-	 * If date arguments are disabled, the current date will be used when entering a new definition.
-	 * 
-	 * @param enabled true if date arguments should be enabled
-	 * @return status string
+	 * Lists the entries that the definition of a word/phrase refers to.
+	 *
+	 * @param word word/phrase
+	 * @param out where to write the words/phrases, or status
 	 */
-	private final String setDatesEnabled(final boolean enabled) {
-		datesEnabled = enabled;
-		return enabled ? "Enabled date arguments" : "Disabled date arguments";
+	private final void links(final String word, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		final Optional<List<String>> targets = openDictionary.referencesFrom(word);
+		
+		if (!targets.isPresent()) {
+			out.line("No definition exists for \"" + word + "\"");
+		} else if (targets.get().isEmpty()) {
+			out.line("\"" + word + "\" does not refer to any entries");
+		} else {
+			listWords("Entries that \"" + word + "\" refers to (" + targets.get().size() + "):", targets.get(), out);
+		}
 	}
 	
 	/**
-	 * Changes the entry date of an existing definition.
-	 * 
-	 * @param arg argument string, formatted as such: <code>MM:dd:yyyy:hh:mm word</code>, where "word" is the entry whose entry date to change
-	 * @return status string
+	 * Lists the entries that no other definition refers to.
+	 *
+	 * @param out where to write the words/phrases, or status
 	 */
-	private final String changeDate(final String arg) {
-		if (openDictionary == null) {
-			return "ERROR: No dictionary is open!"; 
+	private final void orphans(final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
-		if (!arg.contains(" ")) {
-			return "ERROR: Invalid date or definition argument!";
+		final List<String> orphans = openDictionary.orphans();
+		
+		if (orphans.isEmpty()) {
+			out.line("Every entry is referred to by another entry");
+			return;
+		}
+		
+		listWords("Entries that no other entry refers to (" + orphans.size() + "):", orphans, out);
+	}
+	
+	/**
+	 * Lists the pairs of entries whose definitions are nearly the same, most similar first. The search runs on the worker pool.
+	 *
+	 * @param thresholdArg lowest similarity from 0 to 1, or the empty string for {@link #DUPLICATE_THRESHOLD}
+	 * @param out where to write the pairs, or status
+	 */
+	private final void duplicates(final String thresholdArg, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
-		final String dateString = arg.substring(0, arg.indexOf(" "));
-		final String word = arg.substring(arg.indexOf(" ") + 1);
-		Date date;
 		
+		final double threshold;
 		try {
-			date = DATE_ARG_FORMAT.parse(dateString);
-		} catch (ParseException e) {
-			return "ERROR: Date string is formatted incorrectly!";
+			threshold = thresholdArg.isBlank() ? DUPLICATE_THRESHOLD : Double.parseDouble(thresholdArg.trim());
+		} catch (NumberFormatException e) {
+			out.error("Invalid threshold!");
+			return;
 		}
 		
-		final Optional<Definition> oldDefinition = openDictionary.getDefinition(word);
-		if (oldDefinition.isEmpty()) {
-			return "ERROR: No definition for \"" + word + "\" exists in the dictionary!";
+		if (!(threshold > 0 && threshold <= 1)) {
+			out.error("The threshold must be greater than 0 and at most 1!");
+			return;
 		}
 		
-		final Date oldDate = oldDefinition.get().changeEntryDate(date);
+		final List<Dictionary.DuplicatePair> pairs = openDictionary.duplicates(threshold, workers);
 		
-		return "Changed entry date for \"" + word + "\" from " + DATE_ARG_FORMAT.format(oldDate) + " to " + dateString;
+		if (pairs.isEmpty()) {
+			out.line("No definitions are at least " + Math.round(threshold * 100) + "% similar");
+			return;
+		}
+		
+		out.line("Nearly identical definitions (" + pairs.size() + " pairs):").line("");
+		for (Dictionary.DuplicatePair pair : pairs) {
+			out.line(String.format("[%.2f] ", pair.similarity)).append("\"").append(pair.first).append("\" and \"").append(pair.second).append("\"");
+		}
 	}
 	
 	/**
-	 * Searches the dictionary for a given regular expression string.
-	 * 
+	 * Writes a list of words/phrases under a header, one per line.
+	 *
+	 * @param header first line
+	 * @param words words/phrases
+	 * @param out where to write the header and the words/phrases
+	 */
+	private static final void listWords(final String header, final List<String> words, final CommandOutput out) {
+		out.line(header).line("");
+		for (String word : words) {
+			out.line(word);
+		}
+	}
+	
+	/**
+	 * Searches every open dictionary for a regular expression. The dictionaries are searched and their results ranked in parallel on the worker pool;
+	 * the ranked results are then merged, so that they are sorted by relevancy and alphabetical order across all dictionaries. The searches share one
+	 * {@link SearchBudget#standard() standard budget}.
+	 *
 	 * @param searchRegex search expression
-	 * @return list of results (delimited by newlines), or status string
+	 * @param out where to write the results (each one preceded by the name of its dictionary), or status
 	 */
-	private final String searchAll(final String searchRegex) {
-		if (openDictionary == null) {
-			return "ERROR: No dictionary is open!"; 
+	private final void searchWorkspace(final String searchRegex, final CommandOutput out) {
+		final List<Workspace.Member> members = (jobMembers != null) ? jobMembers : workspace.members();
+		
+		if (members.isEmpty()) {
+			out.error("No dictionary is open!");
+			return;
 		}
 		
-		final List<SearchResult> results = openDictionary.searchAll(searchRegex);
-		Collections.sort(results, new Dictionary.AlphabeticalRelevancyComparator());
+		try {
+			Pattern.compile(searchRegex);
+		} catch (PatternSyntaxException e) {
+			out.error("Invalid search expression!");
+			return;
+		}
 		
-		final List<SearchResult> relevantResults = new ArrayList<SearchResult>();
+		final SearchBudget budget = SearchBudget.standard();
+		final List<CompletableFuture<List<SearchResult>>> searches = new ArrayList<CompletableFuture<List<SearchResult>>>();
 		
-		for (int i = results.size() - 1; i >= 0; i--) {
-			final SearchResult result = results.get(i);
-			if (result.score == 0) {
-				break;
-			} else {
-				relevantResults.add(result);
-			}
+		runningSearches.add(budget);
+		for (final Workspace.Member member : members) {
+			searches.add(CompletableFuture.supplyAsync(() -> member.dictionary.search(searchRegex, budget), workers));
 		}
 		
-		if (relevantResults.isEmpty()) {
-			return "No results";
+		final List<List<SearchResult>> ranked = new ArrayList<List<SearchResult>>();
+		int total = 0;
+		
+		try {
+			for (int i = 0; i < searches.size(); i++) {
+				try {
+					ranked.add(searches.get(i).join());
+				} catch (CompletionException | CancellationException e) {
+					e.printStackTrace();
+					budget.cancel();
+					out.error("Problem searching \"" + members.get(i).name + "\"!");
+					return;
+				}
+				total += ranked.get(i).size();
+			}
+		} finally {
+			runningSearches.remove(budget);
 		}
 		
-		final StringBuilder sb = new StringBuilder("Results (" + relevantResults.size() + "):" + System.lineSeparator());
-		for (SearchResult result : relevantResults) {
-			sb.append(System.lineSeparator() + result.definitionString);
+		if (total == 0) {
+			out.line(budget.exhausted() ? "No results found before the search " + budget.stopReason() : "No results");
+			return;
 		}
 		
-		return sb.toString();
+		final Comparator<SearchResult> byRelevancy = new Dictionary.AlphabeticalRelevancyComparator().reversed();
+		final int[] next = new int[ranked.size()];
+		out.line(resultsHeader(total + " in " + members.size() + " dictionaries", budget.stopReason())).line("");
+		
+		for (int count = 0; count < total; count++) {
+			int best = -1;
+			
+			for (int i = 0; i < ranked.size(); i++) {
+				if (next[i] < ranked.get(i).size() && (best < 0 || byRelevancy.compare(ranked.get(i).get(next[i]), ranked.get(best).get(next[best])) < 0)) {
+					best = i;
+				}
+			}
+			
+			out.line("[").append(members.get(best).name).append("] ").append(ranked.get(best).get(next[best]++).definitionString);
+		}
 	}
 	
 	/**
 	 * Attempts to remove a definition from the dictionary.
-	 * 
+	 *
 	 * @param word word/phrase to remove
-	 * @return status string
+	 * @param out where to write the status
 	 */
-	private final String removeDefinition(final String word) {
-		if (openDictionary == null) {
-			return "ERROR: No dictionary is open!"; 
+	private final void removeDefinition(final String word, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
 		try {
 			openDictionary.remove(word);
-			return "Removed \"" + word + "\" from the dictionary";
+			out.line("Removed \"" + word + "\" from the dictionary");
 		} catch (NullPointerException e) {
-			return "ERROR: No definition for \"" + word + "\" exists in the dictionary!";
+			out.error("No definition for \"" + word + "\" exists in the dictionary!");
 		}
 	}
 	
 	/**
 	 * Saves the entries and definitions in the dictionary to a text file.
-	 * 
+	 *
 	 * @param path path of the text file
-	 * @return status string
+	 * @param out where to write the status
 	 */
-	private final String saveDefinitionsTo(final String path) {
-		final String definitions = printDictionary("new");
-		
-		if (definitions.startsWith("ERROR")) {
-			return definitions;
+	private final void saveDefinitionsTo(final String path, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
-		try (PrintWriter pw = new PrintWriter(new FileWriter(new File(path)))) {
-			pw.print(definitions);
+		try (Writer writer = new BufferedWriter(new FileWriter(new File(path)))) {
+			openDictionary.print(writer);
 		} catch (Exception e) {
 			e.printStackTrace();
-			return "ERROR: Problem occurred while trying to write to text file!";
+			out.error("Problem occurred while trying to write to text file!");
+			return;
 		}
 		
-		return "Saved dictionary printout to \"" + path + "\"";
+		out.line("Saved dictionary printout to \"" + path + "\"");
 	}
 	
 	/**
-	 * Prints all entries in the dictionary (and their definitions), in alphabetical order.
-	 * 
-	 * @param versionArg either "new" or "current" to specify new definition list or previously generated one <br>
-	 * 					 using "current" with no generated definition list will generate a new one
-	 * @return String containing the name of the dictionary and all entries in it
+	 * Prints all entries in the dictionary (and their definitions), in alphabetical order. The entries are written to the output as they are read,
+	 * without building the whole printout in memory.
+	 *
+	 * @param versionArg "new" or "current"; both print the dictionary as it is now
+	 * @param out where to write the name of the dictionary and all entries in it, or status
 	 */
-	private final String printDictionary(final String versionArg) {
-		if (openDictionary == null) {
-			return "ERROR: No dictionary is open!"; 
+	private final void printDictionary(final String versionArg, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
-		if (versionArg.equals("new")) {
-			dictionaryText = openDictionary.toString();
-			
-			return dictionaryText;
-		} else if (versionArg.equals("current")) {
-			if (dictionaryText == null) {
-				dictionaryText = openDictionary.toString();
+		if (versionArg.equals("new") || versionArg.equals("current")) {
+			try {
+				openDictionary.print(out.startLine());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-			
-			return dictionaryText;
 		} else {
-			return "ERROR: Invalid version argument!";
+			out.error("Invalid version argument!");
 		}
 	}
 	
 	/**
-	 * Closes the current dictionary, if one is open (sets <code>openDictionary</code> to <code>null</code>).
-	 * 
-	 * @return status string
+	 * Closes the current dictionary, if one is open, and removes it from the workspace. Other open dictionaries stay open, but none is current
+	 * until <code>use</code> is called.
+	 *
+	 * @param out where to write the status
 	 */
-	private final String close() {
+	private final void close(final CommandOutput out) {
 		if (openDictionary == null) {
-			return "No dictionary is open!";
+			out.line("No dictionary is open!");
 		} else {
-			final String name = openDictionary.name;
-			openDictionary = null;
-			return "Closed \"" + name + "\"";
+			final String name = workspace.current().name;
+			workspace.remove(workspace.current());
+			restoreCurrent();
+			
+			if (workspace.size() == 0) {
+				out.line("Closed \"" + name + "\"");
+			} else {
+				out.line("Closed \"" + name + "\"; " + workspace.size() + " other dictionaries are still open (see workspace)");
+			}
+		}
+	}
+	
+	/**
+	 * Makes another open dictionary the current dictionary.
+	 *
+	 * @param name name of the dictionary in the workspace, as shown by <code>workspace</code>
+	 * @param out where to write the status
+	 */
+	private final void use(final String name, final CommandOutput out) {
+		stashCurrent();
+		
+		if (workspace.use(name) == null) {
+			out.error("No open dictionary is named \"" + name + "\"!");
+			return;
+		}
+		
+		restoreCurrent();
+		out.line("Now using \"" + name + "\"");
+	}
+	
+	/**
+	 * Saves the state of the current dictionary in its workspace member, so that it can be restored when the dictionary is current again.
+	 */
+	private final void stashCurrent() {
+		final Workspace.Member member = workspace.current();
+		
+		if (member != null) {
+			member.path = dictionaryPath;
+			member.statistics = statistics;
 		}
 	}
 	
+	/**
+	 * Loads the state of the workspace's current dictionary into this handler, or clears it if no dictionary is current.
+	 */
+	private final void restoreCurrent() {
+		final Workspace.Member member = workspace.current();
+		
+		openDictionary = (member == null) ? null : member.dictionary;
+		dictionaryPath = (member == null) ? null : member.path;
+		statistics = (member == null) ? null : member.statistics;
+	}
+	
 	/**
 	 * Finds the definition of a given word/phrase in the current dictionary.
-	 * 
+	 *
 	 * @param word word/phrase to look up
-	 * @return the definition if it exists, or a status string if it doesn't
+	 * @param out where to write the definition if it exists, or status
 	 */
-	private final String findDefinition(final String word) {
-		if (openDictionary == null) {
-			return "ERROR: No dictionary is open!";
+	private final void findDefinition(final String word, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
 		}
 		
 		final Optional<Definition> definition = openDictionary.getDefinition(word);
 		if (definition.isPresent()) {
-			final String dateString = DATE_OUTPUT_FORMAT.format(definition.get().entryDate());
-			return word + ":\t" + definition.get().definition() + System.lineSeparator() + System.lineSeparator()
-				   + dateString;
+			writeDefinition(word, definition.get(), out.line(""));
 		} else {
-			return "No definition exists for \"" + word + "\"";
+			out.line("No definition exists for \"" + word + "\"");
+		}
+	}
+	
+	/**
+	 * Writes a definition the way <code>find</code> prints it, at the end of the current line. Counts as an access of the definition.
+	 *
+	 * @param word word/phrase
+	 * @param definition its definition
+	 * @param out where to write the word, definition and entry date
+	 */
+	private static final void writeDefinition(final String word, final Definition definition, final CommandOutput out) {
+		final String dateString = formatDate(DATE_OUTPUT_FORMAT, definition.entryDate());
+		out.append(word).append(":\t").append(definition.definition()).line("").line(dateString);
+	}
+	
+	/**
+	 * Finds the definitions of a word/phrase in every open dictionary. The dictionaries are looked up in parallel on the worker pool; the definitions
+	 * that were found are ranked by entry date, newest first.
+	 *
+	 * @param word word/phrase to look up
+	 * @param out where to write the definitions (each one preceded by the name of its dictionary), or status if there are none
+	 */
+	private final void findInWorkspace(final String word, final CommandOutput out) {
+		final List<Workspace.Member> members = (jobMembers != null) ? jobMembers : workspace.members();
+		
+		if (members.isEmpty()) {
+			out.error("No dictionary is open!");
+			return;
+		}
+		
+		final List<CompletableFuture<Optional<Definition>>> lookups = new ArrayList<CompletableFuture<Optional<Definition>>>();
+		for (final Workspace.Member member : members) {
+			lookups.add(CompletableFuture.supplyAsync(() -> member.dictionary.getDefinition(word), workers));
+		}
+		
+		final List<Integer> found = new ArrayList<Integer>();
+		final List<Definition> definitions = new ArrayList<Definition>();
+		
+		for (int i = 0; i < lookups.size(); i++) {
+			final Optional<Definition> definition;
+			try {
+				definition = lookups.get(i).join();
+			} catch (CompletionException | CancellationException e) {
+				e.printStackTrace();
+				out.error("Problem looking up \"" + word + "\" in \"" + members.get(i).name + "\"!");
+				return;
+			}
+			
+			definitions.add(definition.orElse(null));
+			if (definition.isPresent()) {
+				found.add(i);
+			}
+		}
+		
+		if (found.isEmpty()) {
+			out.line("No definition exists for \"" + word + "\" in any open dictionary");
+			return;
+		}
+		
+		found.sort(Comparator.comparing((Integer i) -> definitions.get(i).entryDate()).reversed());
+		
+		out.line("Definitions (" + found.size() + " of " + members.size() + " dictionaries):");
+		for (final int i : found) {
+			writeDefinition(word, definitions.get(i), out.line("").line("[" + members.get(i).name + "] "));
 		}
 	}
 	
 	/**
 	 * Adds a definition to the dictionary.
-	 * 
+	 *
 	 * @param strong true if the definition should be added regardless of whether or not it already exists
 	 * @param defString definition string of the form "<code>"word" "datestring" definition</code>"
-	 * @return status string
+	 * @param out where to write the status
 	 */
-	private final String newDefinition(final boolean strong, final String defString) {
+	private final void newDefinition(final boolean strong, final String defString, final CommandOutput out) {
 		if (openDictionary == null) {
-			return "ERROR: No open dictionary!";
+			out.error("No open dictionary!");
+			return;
 		}
 		
 		//Regular expression that matches with the word being defined, which should be surrounded by quotes.
@@ -411,7 +1664,8 @@ public final class CommandHandler {
 		if (matcher.find()) {
 			rawWord = matcher.group(0);
 		} else {
-			return "ERROR: Malformed definition argument!";
+			out.error("Malformed definition argument!");
+			return;
 		}
 		
 		final Date date;
@@ -422,12 +1676,14 @@ public final class CommandHandler {
 			rawDateString = matcher.group(0);
 			dateString = rawDateString.replace('"', ' ').trim();
 			try {
-				date = DATE_ARG_FORMAT.parse(dateString);
+				date = parseDate(dateString);
 			} catch (Exception e) {
-				return "ERROR: Malformed date argument!";
+				out.error("Malformed date argument!");
+				return;
 			}
 		} else {
-			return "ERROR: Missing date argument!";
+			out.error("Missing date argument!");
+			return;
 		}
 		
 		final String word = rawWord.replace('"', ' ').trim();
@@ -441,77 +1697,217 @@ public final class CommandHandler {
 		
 		if (!strong) {
 			final boolean defSuccess = openDictionary.weakDefine(word, new Definition(definition, date));
-			return defSuccess ? "\"" + word + "\" was defined successfully." : "A definition already exists for \"" + word + "\"!"; 
+			out.line(defSuccess ? "\"" + word + "\" was defined successfully." : "A definition already exists for \"" + word + "\"!");
 		} else {
 			final boolean defExisted = openDictionary.strongDefine(word, new Definition(definition, date));
-			return defExisted ? "Definition for \"" + word + "\" was updated." : "\"" + word + "\" was defined successfully.";
+			out.line(defExisted ? "Definition for \"" + word + "\" was updated." : "\"" + word + "\" was defined successfully.");
 		}
 	}
 	
 	/**
 	 * Saves this dictionary to a file.
-	 * 
+	 *
 	 * @param optionalPath the path to save to, or the empty string to use a previously set path
-	 * @return status string
+	 * @param out where to write the status
 	 */
-	private final String save(final String optionalPath) {		
+	private final void save(final String optionalPath, final CommandOutput out) {
 		if (openDictionary != null) {
 			if (optionalPath.equals("")) {
 				if (dictionaryPath != null) {
-					return trySaveDictionary();
+					trySaveDictionary(out);
 				} else {
-					return "ERROR: Nowhere to save to!";
+					out.error("Nowhere to save to!");
 				}
 			} else {
 				dictionaryPath = optionalPath;
-				return trySaveDictionary();				
+				trySaveDictionary(out);
 			}
 		} else {
-			return "ERROR: No dictionary is currently open!";
+			out.error("No dictionary is currently open!");
 		}
 	}
 	
 	/**
 	 * Tries to save the dictionary to <code>dictionaryPath</code>.
-	 * 
-	 * @return status string
+	 *
+	 * @param out where to write the status
 	 */
-	private final String trySaveDictionary() {
+	private final void trySaveDictionary(final CommandOutput out) {
 		try {
 			openDictionary.save(dictionaryPath);
-			return "Saved current dictionary to \"" + dictionaryPath + "\"";
+			out.line("Saved current dictionary to \"" + dictionaryPath + "\"");
 		} catch (Exception e) {
 			e.printStackTrace();
-			return "ERROR: Problem saving current dictionary!";
+			out.error("Problem saving current dictionary!");
 		}
 	}
 	
 	/**
-	 * Creates a new dictionary and sets it as the current dictionary. Does not save the dictionary!
-	 * 
+	 * Creates a new dictionary, adds it to the workspace and sets it as the current dictionary. Does not save the dictionary!
+	 *
 	 * @param dictionaryName name of the new dictionary
-	 * @return status string
+	 * @param out where to write the status
 	 */
-	private final String createDictionary(final String dictionaryName) {
-		openDictionary = new Dictionary(dictionaryName);
-		return "Created a new dictionary named \"" + dictionaryName + "\"";
+	private final void createDictionary(final String dictionaryName, final CommandOutput out) {
+		stashCurrent();
+		workspace.add(new Dictionary(dictionaryName), null);
+		restoreCurrent();
+		
+		out.line("Created a new dictionary named \"" + dictionaryName + "\"");
 	}
 	
 	/**
-	 * Opens the dictionary at the given path.
-	 * 
-	 * @param _dictionaryPath path to a serialized dictionary object
-	 * @return status string
+	 * Opens the dictionary at the given path, adds it to the workspace and sets it as the current dictionary. If the same path is already open,
+	 * that dictionary is closed first. The definitions are loaded in the background; <code>find</code> works immediately,
+	 * and commands that need every definition wait until loading finishes. A message is sent to the notifier when loading finishes.
+	 *
+	 * @param _dictionaryPath path to a dictionary file
+	 * @param out where to write the status
 	 */
-	private String openDictionary(final String _dictionaryPath) {
+	private void openDictionary(final String _dictionaryPath, final CommandOutput out) {
+		final Dictionary opened;
 		try {
-			dictionaryPath = _dictionaryPath;
-			openDictionary = Dictionary.load(_dictionaryPath);
+			opened = Dictionary.open(_dictionaryPath, workers);
 		} catch (Exception e) {
 			e.printStackTrace();
-			return "ERROR: Problem opening dictionary at \"" + _dictionaryPath +"\"";
+			out.error("Problem opening dictionary at \"" + _dictionaryPath +"\"");
+			return;
+		}
+		
+		stashCurrent();
+		workspace.add(opened, _dictionaryPath);
+		restoreCurrent();
+		
+		if (opened.isLoaded()) {
+			out.line("Opened \"" + opened.name + "\"");
+			return;
+		}
+		
+		opened.whenLoaded().whenComplete((result, error) -> {
+			if (error == null) {
+				notifier.accept("Finished loading \"" + opened.name + "\" (" + opened.size() + " definitions in " + opened.loadingMillis() + " ms)");
+			} else if (!(error instanceof CancellationException || error.getCause() instanceof CancellationException)) {
+				error.printStackTrace();
+				notifier.accept("ERROR: Problem loading \"" + opened.name + "\": " + error.getMessage());
+			}
+		});
+		
+		out.line("Opened \"" + opened.name + "\"; loading " + opened.size() + " definitions in the background");
+	}
+	
+	/**
+	 * Shows how the current dictionary's entries are stored, how much memory they use and, for compressed dictionaries,
+	 * the compression ratio and block cache hit rate.
+	 *
+	 * @param out where to write the status
+	 */
+	private final void storageStats(final CommandOutput out) {
+		if (checkOpen(out)) {
+			out.line(openDictionary.storageReport());
+		}
+	}
+	
+	/**
+	 * Starts streaming the changes to the current dictionary to followers, or stops if the argument is <code>stop</code>. Waits for the dictionary
+	 * to finish loading first.
+	 *
+	 * @param arg port to listen on (0 or empty to pick a free port), or <code>stop</code>
+	 * @param out where to write the status
+	 */
+	private final void replicate(final String arg, final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		final Workspace.Member member = workspace.current();
+		
+		if (arg.trim().equalsIgnoreCase("stop")) {
+			if (member.primary == null) {
+				out.error("\"" + member.name + "\" is not being replicated!");
+				return;
+			}
+			
+			try {
+				member.primary.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				out.error("Problem disconnecting the followers of \"" + member.name + "\"!");
+				return;
+			} finally {
+				member.primary = null;
+			}
+			
+			out.line("Stopped replicating \"" + member.name + "\"");
+			return;
+		}
+		
+		if (member.primary != null) {
+			out.error("\"" + member.name + "\" is already being replicated on port " + member.primary.port() + "!");
+			return;
+		}
+		
+		final int port;
+		try {
+			port = arg.isBlank() ? 0 : Integer.parseInt(arg.trim());
+		} catch (NumberFormatException e) {
+			out.error("Invalid port!");
+			return;
+		}
+		
+		try {
+			member.primary = ReplicationPrimary.start(openDictionary, port);
+		} catch (IOException e) {
+			e.printStackTrace();
+			out.error("Problem listening on port " + port + ": " + e.getMessage());
+			return;
+		}
+		
+		out.line("Replicating \"" + member.name + "\" on port " + member.primary.port() + "; start followers with "
+				+ ReplicationFollower.class.getName() + " " + member.primary.port());
+	}
+	
+	/**
+	 * Lists the followers of the current dictionary and how far behind each one is.
+	 *
+	 * @param out where to write the status
+	 */
+	private final void replicas(final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		final Workspace.Member member = workspace.current();
+		
+		if (member.primary == null) {
+			out.line("\"" + member.name + "\" is not being replicated");
+		} else {
+			out.line(member.primary.report());
+		}
+	}
+	
+	/**
+	 * Shows how much of the current dictionary has been loaded.
+	 *
+	 * @param out where to write the status
+	 */
+	private final void loadStatus(final CommandOutput out) {
+		if (!checkOpen(out)) {
+			return;
+		}
+		
+		final int size = openDictionary.size();
+		final int loaded = openDictionary.loadedCount();
+		
+		if (openDictionary.isLoaded()) {
+			if (openDictionary.whenLoaded().isCompletedExceptionally()) {
+				out.error("Loading \"" + openDictionary.name + "\" failed; " + loaded + " of " + size + " definitions were loaded");
+			} else {
+				out.line("\"" + openDictionary.name + "\" is fully loaded (" + openDictionary.size() + " definitions)");
+			}
+			return;
 		}
 		
-		return "Opened \"" + openDictionary.name + "\"";
+		final double percent = (size == 0) ? 100 : (100.0 * loaded) / size;
+		out.line(String.format("Loading \"%s\": %d of %d definitions (%.1f%%) after %d ms", openDictionary.name, loaded, size, percent, openDictionary.loadingMillis()));
 	}
 }
@@ -0,0 +1,153 @@
+package com.dezzy.dictionary.main;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Where a {@link CommandHandler} writes the result of one command: lines of text, written to the underlying stream as the command produces them,
+ * and a {@link Status} that says whether the command failed. A command that lists thousands of results writes them one line at a time instead of
+ * building one string that holds all of them, and callers check {@link #status()} instead of looking for "ERROR" at the start of the text. <p>
+ *
+ * Lines are separated by {@link System#lineSeparator()}, and {@link #finish()} ends the last one, so that the text written to a stream is the
+ * same as printing the status string that {@link CommandHandler#receive(String)} returns with {@link java.io.PrintStream#println(String)}. <p>
+ *
+ * A CommandOutput is used for one command, by one thread at a time. Errors writing to the underlying stream are thrown as
+ * {@link UncheckedIOException}.
+ *
+ * @author Joe Desmond
+ */
+public final class CommandOutput {
+
+	/**
+	 * Whether a command succeeded
+	 *
+	 * @author Joe Desmond
+	 */
+	public enum Status {
+
+		/**
+		 * The command did what it was asked to do, or found nothing to do
+		 */
+		OK,
+
+		/**
+		 * The command could not be done; the text says why
+		 */
+		ERROR
+	}
+
+	/**
+	 * Text is written here
+	 */
+	private final Appendable out;
+
+	/**
+	 * Status of the command
+	 */
+	private Status status = Status.OK;
+
+	/**
+	 * True until the first line is started
+	 */
+	private boolean empty = true;
+
+	/**
+	 * Creates a CommandOutput that writes to the given stream or buffer. A {@link java.io.Writer} should be buffered; it is flushed by
+	 * {@link #finish()}.
+	 *
+	 * @param _out where to write the text
+	 */
+	public CommandOutput(final Appendable _out) {
+		out = _out;
+	}
+
+	/**
+	 * Starts a new line of text.
+	 *
+	 * @param text text of the line; may contain line separators
+	 * @return this CommandOutput
+	 */
+	public final CommandOutput line(final CharSequence text) {
+		try {
+			if (!empty) {
+				out.append(System.lineSeparator());
+			}
+			out.append(text);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Adds text to the end of the current line, or starts the first line.
+	 *
+	 * @param text text to add
+	 * @return this CommandOutput
+	 */
+	public final CommandOutput append(final CharSequence text) {
+		try {
+			out.append(text);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Starts a new line and returns the underlying stream, for text that is written by a method that takes an {@link Appendable}, such as
+	 * {@link Dictionary#print(Appendable)}. The text written to the stream is part of the new line.
+	 *
+	 * @return where to write the text of the line
+	 */
+	final Appendable startLine() {
+		line("");
+		return out;
+	}
+
+	/**
+	 * Marks the command as failed and starts a line with an error message, which is preceded by "ERROR: ".
+	 *
+	 * @param message what went wrong
+	 * @return this CommandOutput
+	 */
+	public final CommandOutput error(final String message) {
+		status = Status.ERROR;
+		return line("ERROR: " + message);
+	}
+
+	/**
+	 * Marks the command as failed without writing anything, for text that already says what went wrong.
+	 */
+	final void fail() {
+		status = Status.ERROR;
+	}
+
+	/**
+	 * Returns whether the command failed.
+	 *
+	 * @return {@link Status#ERROR} if the command failed, otherwise {@link Status#OK}
+	 */
+	public final Status status() {
+		return status;
+	}
+
+	/**
+	 * Ends the last line and flushes the underlying stream, if it can be flushed.
+	 */
+	public final void finish() {
+		try {
+			out.append(System.lineSeparator());
+			if (out instanceof Flushable) {
+				((Flushable) out).flush();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
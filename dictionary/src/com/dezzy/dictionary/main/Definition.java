@@ -4,7 +4,12 @@ import java.io.Serializable;
 import java.util.Date;
 
 /**
- * A dictionary definition, with metadata.
+ * A dictionary definition, with metadata. A definition either holds its own data, or belongs to an entry in an {@link EntryStore} and reads
+ * and writes its entry date and access count in the store's {@link EntryColumns} (and, in an {@link ArenaEntryStore}, its text in the arena). <p>
+ * 
+ * Definitions are looked up with the dictionary locked but used after it has been released, so a definition can be detached from its store
+ * (see {@link #detach()}) while another thread is reading it. Detaching and every read of the metadata hold this object's monitor, so a
+ * definition never reads or increases the metadata of an ID that has been given to another entry.
  *
  * @author Joe Desmond
  */
@@ -18,7 +23,18 @@ public final class Definition implements Serializable {
 	/**
 	 * The actual definition
 	 */
-	private final String definition;
+	private String definition;
+	
+	/**
+	 * Store holding this definition's metadata, or null if the metadata is held in this object. Volatile so that {@link #rawDefinition()}
+	 * can read it without locking: once it is seen to be null, the data copied by {@link #detach()} is visible too
+	 */
+	private transient volatile EntryStore store;
+	
+	/**
+	 * ID of this definition's entry in {@link #store}, or in the store it was detached from; -1 if it never belonged to a store
+	 */
+	private transient int id;
 	
 	/**
 	 * The date that the definition was added to the dictionary
@@ -37,8 +53,60 @@ public final class Definition implements Serializable {
 	 * @param _entryDate date of creation
 	 */
 	public Definition(final String _definition, final Date _entryDate) {
+		this(_definition, _entryDate, 0);
+	}
+	
+	/**
+	 * Creates a definition with an existing access count; used when a definition is read back from a file.
+	 * 
+	 * @param _definition the definition
+	 * @param _entryDate date of creation
+	 * @param _accesses number of times the definition has been retrieved
+	 */
+	Definition(final String _definition, final Date _entryDate, final int _accesses) {
 		definition = _definition;
 		entryDate = _entryDate;
+		accesses = _accesses;
+		store = null;
+		id = -1;
+	}
+	
+	/**
+	 * Creates a definition that reads and writes the metadata of an entry in an {@link EntryStore}.
+	 * 
+	 * @param _definition the definition, or null to read it from the store
+	 * @param _store store holding the entry
+	 * @param _id entry ID
+	 */
+	Definition(final String _definition, final EntryStore _store, final int _id) {
+		definition = _definition;
+		entryDate = null;
+		store = _store;
+		id = _id;
+	}
+	
+	/**
+	 * Returns the ID of this definition's entry.
+	 * 
+	 * @return entry ID, or -1 if this definition never belonged to an {@link EntryStore}
+	 */
+	final int id() {
+		return id;
+	}
+	
+	/**
+	 * Copies this definition's data out of its store, so that it no longer depends on the store. Called by the store before the entry's ID is
+	 * given to another entry.
+	 */
+	final synchronized void detach() {
+		final EntryStore owner = store;
+		
+		if (owner != null) {
+			definition = text(owner);
+			entryDate = new Date(owner.columns.entryTime(id));
+			accesses = owner.columns.accesses(id);
+			store = null;
+		}
 	}
 	
 	/**
@@ -46,32 +114,47 @@ public final class Definition implements Serializable {
 	 * 
 	 * @return the definition
 	 */
-	public final String definition() {
+	public final synchronized String definition() {
+		final EntryStore owner = store;
+		
+		if (owner != null) {
+			owner.columns.incrementAccesses(id);
+			return text(owner);
+		}
+		
 		accesses++;
 		return definition;
 	}
 	
 	/**
-	 * The date that the definition was created.
+	 * The actual definition, without increasing the access count. Used when the definition is copied rather than looked up
+	 * (for example, when the dictionary is saved).
 	 * 
-	 * @return entry date
+	 * @return the definition
+	 */
+	final String rawDefinition() {
+		final EntryStore owner = store;
+		return (owner != null) ? text(owner) : definition;
+	}
+	
+	/**
+	 * The actual definition, read from a store that this definition belongs to (or belonged to, when it is being detached).
+	 * 
+	 * @param owner this definition's store
+	 * @return the definition
 	 */
-	public final Date entryDate() {
-		return entryDate;
+	private final String text(final EntryStore owner) {
+		return (definition != null) ? definition : owner.definitionText(id);
 	}
 	
 	/**
-	 * Changes the entry date for this definition, and returns the old entry date. <br>
-	 * This method is package-private; it should only be used through {@link CommandHandler}. <br>
-	 * <b>This should only be used when transcribing old definitions!</b>
+	 * The date that the definition was created.
 	 * 
-	 * @param newDate new entry date
-	 * @return old entry date
+	 * @return entry date
 	 */
-	final Date changeEntryDate(final Date newDate) {
-		final Date oldDate = entryDate;
-		entryDate = newDate;
-		return oldDate;
+	public final synchronized Date entryDate() {
+		final EntryStore owner = store;
+		return (owner != null) ? new Date(owner.columns.entryTime(id)) : entryDate;
 	}
 	
 	/**
@@ -79,8 +162,18 @@ public final class Definition implements Serializable {
 	 * 
 	 * @return number of definition accesses
 	 */
-	public final int accesses() {
-		return accesses;
+	public final synchronized int accesses() {
+		final EntryStore owner = store;
+		return (owner != null) ? owner.columns.accesses(id) : accesses;
+	}
+	
+	/**
+	 * Serializes a definition backed by an {@link EntryStore} as a copy that holds its own data.
+	 * 
+	 * @return this definition, or a copy that holds its own data
+	 */
+	private synchronized Object writeReplace() {
+		return (store != null) ? new Definition(rawDefinition(), entryDate(), accesses()) : this;
 	}
 	
 	/**
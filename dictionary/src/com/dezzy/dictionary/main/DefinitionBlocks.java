@@ -0,0 +1,207 @@
+package com.dezzy.dictionary.main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed in-memory storage for definition text, used by an {@link ArenaEntryStore} in compressed mode. Definitions are appended in entry ID order
+ * and grouped into blocks of {@link DefinitionCodec#BLOCK_ENTRIES}; each full block is compressed with a {@link DefinitionCodec}. <p>
+ *
+ * The first {@link DefinitionCodec#TRAINING_ENTRIES} definitions are kept uncompressed until there are enough of them to train the preset dictionary.
+ * The last, partly filled block is always uncompressed. Recently decompressed blocks are kept in a small LRU cache, so reading the definitions of
+ * neighbouring entries (for example, while searching) decompresses each block only once.
+ *
+ * @author Joe Desmond
+ */
+final class DefinitionBlocks {
+
+	/**
+	 * Number of decompressed blocks kept in the cache
+	 */
+	private static final int CACHE_BLOCKS = 1024;
+
+	/**
+	 * Compressed blocks; null for blocks that have not been compressed yet
+	 */
+	private byte[][] blocks = new byte[16][];
+
+	/**
+	 * UTF-8 bytes of the definitions that are not in a compressed block yet, indexed by entry ID minus {@link #firstPendingId}
+	 */
+	private final List<byte[]> pending = new ArrayList<byte[]>();
+
+	/**
+	 * Entry ID of the first definition in {@link #pending}; always the first ID of a block
+	 */
+	private int firstPendingId = 0;
+
+	/**
+	 * Codec used to compress blocks, or null until the preset dictionary has been trained
+	 */
+	private DefinitionCodec codec = null;
+
+	/**
+	 * Recently decompressed blocks, by block index
+	 */
+	private final Map<Integer, String[]> cache = new LinkedHashMap<Integer, String[]>(CACHE_BLOCKS, 0.75f, true) {
+
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Integer, String[]> eldest) {
+			return size() > CACHE_BLOCKS;
+		}
+	};
+
+	/**
+	 * Total UTF-8 size of every definition, compressed or not
+	 */
+	private long rawBytes = 0;
+
+	/**
+	 * Total size of the compressed blocks
+	 */
+	private long compressedBytes = 0;
+
+	/**
+	 * Total UTF-8 size of the definitions in compressed blocks
+	 */
+	private long rawBytesCompressed = 0;
+
+	/**
+	 * Number of reads from compressed blocks that found the block in the cache
+	 */
+	private long cacheHits = 0;
+
+	/**
+	 * Number of reads from compressed blocks that had to decompress the block
+	 */
+	private long cacheMisses = 0;
+
+	/**
+	 * Total time spent decompressing blocks
+	 */
+	private long decompressNanos = 0;
+
+	/**
+	 * Creates empty definition storage.
+	 */
+	DefinitionBlocks() {
+
+	}
+
+	/**
+	 * Appends the definition of the next entry ID. Definitions must be appended for every ID, in order.
+	 *
+	 * @param definitionBytes UTF-8 bytes of the definition
+	 */
+	final synchronized void append(final byte[] definitionBytes) {
+		pending.add(definitionBytes);
+		rawBytes += definitionBytes.length;
+
+		if (codec == null) {
+			if (pending.size() >= DefinitionCodec.TRAINING_ENTRIES) {
+				final List<String> samples = new ArrayList<String>(pending.size());
+				for (final byte[] bytes : pending) {
+					samples.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+
+				codec = new DefinitionCodec(DefinitionCodec.train(samples));
+				compressFullBlocks();
+			}
+		} else if (pending.size() == DefinitionCodec.BLOCK_ENTRIES) {
+			compressFullBlocks();
+		}
+	}
+
+	/**
+	 * Compresses every full block in {@link #pending}.
+	 */
+	private final void compressFullBlocks() {
+		final int fullBlocks = pending.size() / DefinitionCodec.BLOCK_ENTRIES;
+		final byte[][] block = new byte[DefinitionCodec.BLOCK_ENTRIES][];
+
+		for (int b = 0; b < fullBlocks; b++) {
+			for (int i = 0; i < DefinitionCodec.BLOCK_ENTRIES; i++) {
+				block[i] = pending.get(b * DefinitionCodec.BLOCK_ENTRIES + i);
+				rawBytesCompressed += block[i].length;
+			}
+
+			final int blockIndex = firstPendingId / DefinitionCodec.BLOCK_ENTRIES + b;
+			if (blockIndex >= blocks.length) {
+				blocks = Arrays.copyOf(blocks, Math.max(blockIndex + 1, blocks.length * 2));
+			}
+
+			blocks[blockIndex] = codec.compress(block, DefinitionCodec.BLOCK_ENTRIES);
+			compressedBytes += blocks[blockIndex].length;
+		}
+
+		pending.subList(0, fullBlocks * DefinitionCodec.BLOCK_ENTRIES).clear();
+		firstPendingId += fullBlocks * DefinitionCodec.BLOCK_ENTRIES;
+	}
+
+	/**
+	 * Returns the definition of an entry.
+	 *
+	 * @param id entry ID
+	 * @return definition text
+	 */
+	final synchronized String get(final int id) {
+		if (id >= firstPendingId) {
+			return new String(pending.get(id - firstPendingId), StandardCharsets.UTF_8);
+		}
+
+		final int blockIndex = id / DefinitionCodec.BLOCK_ENTRIES;
+		String[] definitions = cache.get(blockIndex);
+
+		if (definitions != null) {
+			cacheHits++;
+		} else {
+			cacheMisses++;
+			final long start = System.nanoTime();
+			definitions = codec.decompress(blocks[blockIndex], DefinitionCodec.BLOCK_ENTRIES);
+			decompressNanos += System.nanoTime() - start;
+			cache.put(blockIndex, definitions);
+		}
+
+		return definitions[id % DefinitionCodec.BLOCK_ENTRIES];
+	}
+
+	/**
+	 * Returns the number of bytes held by the compressed blocks, the uncompressed definitions and the preset dictionary, excluding the cache.
+	 *
+	 * @return approximate heap footprint in bytes
+	 */
+	final synchronized long footprintBytes() {
+		long bytes = compressedBytes + (long) blocks.length * Long.BYTES;
+
+		for (final byte[] definition : pending) {
+			bytes += definition.length;
+		}
+
+		return bytes + ((codec == null) ? 0 : codec.dictionary().length);
+	}
+
+	/**
+	 * Returns a report of the compression ratio and block cache.
+	 *
+	 * @return multiline report
+	 */
+	final synchronized String report() {
+		final double ratio = (compressedBytes == 0) ? 1 : (double) rawBytesCompressed / compressedBytes;
+		final long reads = cacheHits + cacheMisses;
+
+		return String.format("Definition text: %d bytes, %d bytes in memory (%.2fx compression in %d blocks, %d bytes uncompressed, %d byte preset dictionary)",
+				rawBytes, footprintBytes(), ratio, firstPendingId / DefinitionCodec.BLOCK_ENTRIES, rawBytes - rawBytesCompressed,
+				(codec == null) ? 0 : codec.dictionary().length) + System.lineSeparator() +
+				String.format("Block cache: %d reads, %.1f%% hits, %.1f us per decompressed block", reads, (reads == 0) ? 0 : (100.0 * cacheHits) / reads,
+				(cacheMisses == 0) ? 0 : decompressNanos / (1000.0 * cacheMisses));
+	}
+}
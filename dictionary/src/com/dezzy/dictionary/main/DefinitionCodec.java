@@ -0,0 +1,306 @@
+package com.dezzy.dictionary.main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses blocks of definitions with DEFLATE and a preset dictionary trained on the definitions themselves. Definitions are short, so on their own they
+ * compress poorly; with a preset dictionary holding the phrases they share (such as <code>" - Recognized by the Kingdom"</code> or <code>"synonym for"</code>),
+ * even the first occurrence of a phrase in a block is a back-reference. <p>
+ *
+ * A block holds up to {@link #BLOCK_ENTRIES} definitions: the UTF-8 length of each as a variable-length integer, then their UTF-8 bytes. <p>
+ *
+ * A codec keeps its own Deflater and Inflater, which are not thread-safe, so every method is synchronized.
+ *
+ * @author Joe Desmond
+ */
+final class DefinitionCodec {
+
+	/**
+	 * Number of definitions in a full block. Every read of a definition that is not cached decompresses its whole block, and larger blocks
+	 * barely compress better, so blocks are small
+	 */
+	static final int BLOCK_ENTRIES = 8;
+
+	/**
+	 * Number of definitions used to train the preset dictionary
+	 */
+	static final int TRAINING_ENTRIES = 8192;
+
+	/**
+	 * Largest preset dictionary. DEFLATE can refer back 32 KB, but the compressor has to index the whole dictionary for every block,
+	 * and the most common phrases fit in much less
+	 */
+	private static final int MAX_DICTIONARY_SIZE = 8 * 1024;
+
+	/**
+	 * Longest phrase considered for the preset dictionary, in words
+	 */
+	private static final int MAX_PHRASE_WORDS = 6;
+
+	/**
+	 * Number of most common phrases considered for the preset dictionary
+	 */
+	private static final int MAX_CANDIDATES = 4096;
+
+	/**
+	 * Preset dictionary
+	 */
+	private final byte[] dictionary;
+
+	/**
+	 * Compressor, reset before every block
+	 */
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+	/**
+	 * Decompressor, reset before every block
+	 */
+	private final Inflater inflater = new Inflater(true);
+
+	/**
+	 * Creates a codec with a preset dictionary.
+	 *
+	 * @param _dictionary preset dictionary, usually from {@link #train(List)}
+	 */
+	DefinitionCodec(final byte[] _dictionary) {
+		dictionary = _dictionary;
+	}
+
+	/**
+	 * Returns the preset dictionary, which must be stored with the compressed blocks.
+	 *
+	 * @return the preset dictionary (not a copy)
+	 */
+	final byte[] dictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Trains a preset dictionary from sample definitions. Phrases of up to {@link #MAX_PHRASE_WORDS} words are scored by how many bytes they would
+	 * save, and the best ones are kept, with the best at the end of the dictionary, where references to them are shortest.
+	 *
+	 * @param samples sample definitions
+	 * @return preset dictionary of at most {@link #MAX_DICTIONARY_SIZE} bytes
+	 */
+	static final byte[] train(final List<String> samples) {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+		for (final String sample : samples) {
+			final String[] words = sample.split(" ");
+
+			for (int start = 0; start < words.length; start++) {
+				final StringBuilder phrase = new StringBuilder();
+
+				for (int end = start; end < words.length && end - start < MAX_PHRASE_WORDS; end++) {
+					phrase.append(words[end]).append(' ');
+					counts.merge(phrase.toString(), 1, Integer::sum);
+				}
+			}
+		}
+
+		final List<Map.Entry<String, Integer>> candidates = new ArrayList<Map.Entry<String, Integer>>();
+		for (final Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() > 1 && entry.getKey().length() > 3) {
+				candidates.add(entry);
+			}
+		}
+
+		candidates.sort((a, b) -> Long.compare(score(b), score(a)));
+
+		final List<String> chosen = new ArrayList<String>();
+		final StringBuilder joined = new StringBuilder();
+		int size = 0;
+
+		for (final Map.Entry<String, Integer> candidate : candidates.subList(0, Math.min(MAX_CANDIDATES, candidates.size()))) {
+			final String phrase = candidate.getKey();
+			final int length = phrase.getBytes(StandardCharsets.UTF_8).length;
+
+			if (size + length > MAX_DICTIONARY_SIZE) {
+				break;
+			}
+
+			if (joined.indexOf(phrase) < 0) {
+				chosen.add(phrase);
+				joined.append(phrase);
+				size += length;
+			}
+		}
+
+		final StringBuilder sb = new StringBuilder(size);
+		for (int i = chosen.size() - 1; i >= 0; i--) {
+			sb.append(chosen.get(i));
+		}
+
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the number of bytes a phrase would save as a preset dictionary entry: its length times the number of extra times it occurs.
+	 *
+	 * @param phrase phrase and its count
+	 * @return score
+	 */
+	private static final long score(final Map.Entry<String, Integer> phrase) {
+		return (long) phrase.getKey().length() * (phrase.getValue() - 1);
+	}
+
+	/**
+	 * Builds and compresses a block.
+	 *
+	 * @param definitions UTF-8 bytes of up to {@link #BLOCK_ENTRIES} definitions
+	 * @param count number of definitions to use from the start of <code>definitions</code>
+	 * @return compressed block
+	 */
+	final synchronized byte[] compress(final byte[][] definitions, final int count) {
+		int rawLength = 0;
+		for (int i = 0; i < count; i++) {
+			rawLength += varIntSize(definitions[i].length) + definitions[i].length;
+		}
+
+		final byte[] raw = new byte[rawLength];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			offset = writeVarInt(raw, offset, definitions[i].length);
+		}
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(definitions[i], 0, raw, offset, definitions[i].length);
+			offset += definitions[i].length;
+		}
+
+		deflater.reset();
+		deflater.setDictionary(dictionary);
+		deflater.setInput(raw);
+		deflater.finish();
+
+		byte[] out = new byte[rawLength / 2 + 64];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == out.length) {
+				out = Arrays.copyOf(out, out.length * 2);
+			}
+
+			length += deflater.deflate(out, length, out.length - length);
+		}
+
+		final byte[] compressed = new byte[varIntSize(rawLength) + length];
+		System.arraycopy(out, 0, compressed, writeVarInt(compressed, 0, rawLength), length);
+		return compressed;
+	}
+
+	/**
+	 * Decompresses a block and splits it into definitions.
+	 *
+	 * @param block compressed block
+	 * @param count number of definitions in the block
+	 * @return the definitions
+	 */
+	final synchronized String[] decompress(final byte[] block, final int count) {
+		final int rawLength = readVarInt(block, 0);
+		final int start = varIntSize(rawLength);
+		final byte[] raw = new byte[rawLength];
+
+		inflater.reset();
+		inflater.setDictionary(dictionary);
+		inflater.setInput(block, start, block.length - start);
+
+		try {
+			int length = 0;
+			while (length < rawLength) {
+				final int inflated = inflater.inflate(raw, length, rawLength - length);
+
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new IllegalStateException("Compressed definition block is truncated");
+				}
+
+				length += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Compressed definition block is corrupt", e);
+		}
+
+		final int[] lengths = new int[count];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			lengths[i] = readVarInt(raw, offset);
+			offset += varIntSize(lengths[i]);
+		}
+
+		final String[] definitions = new String[count];
+		for (int i = 0; i < count; i++) {
+			definitions[i] = new String(raw, offset, lengths[i], StandardCharsets.UTF_8);
+			offset += lengths[i];
+		}
+
+		return definitions;
+	}
+
+	/**
+	 * Returns the number of uncompressed bytes in a compressed block.
+	 *
+	 * @param block compressed block
+	 * @return uncompressed size
+	 */
+	static final int rawLength(final byte[] block) {
+		return readVarInt(block, 0);
+	}
+
+	/**
+	 * Writes a non-negative int in 7-bit groups, least significant first.
+	 *
+	 * @param bytes array to write to
+	 * @param offset offset to write at
+	 * @param value value to write
+	 * @return offset after the value
+	 */
+	static final int writeVarInt(final byte[] bytes, final int offset, final int value) {
+		int position = offset;
+		int remaining = value;
+
+		while ((remaining & ~0x7F) != 0) {
+			bytes[position++] = (byte) ((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+
+		bytes[position++] = (byte) remaining;
+		return position;
+	}
+
+	/**
+	 * Reads an int written by {@link #writeVarInt(byte[], int, int)}.
+	 *
+	 * @param bytes array to read from
+	 * @param offset offset to read at
+	 * @return the value
+	 */
+	static final int readVarInt(final byte[] bytes, final int offset) {
+		int value = 0;
+		int position = offset;
+
+		for (int shift = 0; ; shift += 7) {
+			final int b = bytes[position++];
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that {@link #writeVarInt(byte[], int, int)} uses for a value.
+	 *
+	 * @param value non-negative value
+	 * @return size in bytes (1 to 5)
+	 */
+	static final int varIntSize(final int value) {
+		return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+	}
+}
@@ -1,26 +1,43 @@
 package com.dezzy.dictionary.main;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+
+import com.dezzy.dictionary.perf.DictionaryLoadEvent;
+import com.dezzy.dictionary.perf.DictionarySaveEvent;
+import com.dezzy.dictionary.perf.SearchEvent;
 
 /**
- * A named dictionary that maps String words and phrases to String definitions.
+ * A named dictionary that maps String words and phrases to String definitions. <p>
+ * 
+ * Dictionaries are safe to use from several threads. Changes and single-word lookups hold a short lock. Operations that read every entry
+ * (printing, searching, statistics and saving) read a {@link Snapshot} instead, which sees the dictionary as it was when the snapshot was taken
+ * and needs no lock, so changes never wait for them. Every change creates a new version of the entries; the entries replaced or removed by a
+ * change are kept until no open snapshot can see them.
  *
  * @author Joe Desmond
  */
@@ -30,6 +47,11 @@ public final class Dictionary implements Serializable {
 	 */
 	private static final long serialVersionUID = 7979506156638295020L;
 	
+	/**
+	 * Fewest changed entries that make {@link #rank(String, int)} rebuild the full-text index
+	 */
+	private static final int RANK_REBUILD_CHANGES = 1024;
+	
 	static {
 		System.getProperty("line.separator");
 	}
@@ -40,9 +62,74 @@ public final class Dictionary implements Serializable {
 	public final String name;
 	
 	/**
-	 * Definitions in the dictionary
+	 * Definitions in the dictionary, with their entry dates and access counts in columns by entry ID
+	 */
+	private final transient EntryStore definitions;
+	
+	/**
+	 * Entry times of every definition, sorted by entry date. Not serialized; rebuilt when the dictionary is loaded
+	 */
+	private transient EntryDateIndex dateIndex;
+	
+	/**
+	 * Loads the definitions in the background if this dictionary was opened with {@link #open(String, Executor)}; null once loading has finished
+	 */
+	private transient volatile LazyLoader loader = null;
+	
+	/**
+	 * Time taken to load the definitions in the background, in nanoseconds; 0 if the dictionary was not opened with {@link #open(String, Executor)}
+	 */
+	private transient volatile long loadingNanos = 0;
+	
+	/**
+	 * Versions of the open snapshots, with the number of open snapshots of each version. Guarded by this dictionary
+	 */
+	private final transient TreeMap<Long, Integer> openSnapshots;
+	
+	/**
+	 * Log of the changes made to this dictionary, streamed to followers by a {@link ReplicationPrimary}; null if this dictionary is not replicated.
+	 * Guarded by this dictionary
+	 */
+	private transient ReplicationLog replicationLog = null;
+	
+	/**
+	 * Full-text index of the entries used by {@link #rank(String, int)}; built on first use, and rebuilt once many entries have changed since.
+	 * Guarded by this dictionary
+	 */
+	private transient RankIndex rankIndex = null;
+	
+	/**
+	 * Entry IDs added and retired since {@link #rankIndex} was built; null until it is built. Guarded by this dictionary
+	 */
+	private transient RankIndex.Changes rankChanges = null;
+	
+	/**
+	 * Entry IDs added and retired since the snapshot that a new {@link #rankIndex} is being built from; null when no index is being built.
+	 * Guarded by this dictionary
+	 */
+	private transient RankIndex.Changes nextRankChanges = null;
+	
+	/**
+	 * Held while building {@link #rankIndex}, so that only one thread builds it
+	 */
+	private final transient Object rankLock = new Object();
+	
+	/**
+	 * MinHash signatures of the definitions used by {@link #duplicates(double, Executor)}; computed on first use and kept up to date after that.
+	 * Guarded by this dictionary
+	 */
+	private transient DuplicateIndex duplicateIndex = null;
+	
+	/**
+	 * References between the entries, used by {@link #referencesTo(String)}, {@link #referencesFrom(String)} and {@link #orphans()}; built on
+	 * first use and kept up to date after that. Guarded by this dictionary
+	 */
+	private transient ReferenceGraph references = null;
+	
+	/**
+	 * Dictionary read from a file saved before {@link SerializedForm} existed, which replaces this object once it has been deserialized
 	 */
-	private final Map<String, Definition> definitions = new HashMap<String, Definition>();
+	private transient Dictionary legacy = null;
 	
 	/**
 	 * Creates a dictionary with the given name and no definitions. <br>
@@ -51,15 +138,177 @@ public final class Dictionary implements Serializable {
 	 * @param _name name of the dictionary
 	 */
 	public Dictionary(final String _name) {
+		this(_name, 0, Storage.DEFAULT);
+	}
+	
+	/**
+	 * Creates a dictionary with the given name, no definitions, and the given kind of storage.
+	 * 
+	 * @param _name name of the dictionary
+	 * @param storage how the entries are stored in memory
+	 */
+	public Dictionary(final String _name, final Storage storage) {
+		this(_name, 0, storage);
+	}
+	
+	/**
+	 * Creates an empty dictionary with the default storage, sized to hold <code>expectedSize</code> entries without resizing.
+	 * 
+	 * @param _name name of the dictionary
+	 * @param expectedSize number of entries that will be added
+	 */
+	Dictionary(final String _name, final int expectedSize) {
+		this(_name, expectedSize, Storage.DEFAULT);
+	}
+	
+	/**
+	 * Creates an empty dictionary sized to hold <code>expectedSize</code> entries without resizing.
+	 * 
+	 * @param _name name of the dictionary
+	 * @param expectedSize number of entries that will be added
+	 * @param storage how the entries are stored in memory
+	 */
+	private Dictionary(final String _name, final int expectedSize, final Storage storage) {
 		name = _name;
+		definitions = storage.newStore(expectedSize);
+		dateIndex = new EntryDateIndex(definitions);
+		openSnapshots = new TreeMap<Long, Integer>();
+	}
+	
+	/**
+	 * How a dictionary stores its entries. All kinds behave identically through the public API.
+	 *
+	 * @author Joe Desmond
+	 */
+	public enum Storage {
+		
+		/**
+		 * A HashMap with a key String and a {@link Definition} (with its own definition String) per entry; entry dates and access counts are kept in primitive columns
+		 */
+		HASH_MAP,
+		
+		/**
+		 * UTF-8 byte arenas and primitive columns, with no objects per entry; uses several times less memory, but replacing or removing
+		 * entries does not free any until the dictionary is saved and opened again
+		 */
+		ARENA,
+		
+		/**
+		 * Like {@link #ARENA}, but definitions are compressed in blocks with a preset dictionary trained on the definitions themselves, and recently
+		 * used blocks are cached. Uses the least memory; reading a definition that is not cached costs a block decompression. Dictionaries with this
+		 * storage are also saved compressed
+		 */
+		COMPRESSED,
+		
+		/**
+		 * A log-structured merge tree: words and definitions are kept in sorted files on disk (see {@link LsmEntryStore}), and only about 40
+		 * bytes of metadata per entry stay in memory, so the dictionary can be many times larger than the heap. Lookups read at most a few
+		 * blocks from disk, and printing and saving stream the entries in alphabetical order
+		 */
+		LSM;
+		
+		/**
+		 * Storage used when none is given: the value of the <code>dictionary.storage</code> system property (<code>hash_map</code>, <code>arena</code>, <code>compressed</code>
+		 * or <code>lsm</code>),
+		 * or {@link #HASH_MAP} if it is not set
+		 */
+		public static final Storage DEFAULT = valueOf(System.getProperty("dictionary.storage", "hash_map").toUpperCase());
+		
+		/**
+		 * Creates an empty store of words and definitions with this kind of storage.
+		 * 
+		 * @param expectedSize number of entries that will be added
+		 * @return a new store
+		 */
+		private EntryStore newStore(final int expectedSize) {
+			switch (this) {
+				case ARENA:
+					return new ArenaEntryStore(expectedSize, false);
+				case COMPRESSED:
+					return new ArenaEntryStore(expectedSize, true);
+				case LSM:
+					return new LsmEntryStore(expectedSize);
+				case HASH_MAP:
+				default:
+					return new HashMapEntryStore(expectedSize);
+			}
+		}
+	}
+	
+	/**
+	 * How searches match their regular expressions against the entries. Both engines find the same results.
+	 *
+	 * @author Joe Desmond
+	 */
+	public enum SearchEngine {
+		
+		/**
+		 * {@link java.util.regex}, which supports every regular expression but backtracks, and can take exponential time per entry on some expressions
+		 */
+		JAVA,
+		
+		/**
+		 * A lazily built deterministic automaton (see {@link AutomatonPattern}), which takes time proportional to the length of each entry; expressions
+		 * it does not support (such as back references and lookaround) are matched with {@link java.util.regex}
+		 */
+		AUTOMATON;
+		
+		/**
+		 * Engine used when none is given: the value of the <code>dictionary.search.engine</code> system property (<code>java</code> or
+		 * <code>automaton</code>), or {@link #JAVA} if it is not set
+		 */
+		public static final SearchEngine DEFAULT = valueOf(System.getProperty("dictionary.search.engine", "java").toUpperCase());
+	}
+	
+	/**
+	 * Returns how this dictionary's entries are stored in memory.
+	 * 
+	 * @return storage kind
+	 */
+	public final Storage storage() {
+		if (definitions instanceof ArenaEntryStore) {
+			return ((ArenaEntryStore) definitions).isCompressed() ? Storage.COMPRESSED : Storage.ARENA;
+		} else if (definitions instanceof LsmEntryStore) {
+			return Storage.LSM;
+		}
+		
+		return Storage.HASH_MAP;
+	}
+	
+	/**
+	 * Returns a report of how this dictionary's entries are stored: the storage kind, the memory used and, for {@link Storage#COMPRESSED},
+	 * the compression ratio and the block cache hit rate.
+	 * 
+	 * @return multiline report
+	 */
+	public final String storageReport() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return "Storage: " + storage().name().toLowerCase() + System.lineSeparator() + definitions.report();
+		}
+	}
+	
+	/**
+	 * Returns the memory used by this dictionary's entries; see {@link #storageReport()}. For {@link Storage#HASH_MAP} this is an estimate.
+	 * 
+	 * @return heap footprint in bytes
+	 */
+	public final long footprintBytes() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return definitions.footprintBytes();
+		}
 	}
 	
 	/**
 	 * Returns all definitions stored in the dictionary.
 	 * 
-	 * @return a reference to the HashMap backing this dictionary
+	 * @return a reference to the map backing this dictionary
 	 */
 	final Map<String, Definition> getDefinitions() {
+		awaitLoaded();
 		return definitions;
 	}
 	
@@ -69,7 +318,89 @@ public final class Dictionary implements Serializable {
 	 * @return size of the dictionary
 	 */
 	public final int size() {
-		return definitions.size();
+		final LazyLoader pending = loader;
+		
+		return (pending != null) ? pending.size() : definitions.size();
+	}
+	
+	/**
+	 * Returns true if every definition has been loaded. Only dictionaries opened with {@link #open(String, Executor)} can be partially loaded.
+	 * 
+	 * @return true if the dictionary is fully loaded
+	 */
+	public final boolean isLoaded() {
+		final LazyLoader pending = loader;
+		
+		return (pending == null) || pending.future().isDone();
+	}
+	
+	/**
+	 * Returns the number of definitions that have been loaded so far. This is equal to {@link #size()} once the dictionary is fully loaded.
+	 * 
+	 * @return number of loaded definitions
+	 */
+	public final int loadedCount() {
+		final LazyLoader pending = loader;
+		
+		return (pending != null) ? pending.loaded() : definitions.size();
+	}
+	
+	/**
+	 * Returns the time spent loading so far, or the total loading time once loading has finished.
+	 * 
+	 * @return time since the dictionary was opened, in milliseconds, or 0 if it was not opened with {@link #open(String, Executor)}
+	 */
+	public final long loadingMillis() {
+		final LazyLoader pending = loader;
+		
+		return ((pending != null) ? pending.elapsedNanos() : loadingNanos) / 1_000_000;
+	}
+	
+	/**
+	 * Returns a future that completes when every definition has been loaded. The future completes exceptionally if loading fails or is cancelled.
+	 * 
+	 * @return the loading future (already completed if the dictionary is fully loaded)
+	 */
+	public final CompletableFuture<Void> whenLoaded() {
+		final LazyLoader pending = loader;
+		
+		return (pending != null) ? pending.future() : CompletableFuture.completedFuture(null);
+	}
+	
+	/**
+	 * Stops loading definitions in the background, if the dictionary is still loading. The dictionary cannot be used afterwards.
+	 */
+	public final void cancelLoading() {
+		final LazyLoader pending = loader;
+		
+		if (pending != null) {
+			pending.cancel();
+		}
+	}
+	
+	/**
+	 * Waits until every definition has been loaded. Every method that reads or changes more than one definition calls this first.
+	 * 
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	private final void awaitLoaded() {
+		final LazyLoader pending = loader;
+		
+		if (pending != null) {
+			pending.await();
+			loadingNanos = pending.elapsedNanos();
+			loader = null;
+		}
+	}
+	
+	/**
+	 * Adds a definition read from a file, without updating the entry date index. Used while loading, before the index is rebuilt.
+	 * 
+	 * @param word word/phrase
+	 * @param definition definition
+	 */
+	final void putLoaded(final String word, final Definition definition) {
+		definitions.put(word, definition);
 	}
 	
 	/**
@@ -80,16 +411,28 @@ public final class Dictionary implements Serializable {
 	 * @return true if the definition was added successfully, false if not
 	 */
 	public final boolean weakDefine(final String word, final Definition definition) {
-		if (!definitions.containsKey(word)) {
-			definitions.put(word, definition);
-			return true;
-		}
+		awaitLoaded();
 		
-		return false;
+		synchronized (this) {
+			if (!definitions.containsKey(word)) {
+				definitions.put(word, definition);
+				dateIndex.add(definitions.idOf(word), definition.entryDate().getTime());
+				entryAdded(definitions.idOf(word));
+				if (references != null) {
+					references.defined(word, null, definition.rawDefinition());
+				}
+				if (replicationLog != null) {
+					replicationLog.logPut(word, definition);
+				}
+				return true;
+			}
+			
+			return false;
+		}
 	}
 	
 	public final void temp_RAWDEFINE(final String word, final Definition definition) {
-		definitions.put(word, definition);
+		strongDefine(word, definition);
 	}
 	
 	/**
@@ -99,7 +442,61 @@ public final class Dictionary implements Serializable {
 	 * @return true if the word/phrase was removed, false if it didn't exist
 	 */
 	public final boolean remove(final String word) {
-		return definitions.remove(word) != null;
+		awaitLoaded();
+		
+		synchronized (this) {
+			final Definition removed = definitions.remove(word);
+			
+			if (removed != null) {
+				dateIndex.remove(removed.id(), removed.entryDate().getTime());
+				entryRetired(removed.id());
+				if (references != null) {
+					references.removed(word, removed.rawDefinition());
+				}
+				reclaim();
+				if (replicationLog != null) {
+					replicationLog.logRemove(word);
+				}
+				return true;
+			}
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * Changes the entry date of an existing definition and keeps the entry date index up to date. Like any other change, this replaces the
+	 * entry with a new version; its definition and access count are kept. <br>
+	 * This method is package-private; it should only be used through {@link CommandHandler}.
+	 * 
+	 * @param word word/phrase whose entry date to change
+	 * @param newDate new entry date
+	 * @return the old entry date ({@link Optional#empty} if the word is not defined)
+	 */
+	final Optional<Date> changeEntryDate(final String word, final Date newDate) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			final Definition definition = definitions.get(word);
+			
+			if (definition == null) {
+				return Optional.empty();
+			}
+			
+			final Definition old = definitions.put(word, new Definition(definition.rawDefinition(), newDate, definition.accesses()));
+			final Date oldDate = old.entryDate();
+			
+			dateIndex.remove(old.id(), oldDate.getTime());
+			dateIndex.add(definitions.idOf(word), newDate.getTime());
+			entryRetired(old.id());
+			entryAdded(definitions.idOf(word));
+			reclaim();
+			if (replicationLog != null) {
+				replicationLog.logChangeDate(word, newDate);
+			}
+			
+			return Optional.of(oldDate);
+		}
 	}
 	
 	/**
@@ -107,7 +504,7 @@ public final class Dictionary implements Serializable {
 	 *
 	 * @author Joe Desmond
 	 */
-	public final class SearchResult {
+	public static final class SearchResult {
 		/**
 		 * Definition string for the word/phrase (includes the word and its definition)
 		 */
@@ -160,195 +557,1396 @@ public final class Dictionary implements Serializable {
 	
 	/**
 	 * Searches the dictionary for a given search term and returns EVERY result, even completely irrelevant results.
+	 * The search reads a {@link Snapshot}, so the dictionary can be changed while it runs.
 	 * 
 	 * @param regex regular expression search term
 	 * @return search results
 	 */
 	public final List<SearchResult> searchAll(final String regex) {
-		final Pattern searchPattern = Pattern.compile(regex);
-		
-		return definitions.keySet()
-				.stream()
-				.map(word -> searchDefinitionString(searchPattern, getDefinitionString(word)))
-				.collect(Collectors.toList());
+		return searchAll(regex, SearchEngine.DEFAULT);
 	}
 	
 	/**
-	 * Returns the search result for a search term and one candidate string.
+	 * Searches the dictionary like {@link #searchAll(String)}, with the given search engine.
 	 * 
-	 * @param pattern search pattern (compiled regex)
-	 * @param defString single search candidate (word and definition string)
-	 * @return search result data
+	 * @param regex regular expression search term
+	 * @param engine how the regular expression is matched
+	 * @return search results
 	 */
-	private final SearchResult searchDefinitionString(final Pattern pattern, final String defString) {
-		final Matcher matcher = pattern.matcher(defString);
+	public final List<SearchResult> searchAll(final String regex, final SearchEngine engine) {
+		final SearchEvent event = new SearchEvent();
+		event.begin();
 		
-		int count = 0;
-		while (matcher.find()) {
-			count++;
+		final List<SearchResult> results;
+		try (Snapshot snapshot = snapshot()) {
+			results = snapshot.searchAll(regex, engine);
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.regex = regex;
+			event.entries = results.size();
+			event.matches = (int) results.stream().filter(result -> result.score > 0).count();
+			event.commit();
 		}
 		
-		return new SearchResult(defString, count);
+		return results;
 	}
 	
 	/**
-	 * Adds a definition or updates an existing definition for a given word/phrase.
+	 * Searches the dictionary for a given search term and returns the entries that match, most relevant first; the same results as
+	 * {@link #relevantResults(List)} of {@link #searchAll(String)}, but no result is made for entries that do not match. If every match of the
+	 * search term must contain some literal text, the regular expression only runs on the entries that contain it (see {@link LiteralPrefilter}).
+	 * The search reads a {@link Snapshot}, so the dictionary can be changed while it runs.
 	 * 
-	 * @param word word/phrase to add a definition for (case sensitive)
-	 * @param definition definition
-	 * @return true if the definition existed before, false if it's new
+	 * @param regex regular expression search term
+	 * @return matching results, sorted by relevancy and alphabetical order
 	 */
-	public final boolean strongDefine(final String word, final Definition definition) {
-		final boolean exists = definitions.containsKey(word);
-		
-		definitions.put(word, definition);
-		
-		return exists;
+	public final List<SearchResult> search(final String regex) {
+		return search(regex, SearchBudget.unlimited());
 	}
 	
 	/**
-	 * Gets the definition for a word/phrase.
+	 * Searches the dictionary like {@link #search(String)}, but stops when a budget runs out: when the search has taken too long or too many
+	 * regular expression steps, or when the budget is cancelled from another thread. A search expression that backtracks catastrophically is
+	 * stopped as well, in the middle of an entry. The results found before the search stopped are returned, and {@link SearchBudget#stopReason()}
+	 * tells whether they are complete.
 	 * 
-	 * @param word word/phrase (case sensitive)
-	 * @return definition for the word ({@link Optional#empty} if the word is not defined)
+	 * @param regex regular expression search term
+	 * @param budget limits of the search
+	 * @return matching results, sorted by relevancy and alphabetical order; incomplete if the budget ran out
 	 */
-	public final Optional<Definition> getDefinition(final String word) {
-		final Definition definition = definitions.get(word);
-		
-		return (definition == null) ? Optional.empty() : Optional.of(definition);
+	public final List<SearchResult> search(final String regex, final SearchBudget budget) {
+		return search(regex, budget, SearchEngine.DEFAULT);
 	}
 	
 	/**
-	 * Returns a text representation of this dictionary with all words (in alphabetical order) and their definitions.
+	 * Searches the dictionary like {@link #search(String, SearchBudget)}, with the given search engine.
 	 * 
-	 * @return text version of this dictionary (human readable)
+	 * @param regex regular expression search term
+	 * @param budget limits of the search
+	 * @param engine how the regular expression is matched
+	 * @return matching results, sorted by relevancy and alphabetical order; incomplete if the budget ran out
 	 */
-	@Override
-	public final String toString() {
-		final List<String> sortedWords = getSortedWords();
+	public final List<SearchResult> search(final String regex, final SearchBudget budget, final SearchEngine engine) {
+		final SearchEvent event = new SearchEvent();
+		event.begin();
+		
+		final List<SearchResult> results;
+		final int entries;
+		try (Snapshot snapshot = snapshot()) {
+			results = snapshot.search(regex, budget, engine);
+			entries = snapshot.size();
+		}
 		
-		final StringBuilder sb = new StringBuilder(name + System.lineSeparator());
-		sortedWords.forEach(word -> sb.append(System.lineSeparator() + getDefinitionString(word)));
+		event.end();
+		if (event.shouldCommit()) {
+			event.regex = regex;
+			event.entries = entries;
+			event.matches = results.size();
+			event.truncated = budget.exhausted();
+			event.commit();
+		}
 		
-		return sb.toString();
+		return results;
 	}
 	
 	/**
-	 * Returns a list of all defined words in the dictionary, sorted alphabetically (case insensitive).
+	 * Searches the dictionary like {@link #search(String, SearchBudget, SearchEngine)}, but returns the results as a cursor, which sorts them only as
+	 * far as the pages that are read. The cursor becomes invalid when the dictionary changes.
 	 * 
-	 * @return a list of sorted words
+	 * @param regex regular expression search term
+	 * @param budget limits of the search
+	 * @param engine how the regular expression is matched
+	 * @param pageSize number of results on a page
+	 * @return matching results; incomplete if the budget ran out
 	 */
-	final List<String> getSortedWords() {
-		final Set<String> words = definitions.keySet();
-		final List<String> sortedWords = new ArrayList<String>();
+	public final SearchCursor searchCursor(final String regex, final SearchBudget budget, final SearchEngine engine, final int pageSize) {
+		final SearchEvent event = new SearchEvent();
+		event.begin();
+		
+		final SearchCursor cursor;
+		final int entries;
+		try (Snapshot snapshot = snapshot()) {
+			cursor = new SearchCursor(this, snapshot.version(), snapshot.matches(regex, budget, engine), pageSize, budget.stopReason());
+			entries = snapshot.size();
+		}
 		
-		sortedWords.addAll(words);
-		Collections.sort(sortedWords, String.CASE_INSENSITIVE_ORDER);
+		event.end();
+		if (event.shouldCommit()) {
+			event.regex = regex;
+			event.entries = entries;
+			event.matches = cursor.size();
+			event.truncated = budget.exhausted();
+			event.commit();
+		}
 		
-		return sortedWords;
+		return cursor;
 	}
 	
 	/**
-	 * Sorts words/phrases by the dates that they were entered into a dictionary.
+	 * Ranks the entries by how relevant they are to some query terms, with BM25, and returns the best <code>k</code>. The words and definitions are
+	 * split into terms, lowercased and stemmed (see {@link RankIndex.Analyzer}), and looked up in a full-text index that is built the first time
+	 * this method is called and kept up to date as the dictionary changes. The top entries are found without scoring every entry that contains a
+	 * query term (see {@link RankIndex}). The query reads a {@link Snapshot}, so the dictionary can be changed while it runs.
 	 * 
+	 * @param query query terms, separated by spaces or punctuation
+	 * @param k maximum number of results
+	 * @return up to <code>k</code> entries that contain at least one query term, most relevant first
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	public final List<RankedResult> rank(final String query, final int k) {
+		updateRankIndex();
+		
+		final RankIndex index;
+		final RankIndex.Changes changes;
+		final Snapshot snapshot;
+		synchronized (this) {
+			snapshot = snapshot();
+			index = rankIndex;
+			changes = rankChanges.copy();
+		}
+		
+		try (snapshot) {
+			final List<RankedResult> results = new ArrayList<RankedResult>();
+			
+			for (final RankIndex.Hit hit : index.query(query, k, snapshot.frozen, changes)) {
+				results.add(new RankedResult(snapshot.frozen.word(hit.id) + ":\t" + snapshot.frozen.definitionText(hit.id), hit.score));
+			}
+			
+			results.sort((a, b) -> (a.score == b.score) ? a.definitionString.compareToIgnoreCase(b.definitionString) : Double.compare(b.score, a.score));
+			return results;
+		}
+	}
+	
+	/**
+	 * A single result of {@link Dictionary#rank(String, int)}.
+	 *
 	 * @author Joe Desmond
 	 */
-	private static final class DateComparator implements Comparator<String> {
+	public static final class RankedResult {
 		
 		/**
-		 * Definition map, provided so that definitions can be looked up in {@link #compare(String, String)}
+		 * Definition string for the word/phrase (includes the word and its definition)
 		 */
-		private final Map<String, Definition> definitions;
+		public final String definitionString;
 		
 		/**
-		 * Creates a DateComparator with knowledge of the given definitions
-		 * 
-		 * @param _definitions definitions
+		 * BM25 score of the entry; higher is more relevant
 		 */
-		private DateComparator(final Map<String, Definition> _definitions) {
-			definitions = _definitions;
-		}		
+		public final double score;
 		
 		/**
-		 * Compares two entries in the dictionary by looking them up and comparing their dates. This method does not perform
-		 * checks to ensure that definitions actually exist; definitions are expected to exist in {@link #definitions}.
+		 * Creates a ranked result.
 		 * 
-		 * @param o1 first word
-		 * @param o2 second word
-		 * @return negative int, positive int, or zero
-		 * @see Comparator#compare(Object, Object)
+		 * @param _definitionString word/phrase and definition
+		 * @param _score BM25 score
 		 */
-		@Override
-		public final int compare(final String o1, final String o2) {
-			final Definition def1 = definitions.get(o1);
-			final Definition def2 = definitions.get(o2);
-			
-			return def1.entryDate().compareTo(def2.entryDate());
+		public RankedResult(final String _definitionString, final double _score) {
+			definitionString = _definitionString;
+			score = _score;
 		}
-		
 	}
 	
 	/**
-	 * Get all the words in this dictionary, sorted by entry date.
+	 * Returns the entries whose definitions refer to a word/phrase: definitions that quote it (like <code>see "pumpernickel"</code>), or that
+	 * mention it exactly if it is defined (see {@link ReferenceGraph}). The references are found in a graph that is built the first time one of
+	 * {@link #referencesTo(String)}, {@link #referencesFrom(String)} and {@link #orphans()} is called, and kept up to date as the dictionary changes;
+	 * after that, this takes time proportional to the number of references.
 	 * 
-	 * @return a list of words/phrases
+	 * @param word word/phrase (case sensitive); it does not need to be defined
+	 * @return the words/phrases whose definitions refer to it, sorted alphabetically (case insensitive)
+	 * @throws IllegalStateException if loading failed or was cancelled
 	 */
-	public final List<String> getEntryDateSortedWords() {
-		final Set<String> words = definitions.keySet();
-		final List<String> sortedWords = new ArrayList<String>();
+	public final List<String> referencesTo(final String word) {
+		awaitLoaded();
 		
-		sortedWords.addAll(words);
-		Collections.sort(sortedWords, new DateComparator(definitions));
-		
-		return sortedWords;
+		synchronized (this) {
+			final List<String> sources = new ArrayList<String>(references().referencesTo(word));
+			
+			sources.sort(String.CASE_INSENSITIVE_ORDER);
+			return sources;
+		}
 	}
 	
 	/**
-	 * Returns a readable definition string containing a word and its definition.
+	 * Returns the defined words/phrases that the definition of an entry refers to; see {@link #referencesTo(String)}.
 	 * 
-	 * @param word word/phrase
-	 * @return definition string
-	 * @throws NullPointerException if the definition does not exist
+	 * @param word word/phrase (case sensitive)
+	 * @return the defined words/phrases that its definition refers to, sorted alphabetically (case insensitive), or {@link Optional#empty} if the
+	 * word/phrase is not defined
+	 * @throws IllegalStateException if loading failed or was cancelled
 	 */
-	private final String getDefinitionString(final String word) {
-		final Definition definition = definitions.get(word);
+	public final Optional<List<String>> referencesFrom(final String word) {
+		awaitLoaded();
 		
-		if (definition == null) {
-			throw new NullPointerException("No definition exists for \"" + word + "\"!");
-		}
+		synchronized (this) {
+			final ReferenceGraph graph = references();
+			
+			if (!definitions.containsKey(word)) {
+				return Optional.empty();
+			}
+			
+			final List<String> targets = new ArrayList<String>();
+			for (final String target : graph.referencesFrom(word)) {
+				if (definitions.containsKey(target)) {
+					targets.add(target);
+				}
+			}
+			
+			targets.sort(String.CASE_INSENSITIVE_ORDER);
+			return Optional.of(targets);
+		}
+	}
+	
+	/**
+	 * Returns the entries that no other definition refers to; see {@link #referencesTo(String)}.
+	 * 
+	 * @return the words/phrases that are not referred to, sorted alphabetically (case insensitive)
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	public final List<String> orphans() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			final ReferenceGraph graph = references();
+			final List<String> orphans = new ArrayList<String>();
+			final EntryStore.Cursor cursor = definitions.freeze().cursor();
+			
+			while (cursor.next()) {
+				if (!graph.isReferenced(cursor.word())) {
+					orphans.add(cursor.word());
+				}
+			}
+			
+			orphans.sort(String.CASE_INSENSITIVE_ORDER);
+			return orphans;
+		}
+	}
+	
+	/**
+	 * Returns the graph of references between the entries, building it if it does not exist. The dictionary cannot be changed while the graph is
+	 * built. Must be called while holding the lock on this dictionary, after loading has finished.
+	 * 
+	 * @return the graph
+	 */
+	private final ReferenceGraph references() {
+		if (references == null) {
+			references = ReferenceGraph.build(definitions.freeze(), word -> definitions.get(word).rawDefinition());
+		}
 		
-		return word + ":\t" + definition.definition();
+		return references;
 	}
 	
 	/**
-	 * Serializes this Dictionary and saves it to a file.
+	 * Finds the pairs of entries whose definitions are nearly the same: those whose Jaccard similarity, over overlapping runs of
+	 * {@value DuplicateIndex#SHINGLE_LENGTH} characters ignoring case, is at least a threshold. Candidates are found with MinHash signatures and
+	 * locality-sensitive hashing instead of comparing every pair (see {@link DuplicateIndex}), so a pair just above the threshold is very rarely
+	 * missed. The signatures are computed in parallel the first time this method is called, while the dictionary cannot be changed, and kept up to
+	 * date as the dictionary changes after that. The search runs in parallel and reads a {@link Snapshot}, so the dictionary can be changed while
+	 * it runs.
+	 * 
+	 * @param threshold lowest similarity, greater than 0 and at most 1
+	 * @param executor runs the parallel work
+	 * @return the pairs, most similar first
+	 * @throws IllegalArgumentException if the threshold is out of range
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	public final List<DuplicatePair> duplicates(final double threshold, final Executor executor) {
+		if (!(threshold > 0 && threshold <= 1)) {
+			throw new IllegalArgumentException("Threshold must be greater than 0 and at most 1");
+		}
+		
+		awaitLoaded();
+		
+		final Snapshot snapshot;
+		final int[] ids;
+		final int[][] signatures;
+		synchronized (this) {
+			if (duplicateIndex == null) {
+				duplicateIndex = DuplicateIndex.build(definitions.freeze(), executor);
+			}
+			
+			snapshot = snapshot();
+			ids = DuplicateIndex.liveIds(snapshot.frozen);
+			signatures = duplicateIndex.signatures(ids);
+		}
+		
+		try (snapshot) {
+			final List<DuplicatePair> pairs = new ArrayList<DuplicatePair>();
+			
+			for (final DuplicateIndex.Pair pair : DuplicateIndex.find(ids, signatures, threshold, snapshot.frozen, executor)) {
+				final String first = snapshot.frozen.word(pair.first);
+				final String second = snapshot.frozen.word(pair.second);
+				final boolean inOrder = first.compareToIgnoreCase(second) <= 0;
+				
+				pairs.add(new DuplicatePair(inOrder ? first : second, inOrder ? second : first, pair.similarity));
+			}
+			
+			pairs.sort(Comparator.comparingDouble((DuplicatePair pair) -> -pair.similarity)
+					.thenComparing(pair -> pair.first, String.CASE_INSENSITIVE_ORDER)
+					.thenComparing(pair -> pair.second, String.CASE_INSENSITIVE_ORDER));
+			return pairs;
+		}
+	}
+	
+	/**
+	 * A single result of {@link Dictionary#duplicates(double, Executor)}.
+	 *
+	 * @author Joe Desmond
+	 */
+	public static final class DuplicatePair {
+		
+		/**
+		 * The word/phrase that comes first alphabetically
+		 */
+		public final String first;
+		
+		/**
+		 * The other word/phrase
+		 */
+		public final String second;
+		
+		/**
+		 * Similarity of their definitions, from 0 to 1
+		 */
+		public final double similarity;
+		
+		/**
+		 * Creates a pair.
+		 * 
+		 * @param _first the word/phrase that comes first alphabetically
+		 * @param _second the other word/phrase
+		 * @param _similarity similarity of their definitions
+		 */
+		public DuplicatePair(final String _first, final String _second, final double _similarity) {
+			first = _first;
+			second = _second;
+			similarity = _similarity;
+		}
+	}
+	
+	/**
+	 * Sorts search results by relevancy and alphabetical order and keeps the ones that match.
+	 * 
+	 * @param results every result of a search
+	 * @return results with a nonzero score, most relevant first
+	 */
+	static final List<SearchResult> relevantResults(final List<SearchResult> results) {
+		Collections.sort(results, new AlphabeticalRelevancyComparator());
+		
+		final List<SearchResult> relevantResults = new ArrayList<SearchResult>();
+		
+		for (int i = results.size() - 1; i >= 0; i--) {
+			final SearchResult result = results.get(i);
+			if (result.score == 0) {
+				break;
+			} else {
+				relevantResults.add(result);
+			}
+		}
+		
+		return relevantResults;
+	}
+	
+	/**
+	 * Counts the matches of a search term in one candidate string, with the automaton if there is one and it can search the string.
+	 * 
+	 * @param automaton search term compiled to an automaton, or null
+	 * @param matcher matcher of the search term
+	 * @param meter meter of the search budget
+	 * @param defString single search candidate (word and definition string)
+	 * @return number of matches
+	 * @throws SearchBudget.Exhausted if the budget runs out
+	 */
+	private static final int countMatches(final AutomatonPattern automaton, final Matcher matcher, final SearchBudget.Meter meter, final String defString) {
+		if (automaton != null) {
+			final int count = automaton.count(defString, meter);
+			
+			if (count >= 0) {
+				return count;
+			}
+		}
+		
+		matcher.reset(meter.of(defString));
+		
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Adds a definition or updates an existing definition for a given word/phrase.
+	 * 
+	 * @param word word/phrase to add a definition for (case sensitive)
+	 * @param definition definition
+	 * @return true if the definition existed before, false if it's new
+	 */
+	public final boolean strongDefine(final String word, final Definition definition) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			final Definition old = definitions.put(word, definition);
+			
+			if (references != null) {
+				references.defined(word, (old == null) ? null : old.rawDefinition(), definition.rawDefinition());
+			}
+			if (old != null) {
+				dateIndex.remove(old.id(), old.entryDate().getTime());
+				entryRetired(old.id());
+				reclaim();
+			}
+			dateIndex.add(definitions.idOf(word), definition.entryDate().getTime());
+			entryAdded(definitions.idOf(word));
+			if (replicationLog != null) {
+				replicationLog.logPut(word, definition);
+			}
+			
+			return old != null;
+		}
+	}
+	
+	/**
+	 * Gets the definition for a word/phrase. If the dictionary is still loading, the definition is read directly from the file instead of waiting.
+	 * 
+	 * @param word word/phrase (case sensitive)
+	 * @return definition for the word ({@link Optional#empty} if the word is not defined)
+	 * @throws java.io.UncheckedIOException if the dictionary is still loading and its file cannot be read
+	 */
+	public final Optional<Definition> getDefinition(final String word) {
+		final LazyLoader pending = loader;
+		
+		if (pending != null) {
+			final Optional<Definition> direct = pending.lookup(word);
+			
+			if (direct != null) {
+				return direct;
+			}
+			
+			awaitLoaded();
+		}
+		
+		final Definition definition;
+		synchronized (this) {
+			definition = definitions.get(word);
+		}
+		
+		return (definition == null) ? Optional.empty() : Optional.of(definition);
+	}
+	
+	/**
+	 * Returns a text representation of this dictionary with all words (in alphabetical order) and their definitions, read from a {@link Snapshot}.
+	 * 
+	 * @return text version of this dictionary (human readable)
+	 * @see Snapshot#toString()
+	 */
+	@Override
+	public final String toString() {
+		try (Snapshot snapshot = snapshot()) {
+			return snapshot.toString();
+		}
+	}
+	
+	/**
+	 * Writes the text representation of this dictionary (see {@link #toString()}) from a {@link Snapshot}, without building it in memory first.
+	 * 
+	 * @param out where to write the text
+	 * @throws IOException if there is a problem writing
+	 * @see Snapshot#print(Appendable)
+	 */
+	public final void print(final Appendable out) throws IOException {
+		try (Snapshot snapshot = snapshot()) {
+			snapshot.print(out);
+		}
+	}
+	
+	/**
+	 * Returns a list of all defined words in the dictionary, sorted alphabetically (case insensitive), read from a {@link Snapshot}.
+	 * 
+	 * @return a list of sorted words
+	 */
+	public final List<String> getSortedWords() {
+		try (Snapshot snapshot = snapshot()) {
+			return snapshot.getSortedWords();
+		}
+	}
+	
+	/**
+	 * Get all the words in this dictionary, sorted by entry date.
+	 * 
+	 * @return a list of words/phrases
+	 */
+	public final List<String> getEntryDateSortedWords() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return dateIndex.sortedWords();
+		}
+	}
+	
+	/**
+	 * Counts the entries whose entry dates lie in <code>[from, to)</code>.
+	 * 
+	 * @param from start date (inclusive)
+	 * @param to end date (exclusive)
+	 * @return number of entries entered in the given range
+	 */
+	public final int countEntriesBetween(final Date from, final Date to) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return dateIndex.countBetween(from.getTime(), to.getTime());
+		}
+	}
+	
+	/**
+	 * Returns the words whose entry dates lie in <code>[from, to)</code>, oldest first.
+	 * 
+	 * @param from start date (inclusive)
+	 * @param to end date (exclusive)
+	 * @return words entered in the given range
+	 */
+	public final List<String> getWordsEnteredBetween(final Date from, final Date to) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return dateIndex.wordsBetween(from.getTime(), to.getTime());
+		}
+	}
+	
+	/**
+	 * Returns the <code>n</code> most recently entered words, most recent first.
+	 * 
+	 * @param n maximum number of words to return
+	 * @return up to <code>n</code> words/phrases
+	 */
+	public final List<String> getMostRecentWords(final int n) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return dateIndex.mostRecent(n);
+		}
+	}
+	
+	/**
+	 * Returns the time between consecutive entries at the given percentile.
+	 * 
+	 * @param percentile percentile, from 0 to 100
+	 * @return gap in milliseconds, or -1 if there are fewer than two entries
+	 */
+	public final long getEntryGapPercentile(final double percentile) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return dateIndex.gapPercentile(percentile);
+		}
+	}
+	
+	/**
+	 * Returns the times between consecutive entries (ordered by entry date), sorted in ascending order.
+	 * 
+	 * @return a new array of gaps in milliseconds
+	 */
+	public final long[] getSortedEntryGaps() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return dateIndex.sortedGaps();
+		}
+	}
+	
+	/**
+	 * Counts the entries by access count, in power-of-two buckets: element 0 is the number of entries that have never been accessed, and
+	 * element <code>k</code> (k &gt; 0) the number accessed from 2<sup>k-1</sup> to 2<sup>k</sup>-1 times.
+	 * 
+	 * @return a new array of entry counts, without trailing empty buckets
+	 */
+	public final long[] getAccessCountHistogram() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			return definitions.columns.accessHistogram();
+		}
+	}
+	
+	/**
+	 * Saves this Dictionary to an indexed dictionary file, which can be opened without waiting for every definition to load.
+	 * Definitions are compressed in the file if this dictionary uses {@link Storage#COMPRESSED}. The entries are read from a {@link Snapshot},
+	 * so the dictionary can be changed while it is being saved. The file is written under a temporary name and then renamed, so if saving fails
+	 * (or the program stops partway), an existing file at <code>path</code> is left as it was.
 	 * 
 	 * @param path path of the file
 	 * @throws IOException if there is a problem creating/writing to the file
+	 * @see #open(String, Executor)
 	 */
 	public final void save(final String path) throws IOException {
-		final FileOutputStream fos = new FileOutputStream(new File(path));
-		final ObjectOutputStream oos = new ObjectOutputStream(fos);
+		final DictionarySaveEvent event = new DictionarySaveEvent();
+		event.begin();
+		
+		final File file = new File(path);
+		final int entries;
+		try (Snapshot snapshot = snapshot()) {
+			entries = snapshot.size();
+			DictionaryFile.write(path, name, entries, snapshot.entries(), storage() == Storage.COMPRESSED);
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = path;
+			event.entries = entries;
+			event.bytes = file.length();
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Writes a dictionary file directly from a stream of entries, without creating a Dictionary. The file can be opened with {@link #load(String)}
+	 * or {@link #open(String, Executor)} like any saved dictionary. Entries are written as they are produced by the iterator, so dictionaries much larger than the heap can be written.
+	 * 
+	 * @param path path of the file
+	 * @param name name of the dictionary
+	 * @param size exact number of entries that <code>entries</code> will produce
+	 * @param entries entries to write; every word must be unique
+	 * @throws IOException if there is a problem creating/writing to the file, or if <code>entries</code> does not produce exactly <code>size</code> entries
+	 */
+	public static final void write(final String path, final String name, final int size, final Iterator<? extends Map.Entry<String, Definition>> entries) throws IOException {
+		DictionaryFile.write(path, name, size, entries, false);
+	}
+	
+	/**
+	 * Writes a dictionary file directly from a stream of entries, optionally with compressed definitions.
+	 * 
+	 * @param path path of the file
+	 * @param name name of the dictionary
+	 * @param size exact number of entries that <code>entries</code> will produce
+	 * @param entries entries to write; every word must be unique
+	 * @param compressed true to compress the definitions in the file
+	 * @throws IOException if there is a problem creating/writing to the file, or if <code>entries</code> does not produce exactly <code>size</code> entries
+	 * @see #write(String, String, int, Iterator)
+	 */
+	public static final void write(final String path, final String name, final int size, final Iterator<? extends Map.Entry<String, Definition>> entries,
+			final boolean compressed) throws IOException {
+		DictionaryFile.write(path, name, size, entries, compressed);
+	}
+	
+	/**
+	 * Serializes this Dictionary as a {@link SerializedForm}, which streams the entries of a {@link Snapshot} instead of serializing the object graph
+	 * of the definition map.
+	 * 
+	 * @return serialization proxy for this dictionary
+	 */
+	private Object writeReplace() {
+		return new SerializedForm(name, snapshot());
+	}
+	
+	/**
+	 * Reads a Dictionary that was serialized before {@link SerializedForm} existed, when the definitions were a serialized HashMap, and copies it
+	 * into a new Dictionary with the default storage; see {@link #readResolve()}.
+	 * 
+	 * @param in stream to read from
+	 * @throws IOException if there is a problem reading from the stream
+	 * @throws ClassNotFoundException if a serialized class cannot be found
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		final ObjectInputStream.GetField fields = in.readFields();
+		final String legacyName = (String) fields.get("name", null);
+		@SuppressWarnings("unchecked")
+		final Map<String, Definition> legacyDefinitions = (Map<String, Definition>) fields.get("definitions", null);
+		
+		if (legacyDefinitions == null) {
+			throw new InvalidObjectException("Dictionary \"" + legacyName + "\" has no definitions");
+		}
 		
-		oos.writeObject(this);
+		legacy = new Dictionary(legacyName, legacyDefinitions.size());
+		for (final Map.Entry<String, Definition> entry : legacyDefinitions.entrySet()) {
+			legacy.putLoaded(entry.getKey(), entry.getValue());
+		}
+		legacy.rebuildDateIndex();
+	}
+	
+	/**
+	 * Returns the Dictionary read by {@link #readObject(ObjectInputStream)} in place of this object, whose entry store was not created.
+	 * 
+	 * @return the deserialized dictionary
+	 */
+	private Object readResolve() {
+		return (legacy != null) ? legacy : this;
+	}
+	
+	/**
+	 * Returns the times between consecutive entry dates, sorted in ascending order.
+	 * 
+	 * @param sortedTimes entry dates in epoch milliseconds, sorted in ascending order
+	 * @return a new array of gaps in milliseconds
+	 */
+	static final long[] entryGaps(final long[] sortedTimes) {
+		final long[] gaps = new long[Math.max(0, sortedTimes.length - 1)];
+		for (int i = 0; i < gaps.length; i++) {
+			gaps[i] = sortedTimes[i + 1] - sortedTimes[i];
+		}
+		Arrays.sort(gaps);
 		
-		oos.close();
+		return gaps;
+	}
+	
+	/**
+	 * Takes a snapshot of the dictionary, waiting for it to finish loading first. The snapshot must be closed when it is no longer needed, or the entries
+	 * replaced and removed after it was taken will never be freed.
+	 * 
+	 * @return a snapshot of the current version of the dictionary
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	public final Snapshot snapshot() {
+		awaitLoaded();
+		
+		synchronized (this) {
+			final EntryStore.Frozen frozen = definitions.freeze();
+			openSnapshots.merge(frozen.version, 1, Integer::sum);
+			
+			return new Snapshot(frozen);
+		}
+	}
+	
+	/**
+	 * Returns the current version of the dictionary: the number of changes made to it.
+	 * 
+	 * @return current version
+	 */
+	final long version() {
+		synchronized (this) {
+			return definitions.version();
+		}
+	}
+	
+	/**
+	 * Starts logging every change made to this dictionary, waiting for it to finish loading first. If changes are already being logged, returns the
+	 * existing log.
+	 * 
+	 * @param capacity maximum number of changes kept in a new log
+	 * @return the log
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	final ReplicationLog startReplicationLog(final int capacity) {
+		awaitLoaded();
+		
+		synchronized (this) {
+			if (replicationLog == null) {
+				replicationLog = new ReplicationLog(this, capacity);
+			}
+			
+			return replicationLog;
+		}
+	}
+	
+	/**
+	 * Stops logging changes and closes the log. Does nothing if changes are not being logged.
+	 */
+	final void stopReplicationLog() {
+		synchronized (this) {
+			if (replicationLog != null) {
+				replicationLog.close();
+				replicationLog = null;
+			}
+		}
+	}
+	
+	/**
+	 * Frees the entries that no open snapshot can see. Must be called while holding the lock on this dictionary.
+	 */
+	private final void reclaim() {
+		definitions.reclaim(openSnapshots.isEmpty() ? Long.MAX_VALUE : openSnapshots.firstKey());
+	}
+	
+	/**
+	 * Records that an entry was given an ID, for the full-text index and the duplicate signatures. Must be called while holding the lock on this
+	 * dictionary.
+	 * 
+	 * @param id entry ID
+	 */
+	private final void entryAdded(final int id) {
+		if (duplicateIndex != null) {
+			duplicateIndex.add(id, definitions.definitionText(id));
+		}
+		if (rankChanges != null) {
+			rankChanges.added(id);
+		}
+		if (nextRankChanges != null) {
+			nextRankChanges.added(id);
+		}
+	}
+	
+	/**
+	 * Records that an entry ID was retired, for the full-text index and the duplicate signatures. Must be called while holding the lock on this
+	 * dictionary.
+	 * 
+	 * @param id entry ID
+	 */
+	private final void entryRetired(final int id) {
+		if (duplicateIndex != null) {
+			duplicateIndex.retire(id);
+		}
+		if (rankChanges != null) {
+			rankChanges.retired(id);
+		}
+		if (nextRankChanges != null) {
+			nextRankChanges.retired(id);
+		}
+	}
+	
+	/**
+	 * Builds the full-text index if it does not exist, or if so many entries have changed since it was built (more than an eighth of them, and
+	 * at least {@link #RANK_REBUILD_CHANGES}) that queries would spend more time scoring the changed entries than a rebuild takes.
+	 * The index is built from a snapshot, so the dictionary can be changed while it is built.
+	 */
+	private final void updateRankIndex() {
+		synchronized (rankLock) {
+			final Snapshot snapshot;
+			
+			synchronized (this) {
+				if (rankIndex != null && rankChanges.count() <= Math.max(RANK_REBUILD_CHANGES, rankIndex.documents / 8)) {
+					return;
+				}
+				
+				snapshot = snapshot();
+				nextRankChanges = new RankIndex.Changes();
+			}
+			
+			try (snapshot) {
+				final RankIndex index = RankIndex.build(snapshot.frozen, RankIndex.Analyzer.DEFAULT);
+				
+				synchronized (this) {
+					rankIndex = index;
+					rankChanges = nextRankChanges;
+				}
+			} finally {
+				synchronized (this) {
+					nextRankChanges = null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The entries of a {@link Dictionary} at one version. A snapshot sees no changes made after it was taken, and reads the entries without locks,
+	 * from any thread, while the dictionary keeps changing. Reading definitions from a snapshot does not increase their access counts. <p>
+	 * 
+	 * The entries replaced or removed after a snapshot was taken are kept in memory until it is closed, so snapshots should be closed as soon as
+	 * possible, with try-with-resources.
+	 *
+	 * @author Joe Desmond
+	 */
+	public final class Snapshot implements AutoCloseable {
+		
+		/**
+		 * Entries at this version
+		 */
+		private final EntryStore.Frozen frozen;
+		
+		/**
+		 * True once the snapshot has been closed
+		 */
+		private boolean closed = false;
+		
+		/**
+		 * Creates a snapshot. The version must already be counted in {@link Dictionary#openSnapshots}.
+		 * 
+		 * @param _frozen entries at this version
+		 */
+		private Snapshot(final EntryStore.Frozen _frozen) {
+			frozen = _frozen;
+		}
+		
+		/**
+		 * Returns the version of the dictionary that this snapshot sees.
+		 * 
+		 * @return version (the number of changes made before the snapshot was taken)
+		 */
+		public final long version() {
+			return frozen.version;
+		}
+		
+		/**
+		 * Returns the number of entries in this snapshot.
+		 * 
+		 * @return number of entries
+		 */
+		public final int size() {
+			return frozen.size;
+		}
+		
+		/**
+		 * Returns every word in this snapshot, sorted alphabetically (case insensitive).
+		 * 
+		 * @return a list of sorted words
+		 */
+		public final List<String> getSortedWords() {
+			final List<String> words = new ArrayList<String>(frozen.size);
+			final EntryStore.Cursor cursor = frozen.cursor();
+			
+			while (cursor.next()) {
+				words.add(cursor.word());
+			}
+			
+			if (!frozen.sorted()) {
+				words.sort(String.CASE_INSENSITIVE_ORDER);
+			}
+			return words;
+		}
+		
+		/**
+		 * Searches every entry in this snapshot; see {@link Dictionary#searchAll(String)}.
+		 * 
+		 * @param regex regular expression search term
+		 * @return search results, one for every entry
+		 */
+		public final List<SearchResult> searchAll(final String regex) {
+			return searchAll(regex, SearchEngine.DEFAULT);
+		}
+		
+		/**
+		 * Searches every entry in this snapshot with the given search engine; see {@link Dictionary#searchAll(String, SearchEngine)}.
+		 * 
+		 * @param regex regular expression search term
+		 * @param engine how the regular expression is matched
+		 * @return search results, one for every entry
+		 */
+		public final List<SearchResult> searchAll(final String regex, final SearchEngine engine) {
+			final Matcher matcher = Pattern.compile(regex).matcher("");
+			final AutomatonPattern automaton = (engine == SearchEngine.AUTOMATON) ? AutomatonPattern.compile(regex) : null;
+			final LiteralPrefilter prefilter = LiteralPrefilter.of(regex);
+			final SearchBudget.Meter meter = SearchBudget.unlimited().meter();
+			final List<SearchResult> results = new ArrayList<SearchResult>(frozen.size);
+			
+			final EntryStore.Cursor cursor = frozen.cursor();
+			
+			while (cursor.next()) {
+				final String word = cursor.word();
+				final String definition = cursor.definitionText();
+				
+				if (prefilter == null || prefilter.mightMatch(word, definition)) {
+					final String definitionString = word + ":\t" + definition;
+					results.add(new SearchResult(definitionString, countMatches(automaton, matcher, meter, definitionString)));
+				} else {
+					results.add(new SearchResult(word + ":\t" + definition, 0));
+				}
+			}
+			
+			return results;
+		}
+		
+		/**
+		 * Searches every entry in this snapshot and returns the matching ones; see {@link Dictionary#search(String)}.
+		 * 
+		 * @param regex regular expression search term
+		 * @return results with a nonzero score, most relevant first
+		 */
+		public final List<SearchResult> search(final String regex) {
+			return search(regex, SearchBudget.unlimited());
+		}
+		
+		/**
+		 * Searches the entries in this snapshot until a budget runs out, and returns the matching ones; see {@link Dictionary#search(String, SearchBudget)}.
+		 * 
+		 * @param regex regular expression search term
+		 * @param budget limits of the search
+		 * @return results with a nonzero score, most relevant first; incomplete if the budget ran out
+		 */
+		public final List<SearchResult> search(final String regex, final SearchBudget budget) {
+			return search(regex, budget, SearchEngine.DEFAULT);
+		}
+		
+		/**
+		 * Searches the entries in this snapshot with the given search engine until a budget runs out, and returns the matching ones; see
+		 * {@link Dictionary#search(String, SearchBudget, SearchEngine)}.
+		 * 
+		 * @param regex regular expression search term
+		 * @param budget limits of the search
+		 * @param engine how the regular expression is matched
+		 * @return results with a nonzero score, most relevant first; incomplete if the budget ran out
+		 */
+		public final List<SearchResult> search(final String regex, final SearchBudget budget, final SearchEngine engine) {
+			return relevantResults(matches(regex, budget, engine));
+		}
+		
+		/**
+		 * Searches the entries in this snapshot like {@link #search(String, SearchBudget, SearchEngine)}, and returns the matching ones unsorted.
+		 * 
+		 * @param regex regular expression search term
+		 * @param budget limits of the search
+		 * @param engine how the regular expression is matched
+		 * @return results with a nonzero score, in the order they were found; incomplete if the budget ran out
+		 */
+		final List<SearchResult> matches(final String regex, final SearchBudget budget, final SearchEngine engine) {
+			final Matcher matcher = Pattern.compile(regex).matcher("");
+			final AutomatonPattern automaton = (engine == SearchEngine.AUTOMATON) ? AutomatonPattern.compile(regex) : null;
+			final LiteralPrefilter prefilter = LiteralPrefilter.of(regex);
+			final SearchBudget.Meter meter = budget.meter();
+			final List<SearchResult> results = new ArrayList<SearchResult>();
+			
+			final EntryStore.Cursor cursor = frozen.cursor();
+			
+			try {
+				while (cursor.next()) {
+					meter.step();
+					
+					final String word = cursor.word();
+					final String definition = cursor.definitionText();
+					
+					if (prefilter == null || prefilter.mightMatch(word, definition)) {
+						final String definitionString = word + ":\t" + definition;
+						final int count = countMatches(automaton, matcher, meter, definitionString);
+						
+						if (count > 0) {
+							results.add(new SearchResult(definitionString, count));
+						}
+					}
+				}
+			} catch (SearchBudget.Exhausted e) {
+				// Stopped by the budget; the results found so far are returned
+			}
+			
+			return results;
+		}
+		
+		/**
+		 * Returns the times between consecutive entries (ordered by entry date) in this snapshot, sorted in ascending order.
+		 * 
+		 * @return a new array of gaps in milliseconds
+		 */
+		public final long[] getSortedEntryGaps() {
+			return entryGaps(getSortedEntryTimes());
+		}
+		
+		/**
+		 * Returns the entry dates of every entry in this snapshot, sorted in ascending order.
+		 * 
+		 * @return a new array of entry dates in epoch milliseconds
+		 */
+		final long[] getSortedEntryTimes() {
+			final long[] times = new long[frozen.size];
+			int count = 0;
+			
+			for (int id = frozen.columns.nextLive(0); id >= 0; id = frozen.columns.nextLive(id + 1)) {
+				times[count++] = frozen.columns.entryTime(id);
+			}
+			Arrays.sort(times, 0, count);
+			
+			return (count == times.length) ? times : Arrays.copyOf(times, count);
+		}
+		
+		/**
+		 * Counts the entries in this snapshot by access count; see {@link Dictionary#getAccessCountHistogram()}. Access counts are not versioned, so
+		 * they may include accesses made after the snapshot was taken.
+		 * 
+		 * @return a new array of entry counts, without trailing empty buckets
+		 */
+		public final long[] getAccessCountHistogram() {
+			return frozen.columns.accessHistogram();
+		}
+		
+		/**
+		 * Returns the entries in this snapshot, in no particular order (in alphabetical order for {@link Storage#LSM}), as definitions that hold
+		 * their own data.
+		 * 
+		 * @return iterator over every entry
+		 */
+		final Iterator<Map.Entry<String, Definition>> entries() {
+			final EntryStore.Cursor cursor = frozen.cursor();
+			
+			return new Iterator<Map.Entry<String, Definition>>() {
+				private boolean ready = cursor.next();
+				
+				@Override
+				public boolean hasNext() {
+					return ready;
+				}
+				
+				@Override
+				public Map.Entry<String, Definition> next() {
+					if (!ready) {
+						throw new NoSuchElementException();
+					}
+					
+					final int id = cursor.id();
+					final Definition definition = new Definition(cursor.definitionText(), new Date(frozen.columns.entryTime(id)), frozen.columns.accesses(id));
+					final Map.Entry<String, Definition> entry = new AbstractMap.SimpleImmutableEntry<String, Definition>(cursor.word(), definition);
+					
+					ready = cursor.next();
+					return entry;
+				}
+			};
+		}
+		
+		/**
+		 * Returns a text representation of this snapshot with all words (in alphabetical order) and their definitions.
+		 * 
+		 * @return text version of the dictionary (human readable)
+		 */
+		@Override
+		public final String toString() {
+			final StringBuilder sb = new StringBuilder();
+			
+			try {
+				print(sb);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			
+			return sb.toString();
+		}
+		
+		/**
+		 * Writes the text representation of this snapshot (see {@link #toString()}) without building it in memory first. For {@link Storage#LSM},
+		 * the entries are streamed from disk in order; otherwise the words are sorted first and the definitions read one by one.
+		 * 
+		 * @param out where to write the text
+		 * @throws IOException if there is a problem writing
+		 */
+		public final void print(final Appendable out) throws IOException {
+			out.append(name).append(System.lineSeparator());
+			
+			if (frozen.sorted()) {
+				final EntryStore.Cursor cursor = frozen.cursor();
+				
+				while (cursor.next()) {
+					out.append(System.lineSeparator()).append(cursor.word()).append(":\t").append(cursor.definitionText());
+				}
+				
+				return;
+			}
+			
+			final List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(frozen.size);
+			
+			for (int id = frozen.columns.nextLive(0); id >= 0; id = frozen.columns.nextLive(id + 1)) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(frozen.word(id), id));
+			}
+			entries.sort(Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER));
+			
+			for (final Map.Entry<String, Integer> entry : entries) {
+				out.append(System.lineSeparator()).append(entry.getKey()).append(":\t").append(frozen.definitionText(entry.getValue()));
+			}
+		}
+		
+		/**
+		 * Closes this snapshot, so that the entries only it could see can be freed. Does nothing if it is already closed.
+		 */
+		@Override
+		public final void close() {
+			synchronized (Dictionary.this) {
+				if (!closed) {
+					closed = true;
+					openSnapshots.computeIfPresent(frozen.version, (version, count) -> (count == 1) ? null : count - 1);
+					reclaim();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Rebuilds {@link #dateIndex} from the entry date column in one pass.
+	 */
+	final void rebuildDateIndex() {
+		final int[] ids = new int[definitions.size()];
+		final long[] times = new long[ids.length];
+		final int count = definitions.columns.copyLive(ids, times);
+		
+		dateIndex = new EntryDateIndex(definitions, ids, times, count);
+	}
+	
+	/**
+	 * Serialized form of a {@link Dictionary} (a serialization proxy). The name is serialized as a field; the entries follow as raw data:
+	 * the entry count, then for every entry its word, definition, entry date (epoch milliseconds) and access count. No per-entry objects are
+	 * serialized, so the stream does not need to remember every object it has written.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class SerializedForm implements Serializable {
+		
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = -4406939062542917066L;
+		
+		/**
+		 * Name of the dictionary
+		 */
+		private final String name;
+		
+		/**
+		 * Snapshot to write, or null if this form was deserialized
+		 */
+		private transient Snapshot snapshot;
+		
+		/**
+		 * The dictionary that was read, or null if this form is being written
+		 */
+		private transient Dictionary dictionary;
+		
+		/**
+		 * Creates a serialized form that will write the entries of a snapshot, and close it once they are written.
+		 * 
+		 * @param _name name of the dictionary
+		 * @param _snapshot entries to write
+		 */
+		private SerializedForm(final String _name, final Snapshot _snapshot) {
+			name = _name;
+			snapshot = _snapshot;
+		}
+		
+		/**
+		 * Writes the name, then streams every entry of the snapshot and closes it.
+		 * 
+		 * @param out stream to write to
+		 * @throws IOException if there is a problem writing
+		 */
+		private void writeObject(final ObjectOutputStream out) throws IOException {
+			try {
+				out.defaultWriteObject();
+				out.writeInt(snapshot.size());
+				
+				final Iterator<Map.Entry<String, Definition>> entries = snapshot.entries();
+				while (entries.hasNext()) {
+					final Map.Entry<String, Definition> entry = entries.next();
+					final Definition definition = entry.getValue();
+					
+					writeString(out, entry.getKey());
+					writeString(out, definition.rawDefinition());
+					out.writeLong(definition.entryDate().getTime());
+					out.writeInt(definition.accesses());
+				}
+			} finally {
+				snapshot.close();
+			}
+		}
+		
+		/**
+		 * Reads the name and every entry into a new Dictionary.
+		 * 
+		 * @param in stream to read from
+		 * @throws IOException if there is a problem reading
+		 * @throws ClassNotFoundException if a serialized class cannot be found
+		 */
+		private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			
+			final int count = in.readInt();
+			if (count < 0) {
+				throw new InvalidObjectException("Negative entry count: " + count);
+			}
+			
+			dictionary = new Dictionary(name, count);
+			
+			for (int i = 0; i < count; i++) {
+				final String word = readString(in);
+				final String definition = readString(in);
+				final long entryTime = in.readLong();
+				final int accesses = in.readInt();
+				
+				dictionary.definitions.put(word, new Definition(definition, new Date(entryTime), accesses));
+			}
+			
+			dictionary.rebuildDateIndex();
+		}
+		
+		/**
+		 * Returns the Dictionary that was read in place of this proxy.
+		 * 
+		 * @return the deserialized dictionary
+		 */
+		private Object readResolve() {
+			return dictionary;
+		}
+		
+		/**
+		 * Writes a string as a length-prefixed UTF-8 byte sequence. Unlike {@link ObjectOutputStream#writeUTF(String)}, this has no length limit.
+		 * 
+		 * @param out stream to write to
+		 * @param string string to write
+		 * @throws IOException if there is a problem writing
+		 */
+		private static final void writeString(final ObjectOutputStream out, final String string) throws IOException {
+			final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		
+		/**
+		 * Reads a string written by {@link #writeString(ObjectOutputStream, String)}.
+		 * 
+		 * @param in stream to read from
+		 * @return the string
+		 * @throws IOException if there is a problem reading
+		 */
+		private static final String readString(final ObjectInputStream in) throws IOException {
+			final int length = in.readInt();
+			if (length < 0) {
+				throw new InvalidObjectException("Negative string length: " + length);
+			}
+			
+			final byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
 	}
 
 	/**
-	 * Loads a serialized Dictionary from a file.
+	 * Opens a dictionary file and returns as soon as its header has been read. The definitions are loaded on the given executor; until they are,
+	 * {@link #getDefinition(String)} reads single definitions directly from the file, and methods that need every definition wait for loading to finish. <p>
+	 * 
+	 * Files saved before the indexed format existed (serialized Dictionaries) cannot be read partially; they are loaded completely before this method returns.
+	 * 
+	 * @param path path to the dictionary
+	 * @param executor executor to load the definitions on
+	 * @return the dictionary, which may still be loading
+	 * @throws IOException if there is a problem locating/reading the file
+	 * @throws ClassNotFoundException if the file is an older dictionary file and a serialized class cannot be found
+	 */
+	public static final Dictionary open(final String path, final Executor executor) throws IOException, ClassNotFoundException {
+		if (!DictionaryFile.isDictionaryFile(path)) {
+			return load(path);
+		}
+		
+		final LazyLoader loader = new LazyLoader(path);
+		final Dictionary dictionary = new Dictionary(loader.name(), loader.size());
+		
+		dictionary.loader = loader;
+		loader.start(dictionary, executor);
+		
+		return dictionary;
+	}
+	
+	/**
+	 * Loads a Dictionary from a file, either an indexed dictionary file or a serialized Dictionary saved by an older version.
 	 * 
 	 * @param path path to the dictionary
 	 * @return the dictionary
 	 * @throws IOException if there is a problem locating/reading the file
-	 * @throws ClassNotFoundException if the file is not a serialized object
+	 * @throws ClassNotFoundException if the file is not a dictionary file or a serialized object
 	 */
 	public static final Dictionary load(final String path) throws IOException, ClassNotFoundException {
-		final FileInputStream fis = new FileInputStream(new File(path));
-		final ObjectInputStream ois = new ObjectInputStream(fis);
-		final Dictionary dictionary = (Dictionary) ois.readObject();
+		final DictionaryLoadEvent event = new DictionaryLoadEvent();
+		event.begin();
 		
-		ois.close();
+		final File file = new File(path);
+		final Dictionary dictionary;
+		if (DictionaryFile.isDictionaryFile(path)) {
+			dictionary = DictionaryFile.read(path);
+		} else {
+			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				dictionary = (Dictionary) ois.readObject();
+			}
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = path;
+			event.entries = dictionary.size();
+			event.bytes = file.length();
+			event.commit();
+		}
 		
 		return dictionary;
 	}
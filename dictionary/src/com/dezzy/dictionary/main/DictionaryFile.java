@@ -0,0 +1,1018 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * The indexed dictionary file format. The file can be read sequentially like any other format, but it also has an on-disk hash table,
+ * so a single definition can be found with a few positional reads, without reading the rest of the file. <p>
+ *
+ * Layout (all integers are big-endian):
+ * <ol>
+ * <li>Header: <code>long</code> magic, <code>int</code> version, <code>int</code> entry count, <code>int</code> name length, then the name (UTF-8).
+ * 		In version 2 and 4 (compressed) files, the header ends with an <code>int</code> length and the preset dictionary of a {@link DefinitionCodec}</li>
+ * <li>Version 1: entries, one record each: <code>int</code> word length, word (UTF-8), <code>long</code> entry date (epoch milliseconds), <code>int</code> accesses,
+ * 		<code>int</code> definition length, definition (UTF-8) <br>
+ * 		Version 2: groups of up to {@link DefinitionCodec#BLOCK_ENTRIES} entries, each an <code>int</code> entry count, an <code>int</code> length and a
+ * 		compressed block holding the group's definitions, followed by one record per entry: <code>int</code> word length, word, <code>long</code> entry date,
+ * 		<code>int</code> accesses, <code>long</code> file offset of the group and <code>int</code> index of the definition in the block <br>
+ * 		Versions 3 and 4: chunks of up to {@link #CHUNK_ENTRIES} entries, each an <code>int</code> entry count, an <code>int</code> length and an
+ * 		<code>int</code> CRC-32C of the chunk's contents, then the contents: the entries of the chunk as in version 1 (version 3) or version 2 (version 4),
+ * 		except that a version 4 record holds the distance back from the record to its group instead of the group's file offset, so that every chunk
+ * 		can be encoded before its place in the file is known</li>
+ * <li>Hash table: a power-of-two number of slots, each an <code>int</code> word hash and the <code>long</code> file offset of its entry record
+ * 		(0 for an empty slot). Collisions are resolved by linear probing</li>
+ * <li>Footer: <code>long</code> offset of the hash table, <code>int</code> slot count, <code>long</code> magic</li>
+ * </ol>
+ *
+ * Files are written in versions 3 and 4. The chunks are encoded (and compressed) in parallel, and decoded and checked against their checksums in
+ * parallel when the file is read from start to end; single lookups through the hash table do not check them. A file is written under a temporary
+ * name in the same directory, flushed to the disk and then renamed over the old file, so a save that fails partway leaves the old file as it was.
+ * Encoding and decoding run on the common fork/join pool rather than on a caller's executor: a dictionary is loaded on a worker of its
+ * {@link CommandHandler}, and must not wait for tasks queued behind it on the same pool.
+ *
+ * @author Joe Desmond
+ */
+final class DictionaryFile {
+
+	/**
+	 * Magic number at the start and end of every indexed dictionary file ("DICTIDX1")
+	 */
+	static final long MAGIC = 0x4449435449445831L;
+
+	/**
+	 * Format version of files with uncompressed definitions
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Format version of files with compressed definitions
+	 */
+	private static final int COMPRESSED_VERSION = 2;
+
+	/**
+	 * Format version of files with uncompressed definitions in checksummed chunks
+	 */
+	private static final int CHUNKED_VERSION = 3;
+
+	/**
+	 * Format version of files with compressed definitions in checksummed chunks
+	 */
+	private static final int CHUNKED_COMPRESSED_VERSION = 4;
+
+	/**
+	 * Number of entries in a chunk (except the last one); a multiple of {@link DefinitionCodec#BLOCK_ENTRIES}
+	 */
+	static final int CHUNK_ENTRIES = 8192;
+
+	/**
+	 * Size of the header of a chunk
+	 */
+	private static final int CHUNK_HEADER_SIZE = 4 + 4 + 4;
+
+	/**
+	 * Runs the tasks that encode and decode chunks; on a single processor, handing chunks to another thread only adds work, so they are
+	 * encoded and decoded on the thread that reads or writes the file
+	 */
+	private static final Executor CODER = (ForkJoinPool.getCommonPoolParallelism() > 1) ? ForkJoinPool.commonPool() : Runnable::run;
+
+	/**
+	 * Number of chunks that are encoded or decoded ahead of the one being written or consumed; limits the memory used by chunks in flight
+	 */
+	private static final int MAX_PENDING_CHUNKS = 2 * ForkJoinPool.getCommonPoolParallelism() + 2;
+
+	/**
+	 * Size of the fixed part of the header, before the name
+	 */
+	private static final int HEADER_SIZE = 8 + 4 + 4 + 4;
+
+	/**
+	 * Size of the footer
+	 */
+	private static final int FOOTER_SIZE = 8 + 4 + 8;
+
+	/**
+	 * Size of one hash table slot
+	 */
+	private static final int SLOT_SIZE = 4 + 8;
+
+	/**
+	 * Number of bytes read at once when looking up a single entry; most entry records fit
+	 */
+	private static final int RECORD_READ_SIZE = 512;
+
+	/**
+	 * Size of the buffers used for sequential reads and writes
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Number of entries read between checks for cancellation
+	 */
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	/**
+	 * Everything in an indexed dictionary file except the entries: enough to look up single entries.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Header {
+
+		/**
+		 * Name of the dictionary
+		 */
+		final String name;
+
+		/**
+		 * Number of entries
+		 */
+		final int count;
+
+		/**
+		 * File offset of the first entry record
+		 */
+		final long entriesOffset;
+
+		/**
+		 * File offset of the hash table
+		 */
+		final long tableOffset;
+
+		/**
+		 * Number of hash table slots (a power of two)
+		 */
+		final int tableSlots;
+
+		/**
+		 * Codec for the compressed definition blocks, or null if definitions are not compressed
+		 */
+		final DefinitionCodec codec;
+
+		/**
+		 * True if the entries are in checksummed chunks (version 3 or 4)
+		 */
+		final boolean chunked;
+
+		/**
+		 * Creates a header.
+		 *
+		 * @param _name dictionary name
+		 * @param _count entry count
+		 * @param _entriesOffset offset of the first entry record
+		 * @param _tableOffset offset of the hash table
+		 * @param _tableSlots number of hash table slots
+		 * @param _codec codec for compressed definitions, or null
+		 * @param _chunked true if the entries are in checksummed chunks
+		 */
+		private Header(final String _name, final int _count, final long _entriesOffset, final long _tableOffset, final int _tableSlots, final DefinitionCodec _codec,
+				final boolean _chunked) {
+			name = _name;
+			count = _count;
+			entriesOffset = _entriesOffset;
+			tableOffset = _tableOffset;
+			tableSlots = _tableSlots;
+			codec = _codec;
+			chunked = _chunked;
+		}
+	}
+
+	/**
+	 * Receives entries as they are read.
+	 *
+	 * @author Joe Desmond
+	 */
+	@FunctionalInterface
+	interface EntryConsumer {
+
+		/**
+		 * Accepts one entry.
+		 *
+		 * @param word word/phrase
+		 * @param definition definition, with its entry date and access count
+		 */
+		void accept(String word, Definition definition);
+	}
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private DictionaryFile() {
+
+	}
+
+	/**
+	 * Returns true if a file starts with the indexed dictionary file magic number.
+	 *
+	 * @param path path of the file
+	 * @return true if the file is an indexed dictionary file
+	 * @throws IOException if the file cannot be read
+	 */
+	static final boolean isDictionaryFile(final String path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(new File(path)))) {
+			return in.readLong() == MAGIC;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * An encoded chunk, ready to be written.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class EncodedChunk {
+
+		/**
+		 * Index of the first entry of the chunk
+		 */
+		final int first;
+
+		/**
+		 * Number of entries
+		 */
+		final int count;
+
+		/**
+		 * Contents of the chunk
+		 */
+		final byte[] bytes;
+
+		/**
+		 * CRC-32C of {@link #bytes}
+		 */
+		final int checksum;
+
+		/**
+		 * Hash of every entry's word
+		 */
+		final int[] hashes;
+
+		/**
+		 * Offset of every entry record in {@link #bytes}
+		 */
+		final int[] recordOffsets;
+
+		/**
+		 * Creates an encoded chunk.
+		 *
+		 * @param _first index of the first entry
+		 * @param _count number of entries
+		 * @param _bytes contents
+		 * @param _hashes hash of every entry's word
+		 * @param _recordOffsets offset of every entry record in the contents
+		 */
+		EncodedChunk(final int _first, final int _count, final byte[] _bytes, final int[] _hashes, final int[] _recordOffsets) {
+			first = _first;
+			count = _count;
+			bytes = _bytes;
+			hashes = _hashes;
+			recordOffsets = _recordOffsets;
+
+			final CRC32C crc = new CRC32C();
+			crc.update(bytes, 0, bytes.length);
+			checksum = (int) crc.getValue();
+		}
+	}
+
+	/**
+	 * Writes a dictionary file from a stream of entries. Entries are taken from the iterator on the calling thread, a chunk at a time, and
+	 * the chunks are encoded in parallel; only a few chunks, and the hash and file offset of each entry (12 bytes), are kept in memory until
+	 * the hash table is written. The file is written under a temporary name and renamed to <code>path</code> once it is complete and on the disk.
+	 *
+	 * @param path path of the file
+	 * @param name name of the dictionary
+	 * @param size exact number of entries that <code>entries</code> will produce
+	 * @param entries entries to write; every word must be unique
+	 * @param compressed true to compress the definitions in blocks (version 4); the first {@link DefinitionCodec#TRAINING_ENTRIES} entries
+	 * 			are then held in memory to train the preset dictionary
+	 * @throws IOException if there is a problem writing, or if <code>entries</code> does not produce exactly <code>size</code> entries
+	 */
+	static final void write(final String path, final String name, final int size, final Iterator<? extends Map.Entry<String, Definition>> entries,
+			final boolean compressed) throws IOException {
+		final Path target = new File(path).getAbsoluteFile().toPath();
+		final Path temp = target.resolveSibling(target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+				writeContents(out, name, size, entries, compressed);
+				out.flush();
+				channel.force(true);
+			}
+
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		syncDirectory(target.getParent());
+	}
+
+	/**
+	 * Flushes a directory to the disk, so that a file renamed in it stays renamed after a crash. Does nothing on systems where directories
+	 * cannot be opened.
+	 *
+	 * @param directory the directory
+	 */
+	private static final void syncDirectory(final Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			//Directories cannot be opened or flushed on every system; the file has been renamed either way
+		}
+	}
+
+	/**
+	 * Writes the whole file: header, chunks, hash table and footer.
+	 *
+	 * @param out stream to write to
+	 * @param name name of the dictionary
+	 * @param size exact number of entries that <code>entries</code> will produce
+	 * @param entries entries to write
+	 * @param compressed true to compress the definitions
+	 * @throws IOException if there is a problem writing, or if <code>entries</code> does not produce exactly <code>size</code> entries
+	 */
+	private static final void writeContents(final DataOutputStream out, final String name, final int size, final Iterator<? extends Map.Entry<String, Definition>> entries,
+			final boolean compressed) throws IOException {
+		final int[] hashes = new int[size];
+		final long[] offsets = new long[size];
+		final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+		out.writeLong(MAGIC);
+		out.writeInt(compressed ? CHUNKED_COMPRESSED_VERSION : CHUNKED_VERSION);
+		out.writeInt(size);
+		out.writeInt(nameBytes.length);
+		out.write(nameBytes);
+
+		long position = HEADER_SIZE + nameBytes.length;
+		Iterator<? extends Map.Entry<String, Definition>> source = entries;
+		DefinitionCodec codec = null;
+
+		if (compressed) {
+			final List<Map.Entry<String, Definition>> training = new ArrayList<Map.Entry<String, Definition>>();
+			final List<String> samples = new ArrayList<String>();
+
+			while (training.size() < Math.min(size, DefinitionCodec.TRAINING_ENTRIES)) {
+				final Map.Entry<String, Definition> entry = nextEntry(entries, size, training.size());
+				training.add(entry);
+				samples.add(entry.getValue().rawDefinition());
+			}
+
+			codec = new DefinitionCodec(DefinitionCodec.train(samples));
+			out.writeInt(codec.dictionary().length);
+			out.write(codec.dictionary());
+			position += 4 + codec.dictionary().length;
+
+			final Iterator<Map.Entry<String, Definition>> buffered = training.iterator();
+			source = new Iterator<Map.Entry<String, Definition>>() {
+
+				@Override
+				public final boolean hasNext() {
+					return buffered.hasNext() || entries.hasNext();
+				}
+
+				@Override
+				public final Map.Entry<String, Definition> next() {
+					return buffered.hasNext() ? buffered.next() : entries.next();
+				}
+			};
+		}
+
+		final byte[] presetDictionary = compressed ? codec.dictionary() : null;
+		final ArrayDeque<CompletableFuture<EncodedChunk>> pending = new ArrayDeque<CompletableFuture<EncodedChunk>>();
+
+		for (int first = 0; first < size; first += CHUNK_ENTRIES) {
+			final int chunkFirst = first;
+			final int count = Math.min(CHUNK_ENTRIES, size - first);
+			final String[] words = new String[count];
+			final Definition[] definitions = new Definition[count];
+
+			for (int i = 0; i < count; i++) {
+				final Map.Entry<String, Definition> entry = nextEntry(source, size, first + i);
+				words[i] = entry.getKey();
+				definitions[i] = entry.getValue();
+			}
+
+			pending.add(CompletableFuture.supplyAsync(() -> encodeChunk(chunkFirst, words, definitions, presetDictionary), CODER));
+			if (pending.size() >= MAX_PENDING_CHUNKS) {
+				position = writeChunk(out, position, join(pending.poll()), hashes, offsets);
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			position = writeChunk(out, position, join(pending.poll()), hashes, offsets);
+		}
+
+		if (source.hasNext()) {
+			throw new IOException("Expected " + size + " entries but more were given");
+		}
+
+		final int slots = tableSlotsFor(size);
+		final int[] slotHashes = new int[slots];
+		final long[] slotOffsets = new long[slots];
+
+		for (int i = 0; i < size; i++) {
+			int slot = hashes[i] & (slots - 1);
+			while (slotOffsets[slot] != 0) {
+				slot = (slot + 1) & (slots - 1);
+			}
+
+			slotHashes[slot] = hashes[i];
+			slotOffsets[slot] = offsets[i];
+		}
+
+		for (int i = 0; i < slots; i++) {
+			out.writeInt(slotHashes[i]);
+			out.writeLong(slotOffsets[i]);
+		}
+
+		out.writeLong(position);
+		out.writeInt(slots);
+		out.writeLong(MAGIC);
+	}
+
+	/**
+	 * Encodes the entries of one chunk. Safe to call from several threads at once.
+	 *
+	 * @param first index of the first entry of the chunk
+	 * @param words words of the entries
+	 * @param definitions definitions of the entries
+	 * @param presetDictionary preset dictionary to compress the definitions with (version 4), or null to leave them uncompressed (version 3)
+	 * @return the encoded chunk
+	 */
+	private static final EncodedChunk encodeChunk(final int first, final String[] words, final Definition[] definitions, final byte[] presetDictionary) {
+		final int count = words.length;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * 64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		final int[] hashes = new int[count];
+		final int[] recordOffsets = new int[count];
+
+		try {
+			if (presetDictionary == null) {
+				for (int i = 0; i < count; i++) {
+					final byte[] wordBytes = words[i].getBytes(StandardCharsets.UTF_8);
+					final byte[] definitionBytes = definitions[i].rawDefinition().getBytes(StandardCharsets.UTF_8);
+
+					hashes[i] = hash(words[i]);
+					recordOffsets[i] = out.size();
+
+					out.writeInt(wordBytes.length);
+					out.write(wordBytes);
+					out.writeLong(definitions[i].entryDate().getTime());
+					out.writeInt(definitions[i].accesses());
+					out.writeInt(definitionBytes.length);
+					out.write(definitionBytes);
+				}
+			} else {
+				final DefinitionCodec codec = new DefinitionCodec(presetDictionary);
+				final byte[][] definitionBytes = new byte[DefinitionCodec.BLOCK_ENTRIES][];
+
+				for (int group = 0; group < count; group += DefinitionCodec.BLOCK_ENTRIES) {
+					final int groupCount = Math.min(DefinitionCodec.BLOCK_ENTRIES, count - group);
+
+					for (int i = 0; i < groupCount; i++) {
+						definitionBytes[i] = definitions[group + i].rawDefinition().getBytes(StandardCharsets.UTF_8);
+					}
+
+					final byte[] block = codec.compress(definitionBytes, groupCount);
+					final int groupOffset = out.size();
+
+					out.writeInt(groupCount);
+					out.writeInt(block.length);
+					out.write(block);
+
+					for (int i = 0; i < groupCount; i++) {
+						final int entry = group + i;
+						final byte[] wordBytes = words[entry].getBytes(StandardCharsets.UTF_8);
+
+						hashes[entry] = hash(words[entry]);
+						recordOffsets[entry] = out.size();
+
+						out.writeInt(wordBytes.length);
+						out.write(wordBytes);
+						out.writeLong(definitions[entry].entryDate().getTime());
+						out.writeInt(definitions[entry].accesses());
+						out.writeLong(recordOffsets[entry] - groupOffset);
+						out.writeInt(i);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return new EncodedChunk(first, count, bytes.toByteArray(), hashes, recordOffsets);
+	}
+
+	/**
+	 * Writes an encoded chunk and records the hash and file offset of each of its entries.
+	 *
+	 * @param out stream to write to
+	 * @param position file offset of the stream's position
+	 * @param chunk the chunk
+	 * @param hashes receives the hash of every entry
+	 * @param offsets receives the file offset of every entry record
+	 * @return file offset after the chunk
+	 * @throws IOException if there is a problem writing
+	 */
+	private static final long writeChunk(final DataOutputStream out, final long position, final EncodedChunk chunk, final int[] hashes, final long[] offsets) throws IOException {
+		final long contents = position + CHUNK_HEADER_SIZE;
+
+		for (int i = 0; i < chunk.count; i++) {
+			hashes[chunk.first + i] = chunk.hashes[i];
+			offsets[chunk.first + i] = contents + chunk.recordOffsets[i];
+		}
+
+		out.writeInt(chunk.count);
+		out.writeInt(chunk.bytes.length);
+		out.writeInt(chunk.checksum);
+		out.write(chunk.bytes);
+
+		return contents + chunk.bytes.length;
+	}
+
+	/**
+	 * Waits for a chunk to be encoded or decoded.
+	 *
+	 * @param <T> type of the result
+	 * @param future the task
+	 * @return the result of the task
+	 * @throws IOException if the task failed with an I/O problem, such as a checksum that does not match
+	 */
+	private static final <T> T join(final CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the next entry to write.
+	 *
+	 * @param entries entries to write
+	 * @param size number of entries expected
+	 * @param written number of entries taken so far
+	 * @return the next entry
+	 * @throws IOException if there are no more entries
+	 */
+	private static final Map.Entry<String, Definition> nextEntry(final Iterator<? extends Map.Entry<String, Definition>> entries, final int size, final int written) throws IOException {
+		if (!entries.hasNext()) {
+			throw new IOException("Expected " + size + " entries but only " + written + " were given");
+		}
+
+		return entries.next();
+	}
+
+	/**
+	 * Reads the header and footer of an indexed dictionary file.
+	 *
+	 * @param channel open channel to the file
+	 * @return the header
+	 * @throws IOException if the file cannot be read or is not an indexed dictionary file
+	 */
+	static final Header readHeader(final FileChannel channel) throws IOException {
+		final ByteBuffer fixed = readFully(channel, 0, HEADER_SIZE);
+
+		if (fixed.getLong() != MAGIC) {
+			throw new IOException("Not an indexed dictionary file");
+		}
+
+		final int version = fixed.getInt();
+		if (version < VERSION || version > CHUNKED_COMPRESSED_VERSION) {
+			throw new IOException("Unsupported dictionary file version " + version);
+		}
+
+		final int count = fixed.getInt();
+		final int nameLength = fixed.getInt();
+		final ByteBuffer nameBuffer = readFully(channel, HEADER_SIZE, nameLength);
+		final String name = new String(nameBuffer.array(), 0, nameLength, StandardCharsets.UTF_8);
+		long entriesOffset = HEADER_SIZE + nameLength;
+
+		DefinitionCodec codec = null;
+		if (version == COMPRESSED_VERSION || version == CHUNKED_COMPRESSED_VERSION) {
+			final int dictionaryLength = readFully(channel, entriesOffset, 4).getInt();
+			codec = new DefinitionCodec(readFully(channel, entriesOffset + 4, dictionaryLength).array());
+			entriesOffset += 4 + dictionaryLength;
+		}
+
+		final ByteBuffer footer = readFully(channel, channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+		final long tableOffset = footer.getLong();
+		final int tableSlots = footer.getInt();
+
+		if (footer.getLong() != MAGIC) {
+			throw new IOException("Dictionary file is incomplete (the footer is missing)");
+		}
+
+		return new Header(name, count, entriesOffset, tableOffset, tableSlots, codec, version >= CHUNKED_VERSION);
+	}
+
+	/**
+	 * Looks up one entry with the hash table, reading only the slots and record it needs. Safe to call from several threads at once.
+	 *
+	 * @param channel open channel to the file
+	 * @param header the file's header
+	 * @param word word/phrase to look up
+	 * @return the definition, or null if the word is not in the file
+	 * @throws IOException if the file cannot be read
+	 */
+	static final Definition lookup(final FileChannel channel, final Header header, final String word) throws IOException {
+		final int hash = hash(word);
+		final byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+		int slot = hash & (header.tableSlots - 1);
+
+		while (true) {
+			final ByteBuffer slotBuffer = readFully(channel, header.tableOffset + (long) slot * SLOT_SIZE, SLOT_SIZE);
+			final int slotHash = slotBuffer.getInt();
+			final long recordOffset = slotBuffer.getLong();
+
+			if (recordOffset == 0) {
+				return null;
+			}
+
+			if (slotHash == hash) {
+				final Definition definition = readRecord(channel, header, recordOffset, wordBytes);
+				if (definition != null) {
+					return definition;
+				}
+			}
+
+			slot = (slot + 1) & (header.tableSlots - 1);
+		}
+	}
+
+	/**
+	 * Reads the entry record at an offset if its word matches.
+	 *
+	 * @param channel open channel to the file
+	 * @param header the file's header
+	 * @param offset offset of the record
+	 * @param wordBytes UTF-8 bytes of the expected word
+	 * @return the definition, or null if the record is for another word
+	 * @throws IOException if the file cannot be read
+	 */
+	private static final Definition readRecord(final FileChannel channel, final Header header, final long offset, final byte[] wordBytes) throws IOException {
+		final int available = (int) Math.min(RECORD_READ_SIZE, channel.size() - offset);
+		ByteBuffer record = readFully(channel, offset, available);
+
+		final int wordLength = record.getInt();
+		if (wordLength != wordBytes.length) {
+			return null;
+		}
+
+		final int fixedLength = 4 + wordLength + 8 + 4 + ((header.codec == null) ? 4 : 8 + 4);
+		if (record.limit() < fixedLength) {
+			record = readFully(channel, offset, fixedLength);
+			record.position(4);
+		}
+
+		for (int i = 0; i < wordLength; i++) {
+			if (record.get() != wordBytes[i]) {
+				return null;
+			}
+		}
+
+		final long entryTime = record.getLong();
+		final int accesses = record.getInt();
+
+		if (header.codec != null) {
+			final long groupOffset = header.chunked ? offset - record.getLong() : record.getLong();
+			final int index = record.getInt();
+			final ByteBuffer group = readFully(channel, groupOffset, 8);
+			final int count = group.getInt();
+			final byte[] block = readFully(channel, groupOffset + 8, group.getInt()).array();
+
+			return new Definition(header.codec.decompress(block, count)[index], new Date(entryTime), accesses);
+		}
+
+		final int definitionLength = record.getInt();
+
+		final byte[] definitionBytes;
+		if (record.remaining() >= definitionLength) {
+			definitionBytes = new byte[definitionLength];
+			record.get(definitionBytes);
+		} else {
+			definitionBytes = readFully(channel, offset + fixedLength, definitionLength).array();
+		}
+
+		return new Definition(new String(definitionBytes, 0, definitionLength, StandardCharsets.UTF_8), new Date(entryTime), accesses);
+	}
+
+	/**
+	 * Reads every entry in order. The chunks of a version 3 or 4 file are read ahead, and decoded and checked against their checksums in parallel;
+	 * the consumer is always called on the calling thread.
+	 *
+	 * @param path path of the file
+	 * @param header the file's header
+	 * @param consumer receives every entry
+	 * @param cancelled checked every few thousand entries; reading stops with a {@link CancellationException} if it returns true
+	 * @throws IOException if the file cannot be read, or a chunk does not match its checksum
+	 */
+	static final void readEntries(final String path, final Header header, final EntryConsumer consumer, final BooleanSupplier cancelled) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(path)), BUFFER_SIZE))) {
+			in.skipNBytes(header.entriesOffset);
+
+			if (header.chunked) {
+				readChunks(in, header, consumer, cancelled);
+			} else {
+				readRecords(in, header, header.count, consumer, cancelled);
+			}
+		}
+	}
+
+	/**
+	 * Reads entry records (and, in compressed files, the groups they belong to) in order.
+	 *
+	 * @param in stream to read from, positioned at the first record or group
+	 * @param header the file's header
+	 * @param count number of entries to read
+	 * @param consumer receives every entry
+	 * @param cancelled checked every few thousand entries; reading stops with a {@link CancellationException} if it returns true
+	 * @throws IOException if there is a problem reading
+	 */
+	private static final void readRecords(final DataInputStream in, final Header header, final int count, final EntryConsumer consumer, final BooleanSupplier cancelled)
+			throws IOException {
+		String[] group = null;
+		int groupRemaining = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+				throw new CancellationException("Loading was cancelled");
+			}
+
+			if (header.codec != null && groupRemaining == 0) {
+				groupRemaining = in.readInt();
+				final byte[] block = new byte[in.readInt()];
+				in.readFully(block);
+				group = header.codec.decompress(block, groupRemaining);
+			}
+
+			final String word = readString(in);
+			final long entryTime = in.readLong();
+			final int accesses = in.readInt();
+			final String definition;
+
+			if (header.codec == null) {
+				definition = readString(in);
+			} else {
+				in.readLong();
+				definition = group[in.readInt()];
+				groupRemaining--;
+			}
+
+			consumer.accept(word, new Definition(definition, new Date(entryTime), accesses));
+		}
+	}
+
+	/**
+	 * The entries of a decoded chunk, kept until they can be passed on in order.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class DecodedChunk implements EntryConsumer {
+
+		/**
+		 * Words of the entries
+		 */
+		private final String[] words;
+
+		/**
+		 * Definitions of the entries
+		 */
+		private final Definition[] definitions;
+
+		/**
+		 * Number of entries received so far
+		 */
+		private int size = 0;
+
+		/**
+		 * Creates an empty chunk.
+		 *
+		 * @param count number of entries in the chunk
+		 */
+		DecodedChunk(final int count) {
+			words = new String[count];
+			definitions = new Definition[count];
+		}
+
+		@Override
+		public final void accept(final String word, final Definition definition) {
+			words[size] = word;
+			definitions[size++] = definition;
+		}
+
+		/**
+		 * Passes every entry to a consumer, in order.
+		 *
+		 * @param consumer receives the entries
+		 */
+		final void replay(final EntryConsumer consumer) {
+			for (int i = 0; i < size; i++) {
+				consumer.accept(words[i], definitions[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads the chunks of a version 3 or 4 file in order, decoding a few of them ahead in parallel.
+	 *
+	 * @param in stream to read from, positioned at the first chunk
+	 * @param header the file's header
+	 * @param consumer receives every entry
+	 * @param cancelled checked before every chunk; reading stops with a {@link CancellationException} if it returns true
+	 * @throws IOException if there is a problem reading, or a chunk does not match its checksum
+	 */
+	private static final void readChunks(final DataInputStream in, final Header header, final EntryConsumer consumer, final BooleanSupplier cancelled) throws IOException {
+		final ArrayDeque<CompletableFuture<DecodedChunk>> pending = new ArrayDeque<CompletableFuture<DecodedChunk>>();
+		long position = header.entriesOffset;
+		int remaining = header.count;
+
+		while (remaining > 0 || !pending.isEmpty()) {
+			if (cancelled.getAsBoolean()) {
+				throw new CancellationException("Loading was cancelled");
+			}
+
+			if (remaining > 0 && pending.size() < MAX_PENDING_CHUNKS) {
+				final long chunkOffset = position;
+				final int count = in.readInt();
+				final int length = in.readInt();
+				final int checksum = in.readInt();
+
+				if (count <= 0 || count > remaining || length < 0) {
+					throw new IOException("Dictionary file is corrupt (the chunk at offset " + chunkOffset + " has an invalid header)");
+				}
+
+				final byte[] bytes = new byte[length];
+				in.readFully(bytes);
+				position += CHUNK_HEADER_SIZE + length;
+				remaining -= count;
+
+				pending.add(CompletableFuture.supplyAsync(() -> decodeChunk(bytes, count, checksum, chunkOffset, header), CODER));
+			} else {
+				join(pending.poll()).replay(consumer);
+			}
+		}
+	}
+
+	/**
+	 * Checks the contents of a chunk against its checksum and decodes its entries. Safe to call from several threads at once.
+	 *
+	 * @param bytes contents of the chunk
+	 * @param count number of entries in the chunk
+	 * @param checksum CRC-32C the contents should have
+	 * @param offset file offset of the chunk, for error messages
+	 * @param header the file's header
+	 * @return the entries
+	 * @throws UncheckedIOException if the chunk does not match its checksum or cannot be decoded
+	 */
+	private static final DecodedChunk decodeChunk(final byte[] bytes, final int count, final int checksum, final long offset, final Header header) {
+		final CRC32C crc = new CRC32C();
+		crc.update(bytes, 0, bytes.length);
+
+		if ((int) crc.getValue() != checksum) {
+			throw new UncheckedIOException(new IOException("Dictionary file is corrupt (the chunk at offset " + offset + " does not match its checksum)"));
+		}
+
+		final Header chunkHeader = (header.codec == null) ? header
+				: new Header(header.name, header.count, header.entriesOffset, header.tableOffset, header.tableSlots, new DefinitionCodec(header.codec.dictionary()), true);
+		final DecodedChunk chunk = new DecodedChunk(count);
+
+		try {
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			readRecords(in, chunkHeader, count, chunk, () -> false);
+
+			if (in.available() != 0) {
+				throw new IOException("Dictionary file is corrupt (the chunk at offset " + offset + " is longer than its entries)");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Reads a whole dictionary file into a new Dictionary.
+	 *
+	 * @param path path of the file
+	 * @return the dictionary
+	 * @throws IOException if the file cannot be read or is not an indexed dictionary file
+	 */
+	static final Dictionary read(final String path) throws IOException {
+		final Header header;
+		try (FileInputStream fis = new FileInputStream(new File(path))) {
+			header = readHeader(fis.getChannel());
+		}
+
+		final Dictionary dictionary = new Dictionary(header.name, header.count);
+		readEntries(path, header, dictionary::putLoaded, () -> false);
+		dictionary.rebuildDateIndex();
+
+		return dictionary;
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 *
+	 * @param in stream to read from
+	 * @return the string
+	 * @throws IOException if there is a problem reading
+	 */
+	private static final String readString(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Negative string length: " + length);
+		}
+
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads exactly <code>length</code> bytes at a position without moving the channel's own position.
+	 *
+	 * @param channel channel to read from
+	 * @param position file offset
+	 * @param length number of bytes
+	 * @return a buffer containing the bytes, ready to be read
+	 * @throws IOException if there is a problem reading, or the file ends first
+	 */
+	private static final ByteBuffer readFully(final FileChannel channel, final long position, final int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Dictionary file ended unexpectedly");
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Returns the hash of a word used by the hash table. {@link String#hashCode()} is specified exactly, so the hash is the same on every JVM.
+	 *
+	 * @param word word/phrase
+	 * @return hash
+	 */
+	private static final int hash(final String word) {
+		final int h = word.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the number of hash table slots for a number of entries: a power of two at least twice the entry count.
+	 *
+	 * @param size number of entries
+	 * @return number of slots
+	 */
+	private static final int tableSlotsFor(final int size) {
+		return Math.max(16, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+	}
+}
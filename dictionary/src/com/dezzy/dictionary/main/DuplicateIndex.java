@@ -0,0 +1,569 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.LongStream;
+
+/**
+ * MinHash signatures of the definitions of a dictionary, by entry ID, used to find definitions that are nearly the same. A definition is lowercased,
+ * its runs of spaces are collapsed, and it is split into overlapping shingles of {@link #SHINGLE_LENGTH} characters; the similarity of two
+ * definitions is the Jaccard similarity of their shingle sets (the number of shingles they share over the number of shingles in either). The
+ * signature of a definition holds the smallest value of {@link #HASHES} hash functions over its shingles, and two signatures agree in each place
+ * with probability equal to the similarity of their definitions. <p>
+ *
+ * {@link #find} splits the signatures into bands of rows and sorts the entries by the hash of each band: definitions that agree in a whole band
+ * are candidates. The number of rows in a band is chosen so that pairs above the threshold are nearly always candidates, while most dissimilar
+ * pairs never are; so duplicates are found in near-linear time instead of comparing every pair. The candidates are then checked against their
+ * exact similarity. The bands, and the checks, run in parallel. <p>
+ *
+ * Signatures are kept up to date one entry at a time as definitions are added and retired. Not thread safe; guarded by its dictionary, except for
+ * {@link #find}, which only reads the signatures it is given.
+ *
+ * @author Joe Desmond
+ */
+final class DuplicateIndex {
+
+	/**
+	 * Number of hash functions in a signature
+	 */
+	static final int HASHES = 64;
+
+	/**
+	 * Number of characters in a shingle
+	 */
+	static final int SHINGLE_LENGTH = 5;
+
+	/**
+	 * Smallest chance that a pair whose similarity is exactly the threshold is a candidate; pairs above the threshold are more likely to be
+	 */
+	private static final double CANDIDATE_RECALL = 0.99;
+
+	/**
+	 * How far below the threshold the similarity estimated from the signatures can be before a candidate is rejected without reading its definitions;
+	 * about three standard deviations of the estimate
+	 */
+	private static final double ESTIMATE_MARGIN = 0.15;
+
+	/**
+	 * Largest group of entries that agree in a band and are all paired with each other. The entries of a larger group (such as many identical
+	 * definitions) are only paired with the group's first entry, so that one group cannot produce millions of candidates.
+	 */
+	private static final int MAX_GROUP = 100;
+
+	/**
+	 * Number of entries or candidates handled by one parallel task
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * Signatures by entry ID; null for IDs not in use
+	 */
+	private int[][] signatures = new int[1024][];
+
+	/**
+	 * A pair of entries with nearly the same definitions.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Pair {
+
+		/**
+		 * ID of the first entry
+		 */
+		final int first;
+
+		/**
+		 * ID of the second entry
+		 */
+		final int second;
+
+		/**
+		 * Jaccard similarity of the definitions' shingles
+		 */
+		final double similarity;
+
+		/**
+		 * Creates a pair.
+		 *
+		 * @param _first ID of the first entry
+		 * @param _second ID of the second entry
+		 * @param _similarity similarity of their definitions
+		 */
+		private Pair(final int _first, final int _second, final double _similarity) {
+			first = _first;
+			second = _second;
+			similarity = _similarity;
+		}
+	}
+
+	/**
+	 * Computes the signatures of every entry of a frozen view, in parallel.
+	 *
+	 * @param frozen entries
+	 * @param executor runs the parallel tasks
+	 * @return the index
+	 */
+	static final DuplicateIndex build(final EntryStore.Frozen frozen, final Executor executor) {
+		final DuplicateIndex index = new DuplicateIndex();
+		final int[] ids = liveIds(frozen);
+		final List<CompletableFuture<int[][]>> chunks = new ArrayList<CompletableFuture<int[][]>>();
+
+		for (int start = 0; start < ids.length; start += CHUNK_SIZE) {
+			final int from = start;
+			final int to = Math.min(ids.length, start + CHUNK_SIZE);
+
+			chunks.add(CompletableFuture.supplyAsync(() -> {
+				final int[][] chunk = new int[to - from][];
+				for (int i = from; i < to; i++) {
+					chunk[i - from] = signature(frozen.definitionText(ids[i]));
+				}
+				return chunk;
+			}, executor));
+		}
+
+		for (int c = 0; c < chunks.size(); c++) {
+			final int[][] chunk = chunks.get(c).join();
+			for (int i = 0; i < chunk.length; i++) {
+				index.set(ids[c * CHUNK_SIZE + i], chunk[i]);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Computes the signature of an entry that was given an ID.
+	 *
+	 * @param id entry ID
+	 * @param text definition text
+	 */
+	final void add(final int id, final String text) {
+		set(id, signature(text));
+	}
+
+	/**
+	 * Forgets the signature of an entry whose ID was retired.
+	 *
+	 * @param id entry ID
+	 */
+	final void retire(final int id) {
+		if (id < signatures.length) {
+			signatures[id] = null;
+		}
+	}
+
+	/**
+	 * Returns the signatures of some entries. Signatures are never changed, so they can be read by {@link #find} after the lock is released.
+	 *
+	 * @param ids IDs of entries in use
+	 * @return their signatures, in the same order
+	 */
+	final int[][] signatures(final int[] ids) {
+		final int[][] result = new int[ids.length][];
+
+		for (int i = 0; i < ids.length; i++) {
+			result[i] = signatures[ids[i]];
+		}
+
+		return result;
+	}
+
+	/**
+	 * Stores the signature of an entry.
+	 *
+	 * @param id entry ID
+	 * @param signature its signature
+	 */
+	private final void set(final int id, final int[] signature) {
+		if (id >= signatures.length) {
+			signatures = Arrays.copyOf(signatures, Math.max(id + 1, signatures.length * 2));
+		}
+
+		signatures[id] = signature;
+	}
+
+	/**
+	 * Finds the pairs of entries whose definitions have a similarity of at least a threshold.
+	 *
+	 * @param ids IDs of the entries, in use in the frozen view
+	 * @param signatureOf signatures of the entries, in the same order
+	 * @param threshold lowest similarity, greater than 0 and at most 1
+	 * @param frozen entries, read to check the exact similarity of candidates
+	 * @param executor runs the parallel tasks
+	 * @return the pairs, in no particular order
+	 */
+	static final List<Pair> find(final int[] ids, final int[][] signatureOf, final double threshold, final EntryStore.Frozen frozen, final Executor executor) {
+		final int rows = rowsPerBand(threshold);
+		final int bands = HASHES / rows;
+		final List<CompletableFuture<long[]>> bandCandidates = new ArrayList<CompletableFuture<long[]>>();
+
+		for (int band = 0; band < bands; band++) {
+			final int first = band * rows;
+			bandCandidates.add(CompletableFuture.supplyAsync(() -> candidates(signatureOf, first, rows), executor));
+		}
+
+		final long[] candidates = distinct(bandCandidates);
+		final List<CompletableFuture<List<Pair>>> checks = new ArrayList<CompletableFuture<List<Pair>>>();
+
+		for (int start = 0; start < candidates.length; start += CHUNK_SIZE) {
+			final int from = start;
+			final int to = Math.min(candidates.length, start + CHUNK_SIZE);
+			checks.add(CompletableFuture.supplyAsync(() -> check(candidates, from, to, ids, signatureOf, threshold, frozen), executor));
+		}
+
+		final List<Pair> pairs = new ArrayList<Pair>();
+		for (final CompletableFuture<List<Pair>> check : checks) {
+			pairs.addAll(check.join());
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Chooses the number of rows in a band: the most rows (so the fewest dissimilar candidates) for which a pair whose similarity is the threshold
+	 * still agrees in at least one band with probability {@link #CANDIDATE_RECALL}. A pair with similarity <code>s</code> agrees in a band of
+	 * <code>r</code> rows with probability <code>s^r</code>, so in at least one of <code>b</code> bands with probability <code>1 - (1 - s^r)^b</code>.
+	 *
+	 * @param threshold lowest similarity
+	 * @return rows per band
+	 */
+	static final int rowsPerBand(final double threshold) {
+		int rows = 1;
+
+		for (int r = 2; r <= HASHES; r++) {
+			final int bands = HASHES / r;
+
+			if (1 - Math.pow(1 - Math.pow(threshold, r), bands) < CANDIDATE_RECALL) {
+				break;
+			}
+			rows = r;
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Finds the pairs of entries that agree in one band.
+	 *
+	 * @param signatureOf signatures
+	 * @param first first row of the band
+	 * @param rows rows in the band
+	 * @return pairs of indices into the signatures, the smaller one in the high 32 bits
+	 */
+	private static final long[] candidates(final int[][] signatureOf, final int first, final int rows) {
+		final int count = signatureOf.length;
+		final int indexBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(count));
+		final long indexMask = (1L << indexBits) - 1;
+		// The band's hash in the high bits and the entry's index in the low bits, so that sorting groups the entries that agree
+		final long[] keys = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			long hash = 0;
+			for (int row = first; row < first + rows; row++) {
+				hash = mix(hash * 31 + signatureOf[i][row]);
+			}
+			keys[i] = (hash & ~indexMask) | i;
+		}
+		Arrays.sort(keys);
+
+		final LongStream.Builder pairs = LongStream.builder();
+		int groupStart = 0;
+
+		for (int i = 1; i <= count; i++) {
+			if (i < count && (keys[i] & ~indexMask) == (keys[groupStart] & ~indexMask)) {
+				continue;
+			}
+
+			if (i - groupStart <= MAX_GROUP) {
+				for (int a = groupStart; a < i; a++) {
+					for (int b = a + 1; b < i; b++) {
+						pairs.add(pair((int) (keys[a] & indexMask), (int) (keys[b] & indexMask)));
+					}
+				}
+			} else {
+				for (int b = groupStart + 1; b < i; b++) {
+					pairs.add(pair((int) (keys[groupStart] & indexMask), (int) (keys[b] & indexMask)));
+				}
+			}
+			groupStart = i;
+		}
+
+		return pairs.build().toArray();
+	}
+
+	/**
+	 * Packs a pair of indices into a long, the smaller one first.
+	 *
+	 * @param a an index
+	 * @param b another index
+	 * @return the packed pair
+	 */
+	private static final long pair(final int a, final int b) {
+		return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+	}
+
+	/**
+	 * Merges the candidates of every band and removes repeats.
+	 *
+	 * @param bandCandidates candidates of each band
+	 * @return every candidate once, sorted
+	 */
+	private static final long[] distinct(final List<CompletableFuture<long[]>> bandCandidates) {
+		final List<long[]> all = new ArrayList<long[]>();
+		int total = 0;
+
+		for (final CompletableFuture<long[]> band : bandCandidates) {
+			all.add(band.join());
+			total += all.get(all.size() - 1).length;
+		}
+
+		final long[] merged = new long[total];
+		int at = 0;
+		for (final long[] band : all) {
+			System.arraycopy(band, 0, merged, at, band.length);
+			at += band.length;
+		}
+		Arrays.sort(merged);
+
+		int count = 0;
+		for (int i = 0; i < merged.length; i++) {
+			if (i == 0 || merged[i] != merged[i - 1]) {
+				merged[count++] = merged[i];
+			}
+		}
+
+		return Arrays.copyOf(merged, count);
+	}
+
+	/**
+	 * Checks some candidates: rejects those whose signatures show they are far below the threshold, and computes the exact similarity of the rest.
+	 *
+	 * @param candidates every candidate
+	 * @param from first candidate to check
+	 * @param to position after the last candidate to check
+	 * @param ids entry IDs
+	 * @param signatureOf signatures
+	 * @param threshold lowest similarity
+	 * @param frozen entries
+	 * @return the candidates at or above the threshold
+	 */
+	private static final List<Pair> check(final long[] candidates, final int from, final int to, final int[] ids, final int[][] signatureOf,
+										  final double threshold, final EntryStore.Frozen frozen) {
+		final List<Pair> pairs = new ArrayList<Pair>();
+		// Candidates are sorted by their first entry, whose shingles are kept while it stays the same
+		int shinglesOf = -1;
+		long[] shingles = null;
+
+		for (int i = from; i < to; i++) {
+			final int a = (int) (candidates[i] >>> 32);
+			final int b = (int) candidates[i];
+
+			if (estimate(signatureOf[a], signatureOf[b]) < threshold - ESTIMATE_MARGIN) {
+				continue;
+			}
+
+			if (a != shinglesOf) {
+				shinglesOf = a;
+				shingles = distinctShingles(frozen.definitionText(ids[a]));
+			}
+
+			final double similarity = similarity(shingles, distinctShingles(frozen.definitionText(ids[b])));
+			if (similarity >= threshold) {
+				pairs.add(new Pair(ids[a], ids[b], similarity));
+			}
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Estimates the similarity of two definitions from their signatures.
+	 *
+	 * @param a a signature
+	 * @param b another signature
+	 * @return fraction of places where the signatures agree
+	 */
+	private static final double estimate(final int[] a, final int[] b) {
+		int agree = 0;
+
+		for (int i = 0; i < HASHES; i++) {
+			if (a[i] == b[i]) {
+				agree++;
+			}
+		}
+
+		return (double) agree / HASHES;
+	}
+
+	/**
+	 * Computes the exact Jaccard similarity of the shingles of two definitions.
+	 *
+	 * @param a a definition
+	 * @param b another definition
+	 * @return similarity from 0 to 1
+	 */
+	static final double similarity(final String a, final String b) {
+		return similarity(distinctShingles(a), distinctShingles(b));
+	}
+
+	/**
+	 * Computes the Jaccard similarity of two sets of shingles.
+	 *
+	 * @param shinglesA distinct shingle hashes of a definition, in ascending order
+	 * @param shinglesB distinct shingle hashes of another definition, in ascending order
+	 * @return similarity from 0 to 1
+	 */
+	private static final double similarity(final long[] shinglesA, final long[] shinglesB) {
+		int shared = 0;
+
+		for (int i = 0, j = 0; i < shinglesA.length && j < shinglesB.length;) {
+			if (shinglesA[i] < shinglesB[j]) {
+				i++;
+			} else if (shinglesA[i] > shinglesB[j]) {
+				j++;
+			} else {
+				shared++;
+				i++;
+				j++;
+			}
+		}
+
+		return (double) shared / (shinglesA.length + shinglesB.length - shared);
+	}
+
+	/**
+	 * Returns the hashes of the shingles of a definition, sorted and without repeats.
+	 *
+	 * @param text definition text
+	 * @return distinct shingle hashes in ascending order
+	 */
+	private static final long[] distinctShingles(final String text) {
+		final long[] shingles = shingles(text);
+		Arrays.sort(shingles);
+
+		int count = 0;
+		for (int i = 0; i < shingles.length; i++) {
+			if (i == 0 || shingles[i] != shingles[i - 1]) {
+				shingles[count++] = shingles[i];
+			}
+		}
+
+		return Arrays.copyOf(shingles, count);
+	}
+
+	/**
+	 * Computes the signature of a definition.
+	 *
+	 * @param text definition text
+	 * @return the smallest value of each hash function over its shingles
+	 */
+	static final int[] signature(final String text) {
+		final int[] signature = new int[HASHES];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+
+		for (final long shingle : shingles(text)) {
+			// The hash functions are h1 + i * h2 for two hashes of the shingle, each mixed once more
+			final long h1 = mix(shingle);
+			final long h2 = mix(h1) | 1;
+
+			for (int i = 0; i < HASHES; i++) {
+				long value = (h1 + i * h2) * 0x9E3779B97F4A7C15L;
+				value ^= value >>> 32;
+
+				if ((int) value < signature[i]) {
+					signature[i] = (int) value;
+				}
+			}
+		}
+
+		return signature;
+	}
+
+	/**
+	 * Returns the hashes of the shingles of a definition, in order and with repeats. A definition shorter than a shingle is one shingle.
+	 *
+	 * @param text definition text
+	 * @return shingle hashes
+	 */
+	private static final long[] shingles(final String text) {
+		final String normalized = normalize(text);
+		final int count = Math.max(1, normalized.length() - SHINGLE_LENGTH + 1);
+		final long[] shingles = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			long hash = 0;
+			for (int j = i; j < Math.min(normalized.length(), i + SHINGLE_LENGTH); j++) {
+				hash = hash * 65599 + normalized.charAt(j);
+			}
+			shingles[i] = hash;
+		}
+
+		return shingles;
+	}
+
+	/**
+	 * Lowercases a definition, and replaces each run of whitespace with one space and removes it from the ends.
+	 *
+	 * @param text definition text
+	 * @return normalized text
+	 */
+	private static final String normalize(final String text) {
+		final String lower = text.toLowerCase(Locale.ROOT);
+		final StringBuilder sb = new StringBuilder(lower.length());
+		boolean space = false;
+
+		for (int i = 0; i < lower.length(); i++) {
+			final char c = lower.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				space = sb.length() > 0;
+			} else {
+				if (space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Scrambles the bits of a hash (the finalizer of MurmurHash3).
+	 *
+	 * @param value a hash
+	 * @return the scrambled hash
+	 */
+	private static final long mix(final long value) {
+		long h = value;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+
+		return h;
+	}
+
+	/**
+	 * Returns the IDs of the entries in use in a frozen view.
+	 *
+	 * @param frozen entries
+	 * @return entry IDs, in ascending order
+	 */
+	static final int[] liveIds(final EntryStore.Frozen frozen) {
+		final int[] ids = new int[frozen.size];
+		int count = 0;
+
+		for (int id = frozen.columns.nextLive(0); id >= 0; id = frozen.columns.nextLive(id + 1)) {
+			ids[count++] = id;
+		}
+
+		return (count == ids.length) ? ids : Arrays.copyOf(ids, count);
+	}
+}
@@ -0,0 +1,329 @@
+package com.dezzy.dictionary.main;
+
+import java.util.Arrays;
+
+/**
+ * Metadata of every entry in an {@link EntryStore}, in dense primitive columns indexed by entry ID: entry dates (epoch milliseconds), access counts,
+ * and a bit set of the IDs that are in use. Scans over every entry (rebuilding the entry date index, building an access count histogram) are tight loops
+ * over these arrays, with no objects to visit. <p>
+ *
+ * The metadata of a removed ID is kept until the ID is used again, so a {@link Definition} returned before the removal can still read it. <p>
+ *
+ * Everything except {@link #incrementAccesses(int)} is called with the dictionary locked. Access counts are increased by lookups that may run
+ * on any thread without that lock, so increments and the copying of the columns when they grow are done under this object's monitor, and the
+ * column arrays are volatile so that a thread reading them sees the grown arrays.
+ *
+ * @author Joe Desmond
+ */
+final class EntryColumns {
+
+	/**
+	 * Initial capacity of the columns
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Entry date of every entry, in epoch milliseconds
+	 */
+	private volatile long[] entryTimes;
+
+	/**
+	 * Access count of every entry
+	 */
+	private volatile int[] accesses;
+
+	/**
+	 * Bit set of the IDs in use
+	 */
+	private volatile long[] live;
+
+	/**
+	 * One more than the highest ID that has been used
+	 */
+	private int idLimit = 0;
+
+	/**
+	 * Creates empty columns with room for <code>expectedSize</code> entries before they have to grow.
+	 *
+	 * @param expectedSize expected number of entries
+	 */
+	EntryColumns(final int expectedSize) {
+		final int capacity = Math.max(MIN_CAPACITY, expectedSize);
+
+		entryTimes = new long[capacity];
+		accesses = new int[capacity];
+		live = new long[(capacity + 63) >>> 6];
+	}
+
+	/**
+	 * Stores the metadata of an entry and marks its ID as in use, growing the columns if needed.
+	 *
+	 * @param id entry ID
+	 * @param entryTime entry date in epoch milliseconds
+	 * @param accessCount access count
+	 */
+	final void set(final int id, final long entryTime, final int accessCount) {
+		if (id >= entryTimes.length) {
+			grow(id + 1);
+		}
+
+		entryTimes[id] = entryTime;
+		accesses[id] = accessCount;
+		live[id >>> 6] |= 1L << id;
+		idLimit = Math.max(idLimit, id + 1);
+	}
+
+	/**
+	 * Copies the columns into larger arrays. Holds this object's monitor so that no increment lands in the old access count array after it has
+	 * been copied.
+	 *
+	 * @param minCapacity number of IDs that the columns must have room for
+	 */
+	private final synchronized void grow(final int minCapacity) {
+		final int capacity = Math.max(minCapacity, entryTimes.length + (entryTimes.length >> 1));
+
+		entryTimes = Arrays.copyOf(entryTimes, capacity);
+		accesses = Arrays.copyOf(accesses, capacity);
+		live = Arrays.copyOf(live, (capacity + 63) >>> 6);
+	}
+
+	/**
+	 * Marks an ID as no longer in use. Its metadata can still be read until the ID is used again.
+	 *
+	 * @param id entry ID
+	 */
+	final void remove(final int id) {
+		live[id >>> 6] &= ~(1L << id);
+	}
+
+	/**
+	 * Returns one more than the highest ID that has been used; every ID in use is below this.
+	 *
+	 * @return ID limit
+	 */
+	final int idLimit() {
+		return idLimit;
+	}
+
+	/**
+	 * Returns true if an ID is in use.
+	 *
+	 * @param id entry ID
+	 * @return true if the ID belongs to an entry
+	 */
+	final boolean isLive(final int id) {
+		return (live[id >>> 6] & (1L << id)) != 0;
+	}
+
+	/**
+	 * Returns the entry date of an entry.
+	 *
+	 * @param id entry ID
+	 * @return entry date in epoch milliseconds
+	 */
+	final long entryTime(final int id) {
+		return entryTimes[id];
+	}
+
+	/**
+	 * Returns the access count of an entry.
+	 *
+	 * @param id entry ID
+	 * @return access count
+	 */
+	final int accesses(final int id) {
+		return accesses[id];
+	}
+
+	/**
+	 * Increases the access count of an entry by one. Safe to call from any thread, concurrently with other increments and with the columns growing.
+	 *
+	 * @param id entry ID
+	 */
+	final synchronized void incrementAccesses(final int id) {
+		accesses[id]++;
+	}
+
+	/**
+	 * Copies the IDs and entry dates of every entry in use, in ID order.
+	 *
+	 * @param ids receives the IDs; must have room for every entry
+	 * @param times receives the entry dates, parallel to <code>ids</code>
+	 * @return number of entries copied
+	 */
+	final int copyLive(final int[] ids, final long[] times) {
+		final long[] liveBits = live;
+		final long[] entryTimeColumn = entryTimes;
+		int count = 0;
+
+		for (int word = 0; word < liveBits.length; word++) {
+			long bits = liveBits[word];
+
+			while (bits != 0) {
+				final int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+				ids[count] = id;
+				times[count++] = entryTimeColumn[id];
+				bits &= bits - 1;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Counts the entries in use by access count: element 0 is the number of entries that have never been accessed, and element <code>k</code> (k &gt; 0)
+	 * the number accessed from 2<sup>k-1</sup> to 2<sup>k</sup>-1 times.
+	 *
+	 * @return access count histogram, without trailing empty buckets
+	 */
+	final long[] accessHistogram() {
+		return accessHistogram(live, accesses);
+	}
+
+	/**
+	 * Builds an access count histogram (see {@link #accessHistogram()}) from a live bit set and an access count column.
+	 *
+	 * @param live live bit set
+	 * @param accesses access count column
+	 * @return access count histogram
+	 */
+	private static final long[] accessHistogram(final long[] live, final int[] accesses) {
+		final long[] buckets = new long[33];
+		int used = 1;
+
+		for (int word = 0; word < live.length; word++) {
+			long bits = live[word];
+
+			while (bits != 0) {
+				final int count = accesses[(word << 6) + Long.numberOfTrailingZeros(bits)];
+				final int bucket = 32 - Integer.numberOfLeadingZeros(Math.max(0, count));
+
+				buckets[bucket]++;
+				used = Math.max(used, bucket + 1);
+				bits &= bits - 1;
+			}
+		}
+
+		return Arrays.copyOf(buckets, used);
+	}
+
+	/**
+	 * Freezes the set of entries in use: copies the live bit set and keeps the current column arrays, so that the metadata of those entries can
+	 * be read from another thread while these columns keep changing. Must be called while no other thread changes the columns.
+	 *
+	 * @return frozen view of the entries in use now
+	 */
+	final Frozen freeze() {
+		return new Frozen(Arrays.copyOf(live, (idLimit + 63) >>> 6), entryTimes, accesses, idLimit);
+	}
+
+	/**
+	 * The entries that were in use when {@link EntryColumns#freeze()} was called. The live bit set is a copy; the entry date and access count columns
+	 * are shared with the live columns, which is safe as long as the frozen IDs are not given to other entries (see {@link EntryStore#reclaim(long)})
+	 * and the columns are not grown in place (they are always copied when they grow). Access counts are not versioned, so they may be newer than
+	 * the moment of freezing.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Frozen {
+
+		/**
+		 * Copy of the live bit set
+		 */
+		private final long[] live;
+
+		/**
+		 * Entry date column when the columns were frozen
+		 */
+		private final long[] entryTimes;
+
+		/**
+		 * Access count column when the columns were frozen
+		 */
+		private final int[] accesses;
+
+		/**
+		 * One more than the highest ID that had been used
+		 */
+		private final int idLimit;
+
+		/**
+		 * Creates a frozen view of the columns.
+		 *
+		 * @param _live copy of the live bit set
+		 * @param _entryTimes entry date column
+		 * @param _accesses access count column
+		 * @param _idLimit one more than the highest ID that had been used
+		 */
+		private Frozen(final long[] _live, final long[] _entryTimes, final int[] _accesses, final int _idLimit) {
+			live = _live;
+			entryTimes = _entryTimes;
+			accesses = _accesses;
+			idLimit = _idLimit;
+		}
+
+		/**
+		 * Returns the first ID at or after <code>id</code> that was in use.
+		 *
+		 * @param id first ID to check
+		 * @return an ID that was in use, or -1 if there is none
+		 */
+		final int nextLive(final int id) {
+			if (id >= idLimit) {
+				return -1;
+			}
+
+			int word = id >>> 6;
+			long bits = live[word] & (-1L << id);
+
+			while (bits == 0) {
+				if (++word == live.length) {
+					return -1;
+				}
+
+				bits = live[word];
+			}
+
+			final int next = (word << 6) + Long.numberOfTrailingZeros(bits);
+			return (next < idLimit) ? next : -1;
+		}
+
+		/**
+		 * Returns the entry date of an entry that was in use.
+		 *
+		 * @param id entry ID
+		 * @return entry date in epoch milliseconds
+		 */
+		final long entryTime(final int id) {
+			return entryTimes[id];
+		}
+
+		/**
+		 * Returns the access count of an entry that was in use.
+		 *
+		 * @param id entry ID
+		 * @return access count
+		 */
+		final int accesses(final int id) {
+			return accesses[id];
+		}
+
+		/**
+		 * Counts the entries that were in use by access count; see {@link EntryColumns#accessHistogram()}.
+		 *
+		 * @return access count histogram, without trailing empty buckets
+		 */
+		final long[] accessHistogram() {
+			return EntryColumns.accessHistogram(live, accesses);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes held by the columns.
+	 *
+	 * @return heap footprint in bytes, excluding object headers
+	 */
+	final long footprintBytes() {
+		return (long) entryTimes.length * (Long.BYTES + Integer.BYTES) + (long) live.length * Long.BYTES;
+	}
+}
@@ -0,0 +1,404 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A primitive index of dictionary entries, sorted by entry date. Entry times are stored as epoch milliseconds in a <code>long[]</code>,
+ * with the corresponding entry IDs in a parallel <code>int[]</code>; words are only looked up in the {@link EntryStore} when they are returned.
+ * The gaps between consecutive entry times are kept in a {@link LongMultiset}, so that a gap percentile is found in O(log n); it is built
+ * the first time a gap is asked for, and kept up to date from then on (each insertion or removal changes at most three gaps). <br>
+ * Lookups are binary searches (O(log n)); insertions and removals are a binary search followed by an array shift, which is free for
+ * entries newer than every other entry (the common case), plus O(log n) to update the gaps once they have been built.
+ *
+ * @author Joe Desmond
+ */
+final class EntryDateIndex {
+
+	/**
+	 * Initial capacity of the backing arrays
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Entry times (epoch milliseconds) in ascending order
+	 */
+	private long[] times;
+
+	/**
+	 * Entry IDs, parallel to {@link #times}
+	 */
+	private int[] ids;
+
+	/**
+	 * Store that the entry IDs belong to
+	 */
+	private final EntryStore store;
+
+	/**
+	 * Number of indexed entries
+	 */
+	private int size;
+
+	/**
+	 * Gaps between consecutive entry times (milliseconds), or null until a gap is first asked for
+	 */
+	private LongMultiset gaps = null;
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param _store store that the indexed entry IDs belong to
+	 */
+	EntryDateIndex(final EntryStore _store) {
+		store = _store;
+		times = new long[INITIAL_CAPACITY];
+		ids = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Builds an index from unsorted entries in one pass; faster than calling {@link #add(int, long)} for every entry.
+	 * The given arrays are taken over by the index and must not be used afterwards.
+	 *
+	 * @param _store store that the entry IDs belong to
+	 * @param _ids entry IDs
+	 * @param _times entry times (epoch milliseconds), parallel to <code>_ids</code>
+	 * @param count number of valid elements in both arrays
+	 */
+	EntryDateIndex(final EntryStore _store, final int[] _ids, final long[] _times, final int count) {
+		store = _store;
+		times = _times;
+		ids = _ids;
+		size = count;
+
+		mergeSort(times, ids, new long[count], new int[count], 0, count);
+	}
+
+	/**
+	 * Returns the number of indexed entries.
+	 *
+	 * @return size of the index
+	 */
+	final int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an entry to the index. Entries with equal times are kept in insertion order.
+	 *
+	 * @param id entry ID
+	 * @param time entry time (epoch milliseconds)
+	 */
+	final void add(final int id, final long time) {
+		final int pos = upperBound(times, size, time);
+
+		if (gaps != null) {
+			if (pos > 0 && pos < size) {
+				gaps.remove(times[pos] - times[pos - 1]);
+			}
+			if (pos > 0) {
+				gaps.add(time - times[pos - 1]);
+			}
+			if (pos < size) {
+				gaps.add(times[pos] - time);
+			}
+		}
+
+		if (size == times.length) {
+			final int newCapacity = Math.max(INITIAL_CAPACITY, times.length * 2);
+			times = Arrays.copyOf(times, newCapacity);
+			ids = Arrays.copyOf(ids, newCapacity);
+		}
+
+		System.arraycopy(times, pos, times, pos + 1, size - pos);
+		System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+		times[pos] = time;
+		ids[pos] = id;
+		size++;
+	}
+
+	/**
+	 * Removes an entry from the index.
+	 *
+	 * @param id entry ID
+	 * @param time entry time that the entry was indexed with
+	 * @return true if the entry was found and removed
+	 */
+	final boolean remove(final int id, final long time) {
+		int pos = indexOf(id, time);
+
+		if (pos < 0) {
+			//The entry time may have been changed without going through the dictionary; fall back to a full scan
+			pos = indexOf(id);
+			if (pos < 0) {
+				return false;
+			}
+		}
+
+		if (gaps != null) {
+			if (pos > 0) {
+				gaps.remove(times[pos] - times[pos - 1]);
+			}
+			if (pos < size - 1) {
+				gaps.remove(times[pos + 1] - times[pos]);
+			}
+			if (pos > 0 && pos < size - 1) {
+				gaps.add(times[pos + 1] - times[pos - 1]);
+			}
+		}
+
+		System.arraycopy(times, pos + 1, times, pos, size - pos - 1);
+		System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+		size--;
+
+		return true;
+	}
+
+	/**
+	 * Counts the entries whose times lie in <code>[from, to)</code>.
+	 *
+	 * @param from start time (inclusive, epoch milliseconds)
+	 * @param to end time (exclusive, epoch milliseconds)
+	 * @return number of entries in the range
+	 */
+	final int countBetween(final long from, final long to) {
+		if (to <= from) {
+			return 0;
+		}
+
+		return lowerBound(times, size, to) - lowerBound(times, size, from);
+	}
+
+	/**
+	 * Returns the words whose times lie in <code>[from, to)</code>, oldest first.
+	 *
+	 * @param from start time (inclusive, epoch milliseconds)
+	 * @param to end time (exclusive, epoch milliseconds)
+	 * @return words in the range
+	 */
+	final List<String> wordsBetween(final long from, final long to) {
+		if (to <= from) {
+			return new ArrayList<String>();
+		}
+
+		final int start = lowerBound(times, size, from);
+		final int end = lowerBound(times, size, to);
+
+		return words(start, end);
+	}
+
+	/**
+	 * Returns the <code>n</code> most recently entered words, most recent first.
+	 *
+	 * @param n maximum number of words
+	 * @return up to <code>n</code> words
+	 */
+	final List<String> mostRecent(final int n) {
+		final int count = Math.max(0, Math.min(n, size));
+		final List<String> out = new ArrayList<String>(count);
+
+		for (int i = size - 1; i >= size - count; i--) {
+			out.add(store.word(ids[i]));
+		}
+
+		return out;
+	}
+
+	/**
+	 * Returns the gap between consecutive entries at the given percentile (nearest-rank method).
+	 *
+	 * @param percentile percentile, from 0 to 100
+	 * @return gap in milliseconds, or -1 if there are fewer than two entries
+	 */
+	final long gapPercentile(final double percentile) {
+		final LongMultiset sorted = gaps();
+		final int gapCount = sorted.size();
+		
+		if (gapCount == 0) {
+			return -1;
+		}
+
+		final double clamped = Math.max(0, Math.min(100, percentile));
+		final int rank = (int) Math.ceil((clamped / 100.0) * gapCount);
+
+		return sorted.select(Math.max(0, rank - 1));
+	}
+
+	/**
+	 * Returns a copy of the gaps between consecutive entries, in ascending order.
+	 *
+	 * @return sorted gaps in milliseconds
+	 */
+	final long[] sortedGaps() {
+		return gaps().toArray();
+	}
+
+	/**
+	 * Returns every indexed word, oldest first.
+	 *
+	 * @return words sorted by entry time
+	 */
+	final List<String> sortedWords() {
+		return words(0, size);
+	}
+
+	/**
+	 * Looks up the words of the entries in a range of positions.
+	 *
+	 * @param start first position (inclusive)
+	 * @param end last position (exclusive)
+	 * @return words, in index order
+	 */
+	private final List<String> words(final int start, final int end) {
+		final List<String> out = new ArrayList<String>(end - start);
+
+		for (int i = start; i < end; i++) {
+			out.add(store.word(ids[i]));
+		}
+
+		return out;
+	}
+
+	/**
+	 * Finds the position of an entry with a known time.
+	 *
+	 * @param id entry ID
+	 * @param time entry time
+	 * @return position in {@link #times}, or -1
+	 */
+	private final int indexOf(final int id, final long time) {
+		for (int i = lowerBound(times, size, time); i < size && times[i] == time; i++) {
+			if (ids[i] == id) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the position of an entry by scanning every ID.
+	 *
+	 * @param id entry ID
+	 * @return position in {@link #ids}, or -1
+	 */
+	private final int indexOf(final int id) {
+		for (int i = 0; i < size; i++) {
+			if (ids[i] == id) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the gaps between consecutive entry times, building them from {@link #times} the first time they are needed.
+	 *
+	 * @return the gaps
+	 */
+	private final LongMultiset gaps() {
+		if (gaps == null) {
+			final long[] sorted = new long[Math.max(0, size - 1)];
+			for (int i = 0; i < sorted.length; i++) {
+				sorted[i] = times[i + 1] - times[i];
+			}
+			Arrays.sort(sorted);
+
+			gaps = new LongMultiset(sorted, sorted.length);
+		}
+
+		return gaps;
+	}
+
+	/**
+	 * Returns the first position in a sorted array whose value is not less than <code>key</code>.
+	 *
+	 * @param array sorted array
+	 * @param length number of valid elements
+	 * @param key search key
+	 * @return insertion point
+	 */
+	private static final int lowerBound(final long[] array, final int length, final long key) {
+		int low = 0;
+		int high = length;
+
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+
+			if (array[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the first position in a sorted array whose value is greater than <code>key</code>.
+	 *
+	 * @param array sorted array
+	 * @param length number of valid elements
+	 * @param key search key
+	 * @return insertion point
+	 */
+	private static final int upperBound(final long[] array, final int length, final long key) {
+		int low = 0;
+		int high = length;
+
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+
+			if (array[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Stable merge sort of two parallel arrays, keyed on the <code>long</code> array.
+	 *
+	 * @param keys sort keys
+	 * @param values values, parallel to <code>keys</code>
+	 * @param keyBuffer scratch space at least as long as the sorted range
+	 * @param valueBuffer scratch space at least as long as the sorted range
+	 * @param start start index (inclusive)
+	 * @param end end index (exclusive)
+	 */
+	private static final void mergeSort(final long[] keys, final int[] values, final long[] keyBuffer, final int[] valueBuffer, final int start, final int end) {
+		if (end - start < 2) {
+			return;
+		}
+
+		final int mid = (start + end) >>> 1;
+		mergeSort(keys, values, keyBuffer, valueBuffer, start, mid);
+		mergeSort(keys, values, keyBuffer, valueBuffer, mid, end);
+
+		if (keys[mid - 1] <= keys[mid]) {
+			return;
+		}
+
+		System.arraycopy(keys, start, keyBuffer, start, end - start);
+		System.arraycopy(values, start, valueBuffer, start, end - start);
+
+		int left = start;
+		int right = mid;
+
+		for (int i = start; i < end; i++) {
+			if (right >= end || (left < mid && keyBuffer[left] <= keyBuffer[right])) {
+				keys[i] = keyBuffer[left];
+				values[i] = valueBuffer[left++];
+			} else {
+				keys[i] = keyBuffer[right];
+				values[i] = valueBuffer[right++];
+			}
+		}
+	}
+}
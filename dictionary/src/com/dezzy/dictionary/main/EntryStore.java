@@ -0,0 +1,243 @@
+package com.dezzy.dictionary.main;
+
+import java.util.AbstractMap;
+
+/**
+ * A map of words to definitions that gives every entry an int ID and keeps entry dates and access counts in {@link EntryColumns}, indexed by that ID.
+ * The {@link Definition}s in the map read and write their metadata in the columns, so code that scans every entry (such as the entry date index and
+ * statistics) can read the columns directly instead of visiting every Definition. <p>
+ *
+ * Every put or remove creates a new version of the store. Entries are never changed in place: a replaced or removed entry is retired, and its ID
+ * (with its word and definition) stays readable until {@link #reclaim(long)} is told that no {@link Frozen} view made before the change is still in use.
+ * So a frozen view can be read from other threads, without locks, while the store keeps changing. Only the access counts are not versioned.
+ *
+ * @author Joe Desmond
+ */
+abstract class EntryStore extends AbstractMap<String, Definition> {
+
+	/**
+	 * Entry dates and access counts, by entry ID
+	 */
+	final EntryColumns columns;
+
+	/**
+	 * Current version; increased by every put and remove
+	 */
+	private long version = 0;
+
+	/**
+	 * Creates an empty store with columns sized for <code>expectedSize</code> entries.
+	 *
+	 * @param expectedSize expected number of entries
+	 */
+	EntryStore(final int expectedSize) {
+		columns = new EntryColumns(expectedSize);
+	}
+
+	/**
+	 * Returns the current version of the store.
+	 *
+	 * @return number of puts and removes so far
+	 */
+	final long version() {
+		return version;
+	}
+
+	/**
+	 * Starts a new version. Called by every put and remove before it changes the store.
+	 *
+	 * @return the new version
+	 */
+	final long nextVersion() {
+		return ++version;
+	}
+
+	/**
+	 * Freezes the entries in the store, so that they can be read from another thread while the store keeps changing. Must be called while no other
+	 * thread changes the store.
+	 *
+	 * @return frozen view of the current version
+	 */
+	abstract Frozen freeze();
+
+	/**
+	 * Frees the entries that were retired in or before a version, because no frozen view that can see them is still in use. Their IDs may then
+	 * be given to new entries.
+	 *
+	 * @param oldestVisibleVersion version of the oldest frozen view still in use, or {@link Long#MAX_VALUE} if there is none
+	 */
+	abstract void reclaim(long oldestVisibleVersion);
+
+	/**
+	 * Returns the ID of a word's entry.
+	 *
+	 * @param word word/phrase
+	 * @return entry ID, or -1 if the word is not in the store
+	 */
+	abstract int idOf(String word);
+
+	/**
+	 * Returns the word of an entry.
+	 *
+	 * @param id ID of an entry in the store
+	 * @return the word
+	 */
+	abstract String word(int id);
+
+	/**
+	 * Returns the definition text of an entry, without increasing its access count. Also works for entries that have been removed or replaced
+	 * since a {@link Definition} for them was returned.
+	 *
+	 * @param id entry ID
+	 * @return definition text
+	 */
+	abstract String definitionText(int id);
+
+	/**
+	 * Returns the memory used by this store.
+	 *
+	 * @return heap footprint in bytes, exact or estimated depending on the store
+	 */
+	abstract long footprintBytes();
+
+	/**
+	 * Returns a report of the memory used by this store.
+	 *
+	 * @return multiline report
+	 */
+	abstract String report();
+
+	/**
+	 * The words and definitions of an {@link EntryStore} at one version, readable from any thread while the store keeps changing.
+	 *
+	 * @author Joe Desmond
+	 */
+	abstract static class Frozen {
+
+		/**
+		 * Entries in use at this version, and their metadata
+		 */
+		final EntryColumns.Frozen columns;
+
+		/**
+		 * Version of the store that was frozen
+		 */
+		final long version;
+
+		/**
+		 * Number of entries at this version
+		 */
+		final int size;
+
+		/**
+		 * Creates a frozen view.
+		 *
+		 * @param store store being frozen
+		 */
+		Frozen(final EntryStore store) {
+			columns = store.columns.freeze();
+			version = store.version;
+			size = store.size();
+		}
+
+		/**
+		 * Returns the word of an entry at this version.
+		 *
+		 * @param id ID of an entry in use at this version
+		 * @return the word
+		 */
+		abstract String word(int id);
+
+		/**
+		 * Returns the definition text of an entry at this version.
+		 *
+		 * @param id ID of an entry in use at this version
+		 * @return definition text
+		 */
+		abstract String definitionText(int id);
+
+		/**
+		 * Returns true if {@link #cursor()} visits the entries in alphabetical order ({@link SortedRun#KEY_ORDER}).
+		 *
+		 * @return false unless the store keeps its entries sorted
+		 */
+		boolean sorted() {
+			return false;
+		}
+
+		/**
+		 * Returns a cursor over every entry at this version. By default, entries are visited in order of ID.
+		 *
+		 * @return a cursor before the first entry
+		 */
+		Cursor cursor() {
+			return new Cursor() {
+				private int id = -1;
+
+				private boolean done = false;
+
+				@Override
+				boolean next() {
+					if (!done) {
+						id = columns.nextLive(id + 1);
+						done = id < 0;
+					}
+
+					return !done;
+				}
+
+				@Override
+				int id() {
+					return id;
+				}
+
+				@Override
+				String word() {
+					return Frozen.this.word(id);
+				}
+
+				@Override
+				String definitionText() {
+					return Frozen.this.definitionText(id);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Visits the entries of a {@link Frozen} view one at a time. Stores that keep their entries on disk read them in one pass instead of one
+	 * entry at a time.
+	 *
+	 * @author Joe Desmond
+	 */
+	abstract static class Cursor {
+
+		/**
+		 * Moves to the next entry.
+		 *
+		 * @return false if every entry has been visited
+		 */
+		abstract boolean next();
+
+		/**
+		 * Returns the ID of the current entry.
+		 *
+		 * @return entry ID
+		 */
+		abstract int id();
+
+		/**
+		 * Returns the word of the current entry.
+		 *
+		 * @return the word
+		 */
+		abstract String word();
+
+		/**
+		 * Returns the definition text of the current entry.
+		 *
+		 * @return definition text
+		 */
+		abstract String definitionText();
+	}
+}
@@ -0,0 +1,272 @@
+package com.dezzy.dictionary.main;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map of words to definitions backed by a HashMap. Every entry keeps its own definition String, but its entry date and access count are kept in
+ * {@link EntryColumns}, by an entry ID. <p>
+ *
+ * Replacing an entry gives the new definition a new ID. A {@link Definition} that is replaced or removed is detached (its metadata is copied back into
+ * the object) and its ID is retired; the ID is given out again once {@link #reclaim(long)} says that no frozen view can still see it.
+ *
+ * @author Joe Desmond
+ */
+final class HashMapEntryStore extends EntryStore {
+
+	/**
+	 * Estimated bytes used by one entry apart from its characters: a HashMap node, a Definition, and the word and definition Strings with their
+	 * byte array headers (assuming compressed object pointers)
+	 */
+	private static final int ENTRY_OVERHEAD_BYTES = 32 + 32 + 2 * (24 + 16);
+
+	/**
+	 * Definitions by word. Every value is a Definition backed by this store
+	 */
+	private final Map<String, Definition> definitions;
+
+	/**
+	 * Word of every entry ID in use or retired; null for free IDs. Replaced, never changed in place, when it grows
+	 */
+	private String[] words;
+
+	/**
+	 * Definition of every entry ID in use or retired, parallel to {@link #words}
+	 */
+	private Definition[] byId;
+
+	/**
+	 * Retired IDs, oldest first, from {@link #retiredStart} to {@link #retiredEnd}
+	 */
+	private int[] retiredIds = new int[16];
+
+	/**
+	 * Version in which each ID in {@link #retiredIds} was retired
+	 */
+	private long[] retiredVersions = new long[16];
+
+	/**
+	 * Index of the oldest retired ID
+	 */
+	private int retiredStart = 0;
+
+	/**
+	 * One more than the index of the newest retired ID
+	 */
+	private int retiredEnd = 0;
+
+	/**
+	 * IDs of reclaimed entries, to be given out again
+	 */
+	private int[] freeIds = new int[0];
+
+	/**
+	 * Number of valid elements in {@link #freeIds}
+	 */
+	private int freeCount = 0;
+
+	/**
+	 * Next ID that has never been given out
+	 */
+	private int nextId = 0;
+
+	/**
+	 * Number of characters in the words and definitions of the entries in use
+	 */
+	private long characters = 0;
+
+	/**
+	 * Creates an empty store sized to hold <code>expectedSize</code> entries without resizing.
+	 *
+	 * @param expectedSize expected number of entries
+	 */
+	HashMapEntryStore(final int expectedSize) {
+		super(expectedSize);
+		definitions = (expectedSize == 0) ? new HashMap<String, Definition>() : new HashMap<String, Definition>((int) (expectedSize / 0.75f) + 1);
+		words = new String[Math.max(16, expectedSize)];
+		byId = new Definition[words.length];
+	}
+
+	@Override
+	public final int size() {
+		return definitions.size();
+	}
+
+	@Override
+	public final boolean containsKey(final Object key) {
+		return definitions.containsKey(key);
+	}
+
+	@Override
+	public final Definition get(final Object key) {
+		return definitions.get(key);
+	}
+
+	@Override
+	public final Definition put(final String word, final Definition definition) {
+		final long version = nextVersion();
+		final int id = newId();
+		final Definition stored = new Definition(definition.rawDefinition(), this, id);
+		characters += word.length() + stored.rawDefinition().length();
+
+		columns.set(id, definition.entryDate().getTime(), definition.accesses());
+		words[id] = word;
+		byId[id] = stored;
+
+		final Definition old = definitions.put(word, stored);
+		if (old != null) {
+			retire(old, version);
+		}
+
+		return old;
+	}
+
+	@Override
+	public final Definition remove(final Object key) {
+		if (!definitions.containsKey(key)) {
+			return null;
+		}
+
+		final long version = nextVersion();
+		final Definition old = definitions.remove(key);
+		retire(old, version);
+
+		return old;
+	}
+
+	@Override
+	public final Set<Map.Entry<String, Definition>> entrySet() {
+		return Collections.unmodifiableMap(definitions).entrySet();
+	}
+
+	@Override
+	final Frozen freeze() {
+		final String[] frozenWords = words;
+		final Definition[] frozenDefinitions = byId;
+
+		return new Frozen(this) {
+
+			@Override
+			final String word(final int id) {
+				return frozenWords[id];
+			}
+
+			@Override
+			final String definitionText(final int id) {
+				return frozenDefinitions[id].rawDefinition();
+			}
+		};
+	}
+
+	@Override
+	final void reclaim(final long oldestVisibleVersion) {
+		while (retiredStart < retiredEnd && retiredVersions[retiredStart] <= oldestVisibleVersion) {
+			final int id = retiredIds[retiredStart++];
+
+			words[id] = null;
+			byId[id] = null;
+
+			if (freeCount == freeIds.length) {
+				freeIds = Arrays.copyOf(freeIds, Math.max(16, freeIds.length * 2));
+			}
+			freeIds[freeCount++] = id;
+		}
+
+		if (retiredStart == retiredEnd) {
+			retiredStart = 0;
+			retiredEnd = 0;
+		}
+	}
+
+	@Override
+	final int idOf(final String word) {
+		final Definition definition = definitions.get(word);
+
+		return (definition == null) ? -1 : definition.id();
+	}
+
+	@Override
+	final String word(final int id) {
+		return words[id];
+	}
+
+	@Override
+	final String definitionText(final int id) {
+		return byId[id].rawDefinition();
+	}
+
+	/**
+	 * Estimates the memory used by this store from the number of entries and their total length, assuming one byte per character. Retired entries
+	 * are not counted.
+	 *
+	 * @return estimated heap footprint in bytes
+	 */
+	@Override
+	final long footprintBytes() {
+		final long table = (long) (definitions.size() / 0.75f) * Integer.BYTES;
+		final long idArrays = (long) words.length * 2 * Integer.BYTES;
+
+		return (long) definitions.size() * ENTRY_OVERHEAD_BYTES + characters + table + idArrays + columns.footprintBytes();
+	}
+
+	@Override
+	final String report() {
+		return String.format("%d entries (%d retired) in about %d bytes (%.1f bytes per entry, estimated)", definitions.size(), retiredEnd - retiredStart,
+				footprintBytes(), definitions.isEmpty() ? 0 : (double) footprintBytes() / definitions.size());
+	}
+
+	/**
+	 * Detaches a replaced or removed definition and retires its ID.
+	 *
+	 * @param old definition that left the store
+	 * @param version version in which it left
+	 */
+	private final void retire(final Definition old, final long version) {
+		final int id = old.id();
+
+		characters -= words[id].length() + old.rawDefinition().length();
+		old.detach();
+		columns.remove(id);
+
+		if (retiredEnd == retiredIds.length) {
+			final int count = retiredEnd - retiredStart;
+
+			if (count < retiredIds.length / 2) {
+				System.arraycopy(retiredIds, retiredStart, retiredIds, 0, count);
+				System.arraycopy(retiredVersions, retiredStart, retiredVersions, 0, count);
+			} else {
+				retiredIds = Arrays.copyOfRange(retiredIds, retiredStart, retiredIds.length * 2 + retiredStart);
+				retiredVersions = Arrays.copyOfRange(retiredVersions, retiredStart, retiredVersions.length * 2 + retiredStart);
+			}
+
+			retiredStart = 0;
+			retiredEnd = count;
+		}
+
+		retiredIds[retiredEnd] = id;
+		retiredVersions[retiredEnd++] = version;
+	}
+
+	/**
+	 * Returns a free entry ID, reusing the ID of a reclaimed entry if there is one.
+	 *
+	 * @return unused ID
+	 */
+	private final int newId() {
+		if (freeCount > 0) {
+			return freeIds[--freeCount];
+		}
+
+		if (nextId == words.length) {
+			final int capacity = words.length + (words.length >> 1);
+
+			words = Arrays.copyOf(words, capacity);
+			byId = Arrays.copyOf(byId, capacity);
+		}
+
+		return nextId++;
+	}
+}
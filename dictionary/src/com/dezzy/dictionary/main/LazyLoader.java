@@ -0,0 +1,277 @@
+package com.dezzy.dictionary.main;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dezzy.dictionary.perf.DictionaryLoadEvent;
+
+/**
+ * Loads an indexed dictionary file into a {@link Dictionary} on a background thread. Until loading finishes, single definitions are read
+ * directly from the file with its hash table, so <code>find</code> works as soon as the file is opened. <p>
+ *
+ * Definitions read directly from the file are kept until loading finishes, then replace the loaded copies of the same entries (before the entry
+ * date index is built), so accesses counted before loading finished are kept. The dictionary's {@link EntryStore} copies them into definitions of
+ * its own, so a definition returned by an early lookup is detached from the dictionary once loading finishes: accesses counted on it after that
+ * are lost, and it does not see later changes to the entry.
+ *
+ * @author Joe Desmond
+ */
+final class LazyLoader {
+
+	/**
+	 * Path of the file being loaded
+	 */
+	private final String path;
+
+	/**
+	 * Stream used for direct reads until loading finishes
+	 */
+	private final FileInputStream file;
+
+	/**
+	 * Channel of {@link #file}; positional reads on it are safe from several threads
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Header of the file being loaded
+	 */
+	private final DictionaryFile.Header header;
+
+	/**
+	 * Number of entries loaded so far
+	 */
+	private final AtomicInteger loaded = new AtomicInteger();
+
+	/**
+	 * Definitions that were read directly from the file before loading finished. Guarded by <code>this</code>
+	 */
+	private final Map<String, Definition> touched = new HashMap<String, Definition>();
+
+	/**
+	 * True once every entry is in the dictionary's map. Guarded by <code>this</code>
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Set to stop loading early
+	 */
+	private volatile boolean cancelled = false;
+
+	/**
+	 * {@link System#nanoTime()} when the file was opened
+	 */
+	private final long startNanos;
+
+	/**
+	 * {@link System#nanoTime()} when loading finished, or 0 while loading
+	 */
+	private volatile long finishNanos = 0;
+
+	/**
+	 * Completes when loading finishes, or completes exceptionally if loading fails or is cancelled
+	 */
+	private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+	/**
+	 * Opens an indexed dictionary file and reads its header. Nothing else is read until {@link #start} is called.
+	 *
+	 * @param _path path of the file
+	 * @throws IOException if the file cannot be opened or is not an indexed dictionary file
+	 */
+	LazyLoader(final String _path) throws IOException {
+		path = _path;
+		startNanos = System.nanoTime();
+		file = new FileInputStream(path);
+		channel = file.getChannel();
+
+		try {
+			header = DictionaryFile.readHeader(channel);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the name of the dictionary in the file.
+	 *
+	 * @return dictionary name
+	 */
+	final String name() {
+		return header.name;
+	}
+
+	/**
+	 * Returns the number of entries in the file.
+	 *
+	 * @return entry count
+	 */
+	final int size() {
+		return header.count;
+	}
+
+	/**
+	 * Returns the number of entries loaded so far.
+	 *
+	 * @return loaded entry count
+	 */
+	final int loaded() {
+		return loaded.get();
+	}
+
+	/**
+	 * Returns the time since the file was opened, or the total loading time once loading has finished.
+	 *
+	 * @return elapsed time in nanoseconds
+	 */
+	final long elapsedNanos() {
+		final long finish = finishNanos;
+
+		return ((finish == 0) ? System.nanoTime() : finish) - startNanos;
+	}
+
+	/**
+	 * Returns a future that completes when loading finishes.
+	 *
+	 * @return the loading future
+	 */
+	final CompletableFuture<Void> future() {
+		return done;
+	}
+
+	/**
+	 * Starts loading every entry into <code>target</code> on the given executor. The target's map must not be used by any other thread
+	 * until the returned future completes.
+	 *
+	 * @param target dictionary to load into
+	 * @param executor executor to load on
+	 */
+	final void start(final Dictionary target, final Executor executor) {
+		try {
+			executor.execute(() -> load(target));
+		} catch (RuntimeException e) {
+			closeFile();
+			done.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Loads every entry, keeps the definitions that were read directly, rebuilds the derived structures, then releases the file.
+	 *
+	 * @param target dictionary to load into
+	 */
+	private final void load(final Dictionary target) {
+		final DictionaryLoadEvent event = new DictionaryLoadEvent();
+		event.begin();
+
+		try {
+			DictionaryFile.readEntries(path, header, (word, definition) -> {
+				target.putLoaded(word, definition);
+				loaded.lazySet(loaded.get() + 1);
+			}, () -> cancelled);
+
+			synchronized (this) {
+				for (final Map.Entry<String, Definition> entry : touched.entrySet()) {
+					target.putLoaded(entry.getKey(), entry.getValue());
+				}
+
+				touched.clear();
+				finished = true;
+			}
+
+			//Built after the definitions that were read directly have been put back, because putting them gives their entries new IDs
+			target.rebuildDateIndex();
+
+			finishNanos = System.nanoTime();
+
+			event.end();
+			if (event.shouldCommit()) {
+				event.path = path;
+				event.entries = header.count;
+				event.bytes = channel.size();
+				event.commit();
+			}
+
+			closeFile();
+			done.complete(null);
+		} catch (IOException | RuntimeException e) {
+			closeFile();
+			done.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Looks up a definition directly in the file if loading has not finished. The same Definition object is returned for every lookup of a word
+	 * until loading finishes; after that, the dictionary holds a copy of it.
+	 *
+	 * @param word word/phrase (case sensitive)
+	 * @return the definition ({@link Optional#empty} if the word is not defined), or null if loading has finished and the dictionary's map should be used instead
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
+	final synchronized Optional<Definition> lookup(final String word) {
+		if (finished) {
+			return null;
+		}
+
+		final Definition cached = touched.get(word);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+
+		try {
+			final Definition definition = DictionaryFile.lookup(channel, header, word);
+
+			if (definition == null) {
+				return Optional.empty();
+			}
+
+			touched.put(word, definition);
+			return Optional.of(definition);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem reading \"" + path + "\"", e);
+		}
+	}
+
+	/**
+	 * Waits for loading to finish.
+	 *
+	 * @throws IllegalStateException if loading failed or was cancelled
+	 */
+	final void await() {
+		try {
+			done.join();
+		} catch (CancellationException | CompletionException e) {
+			final Throwable cause = (e.getCause() == null) ? e : e.getCause();
+			throw new IllegalStateException("Problem loading \"" + path + "\": " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Stops loading as soon as possible and releases the file. Does nothing if loading has already finished.
+	 */
+	final void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Closes the file, ignoring errors; nothing more can be read from it.
+	 */
+	private final void closeFile() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			// Nothing more will be read
+		}
+	}
+}
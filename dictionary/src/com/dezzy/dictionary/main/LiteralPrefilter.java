@@ -0,0 +1,354 @@
+package com.dezzy.dictionary.main;
+
+/**
+ * A literal string that every match of a search expression must contain, found by reading the expression. An entry that does not contain the
+ * literal cannot match, so searches only run the regular expression on the entries that do. Entries are scanned with {@link String#indexOf(String)},
+ * which the JVM compiles to a vectorized scan; it is several times faster than a Boyer-Moore-Horspool scan written in Java. <p>
+ *
+ * The expression is read conservatively: only characters outside groups, character classes and alternations, and not made optional by a quantifier,
+ * are required, and the longest run of them is used. Expressions that change flags inline (such as <code>(?i)</code>), or that have no required
+ * characters, have no prefilter.
+ *
+ * @author Joe Desmond
+ */
+final class LiteralPrefilter {
+
+	/**
+	 * Characters of the separator between a word and its definition in a search candidate (see {@link Dictionary#searchAll(String)})
+	 */
+	private static final String SEPARATOR = ":\t";
+
+	/**
+	 * The required literal
+	 */
+	private final String literal;
+
+	/**
+	 * True if the literal contains a separator character, so that it may cross from the word to the definition
+	 */
+	private final boolean crossesSeparator;
+
+	/**
+	 * Creates a prefilter for a literal.
+	 *
+	 * @param _literal required literal (not empty)
+	 */
+	private LiteralPrefilter(final String _literal) {
+		literal = _literal;
+		crossesSeparator = literal.indexOf(':') >= 0 || literal.indexOf('\t') >= 0;
+	}
+
+	/**
+	 * Returns a prefilter for a search expression, or null if the expression has no required literal.
+	 *
+	 * @param regex search expression (a valid regular expression)
+	 * @return prefilter, or null
+	 */
+	static final LiteralPrefilter of(final String regex) {
+		final String literal = requiredLiteral(regex);
+
+		return (literal == null) ? null : new LiteralPrefilter(literal);
+	}
+
+	/**
+	 * Returns the literal that every match must contain.
+	 *
+	 * @return the literal
+	 */
+	final String literal() {
+		return literal;
+	}
+
+	/**
+	 * Returns false if the search candidate of an entry (its word, the separator and its definition) cannot match.
+	 *
+	 * @param word word/phrase
+	 * @param definition definition text
+	 * @return true if the candidate contains the literal
+	 */
+	final boolean mightMatch(final String word, final String definition) {
+		if (crossesSeparator) {
+			return (word + SEPARATOR + definition).contains(literal);
+		}
+
+		return word.contains(literal) || definition.contains(literal);
+	}
+
+	/**
+	 * Finds the longest run of characters that every match of an expression must contain.
+	 *
+	 * @param regex search expression
+	 * @return the literal, or null if there is none
+	 */
+	static final String requiredLiteral(final String regex) {
+		String longest = "";
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		int i = 0;
+
+		while (i < regex.length()) {
+			final char c = regex.charAt(i);
+			int next = i + 1;
+			// The literal character at this position, or -1 if the element here is not a single literal character
+			int literalChar = -1;
+
+			if (c == '\\') {
+				if (next >= regex.length()) {
+					return null;
+				}
+
+				final char escaped = regex.charAt(next);
+				next++;
+
+				if (escaped == 'Q') {
+					final int quoteEnd = regex.indexOf("\\E", next);
+					final String quoted = regex.substring(next, (quoteEnd < 0) ? regex.length() : quoteEnd);
+					next = (quoteEnd < 0) ? regex.length() : quoteEnd + 2;
+
+					if (depth == 0 && !quoted.isEmpty()) {
+						if (isQuantifier(regex, next)) {
+							// Only the last quoted character is quantified
+							run.append(quoted, 0, quoted.length() - 1);
+							longest = longer(longest, run);
+							run = new StringBuilder();
+							literalChar = quoted.charAt(quoted.length() - 1);
+						} else {
+							run.append(quoted);
+							i = next;
+							continue;
+						}
+					}
+				} else if (escaped == 't') {
+					literalChar = '\t';
+				} else if (escaped == 'n') {
+					literalChar = '\n';
+				} else if (escaped == 'r') {
+					literalChar = '\r';
+				} else if (escaped == 'f') {
+					literalChar = '\f';
+				} else if (!Character.isLetterOrDigit(escaped) && !Character.isSurrogate(escaped)) {
+					literalChar = escaped;
+				} else {
+					next = skipEscapeArgument(regex, escaped, next);
+				}
+			} else if (c == '[') {
+				next = skipClass(regex, i);
+			} else if (c == '(') {
+				if (next < regex.length() && regex.charAt(next) == '?' && next + 1 < regex.length() && isFlag(regex.charAt(next + 1))) {
+					return null;
+				}
+
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|') {
+				if (depth == 0) {
+					return null;
+				}
+			} else if (Character.isHighSurrogate(c)) {
+				// A quantifier after a supplementary character repeats both of its chars
+				next = Math.min(regex.length(), i + 2);
+			} else if (c != '.' && c != '^' && c != '$' && !isQuantifierStart(c) && !Character.isSurrogate(c)) {
+				literalChar = c;
+			}
+
+			if (depth > 0 || literalChar < 0) {
+				longest = longer(longest, run);
+				run = new StringBuilder();
+			} else if (isQuantifier(regex, next)) {
+				final boolean required = minimumRepeats(regex, next) > 0;
+				if (required) {
+					run.append((char) literalChar);
+				}
+				longest = longer(longest, run);
+				run = new StringBuilder();
+			} else {
+				run.append((char) literalChar);
+			}
+
+			i = next;
+			while (depth == 0 && isQuantifier(regex, i)) {
+				i = skipQuantifier(regex, i);
+			}
+		}
+
+		longest = longer(longest, run);
+		return longest.isEmpty() ? null : longest;
+	}
+
+	/**
+	 * Returns the position after the argument of an escape that is not a single literal character (such as the digits of <code>\x41</code> or the
+	 * name of <code>\p{Lu}</code>). Digits after a back reference are skipped too, since they may be part of the group number.
+	 *
+	 * @param regex search expression
+	 * @param escaped the character after the backslash
+	 * @param at position after that character
+	 * @return position after the argument
+	 */
+	private static final int skipEscapeArgument(final String regex, final char escaped, final int at) {
+		int end = at;
+
+		switch (escaped) {
+			case '0':
+				while (end < regex.length() && end < at + 3 && regex.charAt(end) >= '0' && regex.charAt(end) <= '7') {
+					end++;
+				}
+				return end;
+			case 'x':
+			case 'p':
+			case 'P':
+			case 'N':
+				if (end < regex.length() && regex.charAt(end) == '{') {
+					final int close = regex.indexOf('}', end);
+					return (close < 0) ? regex.length() : close + 1;
+				}
+				return Math.min(regex.length(), end + ((escaped == 'x') ? 2 : 1));
+			case 'u':
+				return Math.min(regex.length(), end + 4);
+			case 'c':
+				return Math.min(regex.length(), end + 1);
+			case 'k':
+				final int close = regex.indexOf('>', end);
+				return (close < 0) ? regex.length() : close + 1;
+			default:
+				if (Character.isDigit(escaped)) {
+					while (end < regex.length() && Character.isDigit(regex.charAt(end))) {
+						end++;
+					}
+				}
+				return end;
+		}
+	}
+
+	/**
+	 * Returns the longer of a literal and a run of literal characters.
+	 *
+	 * @param longest longest literal so far
+	 * @param run current run
+	 * @return the longer one
+	 */
+	private static final String longer(final String longest, final StringBuilder run) {
+		return (run.length() > longest.length()) ? run.toString() : longest;
+	}
+
+	/**
+	 * Returns true if a character can follow <code>(?</code> to set or clear flags.
+	 *
+	 * @param c character after <code>(?</code>
+	 * @return true for a flag letter or <code>-</code>
+	 */
+	private static final boolean isFlag(final char c) {
+		return "idmsuxU-".indexOf(c) >= 0;
+	}
+
+	/**
+	 * Returns true if a character starts a quantifier.
+	 *
+	 * @param c character
+	 * @return true for <code>?</code>, <code>*</code>, <code>+</code> and <code>{</code>
+	 */
+	private static final boolean isQuantifierStart(final char c) {
+		return c == '?' || c == '*' || c == '+' || c == '{';
+	}
+
+	/**
+	 * Returns true if there is a quantifier at a position.
+	 *
+	 * @param regex search expression
+	 * @param at position
+	 * @return true if a quantifier starts there
+	 */
+	private static final boolean isQuantifier(final String regex, final int at) {
+		return at < regex.length() && isQuantifierStart(regex.charAt(at));
+	}
+
+	/**
+	 * Returns the minimum number of repeats of a quantifier.
+	 *
+	 * @param regex search expression
+	 * @param at position of the quantifier
+	 * @return minimum number of repeats
+	 */
+	private static final int minimumRepeats(final String regex, final int at) {
+		final char c = regex.charAt(at);
+
+		if (c == '+') {
+			return 1;
+		} else if (c != '{') {
+			return 0;
+		}
+
+		int end = at + 1;
+		while (end < regex.length() && Character.isDigit(regex.charAt(end))) {
+			end++;
+		}
+
+		return (end == at + 1) ? 0 : Integer.parseInt(regex.substring(at + 1, Math.min(end, at + 10)));
+	}
+
+	/**
+	 * Returns the position after a quantifier, including a lazy or possessive suffix.
+	 *
+	 * @param regex search expression
+	 * @param at position of the quantifier
+	 * @return position after it
+	 */
+	private static final int skipQuantifier(final String regex, final int at) {
+		int end = at + 1;
+
+		if (regex.charAt(at) == '{') {
+			final int close = regex.indexOf('}', at);
+			end = (close < 0) ? regex.length() : close + 1;
+		}
+
+		if (end < regex.length() && (regex.charAt(end) == '?' || regex.charAt(end) == '+')) {
+			end++;
+		}
+
+		return end;
+	}
+
+	/**
+	 * Returns the position after a character class, which may contain escapes and nested classes.
+	 *
+	 * @param regex search expression
+	 * @param at position of the opening bracket
+	 * @return position after the closing bracket
+	 */
+	private static final int skipClass(final String regex, final int at) {
+		int depth = 0;
+		int i = at;
+
+		while (i < regex.length()) {
+			final char c = regex.charAt(i);
+
+			if (c == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					final int quoteEnd = regex.indexOf("\\E", i + 2);
+					i = (quoteEnd < 0) ? regex.length() : quoteEnd + 2;
+				} else {
+					i += 2;
+				}
+				continue;
+			} else if (c == '[') {
+				depth++;
+				// A closing bracket right after the opening bracket (or after ^) is a literal
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+					i++;
+				}
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+					i++;
+				}
+			} else if (c == ']') {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+
+			i++;
+		}
+
+		return regex.length();
+	}
+}
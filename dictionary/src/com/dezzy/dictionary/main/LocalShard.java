@@ -0,0 +1,128 @@
+package com.dezzy.dictionary.main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+
+/**
+ * A {@link Shard} hosted in this JVM: a {@link Dictionary} holding one partition of a {@link ShardedDictionary}. Worker processes
+ * ({@link ShardServer}) also use a LocalShard to hold their partition.
+ *
+ * @author Joe Desmond
+ */
+final class LocalShard implements Shard {
+
+	/**
+	 * The shard's entries
+	 */
+	final Dictionary dictionary;
+
+	/**
+	 * Creates a shard holding a dictionary.
+	 *
+	 * @param _dictionary the shard's entries
+	 */
+	LocalShard(final Dictionary _dictionary) {
+		dictionary = _dictionary;
+	}
+
+	@Override
+	public final Optional<Definition> find(final String word) {
+		return dictionary.getDefinition(word);
+	}
+
+	@Override
+	public final boolean weakDefine(final String word, final Definition definition) {
+		return dictionary.weakDefine(word, definition);
+	}
+
+	@Override
+	public final boolean strongDefine(final String word, final Definition definition) {
+		return dictionary.strongDefine(word, definition);
+	}
+
+	@Override
+	public final boolean remove(final String word) {
+		return dictionary.remove(word);
+	}
+
+	@Override
+	public final Optional<Date> changeEntryDate(final String word, final Date date) {
+		return dictionary.changeEntryDate(word, date);
+	}
+
+	@Override
+	public final List<SearchResult> search(final String regex) {
+		return dictionary.search(regex);
+	}
+
+	@Override
+	public final Summary summary() {
+		try (Dictionary.Snapshot snapshot = dictionary.snapshot()) {
+			return new Summary(snapshot.getSortedEntryTimes(), snapshot.getAccessCountHistogram());
+		}
+	}
+
+	@Override
+	public final int size() {
+		return dictionary.size();
+	}
+
+	@Override
+	public final void save(final String path) throws IOException {
+		dictionary.save(path);
+	}
+
+	/**
+	 * Finds the misplaced entries in a snapshot, then removes them. Entries changed by other threads in the meantime may be missed, so the caller must
+	 * not change this shard while it runs.
+	 */
+	@Override
+	public final List<Map.Entry<String, Definition>> takeMisplaced(final int index, final int shardCount) {
+		final List<Map.Entry<String, Definition>> misplaced = new ArrayList<Map.Entry<String, Definition>>();
+
+		try (Dictionary.Snapshot snapshot = dictionary.snapshot()) {
+			final Iterator<Map.Entry<String, Definition>> entries = snapshot.entries();
+
+			while (entries.hasNext()) {
+				final Map.Entry<String, Definition> entry = entries.next();
+
+				if (ShardedDictionary.shardOf(entry.getKey(), shardCount) != index) {
+					misplaced.add(entry);
+				}
+			}
+		}
+
+		for (final Map.Entry<String, Definition> entry : misplaced) {
+			dictionary.remove(entry.getKey());
+		}
+
+		return misplaced;
+	}
+
+	@Override
+	public final void putAll(final List<Map.Entry<String, Definition>> entries) {
+		for (final Map.Entry<String, Definition> entry : entries) {
+			dictionary.strongDefine(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public final String host() {
+		return "this process";
+	}
+
+	/**
+	 * Stops loading the dictionary in the background, if it is still loading.
+	 */
+	@Override
+	public final void close() {
+		dictionary.cancelLoading();
+	}
+}
@@ -0,0 +1,448 @@
+package com.dezzy.dictionary.main;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A sorted multiset of <code>long</code> values that can return the value at any rank. The values are kept in a treap (a binary search tree
+ * that is kept balanced by giving every node a random priority) stored in parallel primitive arrays, with one node per distinct value and the
+ * number of copies of the value in the node; nodes are indices into the arrays, and 0 is the empty tree. Adding a value, removing a value and
+ * finding the value at a rank take O(log n) expected time, and no objects are created per value.
+ *
+ * @author Joe Desmond
+ */
+final class LongMultiset {
+
+	/**
+	 * Initial capacity of the node arrays, including the empty node 0
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Value of every node
+	 */
+	private long[] keys;
+
+	/**
+	 * Number of copies of the value of every node
+	 */
+	private int[] counts;
+
+	/**
+	 * Number of values in the subtree of every node, counting copies
+	 */
+	private int[] sizes;
+
+	/**
+	 * Priority of every node; no node has a higher priority than its parent
+	 */
+	private int[] priorities;
+
+	/**
+	 * Left child of every node, or the next free node for nodes that are not in use
+	 */
+	private int[] lefts;
+
+	/**
+	 * Right child of every node
+	 */
+	private int[] rights;
+
+	/**
+	 * Root of the tree
+	 */
+	private int root = 0;
+
+	/**
+	 * First free node that has been used before, or 0 if there is none
+	 */
+	private int free = 0;
+
+	/**
+	 * One more than the highest node that has been used
+	 */
+	private int nodeLimit = 1;
+
+	/**
+	 * Creates an empty multiset.
+	 */
+	LongMultiset() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates a multiset holding the given values, in linear time.
+	 *
+	 * @param sorted values in ascending order
+	 * @param length number of valid elements in <code>sorted</code>
+	 */
+	LongMultiset(final long[] sorted, final int length) {
+		int distinct = 0;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				distinct++;
+			}
+		}
+
+		allocate(Math.max(INITIAL_CAPACITY, distinct + 1));
+
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				keys[nodeLimit++] = sorted[i];
+			}
+
+			counts[nodeLimit - 1]++;
+		}
+
+		final int[] depths = new int[nodeLimit];
+		root = build(1, nodeLimit, 0, depths);
+		assignPriorities(depths);
+	}
+
+	/**
+	 * Returns the number of values, counting copies.
+	 *
+	 * @return size of the multiset
+	 */
+	final int size() {
+		return sizes[root];
+	}
+
+	/**
+	 * Adds a copy of a value.
+	 *
+	 * @param value value to add
+	 */
+	final void add(final long value) {
+		root = insert(root, value);
+	}
+
+	/**
+	 * Removes one copy of a value.
+	 *
+	 * @param value value to remove
+	 * @return true if the value was found and removed
+	 */
+	final boolean remove(final long value) {
+		final int before = sizes[root];
+		root = delete(root, value);
+
+		return sizes[root] < before;
+	}
+
+	/**
+	 * Returns the value at a rank: the smallest value if <code>rank</code> is 0, the largest if it is <code>size() - 1</code>.
+	 *
+	 * @param rank rank of the value, counting copies
+	 * @return the value
+	 * @throws IndexOutOfBoundsException if <code>rank</code> is not below {@link #size()}
+	 */
+	final long select(final int rank) {
+		if (rank < 0 || rank >= sizes[root]) {
+			throw new IndexOutOfBoundsException("Rank " + rank + " of " + sizes[root] + " values");
+		}
+
+		int node = root;
+		int remaining = rank;
+
+		while (true) {
+			final int leftSize = sizes[lefts[node]];
+
+			if (remaining < leftSize) {
+				node = lefts[node];
+			} else if (remaining < leftSize + counts[node]) {
+				return keys[node];
+			} else {
+				remaining -= leftSize + counts[node];
+				node = rights[node];
+			}
+		}
+	}
+
+	/**
+	 * Returns every value in ascending order, counting copies.
+	 *
+	 * @return a new array of the values
+	 */
+	final long[] toArray() {
+		final long[] out = new long[sizes[root]];
+		fill(root, out, 0);
+
+		return out;
+	}
+
+	/**
+	 * Writes the values of a subtree in ascending order.
+	 *
+	 * @param node subtree
+	 * @param out array to write to
+	 * @param start position of the first value
+	 * @return position after the last value
+	 */
+	private final int fill(final int node, final long[] out, final int start) {
+		if (node == 0) {
+			return start;
+		}
+
+		int position = fill(lefts[node], out, start);
+		Arrays.fill(out, position, position + counts[node], keys[node]);
+		position += counts[node];
+
+		return fill(rights[node], out, position);
+	}
+
+	/**
+	 * Adds a copy of a value to a subtree.
+	 *
+	 * @param node subtree
+	 * @param value value to add
+	 * @return new root of the subtree
+	 */
+	private final int insert(final int node, final long value) {
+		if (node == 0) {
+			return newNode(value);
+		}
+
+		if (value == keys[node]) {
+			counts[node]++;
+			sizes[node]++;
+			return node;
+		}
+
+		if (value < keys[node]) {
+			final int child = insert(lefts[node], value);
+			lefts[node] = child;
+
+			if (priorities[child] > priorities[node]) {
+				return rotateRight(node);
+			}
+		} else {
+			final int child = insert(rights[node], value);
+			rights[node] = child;
+
+			if (priorities[child] > priorities[node]) {
+				return rotateLeft(node);
+			}
+		}
+
+		sizes[node]++;
+		return node;
+	}
+
+	/**
+	 * Removes one copy of a value from a subtree, if it is there.
+	 *
+	 * @param node subtree
+	 * @param value value to remove
+	 * @return new root of the subtree
+	 */
+	private final int delete(final int node, final long value) {
+		if (node == 0) {
+			return 0;
+		}
+
+		if (value < keys[node]) {
+			lefts[node] = delete(lefts[node], value);
+		} else if (value > keys[node]) {
+			rights[node] = delete(rights[node], value);
+		} else if (counts[node] > 1) {
+			counts[node]--;
+		} else {
+			final int merged = merge(lefts[node], rights[node]);
+			freeNode(node);
+			return merged;
+		}
+
+		update(node);
+		return node;
+	}
+
+	/**
+	 * Joins two subtrees, where every value of the first is smaller than every value of the second.
+	 *
+	 * @param a subtree of smaller values
+	 * @param b subtree of larger values
+	 * @return root of the joined tree
+	 */
+	private final int merge(final int a, final int b) {
+		if (a == 0) {
+			return b;
+		}
+		if (b == 0) {
+			return a;
+		}
+
+		if (priorities[a] > priorities[b]) {
+			rights[a] = merge(rights[a], b);
+			update(a);
+			return a;
+		}
+
+		lefts[b] = merge(a, lefts[b]);
+		update(b);
+		return b;
+	}
+
+	/**
+	 * Rotates a node's left child above it.
+	 *
+	 * @param node node
+	 * @return the left child, which is the new root of the subtree
+	 */
+	private final int rotateRight(final int node) {
+		final int child = lefts[node];
+
+		lefts[node] = rights[child];
+		rights[child] = node;
+		update(node);
+		update(child);
+
+		return child;
+	}
+
+	/**
+	 * Rotates a node's right child above it.
+	 *
+	 * @param node node
+	 * @return the right child, which is the new root of the subtree
+	 */
+	private final int rotateLeft(final int node) {
+		final int child = rights[node];
+
+		rights[node] = lefts[child];
+		lefts[child] = node;
+		update(node);
+		update(child);
+
+		return child;
+	}
+
+	/**
+	 * Recomputes the size of a node's subtree from its children.
+	 *
+	 * @param node node
+	 */
+	private final void update(final int node) {
+		sizes[node] = sizes[lefts[node]] + counts[node] + sizes[rights[node]];
+	}
+
+	/**
+	 * Builds a balanced tree from the nodes in a range, which hold distinct values in ascending order, and records the depth of every node.
+	 *
+	 * @param start first node (inclusive)
+	 * @param end last node (exclusive)
+	 * @param depth depth of the root of the range
+	 * @param depths receives the depth of every node
+	 * @return root of the range, or 0 if it is empty
+	 */
+	private final int build(final int start, final int end, final int depth, final int[] depths) {
+		if (start >= end) {
+			return 0;
+		}
+
+		final int mid = (start + end) >>> 1;
+		lefts[mid] = build(start, mid, depth + 1, depths);
+		rights[mid] = build(mid + 1, end, depth + 1, depths);
+		depths[mid] = depth;
+		update(mid);
+
+		return mid;
+	}
+
+	/**
+	 * Gives the nodes of a tree built by {@link #build} random priorities: the highest ones to the shallowest nodes, so that no node has a
+	 * higher priority than its parent, and nodes added later are placed as in a treap that was built one value at a time.
+	 *
+	 * @param depths depth of every node
+	 */
+	private final void assignPriorities(final int[] depths) {
+		final int nodes = nodeLimit - 1;
+		final int[] random = new int[nodes];
+		final ThreadLocalRandom generator = ThreadLocalRandom.current();
+
+		for (int i = 0; i < nodes; i++) {
+			random[i] = generator.nextInt() & Integer.MAX_VALUE;
+		}
+		Arrays.sort(random);
+
+		int maxDepth = 0;
+		for (int node = 1; node < nodeLimit; node++) {
+			maxDepth = Math.max(maxDepth, depths[node]);
+		}
+
+		int next = 0;
+		for (int depth = maxDepth; depth >= 0; depth--) {
+			for (int node = 1; node < nodeLimit; node++) {
+				if (depths[node] == depth) {
+					priorities[node] = random[next++];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes a free node, growing the arrays if needed, and gives it one copy of a value and a random priority.
+	 *
+	 * @param value value of the node
+	 * @return the node
+	 */
+	private final int newNode(final long value) {
+		final int node;
+
+		if (free != 0) {
+			node = free;
+			free = lefts[node];
+		} else {
+			if (nodeLimit == keys.length) {
+				allocate(keys.length + (keys.length >> 1));
+			}
+
+			node = nodeLimit++;
+		}
+
+		keys[node] = value;
+		counts[node] = 1;
+		sizes[node] = 1;
+		priorities[node] = ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE;
+		lefts[node] = 0;
+		rights[node] = 0;
+
+		return node;
+	}
+
+	/**
+	 * Puts a node that is no longer in the tree on the free list.
+	 *
+	 * @param node node
+	 */
+	private final void freeNode(final int node) {
+		lefts[node] = free;
+		rights[node] = 0;
+		counts[node] = 0;
+		sizes[node] = 0;
+		free = node;
+	}
+
+	/**
+	 * Creates or grows the node arrays.
+	 *
+	 * @param capacity number of nodes, including the empty node 0
+	 */
+	private final void allocate(final int capacity) {
+		if (keys == null) {
+			keys = new long[capacity];
+			counts = new int[capacity];
+			sizes = new int[capacity];
+			priorities = new int[capacity];
+			lefts = new int[capacity];
+			rights = new int[capacity];
+		} else {
+			keys = Arrays.copyOf(keys, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+			lefts = Arrays.copyOf(lefts, capacity);
+			rights = Arrays.copyOf(rights, capacity);
+		}
+	}
+}
@@ -0,0 +1,1078 @@
+package com.dezzy.dictionary.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A map of words to definitions that keeps words and definitions on disk, in a log-structured merge tree, so that a dictionary can be much larger
+ * than the heap. New entries and tombstones (which mark removed words) go into the memtable, a sorted map in memory; when it reaches
+ * {@link #MEMTABLE_CHARS} characters it is written to a new {@link SortedRun}. A lookup reads the memtable, then the runs from newest to oldest
+ * until one has a record for the word; each run's Bloom filter skips most runs that do not, and its sparse index limits the others to one block
+ * read. A background thread merges runs of similar size (dropping replaced records, and tombstones once nothing older is left), and never lets
+ * there be more than {@link #MAX_RUNS}, so a lookup reads at most that many blocks. <p>
+ *
+ * Only the metadata of every entry stays in memory: its entry date and access count in {@link EntryColumns}, and the location of its record (in the
+ * memtable or in a run), by entry ID. Locations are updated as runs are written and merged. Like {@link ArenaEntryStore}, IDs are never reused, and
+ * records are never changed in place; a frozen view keeps the memtable and the runs it saw, and runs replaced by a merge are deleted once
+ * {@link #reclaim(long)} says that no frozen view can still see them. A frozen view can be read in alphabetical order by merging its runs, so
+ * printing or saving the dictionary streams from disk. <p>
+ *
+ * Runs are working files in a new directory under <code>dictionary.lsm.dir</code> (the system temporary directory by default). They are deleted
+ * when the store is garbage collected or the program exits; dictionaries are saved in the usual file format.
+ *
+ * @author Joe Desmond
+ */
+final class LsmEntryStore extends EntryStore {
+
+	/**
+	 * Characters of words and definitions in the memtable at which it is written to a run; the value of the <code>dictionary.lsm.memtable</code>
+	 * system property, or about 4 million
+	 */
+	private static final long MEMTABLE_CHARS = Long.getLong("dictionary.lsm.memtable", 1 << 22);
+
+	/**
+	 * Directory that holds the working directory of every store
+	 */
+	private static final File BASE_DIRECTORY = new File(System.getProperty("dictionary.lsm.dir", System.getProperty("java.io.tmpdir")));
+
+	/**
+	 * Largest number of runs; beyond this, runs are merged even if their sizes are not similar
+	 */
+	static final int MAX_RUNS = 8;
+
+	/**
+	 * Smallest number of runs of similar size that are merged
+	 */
+	private static final int MIN_MERGE = 4;
+
+	/**
+	 * Number of location updates made at once while merging runs
+	 */
+	private static final int PUBLISH_BATCH = 4096;
+
+	/**
+	 * Bits of a run location that hold the offset in the run; the run number is in the bits above
+	 */
+	private static final int OFFSET_BITS = 40;
+
+	/**
+	 * Initial capacity of the location column
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Estimated bytes used by one memtable entry apart from its characters: a TreeMap node, a record, its slot in {@link #memRecords}, and the word
+	 * and definition Strings with their byte array headers
+	 */
+	private static final int MEMTABLE_OVERHEAD_BYTES = 40 + 24 + 4 + 2 * (24 + 16);
+
+	/**
+	 * Deletes the working directories of stores that are garbage collected
+	 */
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	/**
+	 * Merges runs in the background, for every store
+	 */
+	private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+		final Thread thread = new Thread(task, "lsm-compaction");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Working directories that have not been deleted yet
+	 */
+	private static final Set<RunFiles> OPEN_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (final RunFiles files : OPEN_DIRECTORIES) {
+				files.run();
+			}
+		}, "lsm-cleanup"));
+	}
+
+	/**
+	 * The working directory of a store and every run in it that has not been deleted. Kept apart from the store so that it can be deleted after the
+	 * store has been garbage collected.
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class RunFiles implements Runnable {
+
+		/**
+		 * Working directory
+		 */
+		private final File directory;
+
+		/**
+		 * Runs by number
+		 */
+		private final Map<Integer, SortedRun> runs = new ConcurrentHashMap<Integer, SortedRun>();
+
+		/**
+		 * Number of the newest run
+		 */
+		private final AtomicInteger lastNumber = new AtomicInteger();
+
+		/**
+		 * Creates a new working directory.
+		 *
+		 * @throws IOException if the directory cannot be created
+		 */
+		private RunFiles() throws IOException {
+			BASE_DIRECTORY.mkdirs();
+			directory = Files.createTempDirectory(BASE_DIRECTORY.toPath(), "dictionary-lsm-").toFile();
+			OPEN_DIRECTORIES.add(this);
+		}
+
+		/**
+		 * Creates an empty run with the next number.
+		 *
+		 * @param expectedCount expected number of records
+		 * @return the run, open for writing
+		 * @throws IOException if the run's file cannot be created
+		 */
+		private final SortedRun create(final int expectedCount) throws IOException {
+			final int number = lastNumber.incrementAndGet();
+			final SortedRun run = new SortedRun(new File(directory, number + ".run"), number, expectedCount);
+			runs.put(number, run);
+
+			return run;
+		}
+
+		/**
+		 * Deletes a run.
+		 *
+		 * @param run run to delete
+		 */
+		private final void delete(final SortedRun run) {
+			runs.remove(run.number);
+			run.delete();
+		}
+
+		/**
+		 * Deletes every run and the working directory.
+		 */
+		@Override
+		public final void run() {
+			for (final SortedRun run : runs.values()) {
+				run.delete();
+			}
+			runs.clear();
+
+			directory.delete();
+			OPEN_DIRECTORIES.remove(this);
+		}
+	}
+
+	/**
+	 * A sorted sequence of records being merged: the records of a run, or of a memtable.
+	 *
+	 * @author Joe Desmond
+	 */
+	private abstract static class Source {
+
+		/**
+		 * Age of the source: records from sources with lower ages replace records for the same word from sources with higher ages
+		 */
+		final int age;
+
+		/**
+		 * Current record
+		 */
+		SortedRun.Record record;
+
+		/**
+		 * Location of the current record
+		 */
+		long location;
+
+		/**
+		 * Creates a source.
+		 *
+		 * @param _age age of the source
+		 */
+		Source(final int _age) {
+			age = _age;
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return false if there are no more records
+		 * @throws IOException if there is a problem reading a run
+		 */
+		abstract boolean advance() throws IOException;
+	}
+
+	/**
+	 * Merges sorted sources into one sorted sequence with the newest record of every word (which may be a tombstone).
+	 *
+	 * @author Joe Desmond
+	 */
+	private static final class Merger {
+
+		/**
+		 * Sources that have a current record, by word and then by age
+		 */
+		private final PriorityQueue<Source> queue = new PriorityQueue<Source>((a, b) -> {
+			final int comparison = SortedRun.KEY_ORDER.compare(a.record.word, b.record.word);
+			return (comparison != 0) ? comparison : Integer.compare(a.age, b.age);
+		});
+
+		/**
+		 * Location of the record last returned by {@link #next()}
+		 */
+		private long location;
+
+		/**
+		 * Creates a merger.
+		 *
+		 * @param sources sources to merge
+		 * @throws IOException if there is a problem reading a run
+		 */
+		private Merger(final List<Source> sources) throws IOException {
+			for (final Source source : sources) {
+				if (source.advance()) {
+					queue.add(source);
+				}
+			}
+		}
+
+		/**
+		 * Returns the newest record of the next word.
+		 *
+		 * @return the record, or null if every source has been read
+		 * @throws IOException if there is a problem reading a run
+		 */
+		private final SortedRun.Record next() throws IOException {
+			final Source newest = queue.poll();
+			if (newest == null) {
+				return null;
+			}
+
+			final SortedRun.Record record = newest.record;
+			location = newest.location;
+
+			while (!queue.isEmpty() && queue.peek().record.word.equals(record.word)) {
+				final Source older = queue.poll();
+				if (older.advance()) {
+					queue.add(older);
+				}
+			}
+
+			if (newest.advance()) {
+				queue.add(newest);
+			}
+
+			return record;
+		}
+	}
+
+	/**
+	 * Working directory and runs
+	 */
+	private final RunFiles files;
+
+	/**
+	 * Newest record of every word in the memtable
+	 */
+	private TreeMap<String, SortedRun.Record> memtable = new TreeMap<String, SortedRun.Record>(SortedRun.KEY_ORDER);
+
+	/**
+	 * Every record added to the memtable, in order; replaced, never changed in place, when it grows. A frozen view keeps the array and its length
+	 */
+	private SortedRun.Record[] memRecords = new SortedRun.Record[MIN_CAPACITY];
+
+	/**
+	 * Number of records in {@link #memRecords}
+	 */
+	private int memCount = 0;
+
+	/**
+	 * Number of characters in the memtable's words and definitions
+	 */
+	private long memChars = 0;
+
+	/**
+	 * Number of memtables written to runs so far
+	 */
+	private int memGeneration = 0;
+
+	/**
+	 * Location of every entry's record: <code>~(generation &lt;&lt; 32 | index)</code> (negative) for a record in a memtable, or
+	 * <code>run number &lt;&lt; {@link #OFFSET_BITS} | offset</code> for a record in a run. Replaced when it grows, while holding {@link #locationLock}
+	 */
+	private volatile AtomicLongArray locations;
+
+	/**
+	 * Held while the location column grows, and while a merge updates locations, so that no update is lost
+	 */
+	private final Object locationLock = new Object();
+
+	/**
+	 * Runs, newest first. Replaced, never changed in place, while holding {@link #runLock}
+	 */
+	private volatile SortedRun[] runs = new SortedRun[0];
+
+	/**
+	 * Held while {@link #runs} is replaced
+	 */
+	private final Object runLock = new Object();
+
+	/**
+	 * Runs replaced by merges that have not been given a version yet
+	 */
+	private final ConcurrentLinkedQueue<SortedRun> replacedRuns = new ConcurrentLinkedQueue<SortedRun>();
+
+	/**
+	 * Runs replaced by merges, oldest first, waiting until no frozen view can see them
+	 */
+	private final ArrayDeque<SortedRun> retiredRuns = new ArrayDeque<SortedRun>();
+
+	/**
+	 * Version in which each run in {@link #retiredRuns} was retired
+	 */
+	private final ArrayDeque<Long> retiredVersions = new ArrayDeque<Long>();
+
+	/**
+	 * Version of the oldest frozen view that may still be in use: the last value given to {@link #reclaim(long)}, or the version of a view
+	 * frozen since then
+	 */
+	private long oldestVisible = Long.MAX_VALUE;
+
+	/**
+	 * True while a merge is scheduled or running
+	 */
+	private final AtomicBoolean compacting = new AtomicBoolean();
+
+	/**
+	 * The error that stopped merging, or null
+	 */
+	private volatile Exception compactionFailure = null;
+
+	/**
+	 * Next ID that has never been given out
+	 */
+	private int nextId = 0;
+
+	/**
+	 * Number of live entries
+	 */
+	private int size = 0;
+
+	/**
+	 * Number of lookups that reached the runs
+	 */
+	private final AtomicLong runLookups = new AtomicLong();
+
+	/**
+	 * Number of runs those lookups went through
+	 */
+	private final AtomicLong runsProbed = new AtomicLong();
+
+	/**
+	 * Number of memtables written to runs
+	 */
+	private long flushes = 0;
+
+	/**
+	 * Number of merges
+	 */
+	private final AtomicLong merges = new AtomicLong();
+
+	/**
+	 * Number of bytes written by merges
+	 */
+	private final AtomicLong mergedBytes = new AtomicLong();
+
+	/**
+	 * Creates an empty store with a new working directory.
+	 *
+	 * @param expectedSize expected number of entries
+	 * @throws UncheckedIOException if the working directory cannot be created
+	 */
+	LsmEntryStore(final int expectedSize) {
+		super(expectedSize);
+		locations = new AtomicLongArray(Math.max(MIN_CAPACITY, expectedSize));
+
+		try {
+			files = new RunFiles();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to create a working directory in " + BASE_DIRECTORY, e);
+		}
+
+		CLEANER.register(this, files);
+	}
+
+	@Override
+	public final int size() {
+		return size;
+	}
+
+	@Override
+	public final boolean containsKey(final Object key) {
+		return (key instanceof String) && lookup((String) key) != null;
+	}
+
+	@Override
+	public final Definition get(final Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+
+		final SortedRun.Record record = lookup((String) key);
+		return (record == null) ? null : new Definition(record.text, this, record.id);
+	}
+
+	@Override
+	public final Definition put(final String word, final Definition definition) {
+		flushIfFull();
+		final SortedRun.Record old = lookup(word);
+
+		nextVersion();
+		final int id = nextId++;
+		columns.set(id, definition.entryDate().getTime(), definition.accesses());
+		setLocation(id, addToMemtable(new SortedRun.Record(word, id, definition.rawDefinition())));
+		releaseRuns();
+
+		if (old == null) {
+			size++;
+			return null;
+		}
+
+		columns.remove(old.id);
+		return new Definition(old.text, this, old.id);
+	}
+
+	@Override
+	public final Definition remove(final Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+
+		flushIfFull();
+		final String word = (String) key;
+		final SortedRun.Record old = lookup(word);
+
+		if (old == null) {
+			return null;
+		}
+
+		nextVersion();
+		addToMemtable(new SortedRun.Record(word, -1, ""));
+		columns.remove(old.id);
+		size--;
+		releaseRuns();
+
+		return new Definition(old.text, this, old.id);
+	}
+
+	/**
+	 * Returns the entries in alphabetical order, read from a frozen view of the store.
+	 *
+	 * @return every entry
+	 */
+	@Override
+	public final Set<Map.Entry<String, Definition>> entrySet() {
+		final Frozen frozen = freeze();
+
+		return new AbstractSet<Map.Entry<String, Definition>>() {
+
+			@Override
+			public int size() {
+				return frozen.size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Definition>> iterator() {
+				final Cursor cursor = frozen.cursor();
+
+				return new Iterator<Map.Entry<String, Definition>>() {
+					private boolean ready = cursor.next();
+
+					@Override
+					public boolean hasNext() {
+						return ready;
+					}
+
+					@Override
+					public Map.Entry<String, Definition> next() {
+						if (!ready) {
+							throw new NoSuchElementException();
+						}
+
+						final Map.Entry<String, Definition> entry = new AbstractMap.SimpleImmutableEntry<String, Definition>(cursor.word(),
+								new Definition(cursor.definitionText(), LsmEntryStore.this, cursor.id()));
+						ready = cursor.next();
+						return entry;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Freezes the store. Records are never changed in place, the memtable array is replaced rather than changed when it grows, and runs are only
+	 * deleted once no frozen view can see them, so the frozen view just keeps the current memtable array, its length and the current runs.
+	 *
+	 * @return frozen view of the current version
+	 */
+	@Override
+	final Frozen freeze() {
+		final SortedRun.Record[] frozenRecords = memRecords;
+		final int frozenCount = memCount;
+		final int frozenGeneration = memGeneration;
+		final SortedRun[] frozenRuns = runs;
+		oldestVisible = Math.min(oldestVisible, version());
+
+		return new Frozen(this) {
+
+			@Override
+			final String word(final int id) {
+				return record(id, frozenRecords, frozenGeneration).word;
+			}
+
+			@Override
+			final String definitionText(final int id) {
+				return record(id, frozenRecords, frozenGeneration).text;
+			}
+
+			@Override
+			final boolean sorted() {
+				return true;
+			}
+
+			@Override
+			final Cursor cursor() {
+				return mergeCursor(frozenRecords, frozenCount, frozenRuns);
+			}
+		};
+	}
+
+	/**
+	 * Deletes the runs replaced by merges that no frozen view can see.
+	 *
+	 * @param oldestVisibleVersion version of the oldest frozen view still in use
+	 */
+	@Override
+	final void reclaim(final long oldestVisibleVersion) {
+		oldestVisible = oldestVisibleVersion;
+		releaseRuns();
+	}
+
+	@Override
+	final int idOf(final String word) {
+		final SortedRun.Record record = lookup(word);
+
+		return (record == null) ? -1 : record.id;
+	}
+
+	@Override
+	final String word(final int id) {
+		return record(id, memRecords, memGeneration).word;
+	}
+
+	@Override
+	final String definitionText(final int id) {
+		return record(id, memRecords, memGeneration).text;
+	}
+
+	/**
+	 * Returns the number of bytes held in memory: the columns, the locations, the memtable, and the sparse index and Bloom filter of every run.
+	 *
+	 * @return approximate heap footprint in bytes, excluding object headers
+	 */
+	@Override
+	final long footprintBytes() {
+		long bytes = columns.footprintBytes() + (long) locations.length() * Long.BYTES;
+		bytes += 2 * memChars + (long) memtable.size() * MEMTABLE_OVERHEAD_BYTES;
+
+		for (final SortedRun run : runs) {
+			bytes += run.footprintBytes();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns a report of the memory used by this store, its runs on disk, how many runs lookups read, and merging.
+	 *
+	 * @return multiline report
+	 */
+	@Override
+	final String report() {
+		final SortedRun[] current = runs;
+		final StringBuilder sizes = new StringBuilder();
+		long diskBytes = 0;
+		long bloomSkips = 0;
+		long blockReads = 0;
+
+		for (final SortedRun run : current) {
+			sizes.append((sizes.length() == 0) ? "" : ", ").append(run.count());
+			diskBytes += run.length();
+			bloomSkips += run.bloomSkips();
+			blockReads += run.blockReads();
+		}
+
+		final long lookups = runLookups.get();
+		final StringBuilder sb = new StringBuilder(String.format("%d entries (%d IDs used) with %d bytes in memory (%.1f bytes per entry)", size, nextId,
+				footprintBytes(), (size == 0) ? 0 : (double) footprintBytes() / size));
+		sb.append(System.lineSeparator() + String.format("Memtable: %d records, %d characters; %d written to runs", memtable.size(), memChars, flushes));
+		sb.append(System.lineSeparator() + String.format("Runs: %d (records, newest first: %s), %d bytes on disk in %s", current.length, sizes,
+				diskBytes, files.directory));
+		sb.append(System.lineSeparator() + String.format("Lookups past the memtable: %d, %.2f runs checked and %.2f blocks read per lookup (%d skipped by Bloom filters)",
+				lookups, (lookups == 0) ? 0 : (double) runsProbed.get() / lookups, (lookups == 0) ? 0 : (double) blockReads / lookups, bloomSkips));
+		sb.append(System.lineSeparator() + String.format("Merges: %d, %d bytes written; %d replaced runs waiting to be deleted", merges.get(),
+				mergedBytes.get(), retiredRuns.size() + replacedRuns.size()));
+
+		final Exception failure = compactionFailure;
+		if (failure != null) {
+			sb.append(System.lineSeparator() + "ERROR: Merging stopped: " + failure.getMessage());
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Finds the newest record of a word in the memtable and the runs.
+	 *
+	 * @param word word/phrase
+	 * @return the record, or null if the word is not in the store
+	 * @throws UncheckedIOException if there is a problem reading a run
+	 */
+	private final SortedRun.Record lookup(final String word) {
+		SortedRun.Record record = memtable.get(word);
+
+		if (record == null) {
+			final SortedRun[] current = runs;
+			runLookups.incrementAndGet();
+
+			try {
+				for (int i = 0; i < current.length && record == null; i++) {
+					record = current[i].get(word);
+					runsProbed.incrementAndGet();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Problem reading the dictionary's working files", e);
+			}
+		}
+
+		return (record == null || record.isTombstone()) ? null : record;
+	}
+
+	/**
+	 * Reads the record of an entry.
+	 *
+	 * @param id entry ID
+	 * @param records memtable array to read memtable records from
+	 * @param generation generation of that memtable
+	 * @return the record
+	 * @throws UncheckedIOException if there is a problem reading a run
+	 */
+	private final SortedRun.Record record(final int id, final SortedRun.Record[] records, final int generation) {
+		final long location = locations.get(id);
+
+		if (location < 0) {
+			final long inMemtable = ~location;
+
+			if ((int) (inMemtable >>> 32) != generation) {
+				throw new IllegalStateException("Entry " + id + " is in a memtable that has been written to a run");
+			}
+
+			return records[(int) inMemtable];
+		}
+
+		final SortedRun run = files.runs.get((int) (location >>> OFFSET_BITS));
+		if (run == null) {
+			throw new IllegalStateException("Entry " + id + " is in a run that has been deleted");
+		}
+
+		try {
+			return run.readAt(location & ((1L << OFFSET_BITS) - 1));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem reading the dictionary's working files", e);
+		}
+	}
+
+	/**
+	 * Sets the location of an entry, growing the location column if needed.
+	 *
+	 * @param id entry ID
+	 * @param location location of its record
+	 */
+	private final void setLocation(final int id, final long location) {
+		if (id >= locations.length()) {
+			synchronized (locationLock) {
+				final AtomicLongArray old = locations;
+				final AtomicLongArray grown = new AtomicLongArray(Math.max(id + 1, old.length() + (old.length() >> 1)));
+
+				for (int i = 0; i < old.length(); i++) {
+					grown.set(i, old.get(i));
+				}
+
+				locations = grown;
+			}
+		}
+
+		locations.set(id, location);
+	}
+
+	/**
+	 * Returns the location of a record in a run.
+	 *
+	 * @param run number of the run
+	 * @param offset offset of the record
+	 * @return location
+	 */
+	private static final long runLocation(final int run, final long offset) {
+		return ((long) run << OFFSET_BITS) | offset;
+	}
+
+	/**
+	 * Adds a record to the memtable.
+	 *
+	 * @param record record to add
+	 * @return location of the record
+	 */
+	private final long addToMemtable(final SortedRun.Record record) {
+		if (memCount == memRecords.length) {
+			memRecords = Arrays.copyOf(memRecords, memCount * 2);
+		}
+
+		memRecords[memCount] = record;
+		memtable.put(record.word, record);
+		memChars += record.word.length() + record.text.length();
+
+		return ~(((long) memGeneration << 32) | memCount++);
+	}
+
+	/**
+	 * Writes the memtable to a new run if it is full, and starts a merge if the runs need one. Called before a change, so that a failure leaves the
+	 * store unchanged.
+	 *
+	 * @throws UncheckedIOException if the run cannot be written
+	 */
+	private final void flushIfFull() {
+		if (memChars < MEMTABLE_CHARS) {
+			return;
+		}
+
+		final int[] ids = new int[memtable.size()];
+		final long[] offsets = new long[ids.length];
+		SortedRun run = null;
+
+		try {
+			run = files.create(ids.length);
+
+			int i = 0;
+			for (final SortedRun.Record record : memtable.values()) {
+				ids[i] = record.id;
+				offsets[i++] = run.append(record);
+			}
+			run.finish();
+		} catch (IOException e) {
+			if (run != null) {
+				files.delete(run);
+			}
+
+			throw new UncheckedIOException("Unable to write the dictionary's working files", e);
+		}
+
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] >= 0) {
+				locations.set(ids[i], runLocation(run.number, offsets[i]));
+			}
+		}
+
+		synchronized (runLock) {
+			final SortedRun[] current = runs;
+			final SortedRun[] added = new SortedRun[current.length + 1];
+			added[0] = run;
+			System.arraycopy(current, 0, added, 1, current.length);
+			runs = added;
+		}
+
+		memtable = new TreeMap<String, SortedRun.Record>(SortedRun.KEY_ORDER);
+		memRecords = new SortedRun.Record[MIN_CAPACITY];
+		memCount = 0;
+		memChars = 0;
+		memGeneration++;
+		flushes++;
+
+		scheduleMerge();
+	}
+
+	/**
+	 * Gives a version to the runs replaced by merges, and deletes the replaced runs that no frozen view can see. A run replaced now can be seen by
+	 * every view of the current version or older, so it is retired in the next version.
+	 */
+	private final void releaseRuns() {
+		SortedRun replaced;
+		while ((replaced = replacedRuns.poll()) != null) {
+			retiredRuns.addLast(replaced);
+			retiredVersions.addLast(version() + 1);
+		}
+
+		while (!retiredRuns.isEmpty() && retiredVersions.peekFirst() <= oldestVisible) {
+			retiredVersions.removeFirst();
+			files.delete(retiredRuns.removeFirst());
+		}
+	}
+
+	/**
+	 * Chooses the runs to merge next: the newest runs, extended to each older run that is no larger than all of the newer ones together, if there
+	 * are at least {@link #MIN_MERGE} of them; or, if there are more than {@link #MAX_RUNS} runs, at least the newest two.
+	 *
+	 * @param current runs, newest first
+	 * @return number of runs to merge, starting from the newest; 0 if no merge is needed
+	 */
+	private static final int chooseMerge(final SortedRun[] current) {
+		if (current.length < 2) {
+			return 0;
+		}
+
+		long total = current[0].length();
+		int count = 1;
+		while (count < current.length && current[count].length() <= total) {
+			total += current[count++].length();
+		}
+
+		if (count >= MIN_MERGE) {
+			return count;
+		}
+
+		return (current.length > MAX_RUNS) ? Math.max(2, count) : 0;
+	}
+
+	/**
+	 * Starts merging in the background if the runs need it and no merge is running, and merging has not failed.
+	 */
+	private final void scheduleMerge() {
+		if (compactionFailure == null && chooseMerge(runs) > 0 && compacting.compareAndSet(false, true)) {
+			COMPACTOR.execute(this::compact);
+		}
+	}
+
+	/**
+	 * Merges runs until no merge is needed. Runs on the compaction thread.
+	 */
+	private final void compact() {
+		try {
+			SortedRun[] current = runs;
+			for (int count = chooseMerge(current); count > 0; count = chooseMerge(current)) {
+				merge(Arrays.copyOf(current, count), count == current.length);
+				current = runs;
+			}
+		} catch (Exception e) {
+			compactionFailure = e;
+		} finally {
+			compacting.set(false);
+		}
+
+		scheduleMerge();
+	}
+
+	/**
+	 * Merges consecutive runs into one. Locations of the entries in the merged runs are updated as the new run is written; the merged runs stay
+	 * readable until {@link #releaseRuns()} deletes them.
+	 *
+	 * @param inputs runs to merge, newest first
+	 * @param oldest true if the oldest run is one of them, so that tombstones can be dropped
+	 * @throws IOException if there is a problem reading or writing a run
+	 */
+	private final void merge(final SortedRun[] inputs, final boolean oldest) throws IOException {
+		final List<Source> sources = new ArrayList<Source>(inputs.length);
+		long expectedCount = 0;
+
+		for (int i = 0; i < inputs.length; i++) {
+			final SortedRun.Scanner scanner = inputs[i].scanner();
+			expectedCount += inputs[i].count();
+
+			sources.add(new Source(i) {
+
+				@Override
+				final boolean advance() throws IOException {
+					record = scanner.next();
+					location = runLocation(scanner.run().number, scanner.offset());
+					return record != null;
+				}
+			});
+		}
+
+		final Merger merger = new Merger(sources);
+		final SortedRun output = files.create((int) Math.min(Integer.MAX_VALUE, expectedCount));
+		final int[] ids = new int[PUBLISH_BATCH];
+		final long[] from = new long[PUBLISH_BATCH];
+		final long[] to = new long[PUBLISH_BATCH];
+		int pending = 0;
+
+		// If the merge fails, entries that were already moved are read from the unfinished run, which is only deleted with the store
+		for (SortedRun.Record record = merger.next(); record != null; record = merger.next()) {
+			if (record.isTombstone() && oldest) {
+				continue;
+			}
+
+			final long offset = output.append(record);
+			if (!record.isTombstone()) {
+				ids[pending] = record.id;
+				from[pending] = merger.location;
+				to[pending++] = runLocation(output.number, offset);
+
+				if (pending == PUBLISH_BATCH) {
+					output.flush();
+					publish(ids, from, to, pending);
+					pending = 0;
+				}
+			}
+		}
+
+		output.finish();
+		publish(ids, from, to, pending);
+
+		synchronized (runLock) {
+			final SortedRun[] current = runs;
+			int start = 0;
+			while (current[start] != inputs[0]) {
+				start++;
+			}
+
+			final SortedRun[] merged = new SortedRun[current.length - inputs.length + 1];
+			System.arraycopy(current, 0, merged, 0, start);
+			merged[start] = output;
+			System.arraycopy(current, start + inputs.length, merged, start + 1, current.length - start - inputs.length);
+			runs = merged;
+		}
+
+		replacedRuns.addAll(Arrays.asList(inputs));
+		merges.incrementAndGet();
+		mergedBytes.addAndGet(output.length());
+	}
+
+	/**
+	 * Moves entries from the merged runs to the new run. An entry is only moved if it is still where the merge read it from.
+	 *
+	 * @param ids entry IDs
+	 * @param from locations the records were read from
+	 * @param to locations of the records in the new run
+	 * @param count number of entries to move
+	 */
+	private final void publish(final int[] ids, final long[] from, final long[] to, final int count) {
+		synchronized (locationLock) {
+			final AtomicLongArray current = locations;
+
+			for (int i = 0; i < count; i++) {
+				current.compareAndSet(ids[i], from[i], to[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns a cursor over the entries of a frozen view, in {@link SortedRun#KEY_ORDER}: the newest record of every word in the view's memtable
+	 * and runs, skipping tombstones.
+	 *
+	 * @param records memtable array of the view
+	 * @param count number of memtable records in the view
+	 * @param viewRuns runs of the view, newest first
+	 * @return a cursor before the first entry
+	 */
+	private final Cursor mergeCursor(final SortedRun.Record[] records, final int count, final SortedRun[] viewRuns) {
+		final List<Source> sources = new ArrayList<Source>(viewRuns.length + 1);
+
+		final SortedRun.Record[] sorted = Arrays.copyOf(records, count);
+		Arrays.sort(sorted, (a, b) -> SortedRun.KEY_ORDER.compare(a.word, b.word));
+		sources.add(new Source(0) {
+			private int next = 0;
+
+			@Override
+			final boolean advance() {
+				if (next == sorted.length) {
+					return false;
+				}
+
+				// The sort is stable, so the last record of each word is the newest
+				while (next + 1 < sorted.length && sorted[next + 1].word.equals(sorted[next].word)) {
+					next++;
+				}
+				record = sorted[next++];
+				return true;
+			}
+		});
+
+		for (int i = 0; i < viewRuns.length; i++) {
+			final SortedRun.Scanner scanner = viewRuns[i].scanner();
+
+			sources.add(new Source(i + 1) {
+
+				@Override
+				final boolean advance() throws IOException {
+					record = scanner.next();
+					return record != null;
+				}
+			});
+		}
+
+		try {
+			final Merger merger = new Merger(sources);
+
+			return new Cursor() {
+				private SortedRun.Record record = null;
+
+				@Override
+				final boolean next() {
+					try {
+						do {
+							record = merger.next();
+						} while (record != null && record.isTombstone());
+					} catch (IOException e) {
+						throw new UncheckedIOException("Problem reading the dictionary's working files", e);
+					}
+
+					return record != null;
+				}
+
+				@Override
+				final int id() {
+					return record.id;
+				}
+
+				@Override
+				final String word() {
+					return record.word;
+				}
+
+				@Override
+				final String definitionText() {
+					return record.text;
+				}
+			};
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem reading the dictionary's working files", e);
+		}
+	}
+}
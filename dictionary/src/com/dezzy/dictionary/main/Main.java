@@ -1,8 +1,16 @@
 package com.dezzy.dictionary.main;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.dezzy.dictionary.loadtest.CommandLog;
 
 /**
  * Main class, serves only to hold the {@link Main#main(String[]) main()} function
@@ -11,6 +19,11 @@ import java.io.InputStreamReader;
  */
 public final class Main {
 	
+	/**
+	 * Maximum time to wait for background work when quitting, in milliseconds
+	 */
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 60 * 1000;
+	
 	/**
 	 * This class should never be instantiated
 	 */
@@ -24,28 +37,75 @@ public final class Main {
 	 * Once in the main loop, the function will not terminate unless {@link BufferedReader#readLine()} 
 	 * throws an exception or the <code>quit</code> command is received. <p>
 	 * 
-	 * Note: <code>quit</code> is never dispatched to the CommandHandler; it is handled in this function.
+	 * Commands are run one at a time, in order, on a command thread, so that input can still be read while a command runs: <code>cancel</code> and
+	 * <code>jobs</code> are dispatched right away from this thread, so that a search that is taking too long can be stopped and background jobs
+	 * can be checked on at any time. Commands preceded by <code>&</code> are started on the command thread and then run in the background. <p>
+	 * 
+	 * Note: <code>quit</code> is never dispatched to the CommandHandler; it is handled in this function. The commands entered before it are finished
+	 * first, and any background work started by the CommandHandler is given time to finish. <p>
+	 * 
+	 * The result of each command is written to the standard output through a buffer as the command produces it (see {@link CommandOutput}),
+	 * and the buffer is flushed when the command finishes. <p>
 	 * 
-	 * @param args no arguments are expected
-	 * @throws IOException if there is a problem with the {@link BufferedReader}
+	 * If the arguments are <code>-record [file]</code>, every command (except <code>quit</code>) is recorded to a command log at the given path,
+	 * which can be replayed with {@link com.dezzy.dictionary.loadtest.LoadTester}.
+	 * 
+	 * @param args either no arguments, or <code>-record [file]</code>
+	 * @throws IOException if there is a problem with the {@link BufferedReader} or the command log
 	 */
 	public static final void main(final String[] args) throws IOException {		
 		final CommandHandler commandHandler = new CommandHandler();		
 		final BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 		
+		CommandLog.Recorder recorder = null;
+		if (args.length == 2 && args[0].equalsIgnoreCase("-record")) {
+			recorder = new CommandLog.Recorder(args[1]);
+			commandHandler.setRecorder(recorder);
+			System.out.println("Recording commands to \"" + args[1] + "\"");
+		}
+		
+		final ExecutorService commandThread = Executors.newSingleThreadExecutor();
+		final Writer output = new BufferedWriter(new OutputStreamWriter(System.out));
+		System.out.println();
+		System.out.println("Enter a command: ");
+		
 		while (true) {
-			System.out.println();
-			System.out.println("Enter a command: ");
 			final String input = br.readLine();
 			
-			if (input.equalsIgnoreCase("quit")) {
+			if (input == null || input.equalsIgnoreCase("quit")) {
+				commandThread.shutdown();
+				try {
+					commandThread.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				
 				System.out.println("Quitting...");
+				if (!commandHandler.shutdown(SHUTDOWN_TIMEOUT_MILLIS)) {
+					System.out.println("Some background work did not finish in time and was abandoned");
+				}
+				if (recorder != null) {
+					recorder.close();
+				}
 				br.close();
 				System.exit(0);
 			}
 			
-			final String output = commandHandler.receive(input);
-			System.out.println(output);
+			final String command = input.contains(" ") ? input.substring(0, input.indexOf(" ")) : input;
+			if (command.equalsIgnoreCase("cancel") || command.equalsIgnoreCase("jobs")) {
+				final CommandOutput out = new CommandOutput(System.out);
+				commandHandler.receive(input, out);
+				out.finish();
+				continue;
+			}
+			
+			commandThread.execute(() -> {
+				final CommandOutput out = new CommandOutput(output);
+				commandHandler.receive(input, out);
+				out.finish();
+				System.out.println();
+				System.out.println("Enter a command: ");
+			});
 		}
 	}
 }
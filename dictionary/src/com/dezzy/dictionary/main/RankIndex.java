@@ -0,0 +1,677 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A full-text index of the words and definitions of a {@link Dictionary.Snapshot}, for ranking entries by relevance to a few query terms with BM25.
+ * Every entry is a document made of its word and definition, split into terms by an {@link Analyzer}. For every term the index keeps a posting list
+ * (the documents that contain it, in order, with the term's frequency in each), and the highest score the term can add to any document; the length
+ * of every document is kept too. <p>
+ *
+ * Queries use MaxScore: the query terms are ordered by their highest possible score, and once the K best documents so far are known, terms whose
+ * highest possible scores together cannot lift a document into them are only looked up (with a galloping search) for documents found through the
+ * other terms. So a query does not score every posting of its common terms. <p>
+ *
+ * The index is built from one version of the dictionary and never changes. The dictionary records which entry IDs were added and retired since
+ * then (see {@link Changes}); queries skip the retired ones and score the added ones directly, with the term statistics of the index.
+ *
+ * @author Joe Desmond
+ */
+final class RankIndex {
+
+	/**
+	 * BM25 term frequency saturation
+	 */
+	private static final double K1 = 1.2;
+
+	/**
+	 * BM25 document length normalization
+	 */
+	private static final double B = 0.75;
+
+	/**
+	 * Splits text into terms. Terms are runs of letters and digits, optionally lowercased and reduced to a stem by stripping common English suffixes
+	 * (a light stemmer: plurals, <code>-ing</code>, <code>-ed</code> and <code>-ly</code>).
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Analyzer {
+
+		/**
+		 * Analyzer used by every dictionary: lowercases unless the <code>dictionary.rank.lowercase</code> system property is <code>false</code>,
+		 * and stems unless <code>dictionary.rank.stem</code> is <code>false</code>
+		 */
+		static final Analyzer DEFAULT = new Analyzer(!"false".equalsIgnoreCase(System.getProperty("dictionary.rank.lowercase")),
+				!"false".equalsIgnoreCase(System.getProperty("dictionary.rank.stem")));
+
+		/**
+		 * True to lowercase terms
+		 */
+		final boolean lowercase;
+
+		/**
+		 * True to stem terms
+		 */
+		final boolean stem;
+
+		/**
+		 * Creates an analyzer.
+		 *
+		 * @param _lowercase true to lowercase terms
+		 * @param _stem true to stem terms
+		 */
+		Analyzer(final boolean _lowercase, final boolean _stem) {
+			lowercase = _lowercase;
+			stem = _stem;
+		}
+
+		/**
+		 * Counts the terms of a text.
+		 *
+		 * @param text text to split
+		 * @param frequencies map to add the frequency of every term to
+		 * @return number of terms in the text
+		 */
+		final int count(final String text, final Map<String, Integer> frequencies) {
+			int terms = 0;
+			int start = -1;
+
+			for (int i = 0; i <= text.length(); i++) {
+				final boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+				if (inTerm && start < 0) {
+					start = i;
+				} else if (!inTerm && start >= 0) {
+					frequencies.merge(term(text.substring(start, i)), 1, Integer::sum);
+					terms++;
+					start = -1;
+				}
+			}
+
+			return terms;
+		}
+
+		/**
+		 * Normalizes one term.
+		 *
+		 * @param raw run of letters and digits
+		 * @return the term
+		 */
+		private final String term(final String raw) {
+			final String term = lowercase ? raw.toLowerCase() : raw;
+
+			return stem ? stem(term) : term;
+		}
+
+		/**
+		 * Strips common English suffixes from a term: plural <code>-ies</code>, <code>-es</code> and <code>-s</code> (as in the S-stemmer), then
+		 * <code>-ing</code>, <code>-ed</code> and <code>-ly</code> if enough of the term is left, undoubling a final doubled consonant.
+		 *
+		 * @param term lowercase term
+		 * @return the stem
+		 */
+		private static final String stem(final String term) {
+			String stem = term;
+
+			if (stem.length() > 4 && stem.endsWith("ies") && !stem.endsWith("eies") && !stem.endsWith("aies")) {
+				stem = stem.substring(0, stem.length() - 3) + "y";
+			} else if (stem.length() > 3 && stem.endsWith("es") && !stem.endsWith("aes") && !stem.endsWith("ees") && !stem.endsWith("oes")) {
+				stem = stem.substring(0, stem.length() - 1);
+			} else if (stem.length() > 3 && stem.endsWith("s") && !stem.endsWith("us") && !stem.endsWith("ss")) {
+				stem = stem.substring(0, stem.length() - 1);
+			}
+
+			final int before = stem.length();
+			if (stem.length() > 5 && stem.endsWith("ing")) {
+				stem = stem.substring(0, stem.length() - 3);
+			} else if (stem.length() > 4 && stem.endsWith("ed")) {
+				stem = stem.substring(0, stem.length() - 2);
+			} else if (stem.length() > 4 && stem.endsWith("ly")) {
+				stem = stem.substring(0, stem.length() - 2);
+			}
+
+			final int length = stem.length();
+			if (length < before && length > 2 && stem.charAt(length - 1) == stem.charAt(length - 2) && "lsz".indexOf(stem.charAt(length - 1)) < 0
+					&& "aeiou".indexOf(stem.charAt(length - 1)) < 0) {
+				stem = stem.substring(0, length - 1);
+			}
+
+			return stem;
+		}
+	}
+
+	/**
+	 * The entry IDs added and retired since an index was built. Recorded by the dictionary while it holds its lock, and copied with a snapshot.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Changes {
+
+		/**
+		 * IDs given to entries since the index was built, and still in use
+		 */
+		private final BitSet added;
+
+		/**
+		 * IDs retired since the index was built; their postings are skipped
+		 */
+		private final BitSet retired;
+
+		/**
+		 * Number of changes recorded
+		 */
+		private int count;
+
+		/**
+		 * Creates an empty record of changes.
+		 */
+		Changes() {
+			this(new BitSet(), new BitSet(), 0);
+		}
+
+		/**
+		 * Creates a record of changes.
+		 *
+		 * @param _added IDs added
+		 * @param _retired IDs retired
+		 * @param _count number of changes
+		 */
+		private Changes(final BitSet _added, final BitSet _retired, final int _count) {
+			added = _added;
+			retired = _retired;
+			count = _count;
+		}
+
+		/**
+		 * Records that an entry was given an ID.
+		 *
+		 * @param id entry ID
+		 */
+		final void added(final int id) {
+			added.set(id);
+			count++;
+		}
+
+		/**
+		 * Records that an entry ID was retired.
+		 *
+		 * @param id entry ID
+		 */
+		final void retired(final int id) {
+			added.clear(id);
+			retired.set(id);
+			count++;
+		}
+
+		/**
+		 * Returns the number of changes recorded.
+		 *
+		 * @return number of additions and retirements
+		 */
+		final int count() {
+			return count;
+		}
+
+		/**
+		 * Copies the changes recorded so far.
+		 *
+		 * @return an independent copy
+		 */
+		final Changes copy() {
+			return new Changes((BitSet) added.clone(), (BitSet) retired.clone(), count);
+		}
+	}
+
+	/**
+	 * One result of a query: an entry ID and its score.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Hit {
+
+		/**
+		 * Entry ID
+		 */
+		final int id;
+
+		/**
+		 * BM25 score
+		 */
+		final double score;
+
+		/**
+		 * Creates a hit.
+		 *
+		 * @param _id entry ID
+		 * @param _score BM25 score
+		 */
+		private Hit(final int _id, final double _score) {
+			id = _id;
+			score = _score;
+		}
+	}
+
+	/**
+	 * Position in the posting list of one query term.
+	 *
+	 * @author Joe Desmond
+	 */
+	private final class TermCursor {
+
+		/**
+		 * Index of the first posting
+		 */
+		private final int start;
+
+		/**
+		 * One more than the index of the last posting
+		 */
+		private final int end;
+
+		/**
+		 * Query weight times inverse document frequency
+		 */
+		private final double weight;
+
+		/**
+		 * Highest score the term can add to a document
+		 */
+		private final double upperBound;
+
+		/**
+		 * Index of the current posting
+		 */
+		private int position;
+
+		/**
+		 * Creates a cursor at the first posting of a term.
+		 *
+		 * @param term term ID
+		 * @param queryFrequency number of times the term is in the query
+		 */
+		private TermCursor(final int term, final int queryFrequency) {
+			start = termStarts[term];
+			end = termStarts[term + 1];
+			weight = queryFrequency * idf(end - start);
+			upperBound = queryFrequency * maxScores[term];
+			position = start;
+		}
+
+		/**
+		 * Returns the current document.
+		 *
+		 * @return document number, or {@link Integer#MAX_VALUE} after the last posting
+		 */
+		private final int doc() {
+			return (position < end) ? postingDocs[position] : Integer.MAX_VALUE;
+		}
+
+		/**
+		 * Returns the score of the current posting.
+		 *
+		 * @return BM25 term score
+		 */
+		private final double score() {
+			return weight * saturation(postingFrequencies[position] & 0xFF, docLengths[postingDocs[position]]);
+		}
+
+		/**
+		 * Moves to the first posting at or after a document, with a galloping search.
+		 *
+		 * @param doc document number
+		 */
+		private final void advance(final int doc) {
+			if (doc() >= doc) {
+				return;
+			}
+
+			int step = 1;
+			int low = position;
+			int high = position + 1;
+			while (high < end && postingDocs[high] < doc) {
+				low = high;
+				step <<= 1;
+				high = Math.min(end, high + step);
+			}
+
+			position = Arrays.binarySearch(postingDocs, low, Math.min(high + 1, end), doc);
+			if (position < 0) {
+				position = -position - 1;
+			}
+		}
+	}
+
+	/**
+	 * Analyzer that split the documents
+	 */
+	final Analyzer analyzer;
+
+	/**
+	 * Version of the dictionary that was indexed
+	 */
+	final long version;
+
+	/**
+	 * Number of documents
+	 */
+	final int documents;
+
+	/**
+	 * Term IDs by term
+	 */
+	private final Map<String, Integer> termIds;
+
+	/**
+	 * Index of the first posting of every term in {@link #postingDocs}; has one more element than there are terms
+	 */
+	private final int[] termStarts;
+
+	/**
+	 * Document numbers of the postings, in order for every term
+	 */
+	private final int[] postingDocs;
+
+	/**
+	 * Frequency of the term in the document of every posting, capped at 255
+	 */
+	private final byte[] postingFrequencies;
+
+	/**
+	 * Highest score every term adds to any document
+	 */
+	private final double[] maxScores;
+
+	/**
+	 * Entry ID of every document
+	 */
+	private final int[] entryIds;
+
+	/**
+	 * Number of terms in every document
+	 */
+	private final int[] docLengths;
+
+	/**
+	 * Average number of terms per document
+	 */
+	private final double averageLength;
+
+	/**
+	 * Creates an index from its parts.
+	 *
+	 * @param _analyzer analyzer that split the documents
+	 * @param _version version of the dictionary
+	 * @param _termIds term IDs by term
+	 * @param _termStarts first posting of every term
+	 * @param _postingDocs document numbers of the postings
+	 * @param _postingFrequencies term frequencies of the postings
+	 * @param _entryIds entry ID of every document
+	 * @param _docLengths length of every document
+	 */
+	private RankIndex(final Analyzer _analyzer, final long _version, final Map<String, Integer> _termIds, final int[] _termStarts,
+			final int[] _postingDocs, final byte[] _postingFrequencies, final int[] _entryIds, final int[] _docLengths) {
+		analyzer = _analyzer;
+		version = _version;
+		termIds = _termIds;
+		termStarts = _termStarts;
+		postingDocs = _postingDocs;
+		postingFrequencies = _postingFrequencies;
+		entryIds = _entryIds;
+		docLengths = _docLengths;
+		documents = entryIds.length;
+
+		long totalLength = 0;
+		for (final int length : docLengths) {
+			totalLength += length;
+		}
+		averageLength = (documents == 0) ? 1 : Math.max(1, (double) totalLength / documents);
+
+		maxScores = new double[termStarts.length - 1];
+		for (int term = 0; term < maxScores.length; term++) {
+			final double idf = idf(termStarts[term + 1] - termStarts[term]);
+			double max = 0;
+
+			for (int p = termStarts[term]; p < termStarts[term + 1]; p++) {
+				max = Math.max(max, idf * saturation(postingFrequencies[p] & 0xFF, docLengths[postingDocs[p]]));
+			}
+			maxScores[term] = max;
+		}
+	}
+
+	/**
+	 * Indexes the entries of a frozen view of a dictionary.
+	 *
+	 * @param frozen entries to index
+	 * @param analyzer analyzer to split them with
+	 * @return the index
+	 */
+	static final RankIndex build(final EntryStore.Frozen frozen, final Analyzer analyzer) {
+		final Map<String, Integer> termIds = new HashMap<String, Integer>();
+		final int[] entryIds = new int[frozen.size];
+		final int[] docLengths = new int[frozen.size];
+		final Map<String, Integer> frequencies = new LinkedHashMap<String, Integer>();
+
+		int[] postingTerms = new int[Math.max(16, frozen.size * 8)];
+		int[] postingDocs = new int[postingTerms.length];
+		byte[] postingFrequencies = new byte[postingTerms.length];
+		int postings = 0;
+		int doc = 0;
+
+		final EntryStore.Cursor cursor = frozen.cursor();
+		while (cursor.next()) {
+			frequencies.clear();
+			entryIds[doc] = cursor.id();
+			docLengths[doc] = analyzer.count(cursor.word(), frequencies) + analyzer.count(cursor.definitionText(), frequencies);
+
+			if (postings + frequencies.size() > postingTerms.length) {
+				final int capacity = Math.max(postings + frequencies.size(), postingTerms.length + (postingTerms.length >> 1));
+				postingTerms = Arrays.copyOf(postingTerms, capacity);
+				postingDocs = Arrays.copyOf(postingDocs, capacity);
+				postingFrequencies = Arrays.copyOf(postingFrequencies, capacity);
+			}
+
+			for (final Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+				Integer term = termIds.get(entry.getKey());
+				if (term == null) {
+					term = termIds.size();
+					termIds.put(entry.getKey(), term);
+				}
+
+				postingTerms[postings] = term;
+				postingDocs[postings] = doc;
+				postingFrequencies[postings++] = (byte) Math.min(255, entry.getValue());
+			}
+
+			doc++;
+		}
+
+		// Group the postings by term; within a term they stay in document order
+		final int[] termStarts = new int[termIds.size() + 1];
+		for (int p = 0; p < postings; p++) {
+			termStarts[postingTerms[p] + 1]++;
+		}
+		for (int term = 0; term < termIds.size(); term++) {
+			termStarts[term + 1] += termStarts[term];
+		}
+
+		final int[] next = Arrays.copyOf(termStarts, termIds.size());
+		final int[] sortedDocs = new int[postings];
+		final byte[] sortedFrequencies = new byte[postings];
+		for (int p = 0; p < postings; p++) {
+			final int slot = next[postingTerms[p]]++;
+			sortedDocs[slot] = postingDocs[p];
+			sortedFrequencies[slot] = postingFrequencies[p];
+		}
+
+		return new RankIndex(analyzer, frozen.version, termIds, termStarts, sortedDocs, sortedFrequencies, Arrays.copyOf(entryIds, doc),
+				Arrays.copyOf(docLengths, doc));
+	}
+
+	/**
+	 * Finds the entries that best match a query.
+	 *
+	 * @param query query text, split with this index's analyzer
+	 * @param k maximum number of results
+	 * @param frozen entries at the version being queried
+	 * @param changes entry IDs added and retired between the version of this index and that version
+	 * @return up to <code>k</code> hits with nonzero scores, best first
+	 */
+	final List<Hit> query(final String query, final int k, final EntryStore.Frozen frozen, final Changes changes) {
+		final Map<String, Integer> queryTerms = new LinkedHashMap<String, Integer>();
+		analyzer.count(query, queryTerms);
+
+		final List<TermCursor> cursors = new ArrayList<TermCursor>();
+		for (final Map.Entry<String, Integer> entry : queryTerms.entrySet()) {
+			final Integer term = termIds.get(entry.getKey());
+
+			if (term != null) {
+				cursors.add(new TermCursor(term, entry.getValue()));
+			}
+		}
+		cursors.sort((a, b) -> Double.compare(a.upperBound, b.upperBound));
+
+		final int n = cursors.size();
+		final double[] boundSums = new double[n];
+		for (int i = 0; i < n; i++) {
+			boundSums[i] = cursors.get(i).upperBound + ((i == 0) ? 0 : boundSums[i - 1]);
+		}
+
+		final PriorityQueue<Hit> best = new PriorityQueue<Hit>(Math.max(1, k), (a, b) -> Double.compare(a.score, b.score));
+		int firstEssential = 0;
+		double threshold = 0;
+
+		while (firstEssential < n) {
+			int doc = Integer.MAX_VALUE;
+			for (int i = firstEssential; i < n; i++) {
+				doc = Math.min(doc, cursors.get(i).doc());
+			}
+			if (doc == Integer.MAX_VALUE) {
+				break;
+			}
+
+			double score = 0;
+			for (int i = firstEssential; i < n; i++) {
+				final TermCursor cursor = cursors.get(i);
+
+				if (cursor.doc() == doc) {
+					score += cursor.score();
+					cursor.position++;
+				}
+			}
+
+			for (int i = firstEssential - 1; i >= 0 && score + boundSums[i] > threshold; i--) {
+				final TermCursor cursor = cursors.get(i);
+
+				cursor.advance(doc);
+				if (cursor.doc() == doc) {
+					score += cursor.score();
+				}
+			}
+
+			final int id = entryIds[doc];
+			if (score > threshold && !changes.retired.get(id)) {
+				threshold = offer(best, new Hit(id, score), k);
+
+				while (firstEssential < n && boundSums[firstEssential] <= threshold) {
+					firstEssential++;
+				}
+			}
+		}
+
+		final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		for (int id = changes.added.nextSetBit(0); id >= 0; id = changes.added.nextSetBit(id + 1)) {
+			frequencies.clear();
+			final int length = analyzer.count(frozen.word(id), frequencies) + analyzer.count(frozen.definitionText(id), frequencies);
+
+			double score = 0;
+			for (final Map.Entry<String, Integer> entry : queryTerms.entrySet()) {
+				final Integer frequency = frequencies.get(entry.getKey());
+
+				if (frequency != null) {
+					final Integer term = termIds.get(entry.getKey());
+					final int documentFrequency = (term == null) ? 0 : termStarts[term + 1] - termStarts[term];
+					score += entry.getValue() * idf(documentFrequency) * saturation(Math.min(255, frequency), length);
+				}
+			}
+
+			if (score > threshold) {
+				threshold = offer(best, new Hit(id, score), k);
+			}
+		}
+
+		final List<Hit> hits = new ArrayList<Hit>(best);
+		hits.sort((a, b) -> Double.compare(b.score, a.score));
+		return hits;
+	}
+
+	/**
+	 * Adds a hit to the best hits so far, keeping at most <code>k</code>.
+	 *
+	 * @param best best hits so far, worst first
+	 * @param hit new hit
+	 * @param k maximum number of hits
+	 * @return score a hit must beat to be added from now on
+	 */
+	private static final double offer(final PriorityQueue<Hit> best, final Hit hit, final int k) {
+		best.add(hit);
+
+		if (best.size() > k) {
+			best.poll();
+		}
+
+		return (best.size() < k) ? 0 : best.peek().score;
+	}
+
+	/**
+	 * Returns the inverse document frequency of a term.
+	 *
+	 * @param documentFrequency number of documents that contain the term
+	 * @return BM25 inverse document frequency (always positive)
+	 */
+	private final double idf(final int documentFrequency) {
+		return Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+	}
+
+	/**
+	 * Returns the BM25 term frequency component.
+	 *
+	 * @param frequency frequency of the term in the document
+	 * @param length length of the document
+	 * @return saturated, length-normalized term frequency
+	 */
+	private final double saturation(final int frequency, final int length) {
+		return frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+	}
+
+	/**
+	 * Returns the memory used by the index.
+	 *
+	 * @return approximate heap footprint in bytes, excluding object headers
+	 */
+	final long footprintBytes() {
+		long bytes = (long) postingDocs.length * (Integer.BYTES + 1) + (long) termStarts.length * (Integer.BYTES + Double.BYTES);
+		bytes += (long) documents * 2 * Integer.BYTES;
+
+		for (final String term : termIds.keySet()) {
+			bytes += 32 + 40 + 2L * term.length();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of distinct terms.
+	 *
+	 * @return number of terms
+	 */
+	final int terms() {
+		return termIds.size();
+	}
+}
@@ -0,0 +1,435 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The references between the entries of a dictionary: which words/phrases each definition refers to, and which definitions refer to each word/phrase.
+ * A definition refers to a phrase if it quotes it (like <code>see "The Law of Z Coolness"</code>), or if it mentions a defined word/phrase exactly,
+ * with no letters or digits on either side. Only words/phrases that begin and end with a letter or digit can be mentioned without quotes. <p>
+ *
+ * The graph is kept up to date one entry at a time. When a definition changes, its quoted phrases are read, and its mentions are found by looking up
+ * every word of it (and every pair of consecutive words) in an index of the defined words/phrases by their first words. When a new word/phrase is
+ * defined, the definitions that already mention it are found in an index of the definitions by the words they contain, through its rarest word. So
+ * no change rescans the dictionary, and looking up the references to or from an entry takes time proportional to their number. <p>
+ *
+ * A quoted phrase is a reference whether or not it is defined, so that it becomes a reference to an entry as soon as the entry is defined; when a
+ * word/phrase is removed, only the definitions that quote it still refer to it. Not thread safe; guarded by its dictionary.
+ *
+ * @author Joe Desmond
+ */
+final class ReferenceGraph {
+
+	/**
+	 * Characters removed from the end of a quoted phrase, since punctuation is often quoted along with it (like <code>"confused,"</code>)
+	 */
+	private static final String TRAILING_PUNCTUATION = ",.;:!?";
+
+	/**
+	 * Returns the definition text of a defined word/phrase
+	 */
+	private final Function<String, String> definitionOf;
+
+	/**
+	 * Phrases referred to by each definition, by word/phrase
+	 */
+	private final Map<String, Set<String>> outbound = new HashMap<String, Set<String>>();
+
+	/**
+	 * Words/phrases whose definitions refer to each phrase
+	 */
+	private final Map<String, Set<String>> inbound = new HashMap<String, Set<String>>();
+
+	/**
+	 * Defined words/phrases that can be mentioned without quotes, by their first word (if they are one word) or their first two words separated by a space
+	 */
+	private final Map<String, Set<String>> keysByPrefix = new HashMap<String, Set<String>>();
+
+	/**
+	 * Words/phrases whose definitions contain each word
+	 */
+	private final Map<String, Set<String>> sourcesByWord = new HashMap<String, Set<String>>();
+
+	/**
+	 * Creates an empty graph.
+	 *
+	 * @param _definitionOf returns the definition text of a defined word/phrase
+	 */
+	ReferenceGraph(final Function<String, String> _definitionOf) {
+		definitionOf = _definitionOf;
+	}
+
+	/**
+	 * Builds the graph of every entry of a frozen view.
+	 *
+	 * @param frozen entries
+	 * @param definitionOf returns the definition text of a defined word/phrase
+	 * @return the graph
+	 */
+	static final ReferenceGraph build(final EntryStore.Frozen frozen, final Function<String, String> definitionOf) {
+		final ReferenceGraph graph = new ReferenceGraph(definitionOf);
+
+		EntryStore.Cursor cursor = frozen.cursor();
+		while (cursor.next()) {
+			graph.addKey(cursor.word());
+		}
+
+		cursor = frozen.cursor();
+		while (cursor.next()) {
+			graph.addSource(cursor.word(), cursor.definitionText());
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Updates the graph for a word/phrase that has been defined or redefined. Must be called after the dictionary has been changed.
+	 *
+	 * @param word word/phrase
+	 * @param oldText its previous definition text, or null if it was not defined
+	 * @param newText its new definition text
+	 */
+	final void defined(final String word, final String oldText, final String newText) {
+		if (oldText == null) {
+			addKey(word);
+			linkMentionsOf(word);
+		} else {
+			removeSource(word, oldText);
+		}
+
+		addSource(word, newText);
+	}
+
+	/**
+	 * Updates the graph for a word/phrase that has been removed. The definitions that mention it without quoting it no longer refer to it.
+	 *
+	 * @param word word/phrase
+	 * @param oldText its definition text
+	 */
+	final void removed(final String word, final String oldText) {
+		removeSource(word, oldText);
+		removeKey(word);
+
+		if (mentionPrefix(word) != null) {
+			for (final String source : new ArrayList<String>(referencesTo(word))) {
+				if (!quotedPhrases(definitionOf.apply(source)).contains(word)) {
+					removeFrom(outbound, source, word);
+					removeFrom(inbound, word, source);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the words/phrases whose definitions refer to a phrase.
+	 *
+	 * @param phrase word/phrase
+	 * @return the words/phrases that refer to it, in no particular order; not to be changed
+	 */
+	final Set<String> referencesTo(final String phrase) {
+		return inbound.getOrDefault(phrase, Collections.emptySet());
+	}
+
+	/**
+	 * Returns the phrases that the definition of a word/phrase refers to, including phrases that are not defined.
+	 *
+	 * @param word defined word/phrase
+	 * @return the phrases it refers to, in no particular order; not to be changed
+	 */
+	final Set<String> referencesFrom(final String word) {
+		return outbound.getOrDefault(word, Collections.emptySet());
+	}
+
+	/**
+	 * Returns true if any definition other than its own refers to a word/phrase.
+	 *
+	 * @param word word/phrase
+	 * @return true if the word/phrase is referred to
+	 */
+	final boolean isReferenced(final String word) {
+		return inbound.containsKey(word);
+	}
+
+	/**
+	 * Adds a defined word/phrase to the index of words/phrases that can be mentioned without quotes.
+	 *
+	 * @param word word/phrase
+	 */
+	private final void addKey(final String word) {
+		final String prefix = mentionPrefix(word);
+
+		if (prefix != null) {
+			keysByPrefix.computeIfAbsent(prefix, p -> new HashSet<String>()).add(word);
+		}
+	}
+
+	/**
+	 * Removes a word/phrase that is no longer defined from the index of words/phrases that can be mentioned without quotes.
+	 *
+	 * @param word word/phrase
+	 */
+	private final void removeKey(final String word) {
+		final String prefix = mentionPrefix(word);
+
+		if (prefix != null) {
+			removeFrom(keysByPrefix, prefix, word);
+		}
+	}
+
+	/**
+	 * Links the definitions that mention a newly defined word/phrase without quotes to it. Only the definitions that contain its rarest word are read.
+	 *
+	 * @param word newly defined word/phrase
+	 */
+	private final void linkMentionsOf(final String word) {
+		if (mentionPrefix(word) == null) {
+			return;
+		}
+
+		Set<String> candidates = null;
+		for (int start = wordStart(word, 0); start >= 0; start = wordStart(word, wordEnd(word, start))) {
+			final Set<String> sources = sourcesByWord.getOrDefault(word.substring(start, wordEnd(word, start)), Collections.emptySet());
+			if (candidates == null || sources.size() < candidates.size()) {
+				candidates = sources;
+			}
+		}
+
+		for (final String source : candidates) {
+			if (!source.equals(word) && mentions(definitionOf.apply(source), word)) {
+				link(source, word);
+			}
+		}
+	}
+
+	/**
+	 * Adds the references made by a definition, and indexes the words it contains.
+	 *
+	 * @param word word/phrase being defined
+	 * @param text its definition text
+	 */
+	private final void addSource(final String word, final String text) {
+		for (final String phrase : quotedPhrases(text)) {
+			if (!phrase.equals(word)) {
+				link(word, phrase);
+			}
+		}
+
+		String previous = null;
+		int previousStart = -1;
+		for (int start = wordStart(text, 0); start >= 0; start = wordStart(text, wordEnd(text, start))) {
+			final String current = text.substring(start, wordEnd(text, start));
+
+			sourcesByWord.computeIfAbsent(current, w -> new HashSet<String>()).add(word);
+			if (previous != null) {
+				linkMentions(word, text, previousStart, previous + " " + current);
+			}
+			linkMentions(word, text, start, current);
+
+			previous = current;
+			previousStart = start;
+		}
+	}
+
+	/**
+	 * Links a definition to the defined words/phrases with a given prefix that it mentions at a position.
+	 *
+	 * @param word word/phrase being defined
+	 * @param text its definition text
+	 * @param at start of a word in the text
+	 * @param prefix the word, or the word and the next word separated by a space
+	 */
+	private final void linkMentions(final String word, final String text, final int at, final String prefix) {
+		final Set<String> keys = keysByPrefix.get(prefix);
+
+		if (keys != null) {
+			for (final String key : keys) {
+				if (!key.equals(word) && mentionAt(text, key, at)) {
+					link(word, key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the references made by a definition, and removes it from the index of the words that definitions contain.
+	 *
+	 * @param word word/phrase whose definition is removed
+	 * @param text its definition text
+	 */
+	private final void removeSource(final String word, final String text) {
+		final Set<String> targets = outbound.remove(word);
+
+		if (targets != null) {
+			for (final String target : targets) {
+				removeFrom(inbound, target, word);
+			}
+		}
+
+		for (int start = wordStart(text, 0); start >= 0; start = wordStart(text, wordEnd(text, start))) {
+			removeFrom(sourcesByWord, text.substring(start, wordEnd(text, start)), word);
+		}
+	}
+
+	/**
+	 * Adds a reference.
+	 *
+	 * @param source word/phrase whose definition makes the reference
+	 * @param target phrase referred to
+	 */
+	private final void link(final String source, final String target) {
+		outbound.computeIfAbsent(source, s -> new HashSet<String>()).add(target);
+		inbound.computeIfAbsent(target, t -> new HashSet<String>()).add(source);
+	}
+
+	/**
+	 * Removes a value from a set in a map, and removes the set if it becomes empty.
+	 *
+	 * @param map map of sets
+	 * @param key key of the set
+	 * @param value value to remove
+	 */
+	private static final void removeFrom(final Map<String, Set<String>> map, final String key, final String value) {
+		final Set<String> set = map.get(key);
+
+		if (set != null && set.remove(value) && set.isEmpty()) {
+			map.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the phrases quoted in a definition, with straight or curly double quotes. Spaces and trailing punctuation are removed from each one.
+	 *
+	 * @param text definition text
+	 * @return the quoted phrases
+	 */
+	static final Set<String> quotedPhrases(final String text) {
+		final Set<String> phrases = new HashSet<String>();
+		int i = 0;
+
+		while (i < text.length()) {
+			final char open = text.charAt(i);
+			final char close = (open == '\u201C') ? '\u201D' : open;
+
+			if (open != '"' && open != '\u201C') {
+				i++;
+				continue;
+			}
+
+			final int end = text.indexOf(close, i + 1);
+			if (end < 0) {
+				break;
+			}
+
+			int phraseEnd = end;
+			while (phraseEnd > i + 1 && TRAILING_PUNCTUATION.indexOf(text.charAt(phraseEnd - 1)) >= 0) {
+				phraseEnd--;
+			}
+
+			final String phrase = text.substring(i + 1, phraseEnd).trim();
+			if (!phrase.isEmpty()) {
+				phrases.add(phrase);
+			}
+
+			i = end + 1;
+		}
+
+		return phrases;
+	}
+
+	/**
+	 * Returns true if a text mentions a word/phrase anywhere, with no letters or digits on either side.
+	 *
+	 * @param text text
+	 * @param word word/phrase
+	 * @return true if the text mentions the word/phrase
+	 */
+	private static final boolean mentions(final String text, final String word) {
+		for (int at = text.indexOf(word); at >= 0; at = text.indexOf(word, at + 1)) {
+			if ((at == 0 || !isWordChar(text.charAt(at - 1))) && mentionAt(text, word, at)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns true if a text mentions a word/phrase at a position: the word/phrase starts there, and is not followed by a letter or digit.
+	 *
+	 * @param text text
+	 * @param word word/phrase
+	 * @param at position in the text, where no letter or digit comes before
+	 * @return true if the text mentions the word/phrase there
+	 */
+	private static final boolean mentionAt(final String text, final String word, final int at) {
+		final int end = at + word.length();
+
+		return text.startsWith(word, at) && (end == text.length() || !isWordChar(text.charAt(end)));
+	}
+
+	/**
+	 * Returns the key of a word/phrase in {@link #keysByPrefix}: its first word, and its second word if it has one.
+	 *
+	 * @param word word/phrase
+	 * @return its prefix, or null if it does not begin and end with a letter or digit, so that it can only be referred to in quotes
+	 */
+	private static final String mentionPrefix(final String word) {
+		if (word.isEmpty() || !isWordChar(word.charAt(0)) || !isWordChar(word.charAt(word.length() - 1))) {
+			return null;
+		}
+
+		final int firstEnd = wordEnd(word, 0);
+		final int second = wordStart(word, firstEnd);
+
+		return (second < 0) ? word.substring(0, firstEnd) : word.substring(0, firstEnd) + " " + word.substring(second, wordEnd(word, second));
+	}
+
+	/**
+	 * Returns the start of the first word at or after a position.
+	 *
+	 * @param text text
+	 * @param from position
+	 * @return start of the word, or -1 if there is none
+	 */
+	private static final int wordStart(final String text, final int from) {
+		for (int i = from; i < text.length(); i++) {
+			if (isWordChar(text.charAt(i))) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the end of the word that starts at a position.
+	 *
+	 * @param text text
+	 * @param start start of a word
+	 * @return position after its last character
+	 */
+	private static final int wordEnd(final String text, final int start) {
+		int i = start;
+
+		while (i < text.length() && isWordChar(text.charAt(i))) {
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Returns true if a character can be part of a word: a letter or digit.
+	 *
+	 * @param c character
+	 * @return true for letters and digits
+	 */
+	private static final boolean isWordChar(final char c) {
+		return Character.isLetterOrDigit(c);
+	}
+}
@@ -0,0 +1,289 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+
+/**
+ * A {@link Shard} hosted by a {@link ShardServer} worker process on this machine. The worker is started by {@link #start(String, String)} and talks
+ * to this object over one loopback socket (see {@link ShardProtocol}); requests from several threads are sent one at a time.
+ *
+ * @author Joe Desmond
+ */
+final class RemoteShard implements Shard {
+
+	/**
+	 * Maximum time to wait for a worker to exit after it is told to, in milliseconds
+	 */
+	private static final long EXIT_TIMEOUT_MILLIS = 10 * 1000;
+
+	/**
+	 * The worker process
+	 */
+	private final Process process;
+
+	/**
+	 * Connection to the worker
+	 */
+	private final Socket socket;
+
+	/**
+	 * Responses from the worker
+	 */
+	private final DataInputStream in;
+
+	/**
+	 * Requests to the worker
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * Creates a shard that talks to a worker process.
+	 *
+	 * @param _process the worker process
+	 * @param _socket connection to the worker
+	 * @throws IOException if the socket's streams cannot be opened
+	 */
+	private RemoteShard(final Process _process, final Socket _socket) throws IOException {
+		process = _process;
+		socket = _socket;
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	/**
+	 * Starts a worker process that hosts a shard, with the same classpath and storage as this JVM, and connects to it. The worker loads the shard file,
+	 * or starts with an empty dictionary if there is none. Its output is shown in this process's standard error.
+	 *
+	 * @param name name of the sharded dictionary
+	 * @param path path of the shard's file, or null to start an empty shard
+	 * @return the connected shard
+	 * @throws IOException if the worker cannot be started or fails to load the shard
+	 */
+	static final RemoteShard start(final String name, final String path) throws IOException {
+		final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		final List<String> command = new ArrayList<String>(List.of(java, "-cp", System.getProperty("java.class.path"),
+				"-Ddictionary.storage=" + Dictionary.Storage.DEFAULT.name().toLowerCase(), ShardServer.class.getName(), "0", name));
+		if (path != null) {
+			command.add(path);
+		}
+
+		final ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		final Process process = builder.start();
+		final BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
+		String line;
+		while ((line = output.readLine()) != null && !line.startsWith(ShardProtocol.READY)) {
+			System.err.println("[shard worker " + process.pid() + "] " + line);
+		}
+
+		if (line == null) {
+			process.destroy();
+			throw new IOException("Shard worker " + process.pid() + " exited before it was ready");
+		}
+
+		final Thread forwarder = new Thread(() -> forwardOutput(output, process.pid()), "shard-worker-output-" + process.pid());
+		forwarder.setDaemon(true);
+		forwarder.start();
+
+		final int port = Integer.parseInt(line.substring(ShardProtocol.READY.length()).trim());
+		final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+
+		return new RemoteShard(process, socket);
+	}
+
+	/**
+	 * Copies the rest of a worker's standard output to this process's standard error, so that the worker never blocks on a full pipe.
+	 *
+	 * @param output the worker's standard output
+	 * @param pid the worker's process ID
+	 */
+	private static final void forwardOutput(final BufferedReader output, final long pid) {
+		try {
+			String line;
+			while ((line = output.readLine()) != null) {
+				System.err.println("[shard worker " + pid + "] " + line);
+			}
+		} catch (IOException e) {
+			// The worker has exited
+		}
+	}
+
+	/**
+	 * Sends a request that has been written to {@link #out} and reads the response status.
+	 *
+	 * @throws IOException if the connection fails, or if the worker could not carry out the request
+	 */
+	private final void send() throws IOException {
+		out.flush();
+
+		if (in.readByte() != ShardProtocol.OK) {
+			throw new IOException("Shard worker " + process.pid() + " failed: " + ShardProtocol.readString(in));
+		}
+	}
+
+	@Override
+	public final synchronized Optional<Definition> find(final String word) throws IOException {
+		out.writeByte(ShardProtocol.FIND);
+		ShardProtocol.writeString(out, word);
+		send();
+
+		return in.readBoolean() ? Optional.of(ShardProtocol.readDefinition(in)) : Optional.empty();
+	}
+
+	@Override
+	public final synchronized boolean weakDefine(final String word, final Definition definition) throws IOException {
+		out.writeByte(ShardProtocol.WEAK_DEFINE);
+		ShardProtocol.writeString(out, word);
+		ShardProtocol.writeDefinition(out, definition);
+		send();
+
+		return in.readBoolean();
+	}
+
+	@Override
+	public final synchronized boolean strongDefine(final String word, final Definition definition) throws IOException {
+		out.writeByte(ShardProtocol.STRONG_DEFINE);
+		ShardProtocol.writeString(out, word);
+		ShardProtocol.writeDefinition(out, definition);
+		send();
+
+		return in.readBoolean();
+	}
+
+	@Override
+	public final synchronized boolean remove(final String word) throws IOException {
+		out.writeByte(ShardProtocol.REMOVE);
+		ShardProtocol.writeString(out, word);
+		send();
+
+		return in.readBoolean();
+	}
+
+	@Override
+	public final synchronized Optional<Date> changeEntryDate(final String word, final Date date) throws IOException {
+		out.writeByte(ShardProtocol.CHANGE_DATE);
+		ShardProtocol.writeString(out, word);
+		out.writeLong(date.getTime());
+		send();
+
+		return in.readBoolean() ? Optional.of(new Date(in.readLong())) : Optional.empty();
+	}
+
+	@Override
+	public final synchronized List<SearchResult> search(final String regex) throws IOException {
+		out.writeByte(ShardProtocol.SEARCH);
+		ShardProtocol.writeString(out, regex);
+		send();
+
+		final int count = in.readInt();
+		final List<SearchResult> results = new ArrayList<SearchResult>(count);
+		for (int i = 0; i < count; i++) {
+			final String definitionString = ShardProtocol.readString(in);
+			results.add(new SearchResult(definitionString, in.readInt()));
+		}
+
+		return results;
+	}
+
+	@Override
+	public final synchronized Summary summary() throws IOException {
+		out.writeByte(ShardProtocol.SUMMARY);
+		send();
+
+		final long[] sortedEntryTimes = ShardProtocol.readLongs(in);
+		return new Summary(sortedEntryTimes, ShardProtocol.readLongs(in));
+	}
+
+	@Override
+	public final synchronized int size() throws IOException {
+		out.writeByte(ShardProtocol.SIZE);
+		send();
+
+		return in.readInt();
+	}
+
+	@Override
+	public final synchronized void save(final String path) throws IOException {
+		out.writeByte(ShardProtocol.SAVE);
+		ShardProtocol.writeString(out, path);
+		send();
+	}
+
+	@Override
+	public final synchronized List<Map.Entry<String, Definition>> takeMisplaced(final int index, final int shardCount) throws IOException {
+		out.writeByte(ShardProtocol.TAKE_MISPLACED);
+		out.writeInt(index);
+		out.writeInt(shardCount);
+		send();
+
+		return ShardProtocol.readEntries(in);
+	}
+
+	@Override
+	public final synchronized void putAll(final List<Map.Entry<String, Definition>> entries) throws IOException {
+		out.writeByte(ShardProtocol.PUT_ALL);
+		ShardProtocol.writeEntries(out, entries);
+		send();
+	}
+
+	/**
+	 * Asks the worker for the name of its dictionary.
+	 *
+	 * @return name of the dictionary in the shard file
+	 * @throws IOException if the worker cannot be reached
+	 */
+	final synchronized String name() throws IOException {
+		out.writeByte(ShardProtocol.NAME);
+		send();
+
+		return ShardProtocol.readString(in);
+	}
+
+	@Override
+	public final String host() {
+		return "worker process " + process.pid();
+	}
+
+	/**
+	 * Tells the worker to exit and waits for it. The worker is killed if it does not exit in time or cannot be reached.
+	 */
+	@Override
+	public final synchronized void close() throws IOException {
+		try {
+			out.writeByte(ShardProtocol.SHUTDOWN);
+			send();
+		} catch (IOException e) {
+			process.destroyForcibly();
+		} finally {
+			socket.close();
+		}
+
+		try {
+			if (!process.waitFor(EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				process.destroyForcibly();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			process.destroyForcibly();
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+import com.dezzy.dictionary.stats.Statistics;
+
+/**
+ * A read-only copy of a dictionary that follows a {@link ReplicationPrimary}: it starts from a snapshot sent by the primary, then applies every change
+ * made on the primary in the same order (see {@link ReplicationProtocol}). Lookups and searches are answered from the copy and never reach the primary.
+ * If the connection is lost, the follower keeps its copy, reconnects, and continues from the last change it applied. <p>
+ *
+ * Usage: <code>java -cp bin com.dezzy.dictionary.main.ReplicationFollower [port]</code>, where the port is the one shown by the primary's
+ * <code>replicate</code> command. Reads commands line-by-line from the standard input, like {@link Main}:
+ * <ul>
+ * <li><code>find</code>, <code>search</code> and <code>printstats</code>: like the commands of {@link CommandHandler}, on the copy</li>
+ * <li><code>lag</code>: shows the last change applied and how far behind the primary the copy is</li>
+ * <li><code>quit</code></li>
+ * </ul>
+ *
+ * @author Joe Desmond
+ */
+public final class ReplicationFollower implements Closeable {
+
+	/**
+	 * Time to wait before reconnecting after the connection is lost, in milliseconds
+	 */
+	private static final long RECONNECT_MILLIS = 1000;
+
+	/**
+	 * Date format used when printing definitions
+	 */
+	private static final DateTimeFormatter DATE_OUTPUT_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss a");
+
+	/**
+	 * Port of the primary on the loopback address
+	 */
+	private final int port;
+
+	/**
+	 * The copy of the dictionary, or null until the first snapshot has been received
+	 */
+	private volatile Dictionary dictionary = null;
+
+	/**
+	 * Epoch of the primary's log that {@link #applied} belongs to; 0 until the first snapshot has been received
+	 */
+	private volatile long epoch = 0;
+
+	/**
+	 * Sequence number of the last change applied; -1 until the first snapshot has been received
+	 */
+	private volatile long applied = -1;
+
+	/**
+	 * Sequence number of the primary's newest change, as of the last message from the primary
+	 */
+	private volatile long primaryHead = -1;
+
+	/**
+	 * Time of the last message from the primary, in epoch milliseconds; 0 if none has been received
+	 */
+	private volatile long lastHeard = 0;
+
+	/**
+	 * Time between the last applied change being made on the primary and being applied here, in milliseconds
+	 */
+	private volatile long lastDelayMillis = 0;
+
+	/**
+	 * Number of snapshots received
+	 */
+	private volatile int snapshots = 0;
+
+	/**
+	 * Connection to the primary, or null while disconnected
+	 */
+	private volatile Socket socket = null;
+
+	/**
+	 * True once the follower has been closed
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a follower that has not connected yet.
+	 *
+	 * @param _port port of the primary
+	 */
+	private ReplicationFollower(final int _port) {
+		port = _port;
+	}
+
+	/**
+	 * Starts following the primary listening on a port of the loopback address. Returns at once; the copy is available once the first snapshot
+	 * has been received.
+	 *
+	 * @param port port of the primary
+	 * @return the follower
+	 */
+	static final ReplicationFollower start(final int port) {
+		final ReplicationFollower follower = new ReplicationFollower(port);
+
+		final Thread thread = new Thread(follower::follow, "replication-follower");
+		thread.setDaemon(true);
+		thread.start();
+
+		return follower;
+	}
+
+	/**
+	 * Connects to the primary and applies what it sends, reconnecting whenever the connection is lost, until the follower is closed.
+	 */
+	private final void follow() {
+		while (!closed) {
+			try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+				s.setTcpNoDelay(true);
+				socket = s;
+				sync(new DataInputStream(new BufferedInputStream(s.getInputStream())), new DataOutputStream(new BufferedOutputStream(s.getOutputStream())));
+			} catch (IOException e) {
+				// The primary is not running, or the connection was lost
+			} finally {
+				socket = null;
+			}
+
+			try {
+				Thread.sleep(RECONNECT_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reports this follower's position, then handles messages from the primary until the connection closes, reporting the last change applied after
+	 * each one.
+	 *
+	 * @param in stream from the primary
+	 * @param out stream to the primary
+	 * @throws IOException if the connection is lost, or the primary sends a message this follower does not understand
+	 */
+	private final void sync(final DataInputStream in, final DataOutputStream out) throws IOException {
+		out.writeLong(epoch);
+		out.writeLong(applied);
+		out.flush();
+
+		while (!closed) {
+			final byte type = in.readByte();
+
+			switch (type) {
+				case ReplicationProtocol.SNAPSHOT:
+					readSnapshot(in);
+					break;
+				case ReplicationProtocol.CHANGES: {
+					primaryHead = in.readLong();
+					final int count = in.readInt();
+					final Dictionary copy = dictionary;
+
+					for (int i = 0; i < count; i++) {
+						final ReplicationLog.Mutation mutation = ReplicationProtocol.readMutation(in);
+						if (mutation.sequence != applied + 1) {
+							throw new IOException("Expected change #" + (applied + 1) + " but received #" + mutation.sequence);
+						}
+
+						mutation.applyTo(copy);
+						applied = mutation.sequence;
+						lastDelayMillis = System.currentTimeMillis() - mutation.time;
+					}
+					break;
+				}
+				case ReplicationProtocol.HEARTBEAT:
+					primaryHead = in.readLong();
+					break;
+				default:
+					throw new IOException("Unknown replication message " + type);
+			}
+
+			lastHeard = System.currentTimeMillis();
+			out.writeLong(applied);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads a snapshot into a new copy of the dictionary and replaces the old copy with it.
+	 *
+	 * @param in stream from the primary, after the message type
+	 * @throws IOException if there is a problem reading the snapshot
+	 */
+	private final void readSnapshot(final DataInputStream in) throws IOException {
+		final long snapshotEpoch = in.readLong();
+		final String name = ShardProtocol.readString(in);
+		final long sequence = in.readLong();
+		final int count = in.readInt();
+
+		final Dictionary copy = new Dictionary(name, count);
+		for (int i = 0; i < count; i++) {
+			final String word = ShardProtocol.readString(in);
+			copy.putLoaded(word, ShardProtocol.readDefinition(in));
+		}
+		copy.rebuildDateIndex();
+
+		dictionary = copy;
+		epoch = snapshotEpoch;
+		applied = sequence;
+		primaryHead = sequence;
+		lastDelayMillis = 0;
+		snapshots++;
+	}
+
+	/**
+	 * Returns the copy of the dictionary.
+	 *
+	 * @return the copy
+	 * @throws IllegalStateException if no snapshot has been received yet
+	 */
+	final Dictionary dictionary() {
+		final Dictionary copy = dictionary;
+
+		if (copy == null) {
+			throw new IllegalStateException("No snapshot has been received from the primary yet");
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Describes how far behind the primary this follower is.
+	 *
+	 * @return status string
+	 */
+	final String lag() {
+		if (dictionary == null) {
+			return (socket == null) ? "Waiting for the primary on port " + port : "Receiving a snapshot from the primary";
+		}
+
+		final long behind = Math.max(0, primaryHead - applied);
+		final String connection = (socket == null) ? "disconnected; reconnecting to port " + port : "last heard from the primary "
+				+ (System.currentTimeMillis() - lastHeard) + " ms ago";
+
+		return "\"" + dictionary.name + "\": applied #" + applied + " of #" + primaryHead + " (" + behind + " behind); the last change applied was "
+				+ lastDelayMillis + " ms old; " + snapshots + " snapshots received; " + connection;
+	}
+
+	/**
+	 * Stops following the primary. The copy stays available.
+	 */
+	@Override
+	public final void close() throws IOException {
+		closed = true;
+
+		final Socket s = socket;
+		if (s != null) {
+			s.close();
+		}
+	}
+
+	/**
+	 * Follows a primary on the loopback address and reads commands from the standard input until <code>quit</code>.
+	 *
+	 * @param args port of the primary
+	 * @throws IOException if there is a problem reading the standard input
+	 */
+	public static final void main(final String ... args) throws IOException {
+		if (args.length != 1) {
+			System.out.println("ERROR: Expected [port]");
+			return;
+		}
+
+		final ReplicationFollower follower = start(Integer.parseInt(args[0]));
+		final BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+
+		while (true) {
+			System.out.println();
+			System.out.println("Enter a command: ");
+			final String input = br.readLine();
+
+			if (input == null || input.equalsIgnoreCase("quit")) {
+				System.out.println("Quitting...");
+				follower.close();
+				return;
+			}
+
+			String command = input;
+			String arg = "";
+			if (input.contains(" ")) {
+				command = input.substring(0, input.indexOf(" ")).toLowerCase();
+				arg = input.substring(input.indexOf(" ") + 1);
+			}
+
+			String status;
+			try {
+				status = follower.dispatch(command, arg);
+			} catch (IllegalStateException e) {
+				status = "ERROR: " + e.getMessage();
+			}
+
+			System.out.println(status);
+		}
+	}
+
+	/**
+	 * Executes a command and returns a status string.
+	 *
+	 * @param command lowercase command name
+	 * @param arg command argument
+	 * @return status string
+	 */
+	private final String dispatch(final String command, final String arg) {
+		switch (command) {
+			case "find":
+				return find(arg);
+			case "search":
+				return search(arg);
+			case "printstats":
+				return new Statistics(dictionary()).toString();
+			case "lag":
+				return lag();
+			default:
+				return "ERROR: Invalid command!";
+		}
+	}
+
+	/**
+	 * Finds the definition of a word in the copy.
+	 *
+	 * @param word word/phrase to look up
+	 * @return the definition, or a status string if there is none
+	 */
+	private final String find(final String word) {
+		final Optional<Definition> definition = dictionary().getDefinition(word);
+
+		if (definition.isEmpty()) {
+			return "No definition exists for \"" + word + "\"";
+		}
+
+		final String dateString = DATE_OUTPUT_FORMAT.format(LocalDateTime.ofInstant(definition.get().entryDate().toInstant(), ZoneId.systemDefault()));
+		return word + ":\t" + definition.get().definition() + System.lineSeparator() + System.lineSeparator() + dateString;
+	}
+
+	/**
+	 * Searches the copy, with a {@link SearchBudget#standard() standard budget}.
+	 *
+	 * @param regex search expression
+	 * @return list of results (delimited by newlines), or status string
+	 */
+	private final String search(final String regex) {
+		try {
+			Pattern.compile(regex);
+		} catch (PatternSyntaxException e) {
+			return "ERROR: Invalid search expression!";
+		}
+
+		final SearchBudget budget = SearchBudget.standard();
+		final List<SearchResult> results = dictionary().search(regex, budget);
+		if (results.isEmpty()) {
+			return budget.exhausted() ? "No results found before the search " + budget.stopReason() : "No results";
+		}
+
+		final StringBuilder sb = new StringBuilder((budget.exhausted() ? "Partial results (" + results.size() + "; the search " + budget.stopReason() + "):"
+				: "Results (" + results.size() + "):") + System.lineSeparator());
+		for (final SearchResult result : results) {
+			sb.append(System.lineSeparator() + result.definitionString);
+		}
+
+		return sb.toString();
+	}
+}
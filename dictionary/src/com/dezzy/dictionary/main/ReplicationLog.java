@@ -0,0 +1,325 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The changes made to a {@link Dictionary} since replication started, in the order they were made, numbered from 1. The dictionary appends to its log
+ * while it holds its own lock, so the order of the log is the order in which the changes were applied. Only the most recent changes are kept; a
+ * follower that falls further behind than that must start again from a snapshot. <p>
+ *
+ * Only changes are logged: weak and strong definitions that took effect, removals, and entry date changes. Lookups are not, so access counts
+ * on followers only count the lookups made on the followers themselves.
+ *
+ * @author Joe Desmond
+ */
+final class ReplicationLog {
+
+	/**
+	 * Default number of changes kept
+	 */
+	static final int DEFAULT_CAPACITY = 100_000;
+
+	/**
+	 * Maximum number of changes returned by one call to {@link #awaitAfter(long, long)}
+	 */
+	private static final int MAX_BATCH = 1024;
+
+	/**
+	 * A definition was added or replaced
+	 */
+	static final byte PUT = 1;
+
+	/**
+	 * A definition was removed
+	 */
+	static final byte REMOVE = 2;
+
+	/**
+	 * The entry date of a definition was changed
+	 */
+	static final byte CHANGE_DATE = 3;
+
+	/**
+	 * One logged change.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Mutation {
+
+		/**
+		 * Position of this change in the log, starting from 1
+		 */
+		final long sequence;
+
+		/**
+		 * Time the change was made on the primary, in epoch milliseconds
+		 */
+		final long time;
+
+		/**
+		 * Kind of change: {@link ReplicationLog#PUT}, {@link ReplicationLog#REMOVE} or {@link ReplicationLog#CHANGE_DATE}
+		 */
+		final byte op;
+
+		/**
+		 * Word/phrase that was changed
+		 */
+		final String word;
+
+		/**
+		 * The new definition, holding its own data, if the change is a {@link ReplicationLog#PUT}; otherwise null
+		 */
+		final Definition definition;
+
+		/**
+		 * The new entry date, if the change is a {@link ReplicationLog#CHANGE_DATE}; otherwise 0
+		 */
+		final long date;
+
+		/**
+		 * Creates a logged change.
+		 *
+		 * @param _sequence position in the log
+		 * @param _time time the change was made
+		 * @param _op kind of change
+		 * @param _word word/phrase that was changed
+		 * @param _definition new definition, or null
+		 * @param _date new entry date, or 0
+		 */
+		Mutation(final long _sequence, final long _time, final byte _op, final String _word, final Definition _definition, final long _date) {
+			sequence = _sequence;
+			time = _time;
+			op = _op;
+			word = _word;
+			definition = _definition;
+			date = _date;
+		}
+
+		/**
+		 * Applies this change to a dictionary.
+		 *
+		 * @param dictionary dictionary to change
+		 */
+		final void applyTo(final Dictionary dictionary) {
+			switch (op) {
+				case PUT:
+					dictionary.strongDefine(word, definition);
+					break;
+				case REMOVE:
+					dictionary.remove(word);
+					break;
+				case CHANGE_DATE:
+					dictionary.changeEntryDate(word, new Date(date));
+					break;
+				default:
+					throw new IllegalStateException("Unknown change " + op);
+			}
+		}
+	}
+
+	/**
+	 * A snapshot of a dictionary and the sequence number of the last change it includes, taken together so that the log after that sequence number
+	 * holds exactly the changes the snapshot does not see.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Bootstrap {
+
+		/**
+		 * The snapshot; must be closed by the caller
+		 */
+		final Dictionary.Snapshot snapshot;
+
+		/**
+		 * Sequence number of the last change included in the snapshot
+		 */
+		final long sequence;
+
+		/**
+		 * Creates a bootstrap.
+		 *
+		 * @param _snapshot the snapshot
+		 * @param _sequence last change included in the snapshot
+		 */
+		private Bootstrap(final Dictionary.Snapshot _snapshot, final long _sequence) {
+			snapshot = _snapshot;
+			sequence = _sequence;
+		}
+	}
+
+	/**
+	 * Random number that identifies this log. A follower that reconnects with a sequence number from a different log (for example, from before the
+	 * primary was restarted) must start again from a snapshot
+	 */
+	final long epoch;
+
+	/**
+	 * The logged dictionary
+	 */
+	private final Dictionary dictionary;
+
+	/**
+	 * The most recent changes, in a ring: the change with sequence number <code>s</code> is at index <code>(s - 1) % retained.length</code>
+	 */
+	private final Mutation[] retained;
+
+	/**
+	 * Sequence number of the most recent change; 0 if no change has been made
+	 */
+	private long head = 0;
+
+	/**
+	 * True once the log has been closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Creates an empty log for a dictionary. Changes are only logged once the dictionary has been told to use the log.
+	 *
+	 * @param _dictionary the logged dictionary
+	 * @param _capacity maximum number of changes kept
+	 */
+	ReplicationLog(final Dictionary _dictionary, final int _capacity) {
+		dictionary = _dictionary;
+		retained = new Mutation[_capacity];
+
+		long randomEpoch;
+		do {
+			randomEpoch = ThreadLocalRandom.current().nextLong();
+		} while (randomEpoch == 0);
+		epoch = randomEpoch;
+	}
+
+	/**
+	 * Logs a definition that was added or replaced. Called by the dictionary while it holds its lock.
+	 *
+	 * @param word word/phrase
+	 * @param definition the new definition
+	 */
+	final void logPut(final String word, final Definition definition) {
+		append(PUT, word, new Definition(definition.rawDefinition(), definition.entryDate(), definition.accesses()), 0);
+	}
+
+	/**
+	 * Logs a definition that was removed. Called by the dictionary while it holds its lock.
+	 *
+	 * @param word word/phrase
+	 */
+	final void logRemove(final String word) {
+		append(REMOVE, word, null, 0);
+	}
+
+	/**
+	 * Logs an entry date change. Called by the dictionary while it holds its lock.
+	 *
+	 * @param word word/phrase
+	 * @param date the new entry date
+	 */
+	final void logChangeDate(final String word, final Date date) {
+		append(CHANGE_DATE, word, null, date.getTime());
+	}
+
+	/**
+	 * Appends a change, replacing the oldest change if the log is full, and wakes up every thread waiting for changes.
+	 *
+	 * @param op kind of change
+	 * @param word word/phrase
+	 * @param definition new definition, or null
+	 * @param date new entry date, or 0
+	 */
+	private final synchronized void append(final byte op, final String word, final Definition definition, final long date) {
+		head++;
+		retained[(int) ((head - 1) % retained.length)] = new Mutation(head, System.currentTimeMillis(), op, word, definition, date);
+
+		notifyAll();
+	}
+
+	/**
+	 * Returns the sequence number of the most recent change.
+	 *
+	 * @return sequence number, or 0 if no change has been logged
+	 */
+	final synchronized long head() {
+		return head;
+	}
+
+	/**
+	 * Returns the time a change was made.
+	 *
+	 * @param sequence sequence number of the change
+	 * @return time in epoch milliseconds, or -1 if the change is no longer (or not yet) in the log
+	 */
+	final synchronized long timeOf(final long sequence) {
+		if (sequence < oldest() || sequence > head) {
+			return -1;
+		}
+
+		return retained[(int) ((sequence - 1) % retained.length)].time;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest change still in the log. Must be called while holding the lock on this log.
+	 *
+	 * @return sequence number; greater than {@link #head} if the log is empty
+	 */
+	private final long oldest() {
+		return Math.max(1, head - retained.length + 1);
+	}
+
+	/**
+	 * Waits until there are changes after the given sequence number and returns the oldest of them.
+	 *
+	 * @param sequence sequence number of the last change the caller has seen
+	 * @param timeoutMillis maximum time to wait, in milliseconds
+	 * @return up to {@link #MAX_BATCH} changes in order, an empty list if there were none in time or the log was closed, or null if the changes
+	 * 			right after <code>sequence</code> are no longer in the log
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	final synchronized List<Mutation> awaitAfter(final long sequence, final long timeoutMillis) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		for (long remaining = timeoutMillis; head <= sequence && !closed && remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+			wait(remaining);
+		}
+
+		if (head <= sequence || closed) {
+			return List.of();
+		}
+
+		if (sequence + 1 < oldest()) {
+			return null;
+		}
+
+		final long last = Math.min(head, sequence + MAX_BATCH);
+		final List<Mutation> batch = new ArrayList<Mutation>((int) (last - sequence));
+		for (long next = sequence + 1; next <= last; next++) {
+			batch.add(retained[(int) ((next - 1) % retained.length)]);
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Takes a snapshot of the dictionary together with the sequence number of the last change it includes. The dictionary's lock is held while both
+	 * are read, so no change can be made in between.
+	 *
+	 * @return a snapshot, which must be closed by the caller, and its sequence number
+	 */
+	final Bootstrap bootstrap() {
+		synchronized (dictionary) {
+			final Dictionary.Snapshot snapshot = dictionary.snapshot();
+			return new Bootstrap(snapshot, head());
+		}
+	}
+
+	/**
+	 * Closes the log, waking up every thread waiting for changes. Changes are still appended until the dictionary stops using the log.
+	 */
+	final synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+}
@@ -0,0 +1,339 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streams every change made to a {@link Dictionary} to {@link ReplicationFollower}s, which keep their own copy of the dictionary for lookups and
+ * searches. The primary listens on the loopback address; every follower that connects gets its own thread, which sends it a snapshot if it needs one
+ * and then the changes from the dictionary's {@link ReplicationLog} as they are made (see {@link ReplicationProtocol}). Followers report the last
+ * change they applied, so the primary can show how far behind each one is. <p>
+ *
+ * Changes are streamed after they have been made on the primary, so followers are always slightly behind; a change is never lost by a follower
+ * that stays connected, and one that reconnects continues where it stopped.
+ *
+ * @author Joe Desmond
+ */
+final class ReplicationPrimary implements Closeable {
+
+	/**
+	 * Time without changes after which a follower is sent a heartbeat, in milliseconds
+	 */
+	static final long HEARTBEAT_MILLIS = 1000;
+
+	/**
+	 * The replicated dictionary
+	 */
+	private final Dictionary dictionary;
+
+	/**
+	 * Log of the dictionary's changes
+	 */
+	private final ReplicationLog log;
+
+	/**
+	 * Accepts followers
+	 */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Connected followers
+	 */
+	private final List<Link> links = new CopyOnWriteArrayList<Link>();
+
+	/**
+	 * True once the primary has been closed
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Connection to one follower, and what the primary knows about it.
+	 *
+	 * @author Joe Desmond
+	 */
+	private final class Link {
+
+		/**
+		 * Connection to the follower
+		 */
+		private final Socket socket;
+
+		/**
+		 * Time the follower connected, in epoch milliseconds
+		 */
+		private final long connectedAt = System.currentTimeMillis();
+
+		/**
+		 * Sequence number of the last change the follower reported applying; -1 until it has reported one
+		 */
+		private volatile long acked = -1;
+
+		/**
+		 * Number of snapshots sent to the follower
+		 */
+		private volatile int snapshotsSent = 0;
+
+		/**
+		 * True while a snapshot is being sent
+		 */
+		private volatile boolean sendingSnapshot = false;
+
+		/**
+		 * Creates a link to a follower that has just connected.
+		 *
+		 * @param _socket connection to the follower
+		 */
+		private Link(final Socket _socket) {
+			socket = _socket;
+		}
+
+		/**
+		 * Reads the follower's position, then sends it a snapshot if it needs one and every change after that, until the connection or the primary is
+		 * closed. Reports from the follower are read on a second thread.
+		 */
+		private final void serve() {
+			try (socket) {
+				final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+				final long followerEpoch = in.readLong();
+				long sent = in.readLong();
+				acked = sent;
+
+				final Thread reader = new Thread(() -> readReports(in), "replication-reports-" + socket.getPort());
+				reader.setDaemon(true);
+				reader.start();
+
+				if (followerEpoch != log.epoch || sent < 0 || sent > log.head()) {
+					sent = sendSnapshot(out);
+				}
+
+				while (!closed) {
+					final List<ReplicationLog.Mutation> batch = log.awaitAfter(sent, HEARTBEAT_MILLIS);
+
+					if (batch == null) {
+						sent = sendSnapshot(out);
+					} else if (batch.isEmpty()) {
+						out.writeByte(ReplicationProtocol.HEARTBEAT);
+						out.writeLong(log.head());
+						out.flush();
+					} else {
+						out.writeByte(ReplicationProtocol.CHANGES);
+						out.writeLong(log.head());
+						out.writeInt(batch.size());
+						for (final ReplicationLog.Mutation mutation : batch) {
+							ReplicationProtocol.writeMutation(out, mutation);
+						}
+						out.flush();
+
+						sent = batch.get(batch.size() - 1).sequence;
+					}
+				}
+			} catch (SocketException e) {
+				// The follower disconnected, or the primary was closed
+			} catch (IOException e) {
+				if (!closed) {
+					e.printStackTrace();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				links.remove(this);
+			}
+		}
+
+		/**
+		 * Sends a snapshot of the dictionary.
+		 *
+		 * @param out stream to the follower
+		 * @return sequence number of the last change included in the snapshot
+		 * @throws IOException if there is a problem sending the snapshot
+		 */
+		private final long sendSnapshot(final DataOutputStream out) throws IOException {
+			sendingSnapshot = true;
+			final ReplicationLog.Bootstrap bootstrap = log.bootstrap();
+
+			try (Dictionary.Snapshot snapshot = bootstrap.snapshot) {
+				out.writeByte(ReplicationProtocol.SNAPSHOT);
+				out.writeLong(log.epoch);
+				ShardProtocol.writeString(out, dictionary.name);
+				out.writeLong(bootstrap.sequence);
+				out.writeInt(snapshot.size());
+
+				final Iterator<Map.Entry<String, Definition>> entries = snapshot.entries();
+				while (entries.hasNext()) {
+					final Map.Entry<String, Definition> entry = entries.next();
+					ShardProtocol.writeString(out, entry.getKey());
+					ShardProtocol.writeDefinition(out, entry.getValue());
+				}
+				out.flush();
+			} finally {
+				sendingSnapshot = false;
+			}
+
+			snapshotsSent++;
+			return bootstrap.sequence;
+		}
+
+		/**
+		 * Reads the follower's reports of the last change it applied until the connection closes.
+		 *
+		 * @param in stream from the follower
+		 */
+		private final void readReports(final DataInputStream in) {
+			try {
+				while (true) {
+					acked = in.readLong();
+				}
+			} catch (IOException e) {
+				// The follower disconnected; closing the socket also stops the sending thread
+				try {
+					socket.close();
+				} catch (IOException ignored) {
+					// Already closed
+				}
+			}
+		}
+
+		/**
+		 * Describes the follower's position.
+		 *
+		 * @param head sequence number of the newest change
+		 * @param now current time in epoch milliseconds
+		 * @return one line of the report
+		 */
+		private final String describe(final long head, final long now) {
+			final String address = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+			final long connectedFor = (now - connectedAt) / 1000;
+
+			if (sendingSnapshot || acked < 0) {
+				return address + " - receiving a snapshot (connected for " + connectedFor + " s)";
+			}
+
+			final long behind = Math.max(0, head - acked);
+			final String lag;
+			if (behind == 0) {
+				lag = "up to date";
+			} else {
+				final long oldestUnapplied = log.timeOf(acked + 1);
+				lag = behind + " changes behind" + ((oldestUnapplied < 0) ? "" : " (" + Math.max(0, now - oldestUnapplied) + " ms)");
+			}
+
+			return address + " - applied #" + acked + ", " + lag + ", " + snapshotsSent + " snapshots sent (connected for " + connectedFor + " s)";
+		}
+	}
+
+	/**
+	 * Creates a primary that is listening but not yet accepting followers.
+	 *
+	 * @param _dictionary the replicated dictionary
+	 * @param _log log of its changes
+	 * @param _serverSocket socket to accept followers on
+	 */
+	private ReplicationPrimary(final Dictionary _dictionary, final ReplicationLog _log, final ServerSocket _serverSocket) {
+		dictionary = _dictionary;
+		log = _log;
+		serverSocket = _serverSocket;
+	}
+
+	/**
+	 * Starts logging a dictionary's changes and accepting followers on the loopback address. Waits for the dictionary to finish loading first.
+	 *
+	 * @param dictionary dictionary to replicate
+	 * @param port port to listen on, or 0 to pick a free port
+	 * @return the running primary
+	 * @throws IOException if the port cannot be opened
+	 * @throws IllegalStateException if the dictionary failed to load
+	 */
+	static final ReplicationPrimary start(final Dictionary dictionary, final int port) throws IOException {
+		final ServerSocket serverSocket = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+		final ReplicationPrimary primary = new ReplicationPrimary(dictionary, dictionary.startReplicationLog(ReplicationLog.DEFAULT_CAPACITY), serverSocket);
+
+		final Thread acceptor = new Thread(primary::accept, "replication-primary-" + serverSocket.getLocalPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		return primary;
+	}
+
+	/**
+	 * Accepts followers until the primary is closed, serving each on its own thread.
+	 */
+	private final void accept() {
+		while (!closed) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+
+				final Link link = new Link(socket);
+				links.add(link);
+
+				final Thread sender = new Thread(link::serve, "replication-follower-" + socket.getPort());
+				sender.setDaemon(true);
+				sender.start();
+			} catch (IOException e) {
+				if (!closed) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the port followers connect to.
+	 *
+	 * @return port number
+	 */
+	final int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Lists the connected followers and how far behind each one is.
+	 *
+	 * @return multiline report
+	 */
+	final String report() {
+		final long head = log.head();
+		final long now = System.currentTimeMillis();
+		final StringBuilder sb = new StringBuilder("Replicating \"" + dictionary.name + "\" on port " + port() + "; newest change is #" + head);
+
+		if (links.isEmpty()) {
+			return sb.append(System.lineSeparator() + "No followers are connected").toString();
+		}
+
+		sb.append(System.lineSeparator() + "Followers (" + links.size() + "):");
+		for (final Link link : links) {
+			sb.append(System.lineSeparator() + "  " + link.describe(head, now));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Stops accepting followers, disconnects the connected ones and stops logging the dictionary's changes. Followers keep their copies and try to
+	 * reconnect.
+	 */
+	@Override
+	public final void close() throws IOException {
+		closed = true;
+		dictionary.stopReplicationLog();
+		serverSocket.close();
+
+		for (final Link link : links) {
+			link.socket.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.dezzy.dictionary.main;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The protocol spoken between a {@link ReplicationPrimary} and a {@link ReplicationFollower} over a socket. Strings and definitions are written
+ * as in {@link ShardProtocol}. <p>
+ *
+ * When it connects, the follower sends the epoch of the log it last followed (0 if none) and the sequence number of the last change it applied
+ * (-1 if none). From then on, the follower sends the sequence number of the last change it applied (a <code>long</code>) after every message it
+ * handles, and the primary sends messages, each a one-byte type followed by its contents:
+ * <ul>
+ * <li>{@link #SNAPSHOT}: <code>long</code> epoch, dictionary name, <code>long</code> sequence number of the last change included,
+ * 		<code>int</code> count, then a word and a definition per entry. The follower replaces its dictionary with the snapshot.</li>
+ * <li>{@link #CHANGES}: <code>long</code> sequence number of the primary's newest change, <code>int</code> count, then the changes in order
+ * 		(see {@link #writeMutation(DataOutputStream, ReplicationLog.Mutation)})</li>
+ * <li>{@link #HEARTBEAT}: <code>long</code> sequence number of the primary's newest change. Sent when there have been no changes for a while.</li>
+ * </ul>
+ * If the follower's epoch and sequence number match the primary's log, and the changes after that sequence number are still in the log, the primary
+ * only sends those changes; otherwise it starts with a snapshot.
+ *
+ * @author Joe Desmond
+ */
+final class ReplicationProtocol {
+
+	/**
+	 * A snapshot of the whole dictionary
+	 */
+	static final byte SNAPSHOT = 1;
+
+	/**
+	 * A batch of changes
+	 */
+	static final byte CHANGES = 2;
+
+	/**
+	 * No changes; the primary is still there
+	 */
+	static final byte HEARTBEAT = 3;
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private ReplicationProtocol() {
+
+	}
+
+	/**
+	 * Writes one change: <code>long</code> sequence number, <code>long</code> time, one-byte kind, word, then the definition of a
+	 * {@link ReplicationLog#PUT} or the <code>long</code> entry date of a {@link ReplicationLog#CHANGE_DATE}.
+	 *
+	 * @param out stream to write to
+	 * @param mutation change to write
+	 * @throws IOException if there is a problem writing
+	 */
+	static final void writeMutation(final DataOutputStream out, final ReplicationLog.Mutation mutation) throws IOException {
+		out.writeLong(mutation.sequence);
+		out.writeLong(mutation.time);
+		out.writeByte(mutation.op);
+		ShardProtocol.writeString(out, mutation.word);
+
+		if (mutation.op == ReplicationLog.PUT) {
+			ShardProtocol.writeDefinition(out, mutation.definition);
+		} else if (mutation.op == ReplicationLog.CHANGE_DATE) {
+			out.writeLong(mutation.date);
+		}
+	}
+
+	/**
+	 * Reads a change written by {@link #writeMutation(DataOutputStream, ReplicationLog.Mutation)}.
+	 *
+	 * @param in stream to read from
+	 * @return the change
+	 * @throws IOException if there is a problem reading, or the change is of an unknown kind
+	 */
+	static final ReplicationLog.Mutation readMutation(final DataInputStream in) throws IOException {
+		final long sequence = in.readLong();
+		final long time = in.readLong();
+		final byte op = in.readByte();
+		final String word = ShardProtocol.readString(in);
+
+		switch (op) {
+			case ReplicationLog.PUT:
+				return new ReplicationLog.Mutation(sequence, time, op, word, ShardProtocol.readDefinition(in), 0);
+			case ReplicationLog.REMOVE:
+				return new ReplicationLog.Mutation(sequence, time, op, word, null, 0);
+			case ReplicationLog.CHANGE_DATE:
+				return new ReplicationLog.Mutation(sequence, time, op, word, null, in.readLong());
+			default:
+				throw new IOException("Unknown change " + op);
+		}
+	}
+}
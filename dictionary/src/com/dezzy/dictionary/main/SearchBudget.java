@@ -0,0 +1,269 @@
+package com.dezzy.dictionary.main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how long a search can run. A search is stopped when it has run for too long, when its regular expression has taken too many steps, or when
+ * it is cancelled from another thread; it then returns the results found so far, and {@link #stopReason()} says why they are incomplete. <p>
+ *
+ * A step is one character read by the regular expression engine. {@link java.util.regex.Matcher} cannot be interrupted, so a search matches each
+ * entry through a {@link Meter}: a {@link CharSequence} that counts the characters read and, every few thousand of them, checks the budget and
+ * throws {@link Exhausted} out of the matcher if it has run out. A pattern that backtracks catastrophically reads characters all the time, so it
+ * is stopped within a few microseconds of running out. <p>
+ *
+ * One budget can be shared by several searches running at once, such as the searches of every dictionary in a workspace; each thread must use its
+ * own meter.
+ *
+ * @author Joe Desmond
+ */
+public final class SearchBudget {
+
+	/**
+	 * Time limit of {@link #standard()} budgets in milliseconds, from the <code>dictionary.search.timeout</code> system property (10 seconds by default)
+	 */
+	public static final long STANDARD_TIMEOUT_MILLIS = Long.getLong("dictionary.search.timeout", 10 * 1000);
+
+	/**
+	 * Step limit of {@link #standard()} budgets, from the <code>dictionary.search.steps</code> system property (a billion by default, several times
+	 * what a simple expression needs to search ten million entries)
+	 */
+	public static final long STANDARD_MAX_STEPS = Long.getLong("dictionary.search.steps", 1000L * 1000 * 1000);
+
+	/**
+	 * Number of steps a meter takes between checks of the budget
+	 */
+	private static final int CHECK_INTERVAL = 4096;
+
+	/**
+	 * Thrown through the regular expression engine to stop a search whose budget has run out. It has no stack trace; it is always caught by the search.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Exhausted extends RuntimeException {
+		private static final long serialVersionUID = -1747390276718474383L;
+
+		/**
+		 * Creates the exception.
+		 */
+		private Exhausted() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * The single instance of {@link Exhausted}
+	 */
+	private static final Exhausted EXHAUSTED = new Exhausted();
+
+	/**
+	 * Counts the steps taken by one thread, and presents the text being matched to the regular expression engine.
+	 *
+	 * @author Joe Desmond
+	 */
+	final class Meter implements CharSequence {
+
+		/**
+		 * Text being matched
+		 */
+		private String text = "";
+
+		/**
+		 * Steps taken since the budget was last checked
+		 */
+		private int steps = 0;
+
+		/**
+		 * Creates a meter.
+		 */
+		private Meter() {
+
+		}
+
+		/**
+		 * Starts matching another text.
+		 *
+		 * @param _text text to match next
+		 * @return this meter, to be passed to {@link java.util.regex.Matcher#reset(CharSequence)}
+		 */
+		final Meter of(final String _text) {
+			text = _text;
+			return this;
+		}
+
+		/**
+		 * Counts one step, and checks the budget every {@link #CHECK_INTERVAL} steps. Searches also count a step for every entry they visit, so that
+		 * a search that skips most entries without matching them still checks its budget.
+		 *
+		 * @throws Exhausted if the budget has run out
+		 */
+		final void step() {
+			if (++steps == CHECK_INTERVAL) {
+				steps = 0;
+				charge(CHECK_INTERVAL);
+			}
+		}
+
+		/**
+		 * Counts several steps, and checks the budget if it is due.
+		 *
+		 * @param count number of steps
+		 * @throws Exhausted if the budget has run out
+		 */
+		final void step(final int count) {
+			steps += count;
+			if (steps >= CHECK_INTERVAL) {
+				final int taken = steps;
+				steps = 0;
+				charge(taken);
+			}
+		}
+
+		@Override
+		public final char charAt(final int index) {
+			step();
+			return text.charAt(index);
+		}
+
+		@Override
+		public final int length() {
+			return text.length();
+		}
+
+		@Override
+		public final CharSequence subSequence(final int start, final int end) {
+			return text.subSequence(start, end);
+		}
+
+		@Override
+		public final String toString() {
+			return text;
+		}
+	}
+
+	/**
+	 * Time limit in nanoseconds
+	 */
+	private final long timeoutNanos;
+
+	/**
+	 * Step limit
+	 */
+	private final long maxSteps;
+
+	/**
+	 * Value of {@link System#nanoTime()} when the budget was created
+	 */
+	private final long start = System.nanoTime();
+
+	/**
+	 * Steps taken by every meter, up to their last check
+	 */
+	private final AtomicLong steps = new AtomicLong();
+
+	/**
+	 * Why the budget ran out, or null if it has not
+	 */
+	private volatile String stopReason = null;
+
+	/**
+	 * Creates a budget. The time limit starts now.
+	 *
+	 * @param timeoutMillis time limit in milliseconds
+	 * @param _maxSteps step limit
+	 */
+	public SearchBudget(final long timeoutMillis, final long _maxSteps) {
+		timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		maxSteps = _maxSteps;
+	}
+
+	/**
+	 * Creates a budget with the standard limits ({@link #STANDARD_TIMEOUT_MILLIS} and {@link #STANDARD_MAX_STEPS}).
+	 *
+	 * @return a new budget
+	 */
+	public static final SearchBudget standard() {
+		return new SearchBudget(STANDARD_TIMEOUT_MILLIS, STANDARD_MAX_STEPS);
+	}
+
+	/**
+	 * Creates a budget that only runs out if it is cancelled.
+	 *
+	 * @return a new budget
+	 */
+	public static final SearchBudget unlimited() {
+		return new SearchBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Stops the searches using this budget. They return the results found so far. Can be called from any thread.
+	 */
+	public final void cancel() {
+		stop("was cancelled");
+	}
+
+	/**
+	 * Returns why the budget ran out.
+	 *
+	 * @return "was cancelled", "ran out of time" or "ran out of steps", or null if the budget has not run out
+	 */
+	public final String stopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * Returns the number of steps taken so far by the searches using this budget (characters read and entries visited), up to their last check.
+	 *
+	 * @return steps taken
+	 */
+	public final long steps() {
+		return steps.get();
+	}
+
+	/**
+	 * Returns true if the budget has run out, so the results of the searches using it may be incomplete.
+	 *
+	 * @return true if the budget ran out
+	 */
+	public final boolean exhausted() {
+		return stopReason != null;
+	}
+
+	/**
+	 * Creates a meter for one thread of a search.
+	 *
+	 * @return a new meter
+	 */
+	final Meter meter() {
+		return new Meter();
+	}
+
+	/**
+	 * Adds steps taken by a meter and checks the limits.
+	 *
+	 * @param taken steps taken since the meter's last check
+	 * @throws Exhausted if the budget has run out
+	 */
+	private final void charge(final int taken) {
+		if (steps.addAndGet(taken) > maxSteps) {
+			stop("ran out of steps");
+		} else if (System.nanoTime() - start > timeoutNanos) {
+			stop("ran out of time");
+		}
+
+		if (stopReason != null) {
+			throw EXHAUSTED;
+		}
+	}
+
+	/**
+	 * Records why the budget ran out, unless it already has.
+	 *
+	 * @param reason reason
+	 */
+	private final synchronized void stop(final String reason) {
+		if (stopReason == null) {
+			stopReason = reason;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.dezzy.dictionary.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+
+/**
+ * The results of a search, read one page at a time, most relevant first (by score, then in alphabetical order, ignoring case). The results are kept
+ * in the order the search found them, and sorted only as far as the pages that have been read: the first page comes from a binary heap built over
+ * every result in linear time, and each result shown takes one step of heap selection. So a broad search costs one pass over its results instead
+ * of a full sort and a printout of every result, and a page that has been read once is read again in the same order. <p>
+ *
+ * A cursor sees the dictionary as it was searched. Once the dictionary changes, {@link #valid()} returns false and the search should be repeated.
+ * A cursor is not thread safe.
+ *
+ * @author Joe Desmond
+ */
+public final class SearchCursor {
+
+	/**
+	 * Number of results on a page, from the <code>dictionary.search.page</code> system property (20 by default)
+	 */
+	public static final int DEFAULT_PAGE_SIZE = Math.max(1, Integer.getInteger("dictionary.search.page", 20));
+
+	/**
+	 * Dictionary that was searched
+	 */
+	final Dictionary dictionary;
+
+	/**
+	 * Version of the dictionary that was searched
+	 */
+	private final long version;
+
+	/**
+	 * Every result, in the order the search found them
+	 */
+	private final SearchResult[] results;
+
+	/**
+	 * Lowercase definition strings of the results, by index in {@link #results}; computed when two results with the same score are first compared
+	 */
+	private final String[] keys;
+
+	/**
+	 * Indices in {@link #results} of the results that have not been sorted yet: a binary heap of the first {@link #heapSize}, best at the top
+	 */
+	private final int[] heap;
+
+	/**
+	 * Number of results in {@link #heap}
+	 */
+	private int heapSize;
+
+	/**
+	 * Indices in {@link #results} of the best results in order: the first {@link #sorted} have been taken from the heap
+	 */
+	private final int[] order;
+
+	/**
+	 * Number of results that have been taken from the heap
+	 */
+	private int sorted = 0;
+
+	/**
+	 * Number of results on a page
+	 */
+	private final int pageSize;
+
+	/**
+	 * Why the search stopped before it finished, or null if it finished
+	 */
+	private final String stopReason;
+
+	/**
+	 * Page returned by {@link #next()}
+	 */
+	private int nextPage = 0;
+
+	/**
+	 * Creates a cursor over the results of a search.
+	 *
+	 * @param _dictionary dictionary that was searched
+	 * @param _version version of the dictionary that was searched
+	 * @param matches results with a nonzero score, in any order
+	 * @param _pageSize number of results on a page
+	 * @param _stopReason why the search stopped before it finished (see {@link SearchBudget#stopReason()}), or null
+	 */
+	SearchCursor(final Dictionary _dictionary, final long _version, final List<SearchResult> matches, final int _pageSize, final String _stopReason) {
+		dictionary = _dictionary;
+		version = _version;
+		results = matches.toArray(new SearchResult[matches.size()]);
+		keys = new String[results.length];
+		heap = new int[results.length];
+		heapSize = results.length;
+		order = new int[results.length];
+		pageSize = _pageSize;
+		stopReason = _stopReason;
+
+		for (int i = 0; i < heapSize; i++) {
+			heap[i] = i;
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Returns the number of results.
+	 *
+	 * @return number of results
+	 */
+	public final int size() {
+		return results.length;
+	}
+
+	/**
+	 * Returns the number of pages.
+	 *
+	 * @return number of pages; 0 if there are no results
+	 */
+	public final int pageCount() {
+		return (results.length + pageSize - 1) / pageSize;
+	}
+
+	/**
+	 * Returns why the search stopped before it finished, in the words of {@link SearchBudget#stopReason()}.
+	 *
+	 * @return the reason, or null if every result was found
+	 */
+	public final String stopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * Returns false once the dictionary has changed since it was searched, so that the results may be out of date.
+	 *
+	 * @return true if the dictionary has not changed
+	 */
+	public final boolean valid() {
+		return dictionary.version() == version;
+	}
+
+	/**
+	 * Returns true if {@link #next()} has a page to return.
+	 *
+	 * @return true if there are more pages
+	 */
+	public final boolean hasNext() {
+		return nextPage < pageCount();
+	}
+
+	/**
+	 * Returns the index of the page that {@link #next()} returns.
+	 *
+	 * @return index of the next page, from 0
+	 */
+	public final int nextPageIndex() {
+		return nextPage;
+	}
+
+	/**
+	 * Returns the page after the last one returned by this method or {@link #page(int)}, or the first page if neither has been called.
+	 *
+	 * @return the results on the next page; empty if there are no more pages
+	 */
+	public final List<SearchResult> next() {
+		return hasNext() ? page(nextPage) : Collections.emptyList();
+	}
+
+	/**
+	 * Returns one page of results. {@link #next()} returns the page after it.
+	 *
+	 * @param index index of the page, from 0
+	 * @return the results on the page, most relevant first
+	 * @throws IndexOutOfBoundsException if there is no such page
+	 */
+	public final List<SearchResult> page(final int index) {
+		if (index < 0 || index >= pageCount()) {
+			throw new IndexOutOfBoundsException("Page " + index + " of " + pageCount());
+		}
+
+		final int start = index * pageSize;
+		final int end = Math.min(results.length, start + pageSize);
+		final List<SearchResult> page = new ArrayList<SearchResult>(end - start);
+
+		while (sorted < end) {
+			takeBest();
+		}
+		for (int i = start; i < end; i++) {
+			page.add(results[order[i]]);
+		}
+
+		nextPage = index + 1;
+		return page;
+	}
+
+	/**
+	 * Moves the best result left in the heap to the end of the sorted results.
+	 */
+	private final void takeBest() {
+		order[sorted++] = heap[0];
+		heap[0] = heap[--heapSize];
+		siftDown(0);
+	}
+
+	/**
+	 * Moves an element of the heap down until it is better than both of its children.
+	 *
+	 * @param index index of the element in the heap
+	 */
+	private final void siftDown(final int index) {
+		final int element = heap[index];
+		int i = index;
+
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && better(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!better(heap[child], element)) {
+				break;
+			}
+
+			heap[i] = heap[child];
+			i = child;
+		}
+
+		heap[i] = element;
+	}
+
+	/**
+	 * Returns true if one result comes before another: it has a higher score, or the same score and comes first in alphabetical order (ignoring
+	 * case), or the same lowercase text and was found first.
+	 *
+	 * @param a index of a result
+	 * @param b index of another result
+	 * @return true if <code>a</code> comes first
+	 */
+	private final boolean better(final int a, final int b) {
+		if (results[a].score != results[b].score) {
+			return results[a].score > results[b].score;
+		}
+
+		final int comparison = key(a).compareTo(key(b));
+		return (comparison == 0) ? a < b : comparison < 0;
+	}
+
+	/**
+	 * Returns the lowercase definition string of a result.
+	 *
+	 * @param index index of the result
+	 * @return lowercase definition string
+	 */
+	private final String key(final int index) {
+		if (keys[index] == null) {
+			keys[index] = results[index].definitionString.toLowerCase();
+		}
+
+		return keys[index];
+	}
+}
@@ -0,0 +1,157 @@
+package com.dezzy.dictionary.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+
+/**
+ * One partition of a {@link ShardedDictionary}: a dictionary holding the words whose hash maps to this shard. A shard is either hosted in this JVM
+ * ({@link LocalShard}) or by a worker process ({@link RemoteShard}); the methods throw IOException because talking to a worker can fail. <p>
+ *
+ * Shards may be called from several threads at once.
+ *
+ * @author Joe Desmond
+ */
+interface Shard extends Closeable {
+
+	/**
+	 * Entry dates and access counts of every entry in a shard, for {@link com.dezzy.dictionary.stats.Statistics}.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Summary {
+
+		/**
+		 * Entry date of every entry in epoch milliseconds, sorted in ascending order
+		 */
+		final long[] sortedEntryTimes;
+
+		/**
+		 * Number of entries by access count, in power-of-two buckets (see {@link Dictionary#getAccessCountHistogram()})
+		 */
+		final long[] accessCounts;
+
+		/**
+		 * Creates a summary.
+		 *
+		 * @param _sortedEntryTimes sorted entry dates
+		 * @param _accessCounts access count histogram
+		 */
+		Summary(final long[] _sortedEntryTimes, final long[] _accessCounts) {
+			sortedEntryTimes = _sortedEntryTimes;
+			accessCounts = _accessCounts;
+		}
+	}
+
+	/**
+	 * Looks up a definition; counts as an access.
+	 *
+	 * @param word word/phrase
+	 * @return the definition, or {@link Optional#empty()} if the word is not in this shard
+	 * @throws IOException if the shard cannot be reached
+	 */
+	Optional<Definition> find(String word) throws IOException;
+
+	/**
+	 * Adds a definition if the word is not defined yet; see {@link Dictionary#weakDefine(String, Definition)}.
+	 *
+	 * @param word word/phrase
+	 * @param definition definition
+	 * @return true if the definition was added
+	 * @throws IOException if the shard cannot be reached
+	 */
+	boolean weakDefine(String word, Definition definition) throws IOException;
+
+	/**
+	 * Adds or replaces a definition; see {@link Dictionary#strongDefine(String, Definition)}.
+	 *
+	 * @param word word/phrase
+	 * @param definition definition
+	 * @return true if a definition existed before
+	 * @throws IOException if the shard cannot be reached
+	 */
+	boolean strongDefine(String word, Definition definition) throws IOException;
+
+	/**
+	 * Removes a definition.
+	 *
+	 * @param word word/phrase
+	 * @return true if the word was defined
+	 * @throws IOException if the shard cannot be reached
+	 */
+	boolean remove(String word) throws IOException;
+
+	/**
+	 * Changes the entry date of a definition; see {@link Dictionary#changeEntryDate(String, Date)}.
+	 *
+	 * @param word word/phrase
+	 * @param date new entry date
+	 * @return the old entry date, or {@link Optional#empty()} if the word is not in this shard
+	 * @throws IOException if the shard cannot be reached
+	 */
+	Optional<Date> changeEntryDate(String word, Date date) throws IOException;
+
+	/**
+	 * Searches every entry in this shard.
+	 *
+	 * @param regex regular expression search term
+	 * @return results with a nonzero score, most relevant first
+	 * @throws IOException if the shard cannot be reached
+	 */
+	List<SearchResult> search(String regex) throws IOException;
+
+	/**
+	 * Returns the entry dates and access counts of every entry.
+	 *
+	 * @return summary of this shard
+	 * @throws IOException if the shard cannot be reached
+	 */
+	Summary summary() throws IOException;
+
+	/**
+	 * Returns the number of entries in this shard.
+	 *
+	 * @return size of the shard
+	 * @throws IOException if the shard cannot be reached
+	 */
+	int size() throws IOException;
+
+	/**
+	 * Saves this shard to a dictionary file, which can also be opened on its own like any dictionary.
+	 *
+	 * @param path path of the file
+	 * @throws IOException if the shard cannot be reached or the file cannot be written
+	 */
+	void save(String path) throws IOException;
+
+	/**
+	 * Removes and returns every entry that does not belong in this shard when the dictionary has <code>shardCount</code> shards,
+	 * with its entry date and access count. Used for resharding.
+	 *
+	 * @param index index of this shard
+	 * @param shardCount new number of shards
+	 * @return the entries that must move to other shards
+	 * @throws IOException if the shard cannot be reached
+	 */
+	List<Map.Entry<String, Definition>> takeMisplaced(int index, int shardCount) throws IOException;
+
+	/**
+	 * Adds entries moved from other shards, keeping their entry dates and access counts.
+	 *
+	 * @param entries entries to add
+	 * @throws IOException if the shard cannot be reached
+	 */
+	void putAll(List<Map.Entry<String, Definition>> entries) throws IOException;
+
+	/**
+	 * Describes where this shard is hosted.
+	 *
+	 * @return short description, such as "this process" or a worker's process ID
+	 */
+	String host();
+}
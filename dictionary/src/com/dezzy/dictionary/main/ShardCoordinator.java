@@ -0,0 +1,361 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+
+/**
+ * Command line front end for a {@link ShardedDictionary}: reads commands line-by-line from the standard input, like {@link Main}, and routes them
+ * to the shards. <p>
+ *
+ * Usage: <code>java -cp bin com.dezzy.dictionary.main.ShardCoordinator [-workers]</code>. With <code>-workers</code>, every shard is hosted by its own
+ * {@link ShardServer} worker process on this machine; otherwise every shard is kept in this process. Commands:
+ * <ul>
+ * <li><code>create [shards] [name]</code>: creates an empty sharded dictionary</li>
+ * <li><code>open [directory]</code>: opens a sharded dictionary, loading its shards in parallel</li>
+ * <li><code>import [file]</code>: copies every definition of an ordinary dictionary file into the open sharded dictionary</li>
+ * <li><code>save [directory]</code>: saves every shard in parallel; with no directory, saves to the directory it was opened from or last saved to</li>
+ * <li><code>find</code>, <code>weakdefine</code>, <code>strongdefine</code>, <code>remove</code>, <code>search</code> and <code>printstats</code>:
+ * 		like the commands of {@link CommandHandler}, for the whole sharded dictionary (definitions use the current date)</li>
+ * <li><code>shards</code>: shows the size and host of every shard</li>
+ * <li><code>reshard [shards]</code>: changes the number of shards, moving only the entries that change shards</li>
+ * <li><code>close</code> and <code>quit</code></li>
+ * </ul>
+ *
+ * @author Joe Desmond
+ */
+public final class ShardCoordinator {
+
+	/**
+	 * Date format used when printing definitions
+	 */
+	private static final DateTimeFormatter DATE_OUTPUT_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss a");
+
+	/**
+	 * Matches a definition argument: the word in quotes, then the definition
+	 */
+	private static final Pattern DEFINITION_ARG = Pattern.compile("\"([^\"]+)\"\\s+(.+)");
+
+	/**
+	 * True if shards are hosted by worker processes
+	 */
+	private final boolean workerProcesses;
+
+	/**
+	 * The open sharded dictionary, or null if there is none
+	 */
+	private ShardedDictionary dictionary;
+
+	/**
+	 * Directory the dictionary was opened from or last saved to, or null
+	 */
+	private String directory;
+
+	/**
+	 * Creates a coordinator with no open dictionary.
+	 *
+	 * @param _workerProcesses true to host shards in worker processes
+	 */
+	private ShardCoordinator(final boolean _workerProcesses) {
+		workerProcesses = _workerProcesses;
+	}
+
+	/**
+	 * Reads commands from the standard input until <code>quit</code>, then closes the open dictionary (stopping its worker processes).
+	 *
+	 * @param args either no arguments, or <code>-workers</code>
+	 * @throws IOException if there is a problem reading the standard input
+	 */
+	public static final void main(final String ... args) throws IOException {
+		final ShardCoordinator coordinator = new ShardCoordinator(args.length == 1 && args[0].equalsIgnoreCase("-workers"));
+		final BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+
+		while (true) {
+			System.out.println();
+			System.out.println("Enter a command: ");
+			final String input = br.readLine();
+
+			if (input == null || input.equalsIgnoreCase("quit")) {
+				System.out.println("Quitting...");
+				System.out.println(coordinator.close());
+				return;
+			}
+
+			String command = input;
+			String arg = "";
+			if (input.contains(" ")) {
+				command = input.substring(0, input.indexOf(" ")).toLowerCase();
+				arg = input.substring(input.indexOf(" ") + 1);
+			}
+
+			String status;
+			try {
+				status = coordinator.dispatch(command, arg);
+			} catch (IllegalStateException | IllegalArgumentException | UncheckedIOException e) {
+				e.printStackTrace();
+				status = "ERROR: " + e.getMessage();
+			}
+
+			System.out.println(status);
+		}
+	}
+
+	/**
+	 * Executes a command and returns a status string.
+	 *
+	 * @param command lowercase command name
+	 * @param arg command argument
+	 * @return status string
+	 */
+	private final String dispatch(final String command, final String arg) {
+		if (!command.equals("create") && !command.equals("open") && dictionary == null) {
+			return "ERROR: No sharded dictionary is open!";
+		}
+
+		switch (command) {
+			case "create":
+				return create(arg);
+			case "open":
+				return open(arg);
+			case "import":
+				return importFrom(arg);
+			case "save":
+				return save(arg);
+			case "find":
+				return find(arg);
+			case "weakdefine":
+				return define(false, arg);
+			case "strongdefine":
+				return define(true, arg);
+			case "remove":
+				return dictionary.remove(arg) ? "Removed \"" + arg + "\" from the dictionary" : "ERROR: No definition for \"" + arg + "\" exists in the dictionary!";
+			case "search":
+				return search(arg);
+			case "printstats":
+				return dictionary.statistics().toString();
+			case "shards":
+				return dictionary.shardReport();
+			case "reshard":
+				return reshard(arg);
+			case "close":
+				return close();
+			default:
+				return "ERROR: Invalid command!";
+		}
+	}
+
+	/**
+	 * Creates an empty sharded dictionary, closing the open one.
+	 *
+	 * @param arg shard count and name, separated by a space
+	 * @return status string
+	 */
+	private final String create(final String arg) {
+		if (!arg.contains(" ")) {
+			return "ERROR: Expected a shard count and a name!";
+		}
+
+		final int shardCount = Integer.parseInt(arg.substring(0, arg.indexOf(" ")));
+		final String name = arg.substring(arg.indexOf(" ") + 1);
+
+		close();
+		try {
+			dictionary = ShardedDictionary.create(name, shardCount, workerProcesses);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "ERROR: Problem starting shards!";
+		}
+
+		directory = null;
+		return "Created \"" + name + "\" with " + shardCount + " shards";
+	}
+
+	/**
+	 * Opens a sharded dictionary, closing the open one.
+	 *
+	 * @param _directory directory holding the shard files
+	 * @return status string
+	 */
+	private final String open(final String _directory) {
+		close();
+
+		final long start = System.nanoTime();
+		try {
+			dictionary = ShardedDictionary.open(_directory, workerProcesses);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "ERROR: Problem opening sharded dictionary at \"" + _directory + "\": " + e.getMessage();
+		}
+
+		directory = _directory;
+		return "Opened \"" + dictionary.name + "\" (" + dictionary.size() + " definitions in " + dictionary.shardCount() + " shards, "
+				+ (System.nanoTime() - start) / 1_000_000 + " ms)";
+	}
+
+	/**
+	 * Copies every definition of an ordinary dictionary file into the open sharded dictionary.
+	 *
+	 * @param path path of a dictionary file
+	 * @return status string
+	 */
+	private final String importFrom(final String path) {
+		final Dictionary source;
+		try {
+			source = Dictionary.load(path);
+		} catch (IOException | ClassNotFoundException e) {
+			e.printStackTrace();
+			return "ERROR: Problem opening dictionary at \"" + path + "\"";
+		}
+
+		final long start = System.nanoTime();
+		final int count = dictionary.addAll(source);
+		return "Imported " + count + " definitions from \"" + source.name + "\" in " + (System.nanoTime() - start) / 1_000_000 + " ms";
+	}
+
+	/**
+	 * Saves every shard.
+	 *
+	 * @param optionalDirectory directory to save to, or the empty string to use the last directory
+	 * @return status string
+	 */
+	private final String save(final String optionalDirectory) {
+		if (!optionalDirectory.isEmpty()) {
+			directory = optionalDirectory;
+		} else if (directory == null) {
+			return "ERROR: Nowhere to save to!";
+		}
+
+		final long start = System.nanoTime();
+		try {
+			dictionary.save(directory);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "ERROR: Problem saving sharded dictionary: " + e.getMessage();
+		}
+
+		return "Saved " + dictionary.shardCount() + " shards to \"" + directory + "\" in " + (System.nanoTime() - start) / 1_000_000 + " ms";
+	}
+
+	/**
+	 * Finds the definition of a word in its shard.
+	 *
+	 * @param word word/phrase to look up
+	 * @return the definition, or a status string if there is none
+	 */
+	private final String find(final String word) {
+		final Optional<Definition> definition = dictionary.getDefinition(word);
+
+		if (definition.isEmpty()) {
+			return "No definition exists for \"" + word + "\"";
+		}
+
+		final String dateString = DATE_OUTPUT_FORMAT.format(LocalDateTime.ofInstant(definition.get().entryDate().toInstant(), ZoneId.systemDefault()));
+		return word + ":\t" + definition.get().definition() + System.lineSeparator() + System.lineSeparator() + dateString;
+	}
+
+	/**
+	 * Adds a definition, dated now, to the shard of its word.
+	 *
+	 * @param strong true if an existing definition should be replaced
+	 * @param defString definition argument of the form <code>"word" definition</code>
+	 * @return status string
+	 */
+	private final String define(final boolean strong, final String defString) {
+		final Matcher matcher = DEFINITION_ARG.matcher(defString.trim());
+		if (!matcher.matches()) {
+			return "ERROR: Malformed definition argument!";
+		}
+
+		final String word = matcher.group(1).trim();
+		final Definition definition = new Definition(matcher.group(2).trim(), new Date());
+
+		if (!strong) {
+			return dictionary.weakDefine(word, definition) ? "\"" + word + "\" was defined successfully." : "A definition already exists for \"" + word + "\"!";
+		} else {
+			return dictionary.strongDefine(word, definition) ? "Definition for \"" + word + "\" was updated." : "\"" + word + "\" was defined successfully.";
+		}
+	}
+
+	/**
+	 * Searches every shard.
+	 *
+	 * @param regex search expression
+	 * @return list of results (delimited by newlines), or status string
+	 */
+	private final String search(final String regex) {
+		try {
+			Pattern.compile(regex);
+		} catch (PatternSyntaxException e) {
+			return "ERROR: Invalid search expression!";
+		}
+
+		final List<SearchResult> results = dictionary.search(regex);
+		if (results.isEmpty()) {
+			return "No results";
+		}
+
+		final StringBuilder sb = new StringBuilder("Results (" + results.size() + "):" + System.lineSeparator());
+		for (final SearchResult result : results) {
+			sb.append(System.lineSeparator() + result.definitionString);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Changes the number of shards.
+	 *
+	 * @param arg new shard count
+	 * @return status string
+	 */
+	private final String reshard(final String arg) {
+		final int oldCount = dictionary.shardCount();
+		final long start = System.nanoTime();
+		final int moved;
+
+		try {
+			moved = dictionary.reshard(Integer.parseInt(arg.trim()));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "ERROR: Problem resharding: " + e.getMessage();
+		}
+
+		return "Resharded \"" + dictionary.name + "\" from " + oldCount + " to " + dictionary.shardCount() + " shards; moved " + moved + " definitions in "
+				+ (System.nanoTime() - start) / 1_000_000 + " ms";
+	}
+
+	/**
+	 * Closes the open dictionary, if there is one, stopping its worker processes. Does not save the dictionary!
+	 *
+	 * @return status string
+	 */
+	private final String close() {
+		if (dictionary == null) {
+			return "No sharded dictionary is open!";
+		}
+
+		final String name = dictionary.name;
+		try {
+			dictionary.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "ERROR: Problem stopping the shards of \"" + name + "\"!";
+		} finally {
+			dictionary = null;
+		}
+
+		return "Closed \"" + name + "\"";
+	}
+}
@@ -0,0 +1,233 @@
+package com.dezzy.dictionary.main;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The protocol spoken between a {@link RemoteShard} and a {@link ShardServer} over a socket. Every request is a one-byte opcode followed by its
+ * arguments; every response is a one-byte status ({@link #OK} or {@link #FAILED}) followed by the result, or by an error message if the request failed.
+ * Requests on one connection are answered in order. <p>
+ *
+ * Strings are an <code>int</code> length and UTF-8 bytes; definitions are the definition string, a <code>long</code> entry date (epoch milliseconds)
+ * and an <code>int</code> access count. All integers are big-endian.
+ *
+ * @author Joe Desmond
+ */
+final class ShardProtocol {
+
+	/**
+	 * Line printed by a worker process once it is listening, followed by its port
+	 */
+	static final String READY = "LISTENING";
+
+	/**
+	 * Status of a successful response
+	 */
+	static final byte OK = 0;
+
+	/**
+	 * Status of a failed request; followed by an error message
+	 */
+	static final byte FAILED = 1;
+
+	/**
+	 * Look up a word: word; returns a boolean and, if true, the definition
+	 */
+	static final byte FIND = 1;
+
+	/**
+	 * Weak define: word, definition; returns a boolean
+	 */
+	static final byte WEAK_DEFINE = 2;
+
+	/**
+	 * Strong define: word, definition; returns a boolean
+	 */
+	static final byte STRONG_DEFINE = 3;
+
+	/**
+	 * Remove a word: word; returns a boolean
+	 */
+	static final byte REMOVE = 4;
+
+	/**
+	 * Change an entry date: word, <code>long</code> date; returns a boolean and, if true, the <code>long</code> old date
+	 */
+	static final byte CHANGE_DATE = 5;
+
+	/**
+	 * Search: regex; returns an <code>int</code> count, then a string and an <code>int</code> score per result
+	 */
+	static final byte SEARCH = 6;
+
+	/**
+	 * Summary: returns the sorted entry dates and the access count histogram, each as an <code>int</code> length and <code>long</code>s
+	 */
+	static final byte SUMMARY = 7;
+
+	/**
+	 * Size: returns an <code>int</code>
+	 */
+	static final byte SIZE = 8;
+
+	/**
+	 * Save: path; returns nothing
+	 */
+	static final byte SAVE = 9;
+
+	/**
+	 * Take misplaced entries: <code>int</code> shard index, <code>int</code> shard count; returns entries (see {@link #writeEntries})
+	 */
+	static final byte TAKE_MISPLACED = 10;
+
+	/**
+	 * Put entries: entries (see {@link #writeEntries}); returns nothing
+	 */
+	static final byte PUT_ALL = 11;
+
+	/**
+	 * Name of the worker's dictionary: returns a string
+	 */
+	static final byte NAME = 12;
+
+	/**
+	 * Stop the worker process; returns nothing
+	 */
+	static final byte SHUTDOWN = 13;
+
+	/**
+	 * This class should never be instantiated
+	 */
+	private ShardProtocol() {
+
+	}
+
+	/**
+	 * Writes a length-prefixed UTF-8 string.
+	 *
+	 * @param out stream to write to
+	 * @param string string to write
+	 * @throws IOException if there is a problem writing
+	 */
+	static final void writeString(final DataOutputStream out, final String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 *
+	 * @param in stream to read from
+	 * @return the string
+	 * @throws IOException if there is a problem reading
+	 */
+	static final String readString(final DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a definition with its entry date and access count, without counting as an access.
+	 *
+	 * @param out stream to write to
+	 * @param definition definition to write
+	 * @throws IOException if there is a problem writing
+	 */
+	static final void writeDefinition(final DataOutputStream out, final Definition definition) throws IOException {
+		writeString(out, definition.rawDefinition());
+		out.writeLong(definition.entryDate().getTime());
+		out.writeInt(definition.accesses());
+	}
+
+	/**
+	 * Reads a definition written by {@link #writeDefinition(DataOutputStream, Definition)}.
+	 *
+	 * @param in stream to read from
+	 * @return a definition that holds its own data
+	 * @throws IOException if there is a problem reading
+	 */
+	static final Definition readDefinition(final DataInputStream in) throws IOException {
+		final String text = readString(in);
+		final long entryDate = in.readLong();
+
+		return new Definition(text, new Date(entryDate), in.readInt());
+	}
+
+	/**
+	 * Writes a list of entries: an <code>int</code> count, then a word and a definition per entry.
+	 *
+	 * @param out stream to write to
+	 * @param entries entries to write
+	 * @throws IOException if there is a problem writing
+	 */
+	static final void writeEntries(final DataOutputStream out, final List<Map.Entry<String, Definition>> entries) throws IOException {
+		out.writeInt(entries.size());
+
+		for (final Map.Entry<String, Definition> entry : entries) {
+			writeString(out, entry.getKey());
+			writeDefinition(out, entry.getValue());
+		}
+	}
+
+	/**
+	 * Reads a list of entries written by {@link #writeEntries(DataOutputStream, List)}.
+	 *
+	 * @param in stream to read from
+	 * @return the entries
+	 * @throws IOException if there is a problem reading
+	 */
+	static final List<Map.Entry<String, Definition>> readEntries(final DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		final List<Map.Entry<String, Definition>> entries = new ArrayList<Map.Entry<String, Definition>>(count);
+
+		for (int i = 0; i < count; i++) {
+			final String word = readString(in);
+			entries.add(new AbstractMap.SimpleImmutableEntry<String, Definition>(word, readDefinition(in)));
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Writes an array of longs: an <code>int</code> length, then the elements.
+	 *
+	 * @param out stream to write to
+	 * @param values array to write
+	 * @throws IOException if there is a problem writing
+	 */
+	static final void writeLongs(final DataOutputStream out, final long[] values) throws IOException {
+		out.writeInt(values.length);
+
+		for (final long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	/**
+	 * Reads an array written by {@link #writeLongs(DataOutputStream, long[])}.
+	 *
+	 * @param in stream to read from
+	 * @return the array
+	 * @throws IOException if there is a problem reading
+	 */
+	static final long[] readLongs(final DataInputStream in) throws IOException {
+		final long[] values = new long[in.readInt()];
+
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readLong();
+		}
+
+		return values;
+	}
+}
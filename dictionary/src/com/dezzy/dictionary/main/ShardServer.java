@@ -0,0 +1,199 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+
+/**
+ * A worker process that hosts one shard of a {@link ShardedDictionary} and answers requests from a {@link RemoteShard} (see {@link ShardProtocol}). <p>
+ *
+ * Usage: <code>java -cp bin com.dezzy.dictionary.main.ShardServer [port] [name] [file]</code>, where the file is optional. The worker loads the shard
+ * from the file if it is given, or starts with an empty dictionary with the given name, then listens on the loopback address (port 0 picks a free port) and prints
+ * <code>LISTENING [port]</code> once it is ready. It serves one coordinator connection and exits when that connection closes, so workers
+ * never outlive their coordinator. <p>
+ *
+ * Workers are normally started by {@link ShardedDictionary} itself; they can also be started by hand to watch one shard's output.
+ *
+ * @author Joe Desmond
+ */
+public final class ShardServer {
+
+	/**
+	 * The shard hosted by this worker
+	 */
+	private final LocalShard shard;
+
+	/**
+	 * Creates a server for a shard.
+	 *
+	 * @param _shard shard to host
+	 */
+	private ShardServer(final LocalShard _shard) {
+		shard = _shard;
+	}
+
+	/**
+	 * Loads or creates the shard, waits for a coordinator to connect, and serves it until it disconnects.
+	 *
+	 * @param args port, dictionary name, and optionally the path of the shard file
+	 * @throws IOException if the shard file cannot be read or the socket cannot be opened
+	 * @throws ClassNotFoundException if the shard file is an older dictionary file and a serialized class cannot be found
+	 */
+	public static final void main(final String ... args) throws IOException, ClassNotFoundException {
+		if (args.length != 2 && args.length != 3) {
+			System.out.println("ERROR: Expected [port] [name] [file]");
+			return;
+		}
+
+		final Dictionary dictionary = (args.length == 3) ? Dictionary.load(args[2]) : new Dictionary(args[1]);
+		final ShardServer server = new ShardServer(new LocalShard(dictionary));
+
+		try (ServerSocket serverSocket = new ServerSocket(Integer.parseInt(args[0]), 1, InetAddress.getLoopbackAddress())) {
+			System.out.println(ShardProtocol.READY + " " + serverSocket.getLocalPort());
+			System.out.flush();
+
+			try (Socket socket = serverSocket.accept()) {
+				socket.setTcpNoDelay(true);
+				server.serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+						new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+			}
+		}
+	}
+
+	/**
+	 * Answers requests until the connection closes or a {@link ShardProtocol#SHUTDOWN} request is received. Each result is buffered until the request
+	 * is done, so that a request that fails halfway through can still be answered with {@link ShardProtocol#FAILED}.
+	 *
+	 * @param in requests
+	 * @param out responses
+	 * @throws IOException if there is a problem with the connection
+	 */
+	private final void serve(final DataInputStream in, final DataOutputStream out) throws IOException {
+		while (true) {
+			final byte opcode;
+			try {
+				opcode = in.readByte();
+			} catch (EOFException e) {
+				return;
+			}
+
+			final ByteArrayOutputStream response = new ByteArrayOutputStream();
+			final boolean serving;
+			try {
+				serving = handle(opcode, in, new DataOutputStream(response));
+			} catch (EOFException e) {
+				throw e;
+			} catch (RuntimeException | IOException e) {
+				e.printStackTrace();
+				out.writeByte(ShardProtocol.FAILED);
+				ShardProtocol.writeString(out, String.valueOf(e.getMessage()));
+				out.flush();
+				continue;
+			}
+
+			out.writeByte(ShardProtocol.OK);
+			response.writeTo(out);
+			out.flush();
+
+			if (!serving) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the arguments of one request, carries it out and writes the result.
+	 *
+	 * @param opcode request opcode
+	 * @param in request arguments
+	 * @param out receives the result
+	 * @return false if the request was {@link ShardProtocol#SHUTDOWN}
+	 * @throws IOException if there is a problem reading the arguments or saving the shard
+	 */
+	private final boolean handle(final byte opcode, final DataInputStream in, final DataOutputStream out) throws IOException {
+		switch (opcode) {
+			case ShardProtocol.FIND: {
+				final Optional<Definition> definition = shard.find(ShardProtocol.readString(in));
+				out.writeBoolean(definition.isPresent());
+				if (definition.isPresent()) {
+					// Counts as an access, like find
+					definition.get().definition();
+					ShardProtocol.writeDefinition(out, definition.get());
+				}
+				break;
+			}
+			case ShardProtocol.WEAK_DEFINE: {
+				final String word = ShardProtocol.readString(in);
+				out.writeBoolean(shard.weakDefine(word, ShardProtocol.readDefinition(in)));
+				break;
+			}
+			case ShardProtocol.STRONG_DEFINE: {
+				final String word = ShardProtocol.readString(in);
+				out.writeBoolean(shard.strongDefine(word, ShardProtocol.readDefinition(in)));
+				break;
+			}
+			case ShardProtocol.REMOVE:
+				out.writeBoolean(shard.remove(ShardProtocol.readString(in)));
+				break;
+			case ShardProtocol.CHANGE_DATE: {
+				final String word = ShardProtocol.readString(in);
+				final Optional<Date> oldDate = shard.changeEntryDate(word, new Date(in.readLong()));
+				out.writeBoolean(oldDate.isPresent());
+				if (oldDate.isPresent()) {
+					out.writeLong(oldDate.get().getTime());
+				}
+				break;
+			}
+			case ShardProtocol.SEARCH: {
+				final List<SearchResult> results = shard.search(ShardProtocol.readString(in));
+				out.writeInt(results.size());
+				for (final SearchResult result : results) {
+					ShardProtocol.writeString(out, result.definitionString);
+					out.writeInt(result.score);
+				}
+				break;
+			}
+			case ShardProtocol.SUMMARY: {
+				final Shard.Summary summary = shard.summary();
+				ShardProtocol.writeLongs(out, summary.sortedEntryTimes);
+				ShardProtocol.writeLongs(out, summary.accessCounts);
+				break;
+			}
+			case ShardProtocol.SIZE:
+				out.writeInt(shard.size());
+				break;
+			case ShardProtocol.SAVE:
+				shard.save(ShardProtocol.readString(in));
+				break;
+			case ShardProtocol.TAKE_MISPLACED: {
+				final int index = in.readInt();
+				ShardProtocol.writeEntries(out, shard.takeMisplaced(index, in.readInt()));
+				break;
+			}
+			case ShardProtocol.PUT_ALL:
+				shard.putAll(ShardProtocol.readEntries(in));
+				break;
+			case ShardProtocol.NAME:
+				ShardProtocol.writeString(out, shard.dictionary.name);
+				break;
+			case ShardProtocol.SHUTDOWN:
+				return false;
+			default:
+				throw new IOException("Unknown shard request " + opcode);
+		}
+
+		return true;
+	}
+}
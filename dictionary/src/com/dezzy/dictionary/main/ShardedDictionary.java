@@ -0,0 +1,754 @@
+package com.dezzy.dictionary.main;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+import com.dezzy.dictionary.stats.Statistics;
+
+/**
+ * A dictionary partitioned by word hash into several {@link Shard}s, so that it is not limited to one heap and one file. Each shard is an ordinary
+ * {@link Dictionary} with its own file, <code>shard-[i]-of-[n].dict</code> in the sharded dictionary's directory; shards are loaded and saved in parallel.
+ * Shards are hosted in this JVM, or each by its own {@link ShardServer} worker process on this machine. <p>
+ *
+ * Lookups and changes are routed to the shard that owns the word. Searches and statistics are sent to every shard at once and their results are merged.
+ * Words are assigned to shards by jump consistent hashing, so {@link #reshard(int)} only moves the entries that change shards (about
+ * <code>|new - old| / max(new, old)</code> of them), directly from shard to shard, without writing or reloading the whole dictionary. <p>
+ *
+ * Like {@link Dictionary}, a ShardedDictionary is safe to use from several threads; resharding waits for other operations to finish and blocks
+ * them while it runs. Failures to reach a worker process are thrown as {@link UncheckedIOException}s.
+ *
+ * @author Joe Desmond
+ */
+public final class ShardedDictionary implements Closeable {
+
+	/**
+	 * Name of a shard file; groups are the shard index and shard count
+	 */
+	private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)-of-(\\d+)\\.dict");
+
+	/**
+	 * Name of the dictionary
+	 */
+	public final String name;
+
+	/**
+	 * True if every shard is hosted by its own worker process
+	 */
+	private final boolean workerProcesses;
+
+	/**
+	 * The shards, by index. Replaced by {@link #reshard(int)}; guarded by {@link #lock}
+	 */
+	private List<Shard> shards;
+
+	/**
+	 * Held for reading by every operation, and for writing while resharding or closing
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Runs one task per shard for operations that involve every shard
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a sharded dictionary with no shards yet.
+	 *
+	 * @param _name name of the dictionary
+	 * @param _workerProcesses true to host every shard in its own worker process
+	 */
+	private ShardedDictionary(final String _name, final boolean _workerProcesses) {
+		name = _name;
+		workerProcesses = _workerProcesses;
+		shards = new ArrayList<Shard>();
+		executor = Executors.newCachedThreadPool(task -> {
+			final Thread thread = new Thread(task, "shard-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * A call made on every shard at once by {@link ShardedDictionary#scatter(List, ShardCall)}.
+	 *
+	 * @param <T> result of the call
+	 * @author Joe Desmond
+	 */
+	@FunctionalInterface
+	private interface ShardCall<T> {
+
+		/**
+		 * Makes the call on one shard.
+		 *
+		 * @param index index of the shard
+		 * @param shard the shard
+		 * @return result for this shard
+		 * @throws IOException if the shard cannot be reached
+		 */
+		T call(int index, Shard shard) throws IOException;
+	}
+
+	/**
+	 * Creates an empty sharded dictionary.
+	 *
+	 * @param name name of the dictionary
+	 * @param shardCount number of shards
+	 * @param workerProcesses true to host every shard in its own worker process
+	 * @return the dictionary
+	 * @throws IOException if a worker process cannot be started
+	 */
+	public static final ShardedDictionary create(final String name, final int shardCount, final boolean workerProcesses) throws IOException {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("A sharded dictionary needs at least one shard");
+		}
+
+		final ShardedDictionary dictionary = new ShardedDictionary(name, workerProcesses);
+		dictionary.shards = dictionary.startShards(shardCount, null);
+
+		return dictionary;
+	}
+
+	/**
+	 * Opens a sharded dictionary saved by {@link #save(String)}, loading every shard file in parallel. The name of the dictionary is read from
+	 * the first shard file.
+	 *
+	 * @param directory directory holding the shard files
+	 * @param workerProcesses true to host every shard in its own worker process
+	 * @return the dictionary
+	 * @throws IOException if the directory does not hold a complete set of shard files, or a shard cannot be loaded
+	 */
+	public static final ShardedDictionary open(final String directory, final boolean workerProcesses) throws IOException {
+		final int shardCount = shardCountIn(new File(directory));
+		final String name;
+		try (FileInputStream in = new FileInputStream(shardPath(directory, 0, shardCount))) {
+			name = DictionaryFile.readHeader(in.getChannel()).name;
+		}
+
+		final ShardedDictionary dictionary = new ShardedDictionary(name, workerProcesses);
+		dictionary.shards = dictionary.startShards(shardCount, directory);
+
+		return dictionary;
+	}
+
+	/**
+	 * Finds the number of shards of the sharded dictionary in a directory.
+	 *
+	 * @param directory directory holding the shard files
+	 * @return number of shards
+	 * @throws IOException if the directory does not hold exactly one complete set of shard files
+	 */
+	private static final int shardCountIn(final File directory) throws IOException {
+		final String[] files = directory.list();
+		if (files == null) {
+			throw new IOException("\"" + directory + "\" is not a directory");
+		}
+
+		int shardCount = -1;
+		final BitSet found = new BitSet();
+
+		for (final String file : files) {
+			final Matcher matcher = SHARD_FILE.matcher(file);
+			if (!matcher.matches()) {
+				continue;
+			}
+
+			final int index = Integer.parseInt(matcher.group(1));
+			final int count = Integer.parseInt(matcher.group(2));
+			if (shardCount != -1 && count != shardCount) {
+				throw new IOException("\"" + directory + "\" holds shard files of more than one shard count");
+			}
+
+			shardCount = count;
+			found.set(index);
+		}
+
+		if (shardCount < 1) {
+			throw new IOException("\"" + directory + "\" holds no shard files");
+		}
+
+		final int missing = found.nextClearBit(0);
+		if (missing < shardCount) {
+			throw new IOException("\"" + directory + "\" is missing shard " + missing + " of " + shardCount);
+		}
+
+		return shardCount;
+	}
+
+	/**
+	 * Returns the path of a shard file.
+	 *
+	 * @param directory directory of the sharded dictionary
+	 * @param index shard index
+	 * @param shardCount number of shards
+	 * @return absolute path of the shard file
+	 */
+	private static final String shardPath(final String directory, final int index, final int shardCount) {
+		return new File(directory, "shard-" + index + "-of-" + shardCount + ".dict").getAbsolutePath();
+	}
+
+	/**
+	 * Creates or loads shards in parallel.
+	 *
+	 * @param count number of shards
+	 * @param directory directory to load every shard from, or null to create empty shards
+	 * @return the shards, by index
+	 * @throws IOException if a shard cannot be loaded or a worker process cannot be started
+	 */
+	private final List<Shard> startShards(final int count, final String directory) throws IOException {
+		final List<Future<Shard>> started = new ArrayList<Future<Shard>>();
+
+		for (int i = 0; i < count; i++) {
+			final String path = (directory == null) ? null : shardPath(directory, i, count);
+
+			started.add(executor.submit(() -> startShard(path)));
+		}
+
+		final List<Shard> shards = new ArrayList<Shard>();
+		IOException failure = null;
+
+		for (final Future<Shard> future : started) {
+			try {
+				shards.add(future.get());
+			} catch (ExecutionException | InterruptedException e) {
+				failure = (failure != null) ? failure : asIOException(e);
+			}
+		}
+
+		if (failure != null) {
+			for (final Shard shard : shards) {
+				shard.close();
+			}
+			throw failure;
+		}
+
+		return shards;
+	}
+
+	/**
+	 * Creates or loads one shard, in this JVM or in a new worker process.
+	 *
+	 * @param path shard file to load, or null to create an empty shard
+	 * @return the shard
+	 * @throws IOException if the shard cannot be loaded or the worker process cannot be started
+	 * @throws ClassNotFoundException if the shard file is an older dictionary file and a serialized class cannot be found
+	 */
+	private final Shard startShard(final String path) throws IOException, ClassNotFoundException {
+		if (workerProcesses) {
+			return RemoteShard.start(name, path);
+		}
+
+		return new LocalShard((path == null) ? new Dictionary(name) : Dictionary.load(path));
+	}
+
+	/**
+	 * Converts the failure of a task to an IOException.
+	 *
+	 * @param e exception thrown while waiting for the task
+	 * @return the task's IOException, or a new IOException describing the failure
+	 */
+	private static final IOException asIOException(final Exception e) {
+		if (e instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			return new IOException("Interrupted while waiting for a shard", e);
+		}
+
+		final Throwable cause = e.getCause();
+		if (cause instanceof UncheckedIOException) {
+			return ((UncheckedIOException) cause).getCause();
+		}
+
+		return (cause instanceof IOException) ? (IOException) cause : new IOException(String.valueOf(cause.getMessage()), cause);
+	}
+
+	/**
+	 * Makes a call on several shards at once and waits for all of them.
+	 *
+	 * @param <T> result of the call
+	 * @param targets shards to call, by index
+	 * @param call call to make
+	 * @return result of every call, in shard order
+	 * @throws UncheckedIOException if a call fails
+	 */
+	private final <T> List<T> scatter(final List<Shard> targets, final ShardCall<T> call) {
+		final List<Future<T>> calls = new ArrayList<Future<T>>();
+
+		for (int i = 0; i < targets.size(); i++) {
+			final int index = i;
+			calls.add(executor.submit(() -> call.call(index, targets.get(index))));
+		}
+
+		final List<T> results = new ArrayList<T>();
+		IOException failure = null;
+
+		for (final Future<T> future : calls) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException | InterruptedException e) {
+				failure = (failure != null) ? failure : asIOException(e);
+			}
+		}
+
+		if (failure != null) {
+			throw new UncheckedIOException(failure);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Returns the shard that a word belongs to, using jump consistent hashing: when the number of shards grows from <code>n</code> to
+	 * <code>m</code>, a word either keeps its shard or moves to one of the new shards <code>n..m-1</code>, and each shard ends up with
+	 * about the same number of words.
+	 *
+	 * @param word word/phrase
+	 * @param shardCount number of shards
+	 * @return index of the word's shard
+	 */
+	static final int shardOf(final String word, final int shardCount) {
+		long key = word.hashCode() * 0x9E3779B97F4A7C15L;
+		long shard = -1;
+		long next = 0;
+
+		while (next < shardCount) {
+			shard = next;
+			key = key * 2862933555777941757L + 1;
+			next = (long) ((shard + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+		}
+
+		return (int) shard;
+	}
+
+	/**
+	 * Returns the shard that holds a word. Must be called with the read lock held.
+	 *
+	 * @param word word/phrase
+	 * @return the word's shard
+	 */
+	private final Shard route(final String word) {
+		return shards.get(shardOf(word, shards.size()));
+	}
+
+	/**
+	 * Gets the definition for a word/phrase from its shard; see {@link Dictionary#getDefinition(String)}.
+	 *
+	 * @param word word/phrase (case sensitive)
+	 * @return definition for the word ({@link Optional#empty} if the word is not defined)
+	 * @throws UncheckedIOException if the shard cannot be reached
+	 */
+	public final Optional<Definition> getDefinition(final String word) {
+		lock.readLock().lock();
+		try {
+			return route(word).find(word);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a definition if the word/phrase is not defined yet; see {@link Dictionary#weakDefine(String, Definition)}.
+	 *
+	 * @param word word/phrase to add a definition for (case sensitive)
+	 * @param definition definition
+	 * @return true if the definition was added, false if the word was already defined
+	 * @throws UncheckedIOException if the shard cannot be reached
+	 */
+	public final boolean weakDefine(final String word, final Definition definition) {
+		lock.readLock().lock();
+		try {
+			return route(word).weakDefine(word, definition);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or replaces the definition of a word/phrase; see {@link Dictionary#strongDefine(String, Definition)}.
+	 *
+	 * @param word word/phrase to add a definition for (case sensitive)
+	 * @param definition definition
+	 * @return true if the definition existed before, false if it's new
+	 * @throws UncheckedIOException if the shard cannot be reached
+	 */
+	public final boolean strongDefine(final String word, final Definition definition) {
+		lock.readLock().lock();
+		try {
+			return route(word).strongDefine(word, definition);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a word/phrase and its definition.
+	 *
+	 * @param word word/phrase to remove
+	 * @return true if the word/phrase was removed, false if it didn't exist
+	 * @throws UncheckedIOException if the shard cannot be reached
+	 */
+	public final boolean remove(final String word) {
+		lock.readLock().lock();
+		try {
+			return route(word).remove(word);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Changes the entry date of an existing definition.
+	 *
+	 * @param word word/phrase whose entry date to change
+	 * @param newDate new entry date
+	 * @return the old entry date ({@link Optional#empty} if the word is not defined)
+	 * @throws UncheckedIOException if the shard cannot be reached
+	 */
+	public final Optional<Date> changeEntryDate(final String word, final Date newDate) {
+		lock.readLock().lock();
+		try {
+			return route(word).changeEntryDate(word, newDate);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Searches every shard at once and merges the results. Each shard ranks its own results, so only the merge is done here.
+	 *
+	 * @param regex regular expression search term
+	 * @return results with a nonzero score, most relevant first (ordered like {@link Dictionary.AlphabeticalRelevancyComparator}, highest first)
+	 * @throws UncheckedIOException if a shard cannot be reached
+	 */
+	public final List<SearchResult> search(final String regex) {
+		final List<List<SearchResult>> ranked;
+
+		lock.readLock().lock();
+		try {
+			ranked = scatter(shards, (index, shard) -> shard.search(regex));
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		final Comparator<SearchResult> byRelevancy = new Dictionary.AlphabeticalRelevancyComparator().reversed();
+		final List<SearchResult> merged = new ArrayList<SearchResult>();
+		final int[] next = new int[ranked.size()];
+
+		while (true) {
+			int best = -1;
+
+			for (int i = 0; i < ranked.size(); i++) {
+				if (next[i] < ranked.get(i).size() && (best < 0 || byRelevancy.compare(ranked.get(i).get(next[i]), ranked.get(best).get(next[best])) < 0)) {
+					best = i;
+				}
+			}
+
+			if (best < 0) {
+				return merged;
+			}
+
+			merged.add(ranked.get(best).get(next[best]++));
+		}
+	}
+
+	/**
+	 * Generates statistics for the whole dictionary from the entry dates and access counts of every shard, gathered at once.
+	 *
+	 * @return statistics of every entry
+	 * @throws UncheckedIOException if a shard cannot be reached
+	 */
+	public final Statistics statistics() {
+		final List<Shard.Summary> summaries;
+
+		lock.readLock().lock();
+		try {
+			summaries = scatter(shards, (index, shard) -> shard.summary());
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		int size = 0;
+		int buckets = 0;
+		for (final Shard.Summary summary : summaries) {
+			size += summary.sortedEntryTimes.length;
+			buckets = Math.max(buckets, summary.accessCounts.length);
+		}
+
+		final long[] times = new long[size];
+		final long[] accessCounts = new long[buckets];
+		int offset = 0;
+
+		for (final Shard.Summary summary : summaries) {
+			System.arraycopy(summary.sortedEntryTimes, 0, times, offset, summary.sortedEntryTimes.length);
+			offset += summary.sortedEntryTimes.length;
+
+			for (int i = 0; i < summary.accessCounts.length; i++) {
+				accessCounts[i] += summary.accessCounts[i];
+			}
+		}
+		Arrays.sort(times);
+
+		return new Statistics(name, size, Dictionary.entryGaps(times), accessCounts);
+	}
+
+	/**
+	 * Returns the number of entries in every shard.
+	 *
+	 * @return shard sizes, by shard index
+	 * @throws UncheckedIOException if a shard cannot be reached
+	 */
+	public final int[] shardSizes() {
+		lock.readLock().lock();
+		try {
+			return scatter(shards, (index, shard) -> shard.size()).stream().mapToInt(Integer::intValue).toArray();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the dictionary.
+	 *
+	 * @return total size of every shard
+	 * @throws UncheckedIOException if a shard cannot be reached
+	 */
+	public final int size() {
+		return Arrays.stream(shardSizes()).sum();
+	}
+
+	/**
+	 * Returns a line for every shard with its size and where it is hosted.
+	 *
+	 * @return multiline report
+	 * @throws UncheckedIOException if a shard cannot be reached
+	 */
+	public final String shardReport() {
+		lock.readLock().lock();
+		try {
+			final int[] sizes = shardSizes();
+			final StringBuilder sb = new StringBuilder("\"" + name + "\": " + Arrays.stream(sizes).sum() + " definitions in " + sizes.length + " shards");
+
+			for (int i = 0; i < sizes.length; i++) {
+				sb.append(System.lineSeparator() + "Shard " + i + ": " + sizes[i] + " definitions, " + shards.get(i).host());
+			}
+
+			return sb.toString();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies every entry of an ordinary dictionary into this one, keeping entry dates and access counts and replacing existing definitions.
+	 * The entries are sent to all shards at once.
+	 *
+	 * @param source dictionary to copy
+	 * @return number of entries copied
+	 * @throws UncheckedIOException if a shard cannot be reached
+	 */
+	public final int addAll(final Dictionary source) {
+		lock.readLock().lock();
+		try {
+			final List<List<Map.Entry<String, Definition>>> incoming = new ArrayList<List<Map.Entry<String, Definition>>>();
+			for (int i = 0; i < shards.size(); i++) {
+				incoming.add(new ArrayList<Map.Entry<String, Definition>>());
+			}
+
+			int count = 0;
+			try (Dictionary.Snapshot snapshot = source.snapshot()) {
+				final Iterator<Map.Entry<String, Definition>> entries = snapshot.entries();
+
+				while (entries.hasNext()) {
+					final Map.Entry<String, Definition> entry = entries.next();
+					incoming.get(shardOf(entry.getKey(), shards.size())).add(entry);
+					count++;
+				}
+			}
+
+			scatter(shards, (index, shard) -> {
+				shard.putAll(incoming.get(index));
+				return null;
+			});
+
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves every shard to its own file in a directory, in parallel, then deletes any shard files in the directory that were left by a different
+	 * number of shards.
+	 *
+	 * @param directory directory to save to; created if it does not exist
+	 * @throws IOException if the directory cannot be created, or a shard cannot be saved
+	 */
+	public final void save(final String directory) throws IOException {
+		final File dir = new File(directory);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create \"" + directory + "\"");
+		}
+
+		final int shardCount;
+		lock.readLock().lock();
+		try {
+			shardCount = shards.size();
+			scatter(shards, (index, shard) -> {
+				shard.save(shardPath(directory, index, shardCount));
+				return null;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		for (final String file : dir.list()) {
+			final Matcher matcher = SHARD_FILE.matcher(file);
+
+			if (matcher.matches() && Integer.parseInt(matcher.group(2)) != shardCount) {
+				new File(dir, file).delete();
+			}
+		}
+	}
+
+	/**
+	 * Changes the number of shards. New shards are started empty; then every shard gives up the entries that belong to another shard under the new
+	 * shard count, and those entries are sent to their new shards, keeping their entry dates and access counts. Shards that are no longer needed
+	 * are closed once they are empty. No other entries are read or written, and nothing is written to disk until the next {@link #save(String)}. <p>
+	 *
+	 * Other operations wait while this runs. Resharding is not atomic: if a worker process fails halfway through, some moved entries may be lost,
+	 * so the dictionary should be saved first.
+	 *
+	 * @param shardCount new number of shards
+	 * @return number of entries that moved
+	 * @throws IOException if a worker process cannot be started or a shard cannot be reached
+	 */
+	public final int reshard(final int shardCount) throws IOException {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("A sharded dictionary needs at least one shard");
+		}
+
+		lock.writeLock().lock();
+		try {
+			final int oldCount = shards.size();
+			if (shardCount == oldCount) {
+				return 0;
+			}
+
+			final List<Shard> resized = new ArrayList<Shard>(shards);
+			if (shardCount > oldCount) {
+				resized.addAll(startShards(shardCount - oldCount, null));
+			}
+
+			// Jump consistent hashing only moves words out of the shards being removed when shrinking, so the other shards are not scanned
+			final int firstSource = (shardCount > oldCount) ? 0 : shardCount;
+			final List<List<Map.Entry<String, Definition>>> taken = scatter(shards.subList(firstSource, oldCount),
+					(index, shard) -> shard.takeMisplaced(firstSource + index, shardCount));
+
+			final List<List<Map.Entry<String, Definition>>> incoming = new ArrayList<List<Map.Entry<String, Definition>>>();
+			for (int i = 0; i < shardCount; i++) {
+				incoming.add(new ArrayList<Map.Entry<String, Definition>>());
+			}
+
+			int moved = 0;
+			for (final List<Map.Entry<String, Definition>> entries : taken) {
+				for (final Map.Entry<String, Definition> entry : entries) {
+					incoming.get(shardOf(entry.getKey(), shardCount)).add(entry);
+					moved++;
+				}
+			}
+
+			final List<Shard> targets = resized.subList(0, shardCount);
+			scatter(targets, (index, shard) -> {
+				if (!incoming.get(index).isEmpty()) {
+					shard.putAll(incoming.get(index));
+				}
+				return null;
+			});
+
+			for (final Shard removed : resized.subList(shardCount, resized.size())) {
+				removed.close();
+			}
+
+			shards = new ArrayList<Shard>(targets);
+			return moved;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return shard count
+	 */
+	public final int shardCount() {
+		lock.readLock().lock();
+		try {
+			return shards.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Closes every shard, stopping their worker processes if they have any. Does not save the dictionary!
+	 *
+	 * @throws IOException if a shard could not be closed cleanly
+	 */
+	@Override
+	public final void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			IOException failure = null;
+
+			for (final Shard shard : shards) {
+				try {
+					shard.close();
+				} catch (IOException e) {
+					failure = (failure != null) ? failure : e;
+				}
+			}
+
+			shards = new ArrayList<Shard>();
+			executor.shutdown();
+
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
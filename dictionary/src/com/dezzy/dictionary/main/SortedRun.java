@@ -0,0 +1,552 @@
+package com.dezzy.dictionary.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable file of dictionary records sorted by word, written once by an {@link LsmEntryStore} (when its memtable is flushed, or when runs are
+ * compacted) and deleted once no reader can need it. Records are read with positional reads, so a run can be read by several threads at once. <p>
+ *
+ * A record is <code>int</code> word length, UTF-8 word, <code>int</code> entry ID (-1 for a tombstone, which marks a removed word),
+ * <code>int</code> definition length and UTF-8 definition. There is one record per word, in {@link #KEY_ORDER}. Only the records are in the file:
+ * the sparse index (the word and offset of every {@link #INDEX_INTERVAL}th record) and the {@link BloomFilter} of the words are kept in memory,
+ * because runs are working files that never outlive their store. So a lookup reads at most one block of {@link #INDEX_INTERVAL} records, and none
+ * if the Bloom filter rules the word out.
+ *
+ * @author Joe Desmond
+ */
+final class SortedRun {
+
+	/**
+	 * Order of the records: the order of {@link Dictionary#getSortedWords()}, with ties between words that differ only in case broken so that
+	 * every word has one place
+	 */
+	static final Comparator<String> KEY_ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+	/**
+	 * Number of records per sparse index entry
+	 */
+	static final int INDEX_INTERVAL = 16;
+
+	/**
+	 * Size of the buffer used to scan a run in order
+	 */
+	private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Bytes read at once when reading a single record; longer records take a second read
+	 */
+	private static final int RECORD_READ_SIZE = 512;
+
+	/**
+	 * One record of a run or of the memtable: a word and its entry, or a tombstone.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Record {
+
+		/**
+		 * Word/phrase
+		 */
+		final String word;
+
+		/**
+		 * Entry ID, or -1 for a tombstone
+		 */
+		final int id;
+
+		/**
+		 * Definition text; empty for a tombstone
+		 */
+		final String text;
+
+		/**
+		 * Creates a record.
+		 *
+		 * @param _word word/phrase
+		 * @param _id entry ID, or -1 for a tombstone
+		 * @param _text definition text
+		 */
+		Record(final String _word, final int _id, final String _text) {
+			word = _word;
+			id = _id;
+			text = _text;
+		}
+
+		/**
+		 * Returns true if this record marks a removed word.
+		 *
+		 * @return true for a tombstone
+		 */
+		final boolean isTombstone() {
+			return id < 0;
+		}
+	}
+
+	/**
+	 * Reads the records of a run in order, keeping track of the offset of each one.
+	 *
+	 * @author Joe Desmond
+	 */
+	final class Scanner {
+
+		/**
+		 * Buffered stream over the run, from its start
+		 */
+		private final DataInputStream in = new DataInputStream(new BufferedInputStream(new PositionalInputStream(0), SCAN_BUFFER_SIZE));
+
+		/**
+		 * Offset of the next record
+		 */
+		private long offset = 0;
+
+		/**
+		 * Offset of the record last returned by {@link #next()}
+		 */
+		private long recordOffset = -1;
+
+		/**
+		 * Reads the next record.
+		 *
+		 * @return the record, or null at the end of the run
+		 * @throws IOException if there is a problem reading the run
+		 */
+		final Record next() throws IOException {
+			if (offset >= length) {
+				return null;
+			}
+
+			recordOffset = offset;
+			final byte[] word = new byte[in.readInt()];
+			in.readFully(word);
+			final int id = in.readInt();
+			final byte[] text = new byte[in.readInt()];
+			in.readFully(text);
+			offset += 3 * Integer.BYTES + word.length + text.length;
+
+			return new Record(new String(word, StandardCharsets.UTF_8), id, new String(text, StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Returns the offset of the record last returned by {@link #next()}.
+		 *
+		 * @return offset in the run
+		 */
+		final long offset() {
+			return recordOffset;
+		}
+
+		/**
+		 * Returns the run being scanned.
+		 *
+		 * @return the run
+		 */
+		final SortedRun run() {
+			return SortedRun.this;
+		}
+	}
+
+	/**
+	 * An input stream over a run that uses positional reads, so that several streams can read the same run at once.
+	 *
+	 * @author Joe Desmond
+	 */
+	private final class PositionalInputStream extends InputStream {
+
+		/**
+		 * Offset of the next byte
+		 */
+		private long position;
+
+		/**
+		 * Creates a stream starting at an offset.
+		 *
+		 * @param _position offset of the first byte
+		 */
+		private PositionalInputStream(final long _position) {
+			position = _position;
+		}
+
+		@Override
+		public final int read() throws IOException {
+			final byte[] one = new byte[1];
+			return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public final int read(final byte[] buffer, final int offset, final int count) throws IOException {
+			if (position >= length) {
+				return -1;
+			}
+
+			final int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(count, length - position)), position);
+			if (read > 0) {
+				position += read;
+			}
+
+			return read;
+		}
+	}
+
+	/**
+	 * Number of the run in its store; newer runs have higher numbers
+	 */
+	final int number;
+
+	/**
+	 * The run's file
+	 */
+	private final File file;
+
+	/**
+	 * Open file used for reading
+	 */
+	private final RandomAccessFile reader;
+
+	/**
+	 * Channel of {@link #reader}, used for positional reads
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Stream used while the run is being written; null once it is finished
+	 */
+	private DataOutputStream writer;
+
+	/**
+	 * Bloom filter of the words in the run
+	 */
+	private final BloomFilter bloomFilter;
+
+	/**
+	 * Words of the sparse index
+	 */
+	private String[] indexWords = new String[16];
+
+	/**
+	 * Offsets of the sparse index
+	 */
+	private long[] indexOffsets = new long[16];
+
+	/**
+	 * Number of sparse index entries
+	 */
+	private int indexSize = 0;
+
+	/**
+	 * Number of records
+	 */
+	private int count = 0;
+
+	/**
+	 * Number of bytes that can be read: the length of the file once the run is finished, and the bytes written up to the last {@link #flush()}
+	 * while it is being written
+	 */
+	private volatile long length = 0;
+
+	/**
+	 * Number of bytes appended, including any not yet flushed
+	 */
+	private long written = 0;
+
+	/**
+	 * Number of lookups that the Bloom filter answered without reading the file
+	 */
+	private final AtomicLong bloomSkips = new AtomicLong();
+
+	/**
+	 * Number of blocks read by lookups
+	 */
+	private final AtomicLong blockReads = new AtomicLong();
+
+	/**
+	 * Creates an empty run file and opens it for writing and reading.
+	 *
+	 * @param _file file to create; replaced if it exists
+	 * @param _number number of the run
+	 * @param expectedCount expected number of records, used to size the Bloom filter
+	 * @throws IOException if the file cannot be created
+	 */
+	SortedRun(final File _file, final int _number, final int expectedCount) throws IOException {
+		file = _file;
+		number = _number;
+		bloomFilter = new BloomFilter(expectedCount);
+		writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), SCAN_BUFFER_SIZE));
+		reader = new RandomAccessFile(file, "r");
+		channel = reader.getChannel();
+	}
+
+	/**
+	 * Appends a record. Records must be appended in {@link #KEY_ORDER}, one per word.
+	 *
+	 * @param record record to append
+	 * @return offset of the record in the run
+	 * @throws IOException if there is a problem writing the run
+	 */
+	final long append(final Record record) throws IOException {
+		final long offset = written;
+
+		if (count % INDEX_INTERVAL == 0) {
+			if (indexSize == indexWords.length) {
+				indexWords = Arrays.copyOf(indexWords, indexSize * 2);
+				indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+			}
+
+			indexWords[indexSize] = record.word;
+			indexOffsets[indexSize++] = offset;
+		}
+
+		final byte[] word = record.word.getBytes(StandardCharsets.UTF_8);
+		final byte[] text = record.text.getBytes(StandardCharsets.UTF_8);
+		writer.writeInt(word.length);
+		writer.write(word);
+		writer.writeInt(record.id);
+		writer.writeInt(text.length);
+		writer.write(text);
+
+		bloomFilter.add(record.word);
+		written += 3 * Integer.BYTES + word.length + text.length;
+		count++;
+
+		return offset;
+	}
+
+	/**
+	 * Makes every record appended so far readable with {@link #readAt(long)}.
+	 *
+	 * @throws IOException if there is a problem writing the run
+	 */
+	final void flush() throws IOException {
+		writer.flush();
+		length = written;
+	}
+
+	/**
+	 * Finishes writing the run. It can only be read from then on.
+	 *
+	 * @throws IOException if there is a problem writing the run
+	 */
+	final void finish() throws IOException {
+		writer.close();
+		writer = null;
+		length = written;
+
+		indexWords = Arrays.copyOf(indexWords, indexSize);
+		indexOffsets = Arrays.copyOf(indexOffsets, indexSize);
+	}
+
+	/**
+	 * Finds the record of a word in a finished run.
+	 *
+	 * @param word word/phrase
+	 * @return the record (possibly a tombstone), or null if the run has no record for the word
+	 * @throws IOException if there is a problem reading the run
+	 */
+	final Record get(final String word) throws IOException {
+		if (!bloomFilter.mightContain(word)) {
+			bloomSkips.incrementAndGet();
+			return null;
+		}
+
+		int low = 0;
+		int high = indexSize - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+
+			if (KEY_ORDER.compare(indexWords[mid], word) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		if (high < 0) {
+			return null;
+		}
+
+		final long start = indexOffsets[high];
+		final long end = (high + 1 < indexSize) ? indexOffsets[high + 1] : length;
+		final ByteBuffer block = ByteBuffer.allocate((int) (end - start));
+		readFully(block, start);
+		blockReads.incrementAndGet();
+
+		while (block.hasRemaining()) {
+			final String recordWord = readString(block);
+			final int comparison = KEY_ORDER.compare(recordWord, word);
+			if (comparison > 0) {
+				return null;
+			}
+
+			final int id = block.getInt();
+			if (comparison == 0) {
+				return new Record(recordWord, id, readString(block));
+			}
+
+			final int textLength = block.getInt();
+			block.position(block.position() + textLength);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads the record at an offset. Works while the run is being written, for records appended before the last {@link #flush()}.
+	 *
+	 * @param offset offset of the record, as returned by {@link #append(Record)}
+	 * @return the record
+	 * @throws IOException if there is a problem reading the run
+	 */
+	final Record readAt(final long offset) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(RECORD_READ_SIZE, length - offset));
+		readFully(buffer, offset);
+
+		final int wordLength = buffer.getInt(0);
+		final int headerLength = Integer.BYTES + wordLength + 2 * Integer.BYTES;
+		if (headerLength <= buffer.limit()) {
+			final int recordLength = headerLength + buffer.getInt(headerLength - Integer.BYTES);
+
+			if (recordLength > buffer.limit()) {
+				buffer = ByteBuffer.allocate(recordLength);
+				readFully(buffer, offset);
+			}
+		} else {
+			buffer = ByteBuffer.allocate(headerLength);
+			readFully(buffer, offset);
+			final int recordLength = headerLength + buffer.getInt(headerLength - Integer.BYTES);
+
+			buffer = ByteBuffer.allocate(recordLength);
+			readFully(buffer, offset);
+		}
+
+		buffer.position(0);
+		final String word = readString(buffer);
+		final int id = buffer.getInt();
+		return new Record(word, id, readString(buffer));
+	}
+
+	/**
+	 * Starts reading the records of a finished run in order.
+	 *
+	 * @return a scanner positioned before the first record
+	 */
+	final Scanner scanner() {
+		return new Scanner();
+	}
+
+	/**
+	 * Returns the number of records in the run.
+	 *
+	 * @return number of records, including tombstones
+	 */
+	final int count() {
+		return count;
+	}
+
+	/**
+	 * Returns the size of the run's file.
+	 *
+	 * @return size in bytes
+	 */
+	final long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of lookups that the Bloom filter answered without reading the file.
+	 *
+	 * @return number of lookups
+	 */
+	final long bloomSkips() {
+		return bloomSkips.get();
+	}
+
+	/**
+	 * Returns the number of blocks read by lookups.
+	 *
+	 * @return number of block reads
+	 */
+	final long blockReads() {
+		return blockReads.get();
+	}
+
+	/**
+	 * Returns the memory used by the run's sparse index and Bloom filter.
+	 *
+	 * @return approximate heap footprint in bytes, excluding object headers
+	 */
+	final long footprintBytes() {
+		long bytes = bloomFilter.footprintBytes() + (long) indexOffsets.length * (Long.BYTES + Integer.BYTES);
+
+		for (int i = 0; i < indexSize; i++) {
+			bytes += 40 + 2L * indexWords[i].length();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Closes and deletes the run's file.
+	 */
+	final void delete() {
+		try {
+			if (writer != null) {
+				writer.close();
+			}
+			reader.close();
+		} catch (IOException e) {
+			// The file is deleted anyway
+		}
+
+		file.delete();
+	}
+
+	/**
+	 * Fills a buffer from the run, starting at an offset.
+	 *
+	 * @param buffer buffer to fill
+	 * @param offset offset of the first byte
+	 * @throws IOException if there is a problem reading the run, or it ends before the buffer is full
+	 */
+	private final void readFully(final ByteBuffer buffer, final long offset) throws IOException {
+		long position = offset;
+
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Run " + number + " ended at offset " + position);
+			}
+
+			position += read;
+		}
+
+		buffer.flip();
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string from a buffer.
+	 *
+	 * @param buffer buffer positioned at the length
+	 * @return the string
+	 */
+	private static final String readString(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		final String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+
+		return s;
+	}
+}
@@ -0,0 +1,226 @@
+package com.dezzy.dictionary.main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dezzy.dictionary.stats.Statistics;
+
+/**
+ * The dictionaries open in one {@link CommandHandler}, by name, in the order they were opened. One of them may be the current dictionary, which
+ * most commands work on; the others stay open (and keep loading in the background) until they are closed. <p>
+ *
+ * Every member keeps the state a {@link CommandHandler} has for its current dictionary (the path it was opened from or saved to, and its last
+ * statistics), so switching back to a dictionary with {@link #use(String)} restores it.
+ *
+ * @author Joe Desmond
+ */
+final class Workspace {
+
+	/**
+	 * One open dictionary and its state.
+	 *
+	 * @author Joe Desmond
+	 */
+	static final class Member {
+
+		/**
+		 * Name of this member in the workspace; the dictionary's name, with a number added if another member already has that name
+		 */
+		final String name;
+
+		/**
+		 * The dictionary
+		 */
+		final Dictionary dictionary;
+
+		/**
+		 * Most recent path specified for the dictionary, or null if no path has been specified
+		 */
+		String path;
+
+		/**
+		 * Most recent statistics, or null if none have been generated
+		 */
+		Statistics statistics;
+
+		/**
+		 * Streams the dictionary's changes to followers, or null if the dictionary is not replicated
+		 */
+		ReplicationPrimary primary;
+
+		/**
+		 * Creates a member with no statistics.
+		 *
+		 * @param _name name in the workspace
+		 * @param _dictionary the dictionary
+		 * @param _path path the dictionary was opened from, or null
+		 */
+		private Member(final String _name, final Dictionary _dictionary, final String _path) {
+			name = _name;
+			dictionary = _dictionary;
+			path = _path;
+		}
+	}
+
+	/**
+	 * Open dictionaries by name, in the order they were opened
+	 */
+	private final Map<String, Member> members = new LinkedHashMap<String, Member>();
+
+	/**
+	 * The current dictionary, or null if there is none
+	 */
+	private Member current;
+
+	/**
+	 * Returns the current dictionary.
+	 *
+	 * @return the current member, or null if no dictionary is current
+	 */
+	final Member current() {
+		return current;
+	}
+
+	/**
+	 * Returns every open dictionary, in the order they were opened.
+	 *
+	 * @return a new list of members
+	 */
+	final List<Member> members() {
+		return new ArrayList<Member>(members.values());
+	}
+
+	/**
+	 * Adds a dictionary to the workspace and makes it the current dictionary. If the same path is already open, that dictionary is closed and replaced;
+	 * otherwise, if another dictionary has the same name, a number is added to the new dictionary's name.
+	 *
+	 * @param dictionary dictionary to add
+	 * @param path path the dictionary was opened from, or null if it was created
+	 * @return the new member
+	 */
+	final Member add(final Dictionary dictionary, final String path) {
+		if (path != null) {
+			for (final Member member : members.values()) {
+				if (path.equals(member.path)) {
+					remove(member);
+					break;
+				}
+			}
+		}
+
+		String name = dictionary.name;
+		for (int i = 2; members.containsKey(name); i++) {
+			name = dictionary.name + " (" + i + ")";
+		}
+
+		final Member member = new Member(name, dictionary, path);
+		members.put(name, member);
+		current = member;
+
+		return member;
+	}
+
+	/**
+	 * Makes an open dictionary the current dictionary.
+	 *
+	 * @param name name of the dictionary in the workspace
+	 * @return the new current member, or null if no dictionary has that name
+	 */
+	final Member use(final String name) {
+		final Member member = members.get(name);
+
+		if (member != null) {
+			current = member;
+		}
+
+		return member;
+	}
+
+	/**
+	 * Closes a dictionary and removes it from the workspace, disconnecting its followers if it is replicated. If it was the current dictionary,
+	 * no dictionary is current afterwards.
+	 *
+	 * @param member member to remove
+	 */
+	final void remove(final Member member) {
+		member.dictionary.cancelLoading();
+
+		if (member.primary != null) {
+			try {
+				member.primary.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			member.primary = null;
+		}
+
+		members.remove(member.name);
+
+		if (current == member) {
+			current = null;
+		}
+	}
+
+	/**
+	 * Returns the number of open dictionaries.
+	 *
+	 * @return number of members
+	 */
+	final int size() {
+		return members.size();
+	}
+
+	/**
+	 * Lists every open dictionary with its size, storage kind and memory use. Dictionaries that are still loading show their progress instead of their
+	 * memory use, so that the listing never waits for loading to finish.
+	 *
+	 * @return multiline listing, with the current dictionary marked by an asterisk
+	 */
+	@Override
+	public final String toString() {
+		if (members.isEmpty()) {
+			return "No dictionaries are open";
+		}
+
+		final StringBuilder sb = new StringBuilder("Open dictionaries (" + members.size() + "):");
+		long totalBytes = 0;
+
+		for (final Member member : members.values()) {
+			final Dictionary dictionary = member.dictionary;
+
+			sb.append(System.lineSeparator() + ((member == current) ? "* " : "  ") + member.name + " - " + dictionary.storage().name().toLowerCase() + ", ");
+
+			if (dictionary.isLoaded()) {
+				final long bytes = dictionary.footprintBytes();
+				totalBytes += bytes;
+				sb.append(dictionary.size() + " definitions, " + formatBytes(bytes));
+			} else {
+				sb.append("loading (" + dictionary.loadedCount() + " of " + dictionary.size() + " definitions)");
+			}
+
+			if (member.path != null) {
+				sb.append(", \"" + member.path + "\"");
+			}
+		}
+
+		sb.append(System.lineSeparator() + "Total: " + formatBytes(totalBytes));
+		return sb.toString();
+	}
+
+	/**
+	 * Formats a number of bytes in kilobytes or, from one megabyte up, in megabytes.
+	 *
+	 * @param bytes number of bytes
+	 * @return formatted size
+	 */
+	private static final String formatBytes(final long bytes) {
+		if (bytes < 1024 * 1024) {
+			return String.format("%.1f KB", bytes / 1024.0);
+		}
+
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+}
@@ -0,0 +1,41 @@
+package com.dezzy.dictionary.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event: a command was dispatched by a CommandHandler. The event's duration is the time the operation took. <br>
+ * Emitted by {@link com.dezzy.dictionary.main.CommandHandler#receive(String, String)}.
+ *
+ * @author Joe Desmond
+ */
+@Name("com.dezzy.dictionary.Command")
+@Label("Command")
+@Category("Dictionary")
+@Description("A command was dispatched by a CommandHandler")
+public final class CommandEvent extends Event {
+
+	/**
+	 * Command name
+	 */
+	@Label("Command")
+	@Description("Command name")
+	public String command;
+
+	/**
+	 * Length of the command argument in characters
+	 */
+	@Label("Argument Length")
+	@Description("Length of the command argument in characters")
+	public int argumentLength;
+
+	/**
+	 * True if the command returned an error status
+	 */
+	@Label("Error")
+	@Description("True if the command returned an error status")
+	public boolean error;
+}
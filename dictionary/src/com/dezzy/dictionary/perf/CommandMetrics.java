@@ -0,0 +1,144 @@
+package com.dezzy.dictionary.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms for every command type. Recording a latency for a command that has been seen before only reads the map and increments
+ * two counters, without locking. The number of distinct command types is capped so that mistyped commands cannot grow the map forever;
+ * once the cap is reached, new command types are recorded under {@link #OTHER}.
+ *
+ * @author Joe Desmond
+ */
+public final class CommandMetrics {
+
+	/**
+	 * Name that command types past {@link #MAX_COMMAND_TYPES} are recorded under
+	 */
+	public static final String OTHER = "(other)";
+
+	/**
+	 * Maximum number of distinct command types with their own histograms
+	 */
+	private static final int MAX_COMMAND_TYPES = 64;
+
+	/**
+	 * Number of nanoseconds in one millisecond
+	 */
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	/**
+	 * Histogram for each command type
+	 */
+	private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Creates an empty set of metrics.
+	 */
+	public CommandMetrics() {
+
+	}
+
+	/**
+	 * Records the latency of one command.
+	 *
+	 * @param command command type (for example, <code>"find"</code>)
+	 * @param nanos time taken to run the command, in nanoseconds
+	 */
+	public final void record(final String command, final long nanos) {
+		histogramFor(command).record(nanos);
+	}
+
+	/**
+	 * Records the latency of one command, correcting for coordinated omission.
+	 *
+	 * @param command command type
+	 * @param nanos time taken to run the command, in nanoseconds
+	 * @param expectedIntervalNanos expected time between commands, in nanoseconds
+	 * @see LatencyHistogram#recordWithExpectedInterval(long, long)
+	 */
+	public final void record(final String command, final long nanos, final long expectedIntervalNanos) {
+		histogramFor(command).recordWithExpectedInterval(nanos, expectedIntervalNanos);
+	}
+
+	/**
+	 * Returns the total number of latencies recorded for every command type.
+	 *
+	 * @return number of recorded latencies
+	 */
+	public final long count() {
+		long total = 0;
+
+		for (final LatencyHistogram histogram : histograms.values()) {
+			total += histogram.count();
+		}
+
+		return total;
+	}
+
+	/**
+	 * Returns the histogram for a command type, creating it if needed.
+	 *
+	 * @param command command type
+	 * @return the command type's histogram
+	 */
+	private final LatencyHistogram histogramFor(final String command) {
+		final LatencyHistogram histogram = histograms.get(command);
+
+		if (histogram != null) {
+			return histogram;
+		}
+
+		final String key = (histograms.size() < MAX_COMMAND_TYPES) ? command : OTHER;
+		return histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+	}
+
+	/**
+	 * Adds every latency recorded in another set of metrics to this one.
+	 *
+	 * @param other metrics to merge into these
+	 */
+	public final void merge(final CommandMetrics other) {
+		for (final Map.Entry<String, LatencyHistogram> entry : other.histograms.entrySet()) {
+			histogramFor(entry.getKey()).merge(entry.getValue());
+		}
+	}
+
+	/**
+	 * Clears every recorded latency.
+	 */
+	public final void reset() {
+		histograms.clear();
+	}
+
+	/**
+	 * Returns a table with the count, median, 99th and 99.9th percentile, and maximum latency of every command type, in milliseconds.
+	 *
+	 * @return latency report
+	 */
+	@Override
+	public String toString() {
+		if (histograms.isEmpty()) {
+			return "No commands have been recorded";
+		}
+
+		final List<String> commands = new ArrayList<String>(histograms.keySet());
+		Collections.sort(commands);
+
+		final StringBuilder sb = new StringBuilder(String.format("%-14s %10s %12s %12s %12s %12s", "command", "count", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+		for (final String command : commands) {
+			final LatencyHistogram histogram = histograms.get(command);
+
+			sb.append(System.lineSeparator());
+			sb.append(String.format("%-14s %10d %12.3f %12.3f %12.3f %12.3f", command, histogram.count(),
+					histogram.percentile(50) / NANOS_PER_MILLI, histogram.percentile(99) / NANOS_PER_MILLI,
+					histogram.percentile(99.9) / NANOS_PER_MILLI, histogram.max() / NANOS_PER_MILLI));
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,43 @@
+package com.dezzy.dictionary.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event: a dictionary was loaded from a file. The event's duration is the time the operation took. <br>
+ * Emitted by {@link com.dezzy.dictionary.main.Dictionary#load(String)}.
+ *
+ * @author Joe Desmond
+ */
+@Name("com.dezzy.dictionary.Load")
+@Label("Dictionary Load")
+@Category("Dictionary")
+@Description("A dictionary was loaded from a file")
+public final class DictionaryLoadEvent extends Event {
+
+	/**
+	 * Path of the dictionary file
+	 */
+	@Label("Path")
+	@Description("Path of the dictionary file")
+	public String path;
+
+	/**
+	 * Number of entries loaded
+	 */
+	@Label("Entries")
+	@Description("Number of entries loaded")
+	public int entries;
+
+	/**
+	 * Size of the dictionary file
+	 */
+	@Label("File Size")
+	@Description("Size of the dictionary file")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,43 @@
+package com.dezzy.dictionary.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event: a dictionary was saved to a file. The event's duration is the time the operation took. <br>
+ * Emitted by {@link com.dezzy.dictionary.main.Dictionary#save(String)}.
+ *
+ * @author Joe Desmond
+ */
+@Name("com.dezzy.dictionary.Save")
+@Label("Dictionary Save")
+@Category("Dictionary")
+@Description("A dictionary was saved to a file")
+public final class DictionarySaveEvent extends Event {
+
+	/**
+	 * Path of the dictionary file
+	 */
+	@Label("Path")
+	@Description("Path of the dictionary file")
+	public String path;
+
+	/**
+	 * Number of entries saved
+	 */
+	@Label("Entries")
+	@Description("Number of entries saved")
+	public int entries;
+
+	/**
+	 * Size of the dictionary file
+	 */
+	@Label("File Size")
+	@Description("Size of the dictionary file")
+	@DataAmount
+	public long bytes;
+}
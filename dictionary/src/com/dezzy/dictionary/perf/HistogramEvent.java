@@ -0,0 +1,55 @@
+package com.dezzy.dictionary.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event: a histogram was binned and drawn, or encoded to a file. The event's duration is the time the operation took. <br>
+ * Emitted by {@link com.dezzy.dictionary.stats.Histogram}.
+ *
+ * @author Joe Desmond
+ */
+@Name("com.dezzy.dictionary.Histogram")
+@Label("Histogram Rendering")
+@Category("Dictionary")
+@Description("A histogram was binned and drawn, or encoded to a file")
+public final class HistogramEvent extends Event {
+
+	/**
+	 * "render" when the histogram is binned and drawn, "encode" when the image is written to a file
+	 */
+	@Label("Phase")
+	@Description("\"render\" when the histogram is binned and drawn, \"encode\" when the image is written to a file")
+	public String phase;
+
+	/**
+	 * Number of points in the distribution
+	 */
+	@Label("Data Points")
+	@Description("Number of points in the distribution")
+	public int dataPoints;
+
+	/**
+	 * Number of bins
+	 */
+	@Label("Bins")
+	@Description("Number of bins")
+	public int bins;
+
+	/**
+	 * Width of the image in pixels
+	 */
+	@Label("Width")
+	@Description("Width of the image in pixels")
+	public int width;
+
+	/**
+	 * Height of the image in pixels
+	 */
+	@Label("Height")
+	@Description("Height of the image in pixels")
+	public int height;
+}
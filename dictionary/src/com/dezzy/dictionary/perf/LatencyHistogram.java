@@ -0,0 +1,205 @@
+package com.dezzy.dictionary.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-bucketed histogram of latencies, in nanoseconds. Every power of two is split into {@link #SUB_BUCKETS} linear sub-buckets,
+ * so a recorded value is reported with at most 12.5% relative error, in a fixed 4 KB of counters regardless of how many values are recorded. <p>
+ *
+ * Recording is lock-free and can be done from any number of threads at once. Histograms can be merged, so per-thread or per-session
+ * histograms can be combined into one report.
+ *
+ * @author Joe Desmond
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * Number of bits used to pick a sub-bucket within a power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * Number of sub-buckets within each power of two
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Total number of buckets; enough for any non-negative <code>long</code>
+	 */
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	/**
+	 * Number of values recorded in each bucket
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Largest value recorded
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	public LatencyHistogram() {
+
+	}
+
+	/**
+	 * Records one value. Negative values are recorded as zero.
+	 *
+	 * @param nanos latency in nanoseconds
+	 */
+	public final void record(final long nanos) {
+		final long value = Math.max(0, nanos);
+
+		counts.incrementAndGet(bucketOf(value));
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Records one value, correcting for coordinated omission. If the value is longer than the interval at which values were expected,
+	 * the requests that would have been sent (and delayed) during that time are also recorded, with latencies decreasing by
+	 * <code>expectedIntervalNanos</code> each, as a load generator that did not wait would have seen them.
+	 *
+	 * @param nanos latency in nanoseconds
+	 * @param expectedIntervalNanos expected time between requests, in nanoseconds; zero or less disables the correction
+	 */
+	public final void recordWithExpectedInterval(final long nanos, final long expectedIntervalNanos) {
+		record(nanos);
+
+		if (expectedIntervalNanos <= 0) {
+			return;
+		}
+
+		for (long missed = nanos - expectedIntervalNanos; missed >= expectedIntervalNanos; missed -= expectedIntervalNanos) {
+			record(missed);
+		}
+	}
+
+	/**
+	 * Adds every value recorded in another histogram to this one. The other histogram is unchanged.
+	 *
+	 * @param other histogram to merge into this one
+	 */
+	public final void merge(final LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			final long count = other.counts.get(i);
+
+			if (count != 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+
+		max.accumulateAndGet(other.max.get(), Math::max);
+	}
+
+	/**
+	 * Clears every recorded value. Values recorded by other threads while the histogram is being cleared may or may not be kept.
+	 */
+	public final void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+
+		max.set(0);
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 *
+	 * @return value count
+	 */
+	public final long count() {
+		long total = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			total += counts.get(i);
+		}
+
+		return total;
+	}
+
+	/**
+	 * Returns the largest recorded value.
+	 *
+	 * @return maximum latency in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public final long max() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the value at the given percentile: the upper bound of the bucket containing it, capped at the largest recorded value.
+	 *
+	 * @param percentile percentile, from 0 to 100
+	 * @return latency in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public final long percentile(final double percentile) {
+		final long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		final double clamped = Math.max(0, Math.min(100, percentile));
+		final long rank = Math.max(1, (long) Math.ceil((clamped / 100.0) * total));
+
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Returns the bucket that a value is counted in.
+	 *
+	 * @param value non-negative value
+	 * @return bucket index
+	 */
+	private static final int bucketOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the largest value that is counted in a bucket.
+	 *
+	 * @param bucket bucket index
+	 * @return largest value in the bucket
+	 */
+	private static final long upperBoundOf(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		final int exponent = (bucket / SUB_BUCKETS) + SUB_BUCKET_BITS - 1;
+		final long subBucket = bucket % SUB_BUCKETS;
+		final int shift = exponent - SUB_BUCKET_BITS;
+
+		if (exponent == 62 && subBucket == SUB_BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
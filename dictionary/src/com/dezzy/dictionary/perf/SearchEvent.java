@@ -0,0 +1,48 @@
+package com.dezzy.dictionary.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event: a dictionary was searched with a regular expression. The event's duration is the time the operation took. <br>
+ * Emitted by {@link com.dezzy.dictionary.main.Dictionary#searchAll(String)} and {@link com.dezzy.dictionary.main.Dictionary#search(String, com.dezzy.dictionary.main.SearchBudget)}.
+ *
+ * @author Joe Desmond
+ */
+@Name("com.dezzy.dictionary.Search")
+@Label("Dictionary Search")
+@Category("Dictionary")
+@Description("A dictionary was searched with a regular expression")
+public final class SearchEvent extends Event {
+
+	/**
+	 * The search expression
+	 */
+	@Label("Expression")
+	@Description("The search expression")
+	public String regex;
+
+	/**
+	 * Number of entries searched
+	 */
+	@Label("Entries")
+	@Description("Number of entries searched")
+	public int entries;
+
+	/**
+	 * Number of entries with at least one match
+	 */
+	@Label("Matching Entries")
+	@Description("Number of entries with at least one match")
+	public int matches;
+
+	/**
+	 * True if the search was stopped by its budget before searching every entry
+	 */
+	@Label("Truncated")
+	@Description("True if the search was stopped by its budget before searching every entry")
+	public boolean truncated;
+}
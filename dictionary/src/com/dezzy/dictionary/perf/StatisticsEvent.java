@@ -0,0 +1,34 @@
+package com.dezzy.dictionary.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event: statistics were generated for a dictionary. The event's duration is the time the operation took. <br>
+ * Emitted by {@link com.dezzy.dictionary.stats.Statistics#Statistics(com.dezzy.dictionary.main.Dictionary)}.
+ *
+ * @author Joe Desmond
+ */
+@Name("com.dezzy.dictionary.Statistics")
+@Label("Dictionary Statistics")
+@Category("Dictionary")
+@Description("Statistics were generated for a dictionary")
+public final class StatisticsEvent extends Event {
+
+	/**
+	 * Number of entries in the dictionary
+	 */
+	@Label("Entries")
+	@Description("Number of entries in the dictionary")
+	public int entries;
+
+	/**
+	 * Number of points in the time differences distribution
+	 */
+	@Label("Data Points")
+	@Description("Number of points in the time differences distribution")
+	public int dataPoints;
+}
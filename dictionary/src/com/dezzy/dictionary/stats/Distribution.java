@@ -120,10 +120,26 @@ public final class Distribution {
 	 * @param _data data points
 	 */
 	public Distribution(final String _name, final String _auxInfo, float ... _data) {
+		this(_name, _auxInfo, false, _data);
+	}
+	
+	/**
+	 * Constructs a distribution from the given data points and calculates various statistics. If <code>_sorted</code> is true, the data
+	 * is expected to already be in ascending order and is not sorted again; otherwise <b>this constructor sorts the given array in ascending order</b>.
+	 * 
+	 * @param _name name of the distribution
+	 * @param _auxInfo extra info about the distribution
+	 * @param _sorted true if <code>_data</code> is already sorted in ascending order
+	 * @param _data data points
+	 */
+	public Distribution(final String _name, final String _auxInfo, final boolean _sorted, float ... _data) {
 		name = _name;
 		auxInfo = _auxInfo;
 		data = _data;
-		Arrays.sort(data);
+		
+		if (!_sorted) {
+			Arrays.sort(data);
+		}
 		
 		size = data.length;
 		mean = mean(data);
@@ -153,12 +169,12 @@ public final class Distribution {
 	
 	/**
 	 * Returns a copy of this distribution, with no outliers. {@link #data} in the new Distribution and
-	 * {@link #dataNoOutliers} in this distribution will point to the same array.
+	 * {@link #dataNoOutliers} in this distribution will point to the same array. The data is already sorted, so it is not sorted again.
 	 * 
 	 * @return a version of this distribution with no outliers
 	 */
 	public final Distribution copyNoOutliers() {
-		return new Distribution(name, auxInfo, dataNoOutliers);
+		return new Distribution(name, auxInfo, true, dataNoOutliers);
 	}
 	
 	/**
@@ -8,6 +8,8 @@ import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
+import com.dezzy.dictionary.perf.HistogramEvent;
+
 /**
  * A histogram, backed by a distribution. A histogram contains information on its bins, as well as an image.
  *
@@ -20,6 +22,11 @@ public final class Histogram {
 	 */
 	private static final int BIN_WIDTH_PIXELS = 50;
 	
+	/**
+	 * Maximum number of bins chosen by {@link #idealBinCount(Distribution)}; keeps the image a manageable size for large distributions
+	 */
+	private static final int MAX_IDEAL_BIN_COUNT = 64;
+	
 	/**
 	 * The distribution represented by this histogram
 	 */
@@ -48,10 +55,19 @@ public final class Histogram {
 	 * @param _binWidth width of each bin
 	 */
 	public Histogram(final Distribution _distribution, final int binCount, final float _binWidth) {
+		final HistogramEvent event = new HistogramEvent();
+		event.begin();
+		
 		distribution = _distribution;
 		binWidth = _binWidth;
 		bins = getBins(distribution, binCount, binWidth);
 		image = draw(bins, binWidth);
+		
+		event.end();
+		if (event.shouldCommit()) {
+			fillEvent(event, "render");
+			event.commit();
+		}
 	}
 	
 	/**
@@ -71,8 +87,31 @@ public final class Histogram {
 	 * @throws IOException if there is a problem saving the image
 	 */
 	public final void saveTo(final String path, final String format) throws IOException {
+		final HistogramEvent event = new HistogramEvent();
+		event.begin();
+		
 		final File destination = new File(path);
 		ImageIO.write(image, format, destination);
+		
+		event.end();
+		if (event.shouldCommit()) {
+			fillEvent(event, "encode");
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Fills in the fields of a flight recorder event that describe this histogram.
+	 * 
+	 * @param event event to fill in
+	 * @param phase <code>"render"</code> or <code>"encode"</code>
+	 */
+	private final void fillEvent(final HistogramEvent event, final String phase) {
+		event.phase = phase;
+		event.dataPoints = distribution.data.length;
+		event.bins = bins.length;
+		event.width = image.getWidth();
+		event.height = image.getHeight();
 	}
 	
 	/**
@@ -166,13 +205,13 @@ public final class Histogram {
 	}
 	
 	/**
-	 * Calculates the ideal number of bins for a distribution.
+	 * Calculates the ideal number of bins for a distribution, up to {@link #MAX_IDEAL_BIN_COUNT}.
 	 * 
 	 * @param distribution the distribution
 	 * @return ideal number of bins
 	 */
 	private static final int idealBinCount(final Distribution distribution) {
-		return 1 + (int)(Math.sqrt(distribution.size));
+		return Math.min(MAX_IDEAL_BIN_COUNT, 1 + (int)(Math.sqrt(distribution.size)));
 	}
 	
 	/**
@@ -1,13 +1,10 @@
 package com.dezzy.dictionary.stats;
 
-import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.temporal.ChronoUnit;
-import java.util.Date;
-import java.util.List;
+import java.time.format.DateTimeFormatter;
 
 import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.perf.StatisticsEvent;
 
 /**
  * Creates and stores various statistics for a {@link Dictionary}.
@@ -19,12 +16,17 @@ public final class Statistics {
 	/**
 	 * Date format used in {@link #toString()}
 	 */
-	public static final SimpleDateFormat DATE_OUTPUT_FORMAT = new SimpleDateFormat("MM/dd/YYYY hh:mm:ss a");
+	public static final DateTimeFormatter DATE_OUTPUT_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss a");
 	
 	/**
-	 * The dictionary
+	 * Number of milliseconds in one minute
 	 */
-	private final Dictionary dictionary;
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+	
+	/**
+	 * Name of the dictionary
+	 */
+	private final String name;
 	
 	/**
 	 * Distribution of time differences between consecutive definition entry dates (in minutes)
@@ -37,53 +39,65 @@ public final class Statistics {
 	public final int numEntries;
 	
 	/**
-	 * Generates statistics for a dictionary. These statistics are meant to provide a snapshot of the current dictionary, and are immutable.
+	 * Number of entries by access count, in power-of-two buckets (see {@link Dictionary#getAccessCountHistogram()})
+	 */
+	public final long[] accessCounts;
+	
+	/**
+	 * Generates statistics for a dictionary. These statistics are meant to provide a snapshot of the current dictionary, and are immutable;
+	 * they are read from a {@link Dictionary.Snapshot}, so the dictionary can be changed while they are generated.
 	 * 
 	 * @param _dictionary the dictionary
 	 */
 	public Statistics(final Dictionary _dictionary) {
-		dictionary = _dictionary;
-		numEntries = dictionary.size();
-		timeDifferences = timeDifferencesDistribution(dictionary);
+		final StatisticsEvent event = new StatisticsEvent();
+		event.begin();
+		
+		name = _dictionary.name;
+		try (Dictionary.Snapshot snapshot = _dictionary.snapshot()) {
+			numEntries = snapshot.size();
+			timeDifferences = timeDifferencesDistribution(snapshot.getSortedEntryGaps());
+			accessCounts = snapshot.getAccessCountHistogram();
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.entries = numEntries;
+			event.dataPoints = timeDifferences.data.length;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Creates statistics from data gathered elsewhere, such as from every shard of a {@link com.dezzy.dictionary.main.ShardedDictionary}.
+	 * 
+	 * @param _name name of the dictionary
+	 * @param _numEntries number of entries
+	 * @param sortedEntryGaps times between consecutive entry dates in milliseconds, sorted in ascending order
+	 * @param _accessCounts number of entries by access count, in power-of-two buckets
+	 */
+	public Statistics(final String _name, final int _numEntries, final long[] sortedEntryGaps, final long[] _accessCounts) {
+		name = _name;
+		numEntries = _numEntries;
+		timeDifferences = timeDifferencesDistribution(sortedEntryGaps);
+		accessCounts = _accessCounts;
 	}
 	
 	/**
-	 * Calculates the time differences between subsequent definitions (in minutes) and returns a distribution containing these differences.
+	 * Converts the time differences between subsequent definitions to minutes and returns a distribution containing these differences.
 	 * 
-	 * @param dictionary dictionary
+	 * @param gaps times between consecutive entry dates in milliseconds, sorted in ascending order
 	 * @return distribution of time differences
 	 */
-	private final Distribution timeDifferencesDistribution(final Dictionary dictionary) {
-		final List<String> dateSortedWords = dictionary.getEntryDateSortedWords();
-		
-		final float[] data = new float[dateSortedWords.size() - 1];
+	private final Distribution timeDifferencesDistribution(final long[] gaps) {
+		final float[] data = new float[gaps.length];
 		
 		for (int i = 0; i < data.length; i++) {
-			final Date first = dictionary.getDefinition(dateSortedWords.get(i)).get().entryDate();
-			final Date second = dictionary.getDefinition(dateSortedWords.get(i + 1)).get().entryDate();
-			
-			final LocalDateTime firstLDT = convertDate(first);
-			final LocalDateTime secondLDT = convertDate(second);
-			
-			long diff = ChronoUnit.MINUTES.between(firstLDT, secondLDT);
-			data[i] = diff;
+			data[i] = gaps[i] / MILLIS_PER_MINUTE;
 		}
 		
 		return new Distribution("====== Time Differences Distribution ======", 
-				"Distribution of entry times between consecutive definitions. Time is measured in minutes", data);
-	}
-	
-	/**
-	 * Converts a {@link Date} to a {@link LocalDateTime}, so that time differences can be calculated with 
-	 * {@link ChronoUnit#between(java.time.temporal.Temporal, java.time.temporal.Temporal) ChronoUnit.between()}.
-	 * 
-	 * @param date date to be converted
-	 * @return converted date
-	 */
-	private static final LocalDateTime convertDate(final Date date) {
-		return date.toInstant()
-				.atZone(ZoneId.systemDefault())
-				.toLocalDateTime();
+				"Distribution of entry times between consecutive definitions. Time is measured in minutes", true, data);
 	}
 	
 	/**
@@ -96,13 +110,21 @@ public final class Statistics {
 	public String toString() {
 		final StringBuilder sb = new StringBuilder("============ STATISTICS ============" + System.lineSeparator());
 		
-		final String dateString = DATE_OUTPUT_FORMAT.format(new Date());
+		final String dateString = DATE_OUTPUT_FORMAT.format(LocalDateTime.now());
 		sb.append("As of " + dateString + ":" + System.lineSeparator());
-		sb.append("There are " + numEntries + " definitions in " + dictionary.name);
+		sb.append("There are " + numEntries + " definitions in " + name);
 		
 		sb.append(System.lineSeparator() + System.lineSeparator());
 		sb.append(timeDifferences.toString());
 		
+		sb.append(System.lineSeparator() + System.lineSeparator());
+		sb.append("====== Access Counts ======" + System.lineSeparator());
+		sb.append("Number of definitions by the number of times they were looked up");
+		for (int i = 0; i < accessCounts.length; i++) {
+			final String range = (i < 2) ? Integer.toString(i) : (1L << (i - 1)) + "-" + ((1L << i) - 1);
+			sb.append(System.lineSeparator() + range + ": " + accessCounts[i]);
+		}
+		
 		return sb.toString();
 	}
 }
@@ -0,0 +1,137 @@
+package com.dezzy.dictionary.stats;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Writes a {@link Statistics} snapshot to a directory as a pipeline. The statistics are computed once by the caller; rendering and encoding
+ * each histogram and writing the text printout are independent stages that run concurrently on a worker pool. Progress and errors are
+ * reported through a callback as each stage finishes, so the thread that started the export never waits on it.
+ *
+ * @author Joe Desmond
+ */
+public final class StatisticsExport {
+
+	/**
+	 * Number of independent stages in an export
+	 */
+	private static final int STAGE_COUNT = 3;
+
+	/**
+	 * The statistics being exported
+	 */
+	private final Statistics statistics;
+
+	/**
+	 * Text printout of the statistics, rendered before the export starts
+	 */
+	private final String statisticsText;
+
+	/**
+	 * Directory to write to
+	 */
+	private final String directory;
+
+	/**
+	 * Receives progress and error messages; called from worker threads
+	 */
+	private final Consumer<String> progress;
+
+	/**
+	 * Number of stages that have finished (successfully or not)
+	 */
+	private final AtomicInteger finishedStages = new AtomicInteger();
+
+	/**
+	 * Creates an export for the given statistics. Nothing is written until {@link #start(Executor)} is called.
+	 *
+	 * @param _statistics statistics to export
+	 * @param _statisticsText text printout of the statistics (usually {@link Statistics#toString()})
+	 * @param _directory directory to write to
+	 * @param _progress receives progress and error messages, possibly from several threads at once
+	 */
+	public StatisticsExport(final Statistics _statistics, final String _statisticsText, final String _directory, final Consumer<String> _progress) {
+		statistics = _statistics;
+		statisticsText = _statisticsText;
+		directory = _directory;
+		progress = _progress;
+	}
+
+	/**
+	 * Starts every stage of the export on the given executor and returns immediately.
+	 *
+	 * @param executor worker pool to run the stages on
+	 * @return a future that completes with true once every stage has finished, or false if any stage failed
+	 */
+	public final CompletableFuture<Boolean> start(final Executor executor) {
+		final CompletableFuture<Boolean> rawHistogram = CompletableFuture.supplyAsync(() ->
+			saveHistogram(statistics.timeDifferences, "raw-time-differences.png"), executor);
+
+		final CompletableFuture<Boolean> noOutliersHistogram = CompletableFuture.supplyAsync(() ->
+			saveHistogram(statistics.timeDifferences.copyNoOutliers(), "time-differences-no-outliers.png"), executor);
+
+		final CompletableFuture<Boolean> text = CompletableFuture.supplyAsync(this::saveText, executor);
+
+		return rawHistogram.thenCombine(noOutliersHistogram, Boolean::logicalAnd)
+				.thenCombine(text, Boolean::logicalAnd)
+				.thenApply(success -> {
+					progress.accept(success ? "Saved statistics to \"" + directory + "\" folder" : "ERROR: Statistics for \"" + directory + "\" were only partially saved!");
+					return success;
+				});
+	}
+
+	/**
+	 * Renders a histogram of a distribution and saves it as a PNG in the export directory.
+	 *
+	 * @param distribution distribution to draw
+	 * @param fileName name of the image file
+	 * @return true if the image was saved
+	 */
+	private final boolean saveHistogram(final Distribution distribution, final String fileName) {
+		try {
+			new Histogram(distribution).saveTo(directory + File.separator + fileName, "png");
+		} catch (Exception e) {
+			e.printStackTrace();
+			progress.accept("ERROR: Problem saving time differences histogram \"" + fileName + "\"!");
+			finishedStages.incrementAndGet();
+			return false;
+		}
+
+		reportStage(fileName);
+		return true;
+	}
+
+	/**
+	 * Writes the statistics printout to <code>stats.txt</code> in the export directory.
+	 *
+	 * @return true if the file was written
+	 */
+	private final boolean saveText() {
+		try (PrintWriter pw = new PrintWriter(new FileWriter(new File(directory + File.separator + "stats.txt")))) {
+			pw.print(statisticsText);
+		} catch (Exception e) {
+			e.printStackTrace();
+			progress.accept("ERROR: Problem occurred while trying to write to text file!");
+			finishedStages.incrementAndGet();
+			return false;
+		}
+
+		reportStage("stats.txt");
+		return true;
+	}
+
+	/**
+	 * Reports that a stage finished successfully.
+	 *
+	 * @param fileName name of the file that the stage wrote
+	 */
+	private final void reportStage(final String fileName) {
+		final int finished = finishedStages.incrementAndGet();
+		progress.accept("statsdump: wrote \"" + fileName + "\" (" + finished + "/" + STAGE_COUNT + ")");
+	}
+}
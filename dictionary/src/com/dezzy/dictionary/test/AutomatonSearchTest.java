@@ -0,0 +1,70 @@
+package com.dezzy.dictionary.test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.main.Dictionary.SearchEngine;
+import com.dezzy.dictionary.main.Dictionary.SearchResult;
+import com.dezzy.dictionary.main.SearchBudget;
+
+public final class AutomatonSearchTest {
+	
+	private static final String ALPHABET = "aabbcc  xyzAB019.-_\n\r\t\u00e9";
+	private static final int RANDOM_ENTRIES = 2000;
+	
+	private static final String[] PATTERNS = {
+		"a", "ab", "abc", "a|b", "(ab)+", "(ab)+?", "a*b", "a+?b", "a{2}", "a{2,}", "a{1,3}?", "[abc]+", "[^abc ]+", "[a-c&&[b]]",
+		"\\d+", "\\D\\d", "\\w+", "\\W+", "\\s+", "\\S+", ".+", ".*?c", "(a+)+\\d", "(a|ab)(c|bcd)", "(a*)*b", "x(y|z)*?z",
+		"^a", "^\\w+", "b$", "\\d$", "^.*$", "a\\.b", "\\t", "\\n\\w", "[.]", "\u00e9+", "[\\w&&[^\\d]]+", "(\\w)\\1", "a(?=b)", "\\bab",
+		"(?i)AB", "a++", "", "x?"
+	};
+	
+	public static final void main(final String ... args) {
+		final Dictionary dictionary = new Dictionary("Automaton Search Test");
+		final Random random = new Random(20200120L);
+		
+		dictionary.weakDefine("fixed0", new Definition("abc abcd aab ababab bcd", new Date()));
+		dictionary.weakDefine("fixed1", new Definition("line one\nline two\r\nline three\n", new Date()));
+		dictionary.weakDefine("fixed2", new Definition("xyzzy xyyz 0123 a.b a-b", new Date()));
+		dictionary.weakDefine("fixed3", new Definition("ends in a line terminator\r\n", new Date()));
+		dictionary.weakDefine("fixed4", new Definition("surrogate pair \uD83D\uDE00 ab", new Date()));
+		
+		for (int i = 0; i < RANDOM_ENTRIES; i++) {
+			final StringBuilder text = new StringBuilder();
+			final int length = random.nextInt(40);
+			
+			for (int j = 0; j < length; j++) {
+				text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			
+			dictionary.weakDefine("random" + i, new Definition(text.toString(), new Date()));
+		}
+		
+		int disagreements = 0;
+		for (final String pattern : PATTERNS) {
+			final boolean searchAllAgrees = results(dictionary.searchAll(pattern, SearchEngine.JAVA)).equals(results(dictionary.searchAll(pattern, SearchEngine.AUTOMATON)));
+			final boolean searchAgrees = results(dictionary.search(pattern, SearchBudget.unlimited(), SearchEngine.JAVA)).equals(results(dictionary.search(pattern, SearchBudget.unlimited(), SearchEngine.AUTOMATON)));
+			
+			System.out.println(((searchAllAgrees && searchAgrees) ? "agree:\t\t" : "DISAGREE:\t") + pattern.replace("\n", "\\n").replace("\t", "\\t"));
+			
+			if (!searchAllAgrees || !searchAgrees) {
+				disagreements++;
+			}
+		}
+		
+		System.out.println();
+		System.out.println("Disagreements:\t" + disagreements + " / " + PATTERNS.length);
+		
+		if (disagreements != 0) {
+			throw new IllegalStateException(disagreements + " patterns matched differently with the automaton");
+		}
+	}
+	
+	private static final List<String> results(final List<SearchResult> results) {
+		return results.stream().map(result -> result.score + " " + result.definitionString).sorted().collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,120 @@
+package com.dezzy.dictionary.test;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.main.Dictionary.Storage;
+
+public final class ConcurrentLookupTest {
+	
+	private static final int WORDS = 64;
+	private static final int THREADS = 4;
+	private static final int LOOKUPS_PER_THREAD = 64 * 5000;
+	private static final int NEW_WORDS = 200000;
+	private static final int REPLACEMENTS = 20000;
+	
+	public static final void main(final String ... args) throws InterruptedException {
+		for (final Storage storage : Storage.values()) {
+			countAccesses(storage);
+			replaceWhileReading(storage);
+		}
+	}
+	
+	/**
+	 * Looks up the same words from several threads while new words make the access count column grow, and checks that no access is lost.
+	 */
+	private static final void countAccesses(final Storage storage) throws InterruptedException {
+		final Dictionary dictionary = new Dictionary("Concurrent Lookup Test", storage);
+		
+		for (int i = 0; i < WORDS; i++) {
+			dictionary.weakDefine("word" + i, new Definition("definition of word" + i, new Date()));
+		}
+		
+		final Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+					dictionary.getDefinition("word" + (i % WORDS)).get().definition();
+				}
+			});
+			threads[t].start();
+		}
+		
+		//Grow the access count column while the lookups are running
+		for (int i = 0; i < NEW_WORDS; i++) {
+			dictionary.weakDefine("new" + i, new Definition("new definition " + i, new Date()));
+		}
+		
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		
+		long total = 0;
+		for (int i = 0; i < WORDS; i++) {
+			total += dictionary.getDefinition("word" + i).get().accesses();
+		}
+		
+		final long expected = (long) THREADS * LOOKUPS_PER_THREAD;
+		System.out.println(storage + " accesses:\t" + total + " / " + expected);
+		
+		if (total != expected) {
+			throw new IllegalStateException(storage + ": " + (expected - total) + " accesses were lost");
+		}
+	}
+	
+	/**
+	 * Reads definitions from several threads while they are replaced, so that their IDs are given to other entries, and checks that every
+	 * read returns the text of the right word and that no access is counted for an entry that was never read.
+	 */
+	private static final void replaceWhileReading(final Storage storage) throws InterruptedException {
+		final Dictionary dictionary = new Dictionary("Concurrent Replace Test", storage);
+		
+		for (int i = 0; i < WORDS; i++) {
+			dictionary.weakDefine("word" + i, new Definition("definition of word" + i, new Date()));
+			dictionary.weakDefine("unread" + i, new Definition("unread definition", new Date()));
+		}
+		
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+						final String word = "word" + (i % WORDS);
+						final String text = dictionary.getDefinition(word).get().definition();
+						
+						if (!text.startsWith("definition of " + word + " ") && !text.equals("definition of " + word)) {
+							throw new IllegalStateException(storage + ": read \"" + text + "\" for " + word);
+						}
+					}
+				} catch (final Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads[t].start();
+		}
+		
+		//Replace the words being read and the unread words, so that the IDs of the words being read are reused by unread words
+		for (int i = 0; i < REPLACEMENTS; i++) {
+			dictionary.strongDefine("word" + (i % WORDS), new Definition("definition of word" + (i % WORDS) + " version " + i, new Date()));
+			dictionary.strongDefine("unread" + (i % WORDS), new Definition("unread definition", new Date()));
+		}
+		
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		
+		int misplaced = 0;
+		for (int i = 0; i < WORDS; i++) {
+			misplaced += dictionary.getDefinition("unread" + i).get().accesses();
+		}
+		
+		System.out.println(storage + " replaced:\t" + ((failure.get() == null) ? "ok" : failure.get()) + ", " + misplaced + " misplaced accesses");
+		
+		if (failure.get() != null || misplaced != 0) {
+			throw new IllegalStateException(storage + ": definitions were read from reused IDs", failure.get());
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.dezzy.dictionary.test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Random;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.main.Dictionary.Storage;
+
+public final class DictionaryFileTest {
+	
+	private static final int ENTRIES = 30000;
+	private static final String[] WORDS = {"the", "dictionary", "word", "definition", "of", "a", "compressed", "chunk", "checksum", "entry"};
+	
+	public static final void main(final String ... args) throws Exception {
+		final Dictionary dictionary = new Dictionary("Dictionary File Test", Storage.COMPRESSED);
+		final Random random = new Random(20200120L);
+		
+		for (int i = 0; i < ENTRIES; i++) {
+			final StringBuilder text = new StringBuilder();
+			final int length = 1 + random.nextInt(30);
+			
+			for (int j = 0; j < length; j++) {
+				text.append((j == 0) ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			
+			dictionary.weakDefine("word" + i, new Definition(text.toString(), new Date(1577836800000L + random.nextInt(1000000000))));
+		}
+		for (int i = 0; i < ENTRIES; i += 7) {
+			dictionary.getDefinition("word" + i).get().definition();
+		}
+		
+		final File file = File.createTempFile("dictionary-file-test", ".dict");
+		file.deleteOnExit();
+		dictionary.save(file.getPath());
+		
+		final int version;
+		final long tableOffset;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			in.readLong();
+			version = in.readInt();
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.seek(raf.length() - (8 + 4 + 8));
+			tableOffset = raf.readLong();
+		}
+		
+		System.out.println("Version:\t" + version);
+		System.out.println("Bytes:\t\t" + file.length());
+		
+		if (version != 4) {
+			throw new IllegalStateException("A compressed dictionary was saved as version " + version);
+		}
+		
+		final Dictionary loaded = Dictionary.load(file.getPath());
+		int wrong = 0;
+		for (int i = 0; i < ENTRIES; i++) {
+			final Definition original = dictionary.getDefinition("word" + i).get();
+			final Optional<Definition> read = loaded.getDefinition("word" + i);
+			
+			if (!read.isPresent() || read.get().accesses() != original.accesses() || !read.get().entryDate().equals(original.entryDate())
+					|| !read.get().definition().equals(original.definition())) {
+				wrong++;
+			}
+		}
+		
+		System.out.println("Loaded:\t\t" + loaded.size() + " / " + ENTRIES + ", " + wrong + " wrong");
+		
+		if (loaded.size() != ENTRIES || wrong != 0) {
+			throw new IllegalStateException("The loaded dictionary does not match the saved one");
+		}
+		
+		//Flip one byte in the middle of the chunks, which must be caught by the checksum of the chunk that holds it
+		final File corrupt = File.createTempFile("dictionary-file-test-corrupt", ".dict");
+		corrupt.deleteOnExit();
+		Files.copy(file.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		try (RandomAccessFile raf = new RandomAccessFile(corrupt, "rw")) {
+			raf.seek(tableOffset / 2);
+			final int b = raf.read();
+			raf.seek(tableOffset / 2);
+			raf.write(b ^ 0x10);
+		}
+		
+		String error = null;
+		try {
+			Dictionary.load(corrupt.getPath());
+		} catch (IOException e) {
+			error = e.getMessage();
+		}
+		
+		System.out.println("Corrupt:\t" + error);
+		
+		if (error == null || !error.contains("checksum")) {
+			throw new IllegalStateException("A corrupted chunk was not rejected");
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.dezzy.dictionary.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+
+public final class EntryGapTest {
+	
+	private static final int WORDS = 3000;
+	private static final int OPERATIONS = 20000;
+	private static final double[] PERCENTILES = {0, 1, 25, 50, 75, 90, 99, 100};
+	
+	public static final void main(final String ... args) throws Exception {
+		final Random random = new Random(20200120L);
+		final Dictionary built = new Dictionary("Entry Gap Test");
+		
+		//Ask for a gap first, so that the gaps are kept up to date through every change below
+		built.getEntryGapPercentile(50);
+		mutate(built, random);
+		check("Built", built);
+		
+		//A loaded dictionary builds its entry date index in one pass, and its gaps when they are first asked for
+		final File file = File.createTempFile("entry-gap-test", ".dict");
+		file.deleteOnExit();
+		built.save(file.getPath());
+		
+		final Dictionary loaded = Dictionary.load(file.getPath());
+		check("Loaded", loaded);
+		mutate(loaded, random);
+		check("Loaded and changed", loaded);
+	}
+	
+	private static final void mutate(final Dictionary dictionary, final Random random) {
+		for (int i = 0; i < OPERATIONS; i++) {
+			final String word = "word" + random.nextInt(WORDS);
+			//Few distinct dates, so that many gaps are equal
+			final Date date = new Date(1577836800000L + random.nextInt(5000) * 1000L);
+			
+			switch (random.nextInt(3)) {
+				case 0:
+					dictionary.remove(word);
+					break;
+				case 1:
+					dictionary.weakDefine(word, new Definition("definition " + i, date));
+					break;
+				default:
+					dictionary.strongDefine(word, new Definition("definition " + i, date));
+			}
+			
+			if (i % 1000 == 0) {
+				dictionary.getEntryGapPercentile(random.nextInt(101));
+			}
+		}
+	}
+	
+	private static final void check(final String label, final Dictionary dictionary) {
+		final long[] expected;
+		try (Dictionary.Snapshot snapshot = dictionary.snapshot()) {
+			expected = snapshot.getSortedEntryGaps();
+		}
+		
+		final boolean sameGaps = Arrays.equals(expected, dictionary.getSortedEntryGaps());
+		int wrong = 0;
+		
+		for (final double percentile : PERCENTILES) {
+			final int rank = (int) Math.ceil((percentile / 100.0) * expected.length);
+			final long gap = (expected.length == 0) ? -1 : expected[Math.max(0, rank - 1)];
+			
+			if (dictionary.getEntryGapPercentile(percentile) != gap) {
+				wrong++;
+			}
+		}
+		
+		System.out.println(label + ":\t" + expected.length + " gaps, " + (sameGaps ? "same" : "different") + ", " + wrong + " wrong percentiles");
+		
+		if (!sameGaps || wrong != 0) {
+			throw new IllegalStateException(label + ": the entry gaps do not match the snapshot");
+		}
+	}
+}
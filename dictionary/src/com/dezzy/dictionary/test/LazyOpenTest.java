@@ -0,0 +1,61 @@
+package com.dezzy.dictionary.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+
+public final class LazyOpenTest {
+	
+	public static final void main(final String ... args) throws Exception {
+		final Dictionary original = new Dictionary("Lazy Open Test");
+		for (int i = 0; i < 5; i++) {
+			original.weakDefine("w" + i, new Definition("definition " + i, new Date(1577836800000L + i * 1000L)));
+		}
+		
+		final File file = File.createTempFile("lazy-open-test", ".dict");
+		file.deleteOnExit();
+		original.save(file.getPath());
+		
+		//Hold the loading task until the early lookup is done
+		final List<Runnable> deferred = new ArrayList<Runnable>();
+		final Dictionary dictionary = Dictionary.open(file.getPath(), deferred::add);
+		
+		final Definition early = dictionary.getDefinition("w2").get();
+		early.definition();
+		early.definition();
+		
+		for (final Runnable task : deferred) {
+			task.run();
+		}
+		
+		dictionary.weakDefine("new", new Definition("new definition", new Date(1577836900000L)));
+		dictionary.remove("w3");
+		
+		check("Defined and removed", dictionary, Arrays.asList("w0", "w1", "w2", "w4", "new"));
+		
+		final int accesses = dictionary.getDefinition("w2").get().accesses();
+		System.out.println("Early accesses:\t" + accesses + " / 2");
+		if (accesses != 2) {
+			throw new IllegalStateException("Accesses counted before loading finished were lost");
+		}
+		
+		dictionary.remove("w2");
+		
+		check("Removed early", dictionary, Arrays.asList("w0", "w1", "w4", "new"));
+	}
+	
+	private static final void check(final String label, final Dictionary dictionary, final List<String> expected) {
+		final List<String> byDate = dictionary.getEntryDateSortedWords();
+		
+		System.out.println(label + ":\t" + byDate + ", size " + dictionary.size());
+		
+		if (!byDate.equals(expected) || dictionary.size() != expected.size()) {
+			throw new IllegalStateException(label + ": expected " + expected);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.dezzy.dictionary.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.dezzy.dictionary.main.Definition;
+import com.dezzy.dictionary.main.Dictionary;
+import com.dezzy.dictionary.main.Dictionary.Storage;
+
+public final class LsmRoundTripTest {
+	
+	private static final int WORDS = 5000;
+	private static final int OPERATIONS = 60000;
+	private static final Pattern MERGES = Pattern.compile("Merges: (\\d+)");
+	
+	public static final void main(final String ... args) throws Exception {
+		//Small memtable, so that the operations below write many runs and the runs are merged
+		System.setProperty("dictionary.lsm.memtable", "8192");
+		
+		final Dictionary dictionary = new Dictionary("LSM Round Trip Test", Storage.LSM);
+		final TreeMap<String, String> expected = new TreeMap<String, String>();
+		final Random random = new Random(20200120L);
+		
+		for (int i = 0; i < OPERATIONS; i++) {
+			final String word = "word" + random.nextInt(WORDS);
+			final int operation = random.nextInt(4);
+			
+			if (operation == 0) {
+				dictionary.remove(word);
+				expected.remove(word);
+			} else if (operation == 1) {
+				final String text = "weak definition " + i + " of " + word;
+				if (dictionary.weakDefine(word, new Definition(text, new Date()))) {
+					expected.put(word, text);
+				}
+			} else {
+				final String text = "definition " + i + " of " + word;
+				dictionary.strongDefine(word, new Definition(text, new Date()));
+				expected.put(word, text);
+			}
+		}
+		
+		final long deadline = System.currentTimeMillis() + 30000;
+		while (merges(dictionary) == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		
+		System.out.println(dictionary.storageReport());
+		System.out.println();
+		
+		if (merges(dictionary) == 0) {
+			throw new IllegalStateException("No runs were merged");
+		}
+		if (dictionary.storageReport().contains("ERROR")) {
+			throw new IllegalStateException("Merging failed");
+		}
+		
+		check("LSM", dictionary, expected);
+		
+		final File file = File.createTempFile("lsm-round-trip", ".dict");
+		file.deleteOnExit();
+		dictionary.save(file.getPath());
+		check("Saved and loaded", Dictionary.load(file.getPath()), expected);
+	}
+	
+	private static final long merges(final Dictionary dictionary) {
+		final Matcher matcher = MERGES.matcher(dictionary.storageReport());
+		return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+	}
+	
+	private static final void check(final String label, final Dictionary dictionary, final TreeMap<String, String> expected) {
+		int wrong = 0;
+		
+		for (int i = 0; i < WORDS; i++) {
+			final String word = "word" + i;
+			final Optional<Definition> definition = dictionary.getDefinition(word);
+			final String text = definition.isPresent() ? definition.get().definition() : null;
+			
+			if ((text == null) ? expected.containsKey(word) : !text.equals(expected.get(word))) {
+				wrong++;
+			}
+		}
+		
+		final boolean sameWords = dictionary.getSortedWords().equals(new ArrayList<String>(expected.keySet()));
+		
+		System.out.println(label + " size:\t" + dictionary.size() + " / " + expected.size());
+		System.out.println(label + " wrong:\t" + wrong);
+		System.out.println(label + " words:\t" + (sameWords ? "same" : "different"));
+		
+		if (dictionary.size() != expected.size() || wrong != 0 || !sameWords) {
+			throw new IllegalStateException(label + ": the dictionary does not match the expected entries");
+		}
+	}
+}